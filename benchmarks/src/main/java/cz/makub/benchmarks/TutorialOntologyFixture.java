@@ -0,0 +1,149 @@
+package cz.makub.benchmarks;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generates offline ontologies with the same vocabulary as the tutorial ontology used by {@link cz.makub.Tutorial},
+ * scaled to a given number of individuals. The generated ABox always contains the individuals
+ * <code>:Martin</code>, <code>:MU</code> and <code>:Ivan</code>, so the tutorial queries have the same answers
+ * regardless of size.
+ */
+public class TutorialOntologyFixture {
+
+    public static final String BASE_URL = "http://acrab.ics.muni.cz/ontologies/tutorial.owl";
+
+    /**
+     * Number of persons per organization.
+     */
+    private static final int PERSONS_PER_ORGANIZATION = 100;
+
+    public final OWLOntologyManager manager;
+    public final OWLOntology ontology;
+    public final OWLDataFactory factory;
+
+    public final OWLClass personClass;
+    public final OWLClass childOfMarriedParentsClass;
+    public final OWLObjectProperty isEmployedAtProperty;
+    public final OWLDataProperty hasEmailProperty;
+    public final OWLNamedIndividual martin;
+    public final OWLNamedIndividual university;
+    public final OWLNamedIndividual ivan;
+
+    private final DefaultPrefixManager pm;
+
+    /**
+     * Generates the ontology.
+     *
+     * @param individuals approximate number of individuals in the ABox
+     * @param seed        seed for the random generator, the same seed produces the same ontology
+     */
+    public TutorialOntologyFixture(int individuals, long seed) throws OWLOntologyCreationException {
+        manager = OWLManager.createOWLOntologyManager();
+        factory = manager.getOWLDataFactory();
+        ontology = manager.createOntology(IRI.create(BASE_URL));
+        pm = new DefaultPrefixManager();
+        pm.setDefaultPrefix(BASE_URL + "#");
+        pm.setPrefix("var:", "urn:swrl#");
+
+        personClass = factory.getOWLClass(":Person", pm);
+        childOfMarriedParentsClass = factory.getOWLClass(":ChildOfMarriedParents", pm);
+        isEmployedAtProperty = factory.getOWLObjectProperty(":isEmployedAt", pm);
+        hasEmailProperty = factory.getOWLDataProperty(":hasEmail", pm);
+        martin = factory.getOWLNamedIndividual(":Martin", pm);
+        university = factory.getOWLNamedIndividual(":MU", pm);
+        ivan = factory.getOWLNamedIndividual(":Ivan", pm);
+
+        //all axioms are collected first and added in a single change, one addAxiom() per axiom is too slow
+        Set<OWLAxiom> axioms = new HashSet<>();
+        addTBox(axioms);
+        addABox(axioms, individuals, new Random(seed));
+        manager.addAxioms(ontology, axioms);
+    }
+
+    private void addTBox(Set<OWLAxiom> axioms) {
+        OWLClass organizationClass = factory.getOWLClass(":Organization", pm);
+        OWLClass universityClass = factory.getOWLClass(":University", pm);
+        OWLClass employeeClass = factory.getOWLClass(":Employee", pm);
+        OWLObjectProperty hasParent = factory.getOWLObjectProperty(":hasParent", pm);
+        OWLObjectProperty hasSpouse = factory.getOWLObjectProperty(":hasSpouse", pm);
+        OWLObjectProperty employs = factory.getOWLObjectProperty(":employs", pm);
+
+        axioms.add(factory.getOWLSubClassOfAxiom(universityClass, organizationClass));
+        axioms.add(factory.getOWLDisjointClassesAxiom(personClass, organizationClass));
+        axioms.add(factory.getOWLObjectPropertyDomainAxiom(isEmployedAtProperty, personClass));
+        axioms.add(factory.getOWLObjectPropertyRangeAxiom(isEmployedAtProperty, organizationClass));
+        axioms.add(factory.getOWLInverseObjectPropertiesAxiom(isEmployedAtProperty, employs));
+        axioms.add(factory.getOWLEquivalentClassesAxiom(employeeClass,
+                factory.getOWLObjectSomeValuesFrom(isEmployedAtProperty, organizationClass)));
+        axioms.add(factory.getOWLObjectPropertyDomainAxiom(hasParent, personClass));
+        axioms.add(factory.getOWLObjectPropertyRangeAxiom(hasParent, personClass));
+        axioms.add(factory.getOWLSymmetricObjectPropertyAxiom(hasSpouse));
+        axioms.add(factory.getOWLDataPropertyDomainAxiom(hasEmailProperty, personClass));
+
+        //SWRL rule - hasParent(?x,?y),hasParent(?x,?z),hasSpouse(?y,?z)->ChildOfMarriedParents(?x)
+        SWRLVariable x = factory.getSWRLVariable(pm.getIRI("var:x"));
+        SWRLVariable y = factory.getSWRLVariable(pm.getIRI("var:y"));
+        SWRLVariable z = factory.getSWRLVariable(pm.getIRI("var:z"));
+        Set<SWRLAtom> body = new LinkedHashSet<>();
+        body.add(factory.getSWRLObjectPropertyAtom(hasParent, x, y));
+        body.add(factory.getSWRLObjectPropertyAtom(hasParent, x, z));
+        body.add(factory.getSWRLObjectPropertyAtom(hasSpouse, y, z));
+        axioms.add(factory.getSWRLRule(body, Collections.singleton(factory.getSWRLClassAtom(childOfMarriedParentsClass, x))));
+    }
+
+    private void addABox(Set<OWLAxiom> axioms, int individuals, Random random) {
+        OWLClass universityClass = factory.getOWLClass(":University", pm);
+        OWLObjectProperty hasParent = factory.getOWLObjectProperty(":hasParent", pm);
+        OWLObjectProperty hasSpouse = factory.getOWLObjectProperty(":hasSpouse", pm);
+        OWLAnnotationProperty label = factory.getOWLAnnotationProperty(OWLRDFVocabulary.RDFS_LABEL.getIRI());
+
+        //organizations
+        int organizationCount = Math.max(1, individuals / PERSONS_PER_ORGANIZATION);
+        List<OWLNamedIndividual> organizations = new ArrayList<>(organizationCount);
+        organizations.add(university);
+        for (int i = 1; i < organizationCount; i++) {
+            organizations.add(factory.getOWLNamedIndividual(":org" + i, pm));
+        }
+        for (OWLNamedIndividual org : organizations) {
+            axioms.add(factory.getOWLClassAssertionAxiom(universityClass, org));
+            axioms.add(factory.getOWLAnnotationAssertionAxiom(label, org.getIRI(), factory.getOWLLiteral(org.getIRI().getShortForm(), "en")));
+        }
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(label, university.getIRI(), factory.getOWLLiteral("Masaryk University", "en")));
+        axioms.add(factory.getOWLAnnotationAssertionAxiom(label, university.getIRI(), factory.getOWLLiteral("Masarykova univerzita", "cs")));
+
+        //persons, employed at a random organization, every third one is a child of two married persons
+        int personCount = Math.max(3, individuals - organizationCount);
+        List<OWLNamedIndividual> persons = new ArrayList<>(personCount);
+        persons.add(martin);
+        persons.add(ivan);
+        for (int i = 2; i < personCount; i++) {
+            persons.add(factory.getOWLNamedIndividual(":person" + i, pm));
+        }
+        for (int i = 0; i < personCount; i++) {
+            OWLNamedIndividual person = persons.get(i);
+            OWLNamedIndividual employer = (person == martin) ? university : organizations.get(random.nextInt(organizationCount));
+            axioms.add(factory.getOWLClassAssertionAxiom(personClass, person));
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(isEmployedAtProperty, person, employer));
+            axioms.add(factory.getOWLDataPropertyAssertionAxiom(hasEmailProperty, person, person.getIRI().getShortForm() + "@example.org"));
+        }
+        for (int i = 1; i + 2 < personCount; i += 3) {
+            OWLNamedIndividual child = persons.get(i);
+            OWLNamedIndividual father = persons.get(i + 1);
+            OWLNamedIndividual mother = persons.get(i + 2);
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasParent, child, father));
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasParent, child, mother));
+            axioms.add(factory.getOWLObjectPropertyAssertionAxiom(hasSpouse, father, mother));
+        }
+    }
+}
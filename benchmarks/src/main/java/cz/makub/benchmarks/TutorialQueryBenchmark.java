@@ -0,0 +1,113 @@
+package cz.makub.benchmarks;
+
+import com.clarkparsia.owlapi.explanation.DefaultExplanationGenerator;
+import com.clarkparsia.owlapi.explanation.util.SilentExplanationProgressMonitor;
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import org.openjdk.jmh.annotations.*;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the queries done in {@link cz.makub.Tutorial#main(String[])}, one benchmark per query kind.
+ * <p>
+ * The ontology is generated by {@link TutorialOntologyFixture}, so no network access is needed.
+ * In the <code>warm</code> state the reasoner is created once and all inferences are precomputed before measuring,
+ * in the <code>cold</code> state a new reasoner is created before each invocation, so the measured time
+ * includes consistency checking, classification and realization triggered by the query.
+ * <p>
+ * Run with <code>java -jar target/benchmarks.jar TutorialQueryBenchmark -p individuals=10000</code>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"--add-opens", "java.base/java.lang=ALL-UNNAMED", "-Xmx8g"})
+public class TutorialQueryBenchmark {
+
+    @Param({"10000", "100000", "1000000"})
+    public int individuals;
+
+    @Param({"warm", "cold"})
+    public String reasonerState;
+
+    private final OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
+    private TutorialOntologyFixture fixture;
+    private OWLReasoner reasoner;
+    private OWLObjectPropertyExpression inverseOfIsEmployedAt;
+    private OWLAxiom employmentAxiom;
+    private OWLClassAssertionAxiom axiomToExplain;
+
+    @Setup(Level.Trial)
+    public void generateOntology() throws OWLOntologyCreationException {
+        fixture = new TutorialOntologyFixture(individuals, 42);
+        OWLDataFactory factory = fixture.factory;
+        inverseOfIsEmployedAt = factory.getOWLObjectInverseOf(fixture.isEmployedAtProperty);
+        employmentAxiom = factory.getOWLObjectPropertyAssertionAxiom(fixture.isEmployedAtProperty, fixture.martin, fixture.university);
+        axiomToExplain = factory.getOWLClassAssertionAxiom(fixture.childOfMarriedParentsClass, fixture.ivan);
+        if ("warm".equals(reasonerState)) {
+            reasoner = reasonerFactory.createReasoner(fixture.ontology, new SimpleConfiguration());
+            reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY, InferenceType.CLASS_ASSERTIONS);
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void createColdReasoner() {
+        if ("cold".equals(reasonerState)) {
+            reasoner = reasonerFactory.createReasoner(fixture.ontology, new SimpleConfiguration());
+        }
+    }
+
+    @TearDown(Level.Invocation)
+    public void disposeColdReasoner() {
+        if ("cold".equals(reasonerState)) {
+            reasoner.dispose();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void disposeReasoner() {
+        if ("warm".equals(reasonerState)) {
+            reasoner.dispose();
+        }
+    }
+
+    @Benchmark
+    public NodeSet<OWLNamedIndividual> getInstances() {
+        return reasoner.getInstances(fixture.personClass, false);
+    }
+
+    @Benchmark
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues() {
+        return reasoner.getObjectPropertyValues(fixture.martin, fixture.isEmployedAtProperty);
+    }
+
+    @Benchmark
+    public NodeSet<OWLNamedIndividual> getInverseObjectPropertyValues() {
+        return reasoner.getObjectPropertyValues(fixture.university, inverseOfIsEmployedAt);
+    }
+
+    @Benchmark
+    public NodeSet<OWLClass> getTypes() {
+        return reasoner.getTypes(fixture.martin, false);
+    }
+
+    @Benchmark
+    public boolean isEntailed() {
+        return reasoner.isEntailed(employmentAxiom);
+    }
+
+    @Benchmark
+    public Set<OWLAxiom> explanation() {
+        DefaultExplanationGenerator explanationGenerator = new DefaultExplanationGenerator(
+                fixture.manager, reasonerFactory, fixture.ontology, reasoner, new SilentExplanationProgressMonitor());
+        return explanationGenerator.getExplanation(axiomToExplain);
+    }
+}
@@ -1,6 +1,7 @@
 package cz.makub;
 
 import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import cz.makub.swrl.ForwardChainingEngine;
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
@@ -19,6 +20,7 @@ import java.util.Set;
 
 /**
  * Example how to create an ontology in Java code using OWL API.
+ * For generating large ontologies with the same vocabulary see {@link cz.makub.generator.SyntheticOntologyGenerator}.
  *
  * @author Martin Kuba makub@ics.muni.cz
  */
@@ -103,6 +105,12 @@ public class CreateOntologyInCodeExample {
         for (OWLNamedIndividual englishProgrammer : reasoner.getInstances(englishProgrammerClass, false).getFlattened()) {
             System.out.println("englishProgrammer : " + renderer.render(englishProgrammer));
         }
+        //the rule is plain Horn logic, it can be evaluated over the asserted facts without the tableau reasoner
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        for (OWLNamedIndividual englishProgrammer : engine.getInstances(englishProgrammerClass)) {
+            System.out.println("englishProgrammer by rules : " + renderer.render(englishProgrammer));
+        }
+        engine.dispose();
     }
 
     private static OWLNamedIndividual createIndividual(OWLOntology ontology, DefaultPrefixManager pm, OWLOntologyManager manager, String name) {
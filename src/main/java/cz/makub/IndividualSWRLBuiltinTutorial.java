@@ -3,11 +3,13 @@ package cz.makub;
 import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
 import com.clarkparsia.pellet.rules.builtins.BuiltInRegistry;
 import com.google.common.collect.Multimap;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.metrics.PhaseMetrics;
+import cz.makub.reasoner.ProfilingReasoner;
 import cz.makub.swrl.CustomSWRLBuiltin;
 import org.mindswap.pellet.ABox;
 import org.mindswap.pellet.Node;
 import org.mindswap.pellet.utils.ATermUtils;
-import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.io.OWLObjectRenderer;
@@ -19,6 +21,9 @@ import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import static cz.makub.SWRLBuiltInsTutorial.listAllDataPropertyValues;
 import static org.mindswap.pellet.utils.Namespaces.XSD;
@@ -63,17 +68,61 @@ public class IndividualSWRLBuiltinTutorial {
         }
     }
 
+    /**
+     * A built-in implementation producing several solutions.
+     */
+    private static class IRIsegments implements CustomSWRLBuiltin.CustomSWRLMultiFunction {
+
+        @Override
+        public boolean isApplicable(boolean[] boundPositions) {
+            //applicable only to 3 arguments, two bound and one unbound
+            return boundPositions.length == 3 && boundPositions[0] && boundPositions[1] && !boundPositions[2];
+        }
+
+        @Override
+        public Iterator<Node[]> apply(final ABox abox, final Node[] args) {
+            //accepts IRIsegments(individual,separator string,unbound variable)
+            if (!args[0].isIndividual() || !args[1].isLiteral()) return Collections.emptyIterator();
+            final String iri = args[0].getNameStr();
+            final String separator = ATermUtils.getLiteralValue(args[1].getTerm());
+            if (separator.isEmpty()) return Collections.emptyIterator();
+            //binds the third argument to each segment of the IRI, the segments are found only when asked for
+            return new Iterator<Node[]>() {
+                private final Node[] solution = new Node[]{args[0], args[1], null};
+                private int start = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return start <= iri.length();
+                }
+
+                @Override
+                public Node[] next() {
+                    if (!hasNext()) throw new NoSuchElementException();
+                    int idx = iri.indexOf(separator, start);
+                    int end = (idx == -1) ? iri.length() : idx;
+                    solution[2] = abox.addLiteral(ATermUtils.makeTypedLiteral(iri.substring(start, end), XSD + "string"));
+                    start = (idx == -1) ? iri.length() + 1 : idx + separator.length();
+                    return solution;
+                }
+            };
+        }
+    }
+
     //a simple example ontology
     private static final String DOC_URL = "http://acrab.ics.muni.cz/ontologies/swrl_tutorial_ind.owl";
 
     public static void main(String[] args) throws OWLOntologyCreationException {
         //register my built-in implementation
         BuiltInRegistry.instance.registerBuiltIn("urn:makub:builtIn#IRIparts", new CustomSWRLBuiltin(new IRIparts()));
+        //a built-in binding a variable to several values, usable in rules as makub:IRIsegments(?x, "/", ?segment)
+        BuiltInRegistry.instance.registerBuiltIn("urn:makub:builtIn#IRIsegments", new CustomSWRLBuiltin(new IRIsegments()));
         //initialize ontology and reasoner
-        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(IRI.create(DOC_URL));
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(DOC_URL));
         OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        OWLReasoner reasoner = new ProfilingReasoner(reasonerFactory.createReasoner(ontology, new SimpleConfiguration()));
         OWLDataFactory factory = manager.getOWLDataFactory();
         PrefixDocumentFormat pm = manager.getOntologyFormat(ontology).asPrefixOWLOntologyFormat();
         //print the SWRL rule
@@ -81,6 +130,8 @@ public class IndividualSWRLBuiltinTutorial {
         //use the rule with the built-in to infer property values
         OWLNamedIndividual martin = factory.getOWLNamedIndividual(":Martin", pm);
         listAllDataPropertyValues(martin, ontology, reasoner);
+        //time spent in each phase, the rules are applied by Pellet in the consistency check
+        System.out.print(PhaseMetrics.instance);
     }
 
     private static void listSWRLRules(OWLOntology ontology) {
@@ -2,12 +2,12 @@ package cz.makub;
 
 import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
 import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
-import org.semanticweb.owlapi.apibinding.OWLManager;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.reasoner.TimeBudgetedReasoner;
 import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.reasoner.NodeSet;
-import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
-import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.semanticweb.owlapi.reasoner.TimeOutException;
 import org.semanticweb.owlapi.util.Version;
 
 public class Pellet230Error {
@@ -15,18 +15,26 @@ public class Pellet230Error {
     private static final String BASE_URL = "http://acrab.ics.muni.cz/ontologies/pellet230err.owl";
 
     public static void main(String[] args) throws OWLOntologyCreationException {
-        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(IRI.create(BASE_URL));
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(BASE_URL));
         OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
 
-        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        //every call gets at most 10 seconds, a hanging call is interrupted and reported as a timeout
+        TimeBudgetedReasoner reasoner = TimeBudgetedReasoner.create(reasonerFactory, ontology, 10_000);
         Version v = reasoner.getReasonerVersion();
         System.out.println("reasoner "+reasoner.getReasonerName()+ " " + v.getMajor()+"."+v.getMinor()+"."+v.getPatch()+" build "+v.getBuild());
 
         OWLDataFactory factory = manager.getOWLDataFactory();
         OWLClass aClass = factory.getOWLClass(IRI.create(BASE_URL+"#A"));
         System.out.println("it will hang on the next line for Pellet 2.3 ...");
-        NodeSet<OWLNamedIndividual> nodeSet = reasoner.getInstances(aClass, false);
-        System.out.println("this is never printed");
+        try {
+            NodeSet<OWLNamedIndividual> nodeSet = reasoner.getInstances(aClass, false);
+            System.out.println("instances of A: " + nodeSet.getFlattened());
+        } catch (TimeOutException ex) {
+            System.out.println("timed out: " + ex.getMessage());
+        }
+        System.out.println(reasoner.getStatistics().values());
+        reasoner.dispose();
     }
 }
\ No newline at end of file
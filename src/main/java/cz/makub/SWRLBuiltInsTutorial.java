@@ -5,10 +5,13 @@ import com.clarkparsia.pellet.rules.builtins.BuiltInRegistry;
 import com.clarkparsia.pellet.rules.builtins.GeneralFunction;
 import com.clarkparsia.pellet.rules.builtins.GeneralFunctionBuiltIn;
 import com.google.common.collect.Multimap;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.metrics.PhaseMetrics;
+import cz.makub.reasoner.ProfilingReasoner;
+import cz.makub.swrl.TemporalBuiltIns;
 import org.mindswap.pellet.ABox;
 import org.mindswap.pellet.Literal;
 import org.mindswap.pellet.utils.ATermUtils;
-import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.io.OWLObjectRenderer;
@@ -20,6 +23,8 @@ import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
 import org.semanticweb.owlapi.search.EntitySearcher;
 
 import java.text.SimpleDateFormat;
+import java.time.Clock;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 
@@ -28,7 +33,8 @@ import static org.mindswap.pellet.utils.Namespaces.XSD;
 /**
  * Example of Pellet custom SWRL built-in.
  * <p>
- * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.SWRLBuiltInsTutorial</code>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.SWRLBuiltInsTutorial</code>,
+ * with <code>-Dexec.args="--temporal"</code> the library of date and time built-ins in {@link TemporalBuiltIns} is used instead.
  *
  * @author Martin Kuba makub@ics.muni.cz
  */
@@ -60,15 +66,22 @@ public class SWRLBuiltInsTutorial {
     }
 
     private static final String DOC_URL = "http://acrab.ics.muni.cz/ontologies/swrl_tutorial.owl";
+    private static final OWLObjectRenderer renderer = new DLSyntaxObjectRenderer();
 
     public static void main(String[] args) throws OWLOntologyCreationException {
-        //register my built-in
-        BuiltInRegistry.instance.registerBuiltIn("urn:makub:builtIn#thisYear", new GeneralFunctionBuiltIn(new ThisYear()));
+        if (Arrays.asList(args).contains("--temporal")) {
+            //alternatively, register a library of date and time built-ins, including a thisYear which compares typed values
+            new TemporalBuiltIns(new TemporalBuiltIns.CoarseClock(Clock.systemDefaultZone(), 1000)).registerAll();
+        } else {
+            //register my built-in
+            BuiltInRegistry.instance.registerBuiltIn("urn:makub:builtIn#thisYear", new GeneralFunctionBuiltIn(new ThisYear()));
+        }
         //initialize ontology and reasoner
-        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(IRI.create(DOC_URL));
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(DOC_URL));
         OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        OWLReasoner reasoner = new ProfilingReasoner(reasonerFactory.createReasoner(ontology, new SimpleConfiguration()));
         OWLDataFactory factory = manager.getOWLDataFactory();
         PrefixDocumentFormat pm = manager.getOntologyFormat(ontology).asPrefixOWLOntologyFormat();
         //use the rule with the built-in to infer data property values
@@ -77,10 +90,15 @@ public class SWRLBuiltInsTutorial {
 
         OWLNamedIndividual ivan = factory.getOWLNamedIndividual(":Ivan", pm);
         listAllDataPropertyValues(ivan, ontology, reasoner);
+        //time spent in each phase, the rules are applied by Pellet in the consistency check
+        System.out.print(PhaseMetrics.instance);
     }
 
+    /**
+     * Prints asserted and inferred data property values of one individual, to export all facts of a large ABox
+     * use {@link cz.makub.io.FactExporter}.
+     */
     static void listAllDataPropertyValues(OWLNamedIndividual individual, OWLOntology ontology, OWLReasoner reasoner) {
-        OWLObjectRenderer renderer = new DLSyntaxObjectRenderer();
         Multimap<OWLDataPropertyExpression, OWLLiteral> assertedValues = EntitySearcher.getDataPropertyValues(individual, ontology);
         for (OWLDataProperty dataProp : ontology.getDataPropertiesInSignature(Imports.INCLUDED)) {
             for (OWLLiteral literal : reasoner.getDataPropertyValues(individual, dataProp)) {
@@ -0,0 +1,52 @@
+package cz.makub;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.query.SparqlDLEngine;
+import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
+import org.semanticweb.owlapi.io.OWLObjectRenderer;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.Collections;
+
+/**
+ * Example how to ask set-oriented questions by SPARQL-DL queries instead of reasoner calls for each individual,
+ * using the ontology from {@link Tutorial}.
+ * <p>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.SparqlDLExample</code>
+ *
+ * @see SparqlDLEngine
+ */
+public class SparqlDLExample {
+
+    private static final String BASE_URL = "http://acrab.ics.muni.cz/ontologies/tutorial.owl";
+    private static OWLObjectRenderer renderer = new DLSyntaxObjectRenderer();
+
+    public static void main(String[] args) throws OWLOntologyCreationException {
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(BASE_URL));
+        PelletReasoner reasoner = PelletReasonerFactory.getInstance().createNonBufferingReasoner(ontology);
+        SparqlDLEngine sparqlDL = new SparqlDLEngine(reasoner);
+
+        //all persons with their employers and emails by one query
+        String prefix = "PREFIX : <" + BASE_URL + "#>\n";
+        for (SparqlDLEngine.Row row : sparqlDL.execute(prefix
+                + "SELECT ?person ?employer ?email WHERE { ?person a :Person . ?person :isEmployedAt ?employer . ?person :hasEmail ?email }")) {
+            System.out.println(renderer.render(row.get("person")) + " is employed at " + renderer.render(row.get("employer"))
+                    + " and has email " + row.getLiteral("email").getLiteral());
+        }
+
+        //the same query prepared once and executed with the person as a parameter
+        SparqlDLEngine.PreparedQuery emails = sparqlDL.prepare(prefix + "SELECT ?person ?email WHERE { ?person :hasEmail ?email }");
+        OWLNamedIndividual martin = manager.getOWLDataFactory().getOWLNamedIndividual(IRI.create(BASE_URL + "#Martin"));
+        for (SparqlDLEngine.Row row : emails.execute(Collections.singletonMap("person", martin))) {
+            System.out.println("email of Martin: " + row.getLiteral("email").getLiteral());
+        }
+        System.out.println(sparqlDL.getStatistics());
+
+        sparqlDL.dispose();
+        reasoner.dispose();
+    }
+}
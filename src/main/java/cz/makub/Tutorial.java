@@ -1,10 +1,13 @@
 package cz.makub;
 
-import com.clarkparsia.owlapi.explanation.DefaultExplanationGenerator;
-import com.clarkparsia.owlapi.explanation.util.SilentExplanationProgressMonitor;
 import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
 import com.google.common.collect.Multimap;
-import org.semanticweb.owlapi.apibinding.OWLManager;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.metrics.PhaseMetrics;
+import cz.makub.reasoner.ExplanationService;
+import cz.makub.reasoner.PersistedReasoner;
+import cz.makub.reasoner.ProfilingReasoner;
+import cz.makub.reasoner.ReasonerWarmUp;
 import org.semanticweb.owlapi.dlsyntax.renderer.DLSyntaxObjectRenderer;
 import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
 import org.semanticweb.owlapi.io.OWLObjectRenderer;
@@ -12,15 +15,12 @@ import org.semanticweb.owlapi.model.*;
 import org.semanticweb.owlapi.model.parameters.Imports;
 import org.semanticweb.owlapi.reasoner.OWLReasoner;
 import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
-import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
 import org.semanticweb.owlapi.search.EntitySearcher;
 import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
-import uk.ac.manchester.cs.owl.explanation.ordering.ExplanationOrderer;
-import uk.ac.manchester.cs.owl.explanation.ordering.ExplanationOrdererImpl;
-import uk.ac.manchester.cs.owl.explanation.ordering.ExplanationTree;
 import uk.ac.manchester.cs.owl.explanation.ordering.Tree;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Example how to use an OWL ontology with a reasoner.
@@ -34,13 +34,18 @@ public class Tutorial {
     private static final String BASE_URL = "http://acrab.ics.muni.cz/ontologies/tutorial.owl";
     private static OWLObjectRenderer renderer = new DLSyntaxObjectRenderer();
 
-    public static void main(String[] args) throws OWLOntologyCreationException {
+    public static void main(String[] args) throws OWLOntologyCreationException, InterruptedException {
 
         //prepare ontology and reasoner
-        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-        OWLOntology ontology = manager.loadOntologyFromOntologyDocument(IRI.create(BASE_URL));
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(BASE_URL));
         OWLReasonerFactory reasonerFactory = PelletReasonerFactory.getInstance();
-        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        //answers from the reasoner state saved by the previous run, if the ontology did not change since then
+        //measure time spent in reasoning and queries, see PhaseMetrics
+        OWLReasoner reasoner = new ProfilingReasoner(PersistedReasoner.open(ontology, reasonerFactory, catalog.getReasonerStateFile(IRI.create(BASE_URL)).toPath()));
+        //classify and realize in background, so that the first query does not pay for it
+        ReasonerWarmUp warmUp = new ReasonerWarmUp(reasoner).start();
         OWLDataFactory factory = manager.getOWLDataFactory();
         PrefixDocumentFormat pm = manager.getOntologyFormat(ontology).asPrefixOWLOntologyFormat();
         pm.setDefaultPrefix(BASE_URL + "#");
@@ -48,6 +53,10 @@ public class Tutorial {
         //get class and its individuals
         OWLClass personClass = factory.getOWLClass(":Person", pm);
 
+        //the reasoner is not thread-safe, it must not be queried before the warm-up ends
+        if (!warmUp.awaitReady(1, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("reasoner not warmed up in 1 minute: " + warmUp.getProgress());
+        }
         for (OWLNamedIndividual person : reasoner.getInstances(personClass, false).getFlattened()) {
             System.out.println("person : " + renderer.render(person));
         }
@@ -88,7 +97,7 @@ public class Tutorial {
             System.out.println((asserted ? "asserted" : "inferred") + " class for Martin: " + renderer.render(c));
         }
 
-        //list all object property values for the individual
+        //list all object property values for the individual, for many individuals see cz.makub.reasoner.MaterializedABox
         Multimap<OWLObjectPropertyExpression, OWLIndividual> assertedValues = EntitySearcher.getObjectPropertyValues(martin, ontology);
         for (OWLObjectProperty objProp : ontology.getObjectPropertiesInSignature(Imports.INCLUDED)) {
             for (OWLNamedIndividual ind : reasoner.getObjectPropertyValues(martin, objProp).getFlattened()) {
@@ -107,6 +116,8 @@ public class Tutorial {
         boolean result = reasoner.isEntailed(factory.getOWLObjectPropertyAssertionAxiom(isEmployedAtProperty, martin, university));
         System.out.println("Is Martin employed at MU ? : " + result);
 
+        //all persons with their employers and emails by one SPARQL-DL query are in SparqlDLExample
+
 
         //check whether the SWRL rule is used
         OWLNamedIndividual ivan = factory.getOWLNamedIndividual(":Ivan", pm);
@@ -115,16 +126,21 @@ public class Tutorial {
         System.out.println("Is Ivan child of married parents ? : " + reasoner.isEntailed(axiomToExplain));
 
 
-        //explain why Ivan is child of married parents
-        DefaultExplanationGenerator explanationGenerator =
-                new DefaultExplanationGenerator(
-                        manager, reasonerFactory, ontology, reasoner, new SilentExplanationProgressMonitor());
-        Set<OWLAxiom> explanation = explanationGenerator.getExplanation(axiomToExplain);
-        ExplanationOrderer deo = new ExplanationOrdererImpl(manager);
-        ExplanationTree explanationTree = deo.getOrderedExplanation(axiomToExplain, explanation);
+        //explain why Ivan is child of married parents, the explanation is computed in a module of the ontology
+        try (ExplanationService explanationService = new ExplanationService(ontology, reasonerFactory, 1)) {
+            ExplanationService.Explanation explanation = explanationService.explain(axiomToExplain, 30_000);
+            System.out.println();
+            System.out.println("-- explanation why Ivan is in class ChildOfMarriedParents --");
+            if (explanation.isEmpty()) {
+                System.out.println("no explanation found: " + explanation);
+            } else {
+                printIndented(explanation.getTree(0), "");
+            }
+        }
+
+        //time spent in each phase of loading, reasoning, queries and explanations
         System.out.println();
-        System.out.println("-- explanation why Ivan is in class ChildOfMarriedParents --");
-        printIndented(explanationTree, "");
+        System.out.print(PhaseMetrics.instance);
     }
 
     private static void printIndented(Tree<OWLAxiom> node, String indent) {
@@ -140,12 +156,17 @@ public class Tutorial {
     /**
      * Helper class for extracting labels, comments and other anotations in preffered languages.
      * Selects the first literal annotation matching the given languages in the given order.
+     * <p>
+     * An indexed selector created by {@link #indexed(OWLOntology, OWLDataFactory, String...)} resolves all annotations
+     * of the ontology in one pass into a table entity &rarr; annotation property &rarr; selected string,
+     * and keeps the table current by listening to ontology changes. Lookups are then just two hash map reads.
      */
     @SuppressWarnings("WeakerAccess")
-    public static class LocalizedAnnotationSelector {
+    public static class LocalizedAnnotationSelector implements OWLOntologyChangeListener {
         private final List<String> langs;
         private final OWLOntology ontology;
         private final OWLDataFactory factory;
+        private final Map<IRI, Map<IRI, Selected>> index;
 
         /**
          * Constructor.
@@ -155,9 +176,44 @@ public class Tutorial {
          * @param langs    list of prefered languages; if none is provided the Locale.getDefault() is used
          */
         public LocalizedAnnotationSelector(OWLOntology ontology, OWLDataFactory factory, String... langs) {
+            this(ontology, factory, false, langs);
+        }
+
+        private LocalizedAnnotationSelector(OWLOntology ontology, OWLDataFactory factory, boolean indexed, String... langs) {
             this.langs = (langs == null) ? Collections.singletonList(Locale.getDefault().toString()) : Arrays.asList(langs);
             this.ontology = ontology;
             this.factory = factory;
+            if (indexed) {
+                this.index = new HashMap<>();
+                for (OWLAnnotationAssertionAxiom axiom : ontology.getAxioms(AxiomType.ANNOTATION_ASSERTION)) {
+                    if (axiom.getSubject() instanceof IRI && axiom.getValue() instanceof OWLLiteral) {
+                        select((IRI) axiom.getSubject(), axiom.getProperty().getIRI(), (OWLLiteral) axiom.getValue());
+                    }
+                }
+                ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+            } else {
+                this.index = null;
+            }
+        }
+
+        /**
+         * Creates a selector with a precomputed index of annotations which is updated on ontology changes.
+         * Call {@link #dispose()} when the selector is no longer needed.
+         *
+         * @param ontology ontology
+         * @param factory  data factory
+         * @param langs    list of prefered languages; if none is provided the Locale.getDefault() is used
+         * @return indexed selector
+         */
+        public static LocalizedAnnotationSelector indexed(OWLOntology ontology, OWLDataFactory factory, String... langs) {
+            return new LocalizedAnnotationSelector(ontology, factory, true, langs);
+        }
+
+        /**
+         * Stops listening to ontology changes. Does nothing for a selector which is not indexed.
+         */
+        public void dispose() {
+            if (index != null) ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
         }
 
         /**
@@ -176,6 +232,12 @@ public class Tutorial {
         }
 
         public String getAnnotationString(OWLNamedIndividual ind, IRI annotationIRI) {
+            if (index != null) {
+                Map<IRI, Selected> byProperty = index.get(ind.getIRI());
+                if (byProperty == null) return null;
+                Selected selected = byProperty.get(annotationIRI);
+                return (selected == null) ? null : selected.value;
+            }
             return getLocalizedString(EntitySearcher.getAnnotations(ind, ontology, factory.getOWLAnnotationProperty(annotationIRI)));
         }
 
@@ -196,5 +258,72 @@ public class Tutorial {
             }
             return null;
         }
+
+        /**
+         * Rank of a literal, the index of its language in the preferred languages,
+         * langs.size() for literals without language, or -1 for literals which should never be selected.
+         */
+        private int rank(OWLLiteral literal) {
+            for (int i = 0, n = langs.size(); i < n; i++) {
+                if (literal.hasLang(langs.get(i))) return i;
+            }
+            return literal.hasLang() ? -1 : langs.size();
+        }
+
+        /**
+         * Puts the literal into the index if it is better than the one already selected for the subject and property.
+         */
+        private void select(IRI subject, IRI property, OWLLiteral literal) {
+            int rank = rank(literal);
+            if (rank < 0) return;
+            Map<IRI, Selected> byProperty = index.computeIfAbsent(subject, k -> new HashMap<>(4));
+            Selected selected = byProperty.get(property);
+            if (selected == null || rank < selected.rank) {
+                byProperty.put(property, new Selected(literal.getLiteral(), rank));
+            }
+        }
+
+        /**
+         * Keeps the index current, annotations of changed subjects and properties are selected again.
+         */
+        @Override
+        public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+            Map<IRI, Set<IRI>> dirty = new HashMap<>();
+            for (OWLOntologyChange change : changes) {
+                if (!change.isAxiomChange() || !change.getOntology().equals(ontology)) continue;
+                OWLAxiom axiom = change.getAxiom();
+                if (axiom instanceof OWLAnnotationAssertionAxiom) {
+                    OWLAnnotationAssertionAxiom annotationAxiom = (OWLAnnotationAssertionAxiom) axiom;
+                    if (annotationAxiom.getSubject() instanceof IRI) {
+                        dirty.computeIfAbsent((IRI) annotationAxiom.getSubject(), k -> new HashSet<>()).add(annotationAxiom.getProperty().getIRI());
+                    }
+                }
+            }
+            for (Map.Entry<IRI, Set<IRI>> entry : dirty.entrySet()) {
+                IRI subject = entry.getKey();
+                Map<IRI, Selected> byProperty = index.get(subject);
+                if (byProperty != null) {
+                    byProperty.keySet().removeAll(entry.getValue());
+                }
+                for (OWLAnnotationAssertionAxiom axiom : ontology.getAnnotationAssertionAxioms(subject)) {
+                    IRI property = axiom.getProperty().getIRI();
+                    if (entry.getValue().contains(property) && axiom.getValue() instanceof OWLLiteral) {
+                        select(subject, property, (OWLLiteral) axiom.getValue());
+                    }
+                }
+                byProperty = index.get(subject);
+                if (byProperty != null && byProperty.isEmpty()) index.remove(subject);
+            }
+        }
+
+        private static class Selected {
+            private final String value;
+            private final int rank;
+
+            private Selected(String value, int rank) {
+                this.value = value;
+                this.rank = rank;
+            }
+        }
     }
-}
\ No newline at end of file
+}
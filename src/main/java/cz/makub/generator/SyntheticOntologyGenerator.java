@@ -0,0 +1,220 @@
+package cz.makub.generator;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.util.DefaultPrefixManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generator of large synthetic ontologies with the vocabulary of {@link cz.makub.CreateOntologyInCodeExample},
+ * i.e. classes Person, Man and EnglishProgrammer, properties speaksLanguage and hasKnowledgeOf, and SWRL rules
+ * like <code>Person(?x),speaksLanguage(?x,English),hasKnowledgeOf(?x,Computer-Programming)->EnglishProgrammer(?x)</code>.
+ * <p>
+ * Axioms are not added one by one, they are collected and applied to the ontology in batches,
+ * so the ontology manager fires one change event per batch.
+ * The same seed and parameters always produce the same ontology.
+ * <p>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.generator.SyntheticOntologyGenerator -Dexec.args="1000000 3 42 generated.owl"</code>
+ *
+ * @see cz.makub.CreateOntologyInCodeExample
+ */
+@SuppressWarnings("WeakerAccess")
+public class SyntheticOntologyGenerator {
+
+    public static final String DOCUMENT_IRI = "http://acrab.ics.muni.cz/ontologies/example.owl";
+    public static final int DEFAULT_BATCH_SIZE = 100_000;
+
+    private final int individuals;
+    private final int fanOut;
+    private final long seed;
+    private int languages = 10;
+    private int skills = 10;
+    private int rules = 10;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+
+    /**
+     * Constructor.
+     *
+     * @param individuals number of persons in the generated ABox
+     * @param fanOut      number of speaksLanguage and hasKnowledgeOf values of each person
+     * @param seed        seed for the random generator
+     */
+    public SyntheticOntologyGenerator(int individuals, int fanOut, long seed) {
+        if (individuals < 0) throw new IllegalArgumentException("individuals must not be negative: " + individuals);
+        if (fanOut < 0) throw new IllegalArgumentException("fanOut must not be negative: " + fanOut);
+        this.individuals = individuals;
+        this.fanOut = fanOut;
+        this.seed = seed;
+    }
+
+    /**
+     * Sets the number of language individuals, English is always the first one.
+     */
+    public SyntheticOntologyGenerator setLanguages(int languages) {
+        if (languages < 1) throw new IllegalArgumentException("at least one language is needed");
+        this.languages = languages;
+        return this;
+    }
+
+    /**
+     * Sets the number of skill individuals, Computer-Programming is always the first one.
+     */
+    public SyntheticOntologyGenerator setSkills(int skills) {
+        if (skills < 1) throw new IllegalArgumentException("at least one skill is needed");
+        this.skills = skills;
+        return this;
+    }
+
+    /**
+     * Sets the number of generated SWRL rules, the first one is the EnglishProgrammer rule,
+     * the others are the same rules for the other language and skill pairs.
+     */
+    public SyntheticOntologyGenerator setRules(int rules) {
+        if (rules < 0) throw new IllegalArgumentException("rules must not be negative: " + rules);
+        this.rules = rules;
+        return this;
+    }
+
+    /**
+     * Sets the number of axioms applied to the ontology in one change.
+     */
+    public SyntheticOntologyGenerator setBatchSize(int batchSize) {
+        if (batchSize < 1) throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        this.batchSize = batchSize;
+        return this;
+    }
+
+    /**
+     * Creates a new ontology in the given manager and fills it with generated axioms.
+     *
+     * @param manager ontology manager
+     * @return the generated ontology
+     */
+    public OWLOntology generate(OWLOntologyManager manager) throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology(IRI.create(DOCUMENT_IRI));
+        generate(ontology);
+        return ontology;
+    }
+
+    /**
+     * Adds generated axioms into an existing ontology.
+     *
+     * @param ontology ontology to be filled
+     */
+    public void generate(OWLOntology ontology) {
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        DefaultPrefixManager pm = new DefaultPrefixManager();
+        pm.setDefaultPrefix(DOCUMENT_IRI + "#");
+        pm.setPrefix("var:", "urn:swrl#");
+        Batch batch = new Batch(ontology, batchSize);
+
+        //TBox
+        OWLClass personClass = factory.getOWLClass(":Person", pm);
+        OWLClass manClass = factory.getOWLClass(":Man", pm);
+        OWLClass englishProgrammerClass = factory.getOWLClass(":EnglishProgrammer", pm);
+        OWLObjectProperty speaksLanguage = factory.getOWLObjectProperty(":speaksLanguage", pm);
+        OWLObjectProperty hasKnowledgeOf = factory.getOWLObjectProperty(":hasKnowledgeOf", pm);
+        batch.add(factory.getOWLDeclarationAxiom(personClass));
+        batch.add(factory.getOWLDeclarationAxiom(manClass));
+        batch.add(factory.getOWLDeclarationAxiom(englishProgrammerClass));
+        batch.add(factory.getOWLDeclarationAxiom(speaksLanguage));
+        batch.add(factory.getOWLDeclarationAxiom(hasKnowledgeOf));
+        batch.add(factory.getOWLSubClassOfAxiom(manClass, personClass));
+
+        List<OWLNamedIndividual> languageIndividuals = new ArrayList<>(languages);
+        for (int i = 0; i < languages; i++) {
+            languageIndividuals.add(factory.getOWLNamedIndividual(i == 0 ? ":English" : ":Language" + i, pm));
+        }
+        List<OWLNamedIndividual> skillIndividuals = new ArrayList<>(skills);
+        for (int i = 0; i < skills; i++) {
+            skillIndividuals.add(factory.getOWLNamedIndividual(i == 0 ? ":Computer-Programming" : ":Skill" + i, pm));
+        }
+        for (OWLNamedIndividual ind : languageIndividuals) batch.add(factory.getOWLDeclarationAxiom(ind));
+        for (OWLNamedIndividual ind : skillIndividuals) batch.add(factory.getOWLDeclarationAxiom(ind));
+
+        //EnglishProgrammers is equivalent to intersection of classes
+        OWLObjectHasValue c1 = factory.getOWLObjectHasValue(speaksLanguage, languageIndividuals.get(0));
+        OWLObjectHasValue c2 = factory.getOWLObjectHasValue(hasKnowledgeOf, skillIndividuals.get(0));
+        batch.add(factory.getOWLEquivalentClassesAxiom(englishProgrammerClass, factory.getOWLObjectIntersectionOf(personClass, c1, c2)));
+
+        //SWRL rules - Person(?x),speaksLanguage(?x,L),hasKnowledgeOf(?x,S)->C(?x)
+        SWRLVariable varX = factory.getSWRLVariable(pm.getIRI("var:x"));
+        for (int i = 0; i < rules; i++) {
+            OWLNamedIndividual language = languageIndividuals.get(i % languages);
+            OWLNamedIndividual skill = skillIndividuals.get((i / languages) % skills);
+            OWLClass head = (i == 0) ? englishProgrammerClass : factory.getOWLClass(":Programmer" + i, pm);
+            if (i > 0) batch.add(factory.getOWLDeclarationAxiom(head));
+            Set<SWRLAtom> body = new LinkedHashSet<>();
+            body.add(factory.getSWRLClassAtom(personClass, varX));
+            body.add(factory.getSWRLObjectPropertyAtom(speaksLanguage, varX, factory.getSWRLIndividualArgument(language)));
+            body.add(factory.getSWRLObjectPropertyAtom(hasKnowledgeOf, varX, factory.getSWRLIndividualArgument(skill)));
+            batch.add(factory.getSWRLRule(body, Collections.singleton(factory.getSWRLClassAtom(head, varX))));
+        }
+
+        //ABox, IRIs are created directly, going through the prefix manager for each individual is slow
+        Random random = new Random(seed);
+        String personPrefix = DOCUMENT_IRI + "#person";
+        for (int i = 0; i < individuals; i++) {
+            OWLNamedIndividual person = factory.getOWLNamedIndividual(IRI.create(personPrefix + i));
+            batch.add(factory.getOWLDeclarationAxiom(person));
+            batch.add(factory.getOWLClassAssertionAxiom(random.nextBoolean() ? manClass : personClass, person));
+            for (int j = 0; j < fanOut; j++) {
+                batch.add(factory.getOWLObjectPropertyAssertionAxiom(speaksLanguage, person, languageIndividuals.get(random.nextInt(languages))));
+                batch.add(factory.getOWLObjectPropertyAssertionAxiom(hasKnowledgeOf, person, skillIndividuals.get(random.nextInt(skills))));
+            }
+        }
+        batch.flush();
+    }
+
+    /**
+     * Collects axioms and applies them to the ontology in one change when the batch is full.
+     */
+    private static class Batch {
+        private final OWLOntology ontology;
+        private final int size;
+        private List<AddAxiom> changes;
+
+        private Batch(OWLOntology ontology, int size) {
+            this.ontology = ontology;
+            this.size = size;
+            this.changes = new ArrayList<>(size);
+        }
+
+        void add(OWLAxiom axiom) {
+            changes.add(new AddAxiom(ontology, axiom));
+            if (changes.size() >= size) flush();
+        }
+
+        void flush() {
+            if (changes.isEmpty()) return;
+            ontology.getOWLOntologyManager().applyChanges(changes);
+            changes = new ArrayList<>(size);
+        }
+    }
+
+    public static void main(String[] args) throws OWLOntologyCreationException, OWLOntologyStorageException {
+        int individuals = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int fanOut = args.length > 1 ? Integer.parseInt(args[1]) : 3;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 42L;
+
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        long start = System.currentTimeMillis();
+        OWLOntology ontology = new SyntheticOntologyGenerator(individuals, fanOut, seed).generate(manager);
+        System.out.println("generated " + ontology.getAxiomCount() + " axioms in " + (System.currentTimeMillis() - start) + " ms");
+
+        if (args.length > 3) {
+            FunctionalSyntaxDocumentFormat ontologyFormat = new FunctionalSyntaxDocumentFormat();
+            ontologyFormat.setDefaultPrefix(DOCUMENT_IRI + "#");
+            manager.saveOntology(ontology, ontologyFormat, IRI.create(new File(args[3]).toURI()));
+        }
+    }
+}
@@ -0,0 +1,331 @@
+package cz.makub.io;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Parser of ABox axioms written one per line, either as N-Triples or in OWL functional syntax.
+ * <p>
+ * Supported N-Triples are <code>&lt;s&gt; rdf:type &lt;C&gt; .</code> (class assertion, or declaration for
+ * owl:NamedIndividual), <code>&lt;s&gt; owl:sameAs &lt;o&gt; .</code>, <code>&lt;s&gt; &lt;p&gt; &lt;o&gt; .</code>
+ * (object property assertion), <code>&lt;s&gt; &lt;p&gt; "literal" .</code> (data property assertion,
+ * or annotation assertion for rdfs:label and rdfs:comment). Other triples with RDF, RDFS or OWL vocabulary
+ * describe the TBox and are ignored. Blank nodes are not supported.
+ * <p>
+ * Supported functional syntax lines are <code>Prefix(...)</code>, <code>Declaration(...)</code>,
+ * <code>ClassAssertion(C i)</code> with a named class, <code>ObjectPropertyAssertion(p s o)</code> and
+ * <code>DataPropertyAssertion(p s literal)</code>. Lines with <code>Ontology(</code> and <code>)</code> are ignored,
+ * so a functional syntax document with one axiom per line can be streamed.
+ * <p>
+ * An instance keeps the prefixes declared so far, so it must not be shared by threads.
+ */
+@SuppressWarnings("WeakerAccess")
+public class AssertionLineParser {
+
+    private static final String RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI().toString();
+    private static final String OWL_SAME_AS = OWLRDFVocabulary.OWL_SAME_AS.getIRI().toString();
+    private static final String OWL_NAMED_INDIVIDUAL = OWLRDFVocabulary.OWL_NAMED_INDIVIDUAL.getIRI().toString();
+    private static final String RDFS_LABEL = OWLRDFVocabulary.RDFS_LABEL.getIRI().toString();
+    private static final String RDFS_COMMENT = OWLRDFVocabulary.RDFS_COMMENT.getIRI().toString();
+    private static final String XSD_STRING = OWL2Datatype.XSD_STRING.getIRI().toString();
+    private static final String[] SCHEMA_NAMESPACES = {"http://www.w3.org/2002/07/owl#",
+            "http://www.w3.org/1999/02/22-rdf-syntax-ns#", "http://www.w3.org/2000/01/rdf-schema#"};
+
+    private final IRIDictionary dictionary;
+    private final OWLDataFactory factory;
+    private final Map<String, String> prefixes = new HashMap<>();
+
+    public AssertionLineParser(IRIDictionary dictionary) {
+        this.dictionary = dictionary;
+        this.factory = dictionary.getFactory();
+        prefixes.put("owl:", "http://www.w3.org/2002/07/owl#");
+        prefixes.put("rdf:", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+        prefixes.put("rdfs:", "http://www.w3.org/2000/01/rdf-schema#");
+        prefixes.put("xsd:", "http://www.w3.org/2001/XMLSchema#");
+    }
+
+    /**
+     * Parses one line.
+     *
+     * @param line line of input
+     * @return parsed axiom, or null for empty lines, comments, prefixes and other lines without an ABox axiom
+     * @throws IllegalArgumentException if the line is malformed or not supported
+     */
+    public OWLAxiom parse(String line) {
+        Cursor c = new Cursor(line);
+        c.skipSpaces();
+        if (c.atEnd() || c.peek() == '#') return null;
+        char first = c.peek();
+        if (first == '<' || first == '_') return parseTriple(c);
+        if (first == ')') return null;
+        return parseFunctional(c);
+    }
+
+    private OWLAxiom parseTriple(Cursor c) {
+        String subject = c.iriRef();
+        c.skipSpaces();
+        String predicate = c.iriRef();
+        c.skipSpaces();
+        OWLAxiom axiom;
+        if (isSchema(predicate) && !predicate.equals(RDF_TYPE) && !predicate.equals(OWL_SAME_AS)
+                && !predicate.equals(RDFS_LABEL) && !predicate.equals(RDFS_COMMENT)) {
+            //TBox triple, e.g. rdfs:subClassOf
+            return null;
+        }
+        if (c.peek() == '"') {
+            OWLLiteral literal = tripleLiteral(c);
+            if (predicate.equals(RDFS_LABEL) || predicate.equals(RDFS_COMMENT)) {
+                axiom = factory.getOWLAnnotationAssertionAxiom(IRI.create(subject), factory.getOWLAnnotation(
+                        dictionary.get(EntityType.ANNOTATION_PROPERTY, predicate), literal));
+            } else {
+                axiom = factory.getOWLDataPropertyAssertionAxiom(dictionary.get(EntityType.DATA_PROPERTY, predicate),
+                        dictionary.get(EntityType.NAMED_INDIVIDUAL, subject), literal);
+            }
+        } else {
+            String object = c.iriRef();
+            OWLNamedIndividual s = dictionary.get(EntityType.NAMED_INDIVIDUAL, subject);
+            if (predicate.equals(RDF_TYPE)) {
+                if (object.equals(OWL_NAMED_INDIVIDUAL)) {
+                    axiom = factory.getOWLDeclarationAxiom(s);
+                } else if (isSchema(object)) {
+                    //declaration of a class or property
+                    return null;
+                } else {
+                    axiom = factory.getOWLClassAssertionAxiom(dictionary.get(EntityType.CLASS, object), s);
+                }
+            } else if (predicate.equals(OWL_SAME_AS)) {
+                axiom = factory.getOWLSameIndividualAxiom(s, dictionary.get(EntityType.NAMED_INDIVIDUAL, object));
+            } else {
+                axiom = factory.getOWLObjectPropertyAssertionAxiom(dictionary.get(EntityType.OBJECT_PROPERTY, predicate),
+                        s, dictionary.get(EntityType.NAMED_INDIVIDUAL, object));
+            }
+        }
+        c.skipSpaces();
+        c.expect('.');
+        return axiom;
+    }
+
+    private static boolean isSchema(String iri) {
+        for (String ns : SCHEMA_NAMESPACES) {
+            if (iri.startsWith(ns)) return true;
+        }
+        return false;
+    }
+
+    private OWLLiteral tripleLiteral(Cursor c) {
+        String lexical = c.quoted();
+        if (c.startsWith("^^")) {
+            c.pos += 2;
+            return factory.getOWLLiteral(lexical, dictionary.get(EntityType.DATATYPE, c.iriRef()));
+        } else if (c.startsWith("@")) {
+            c.pos++;
+            return factory.getOWLLiteral(lexical, c.word());
+        }
+        return factory.getOWLLiteral(lexical, dictionary.get(EntityType.DATATYPE, XSD_STRING));
+    }
+
+    private OWLAxiom parseFunctional(Cursor c) {
+        String keyword = c.word();
+        c.skipSpaces();
+        c.expect('(');
+        c.skipSpaces();
+        OWLAxiom axiom;
+        switch (keyword) {
+            case "Prefix":
+                String prefix = c.until('=');
+                c.expect('=');
+                prefixes.put(prefix.trim(), c.iriRef());
+                axiom = null;
+                break;
+            case "Ontology":
+            case "Import":
+                //the rest of the line is ignored
+                return null;
+            case "Declaration":
+                String entityKind = c.word();
+                c.skipSpaces();
+                c.expect('(');
+                String iri = name(c);
+                c.skipSpaces();
+                c.expect(')');
+                axiom = factory.getOWLDeclarationAxiom(dictionary.get(entityType(entityKind), iri));
+                break;
+            case "ClassAssertion":
+                OWLClass owlClass = dictionary.get(EntityType.CLASS, name(c));
+                axiom = factory.getOWLClassAssertionAxiom(owlClass, individual(c));
+                break;
+            case "ObjectPropertyAssertion":
+                OWLObjectProperty objectProperty = dictionary.get(EntityType.OBJECT_PROPERTY, name(c));
+                OWLNamedIndividual subject = individual(c);
+                axiom = factory.getOWLObjectPropertyAssertionAxiom(objectProperty, subject, individual(c));
+                break;
+            case "DataPropertyAssertion":
+                OWLDataProperty dataProperty = dictionary.get(EntityType.DATA_PROPERTY, name(c));
+                OWLNamedIndividual dataSubject = individual(c);
+                c.skipSpaces();
+                axiom = factory.getOWLDataPropertyAssertionAxiom(dataProperty, dataSubject, functionalLiteral(c));
+                break;
+            default:
+                throw new IllegalArgumentException("unsupported axiom " + keyword);
+        }
+        c.skipSpaces();
+        c.expect(')');
+        return axiom;
+    }
+
+    private static EntityType<?> entityType(String kind) {
+        for (EntityType<?> type : EntityType.values()) {
+            if (type.getName().equals(kind)) return type;
+        }
+        throw new IllegalArgumentException("unknown entity type " + kind);
+    }
+
+    private OWLNamedIndividual individual(Cursor c) {
+        c.skipSpaces();
+        return dictionary.get(EntityType.NAMED_INDIVIDUAL, name(c));
+    }
+
+    /**
+     * Reads a full IRI in angle brackets or a prefixed name.
+     */
+    private String name(Cursor c) {
+        c.skipSpaces();
+        if (c.peek() == '<') return c.iriRef();
+        String prefixedName = c.word();
+        int colon = prefixedName.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("not a prefixed name: " + prefixedName);
+        String namespace = prefixes.get(prefixedName.substring(0, colon + 1));
+        if (namespace == null) throw new IllegalArgumentException("unknown prefix in " + prefixedName);
+        return namespace + prefixedName.substring(colon + 1);
+    }
+
+    private OWLLiteral functionalLiteral(Cursor c) {
+        String lexical = c.quoted();
+        if (c.startsWith("^^")) {
+            c.pos += 2;
+            return factory.getOWLLiteral(lexical, dictionary.get(EntityType.DATATYPE, name(c)));
+        } else if (c.startsWith("@")) {
+            c.pos++;
+            return factory.getOWLLiteral(lexical, c.word());
+        }
+        return factory.getOWLLiteral(lexical, dictionary.get(EntityType.DATATYPE, XSD_STRING));
+    }
+
+    /**
+     * Position in a line.
+     */
+    private static final class Cursor {
+        private final String s;
+        private int pos;
+
+        private Cursor(String s) {
+            this.s = s;
+        }
+
+        boolean atEnd() {
+            return pos >= s.length();
+        }
+
+        char peek() {
+            if (atEnd()) throw new IllegalArgumentException("unexpected end of line");
+            return s.charAt(pos);
+        }
+
+        boolean startsWith(String prefix) {
+            return s.startsWith(prefix, pos);
+        }
+
+        void skipSpaces() {
+            while (pos < s.length() && Character.isWhitespace(s.charAt(pos))) pos++;
+        }
+
+        void expect(char ch) {
+            if (peek() != ch) throw new IllegalArgumentException("expected '" + ch + "' at position " + pos);
+            pos++;
+        }
+
+        String iriRef() {
+            if (startsWith("_:")) throw new IllegalArgumentException("blank nodes are not supported");
+            expect('<');
+            int end = s.indexOf('>', pos);
+            if (end < 0) throw new IllegalArgumentException("unterminated IRI");
+            String iri = s.substring(pos, end);
+            pos = end + 1;
+            return iri;
+        }
+
+        String word() {
+            int start = pos;
+            while (pos < s.length()) {
+                char ch = s.charAt(pos);
+                if (Character.isWhitespace(ch) || ch == '(' || ch == ')' || ch == '"') break;
+                pos++;
+            }
+            if (start == pos) throw new IllegalArgumentException("expected a name at position " + pos);
+            return s.substring(start, pos);
+        }
+
+        String until(char ch) {
+            int end = s.indexOf(ch, pos);
+            if (end < 0) throw new IllegalArgumentException("expected '" + ch + "'");
+            String r = s.substring(pos, end);
+            pos = end;
+            return r;
+        }
+
+        /**
+         * Reads a string in double quotes with N-Triples escapes.
+         */
+        String quoted() {
+            expect('"');
+            StringBuilder sb = null;
+            int start = pos;
+            while (true) {
+                char ch = peek();
+                if (ch == '"') {
+                    String r = (sb == null) ? s.substring(start, pos) : sb.toString();
+                    pos++;
+                    return r;
+                }
+                if (ch == '\\') {
+                    if (sb == null) sb = new StringBuilder(s.substring(start, pos));
+                    pos++;
+                    char e = peek();
+                    pos++;
+                    switch (e) {
+                        case 't': sb.append('\t'); break;
+                        case 'n': sb.append('\n'); break;
+                        case 'r': sb.append('\r'); break;
+                        case 'b': sb.append('\b'); break;
+                        case 'f': sb.append('\f'); break;
+                        case 'u': sb.append((char) hex(4)); break;
+                        case 'U': sb.appendCodePoint(hex(8)); break;
+                        default: sb.append(e);
+                    }
+                } else {
+                    if (sb != null) sb.append(ch);
+                    pos++;
+                }
+            }
+        }
+
+        /**
+         * Reads the hexadecimal digits of an escaped character, which follow the backslash and u or U.
+         */
+        int hex(int digits) {
+            if (pos + digits > s.length()) throw new IllegalArgumentException("truncated escape at position " + pos);
+            int value = 0;
+            for (int i = 0; i < digits; i++) {
+                int digit = Character.digit(s.charAt(pos++), 16);
+                if (digit < 0) throw new IllegalArgumentException("invalid escape at position " + (pos - 1));
+                value = (value << 4) | digit;
+            }
+            if (!Character.isValidCodePoint(value)) throw new IllegalArgumentException("invalid code point in escape at position " + pos);
+            return value;
+        }
+    }
+}
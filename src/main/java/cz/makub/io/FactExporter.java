@@ -0,0 +1,419 @@
+package cz.makub.io;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import cz.makub.reasoner.MaterializedABox;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.OWLRDFVocabulary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes all asserted and inferred facts of a {@link MaterializedABox} as NDJSON or N-Triples, one fact per line.
+ * <p>
+ * A {@link MaterializedABox} holds the facts of the whole ABox in memory, so for ABoxes which do not fit there,
+ * {@link #export(OWLOntology, OWLReasoner, Path)} computes the facts one individual at a time
+ * by {@link MaterializedABox#iterate(OWLOntology, OWLReasoner)} and writes them before asking for the next individual.
+ * <p>
+ * Lines are rendered into one reused text buffer, which is encoded into a direct byte buffer and written
+ * to a channel whenever it fills up, so no strings are created per fact and the export is bound by I/O.
+ * Rendered IRIs of classes and properties are cached, as they repeat in most lines.
+ * <p>
+ * NDJSON lines look like
+ * <pre>
+ * {"s":"http://x/Martin","p":"http://www.w3.org/1999/02/22-rdf-syntax-ns#type","o":"http://x/Person","asserted":true}
+ * {"s":"http://x/Martin","p":"http://x/hasAge","o":{"value":"42","datatype":"http://www.w3.org/2001/XMLSchema#integer"},"asserted":false}
+ * </pre>
+ * N-Triples cannot tell asserted facts from inferred ones, they can be loaded back by {@link StreamingABoxLoader}.
+ * Individuals are written in no particular order.
+ * <p>
+ * An instance is not thread-safe, but it can be reused for several exports.
+ * <p>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.io.FactExporter -Dexec.args="facts.ndjson.gz ontologyIRI"</code>
+ */
+@SuppressWarnings("WeakerAccess")
+public class FactExporter {
+
+    private static final Logger log = LoggerFactory.getLogger(FactExporter.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+    private static final String RDF_TYPE = OWLRDFVocabulary.RDF_TYPE.getIRI().toString();
+    private static final IRI XSD_STRING = OWL2Datatype.XSD_STRING.getIRI();
+
+    public enum Format {
+        NDJSON, NTRIPLES
+    }
+
+    private final Format format;
+    private final int bufferSize;
+    private final Map<OWLEntity, String> rendered = new HashMap<>();
+    private final String rdfType;
+    private final String xsdString;
+    private final StringBuilder text;
+    private final ByteBuffer bytes;
+    private CharsetEncoder encoder;
+    private WritableByteChannel channel;
+    private long byteCount;
+
+    /**
+     * @param format output format
+     */
+    public FactExporter(Format format) {
+        this(format, DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * @param format     output format
+     * @param bufferSize size of the output buffer in bytes
+     */
+    public FactExporter(Format format, int bufferSize) {
+        if (bufferSize < 1024) throw new IllegalArgumentException("bufferSize must be at least 1024: " + bufferSize);
+        this.format = format;
+        this.bufferSize = bufferSize;
+        this.text = new StringBuilder(bufferSize);
+        this.bytes = ByteBuffer.allocateDirect(bufferSize);
+        this.rdfType = rendered(RDF_TYPE);
+        this.xsdString = rendered(XSD_STRING.toString());
+    }
+
+    /**
+     * Exports to a file, files with names ending with <code>.gz</code> are compressed.
+     *
+     * @param abox facts
+     * @param file output file, replaced if it exists
+     * @return statistics of the export
+     * @throws IOException if the file cannot be written
+     */
+    public Statistics export(MaterializedABox abox, Path file) throws IOException {
+        return export(facts(abox), file);
+    }
+
+    /**
+     * Exports to a channel, the channel is not closed.
+     *
+     * @param abox   facts
+     * @param output output channel
+     * @return statistics of the export
+     * @throws IOException if the channel cannot be written
+     */
+    public Statistics export(MaterializedABox abox, WritableByteChannel output) throws IOException {
+        return export(facts(abox), output);
+    }
+
+    /**
+     * Exports to a file the facts computed one individual at a time, so the whole ABox is never held in memory.
+     * Files with names ending with <code>.gz</code> are compressed.
+     *
+     * @param ontology ontology
+     * @param reasoner reasoner for the ontology, not used by other threads during the export
+     * @param file     output file, replaced if it exists
+     * @return statistics of the export
+     * @throws IOException if the file cannot be written
+     */
+    public Statistics export(OWLOntology ontology, OWLReasoner reasoner, Path file) throws IOException {
+        return export(MaterializedABox.iterate(ontology, reasoner), file);
+    }
+
+    /**
+     * Exports to a channel the facts computed one individual at a time, the channel is not closed.
+     *
+     * @param ontology ontology
+     * @param reasoner reasoner for the ontology, not used by other threads during the export
+     * @param output   output channel
+     * @return statistics of the export
+     * @throws IOException if the channel cannot be written
+     */
+    public Statistics export(OWLOntology ontology, OWLReasoner reasoner, WritableByteChannel output) throws IOException {
+        return export(MaterializedABox.iterate(ontology, reasoner), output);
+    }
+
+    private static Iterator<MaterializedABox.IndividualFacts> facts(MaterializedABox abox) {
+        Iterator<OWLNamedIndividual> individuals = abox.getIndividuals().iterator();
+        return new Iterator<MaterializedABox.IndividualFacts>() {
+            @Override
+            public boolean hasNext() {
+                return individuals.hasNext();
+            }
+
+            @Override
+            public MaterializedABox.IndividualFacts next() {
+                return abox.getFacts(individuals.next());
+            }
+        };
+    }
+
+    private Statistics export(Iterator<MaterializedABox.IndividualFacts> individuals, Path file) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (!file.getFileName().toString().endsWith(".gz")) {
+                return export(individuals, fileChannel);
+            }
+            try (OutputStream gzip = new GZIPOutputStream(Channels.newOutputStream(fileChannel), bufferSize)) {
+                return export(individuals, Channels.newChannel(gzip));
+            }
+        }
+    }
+
+    private Statistics export(Iterator<MaterializedABox.IndividualFacts> individuals, WritableByteChannel output) throws IOException {
+        long start = System.nanoTime();
+        channel = output;
+        encoder = StandardCharsets.UTF_8.newEncoder();
+        byteCount = 0;
+        text.setLength(0);
+        bytes.clear();
+        int individualCount = 0;
+        long facts = 0;
+        try {
+            while (individuals.hasNext()) {
+                MaterializedABox.IndividualFacts f = individuals.next();
+                individualCount++;
+                facts += write(f.getClassAssertions());
+                facts += write(f.getObjectPropertyAssertions());
+                facts += write(f.getDataPropertyAssertions());
+            }
+            flush();
+            drain();
+        } finally {
+            channel = null;
+        }
+        return new Statistics(individualCount, facts, byteCount, System.nanoTime() - start);
+    }
+
+    private int write(List<MaterializedABox.Fact> facts) throws IOException {
+        for (MaterializedABox.Fact fact : facts) {
+            OWLIndividualAxiom axiom = fact.getAxiom();
+            if (axiom instanceof OWLClassAssertionAxiom) {
+                OWLClassAssertionAxiom a = (OWLClassAssertionAxiom) axiom;
+                line(a.getIndividual().asOWLNamedIndividual(), null, a.getClassExpression().asOWLClass(), null, fact.isAsserted());
+            } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+                OWLObjectPropertyAssertionAxiom a = (OWLObjectPropertyAssertionAxiom) axiom;
+                line(a.getSubject().asOWLNamedIndividual(), a.getProperty().asOWLObjectProperty(),
+                        a.getObject().asOWLNamedIndividual(), null, fact.isAsserted());
+            } else {
+                OWLDataPropertyAssertionAxiom a = (OWLDataPropertyAssertionAxiom) axiom;
+                line(a.getSubject().asOWLNamedIndividual(), a.getProperty().asOWLDataProperty(), null, a.getObject(), fact.isAsserted());
+            }
+            if (text.length() >= bufferSize) flush();
+        }
+        return facts.size();
+    }
+
+    /**
+     * Renders one fact, the predicate is rdf:type when null, the object is either an entity or a literal.
+     */
+    private void line(OWLNamedIndividual subject, OWLEntity predicate, OWLEntity object, OWLLiteral literal, boolean asserted) {
+        if (format == Format.NTRIPLES) {
+            iri(subject);
+            text.append(' ').append(predicate == null ? rdfType : rendered(predicate)).append(' ');
+            if (literal == null) {
+                iri(object);
+            } else {
+                text.append('"');
+                escape(literal.getLiteral());
+                text.append('"');
+                if (literal.hasLang()) {
+                    text.append('@').append(literal.getLang());
+                } else if (!isString(literal)) {
+                    text.append("^^").append(rendered(literal.getDatatype()));
+                }
+            }
+            text.append(" .\n");
+        } else {
+            text.append("{\"s\":");
+            iri(subject);
+            text.append(",\"p\":").append(predicate == null ? rdfType : rendered(predicate)).append(",\"o\":");
+            if (literal == null) {
+                iri(object);
+            } else {
+                text.append("{\"value\":\"");
+                escape(literal.getLiteral());
+                if (literal.hasLang()) {
+                    text.append("\",\"lang\":\"");
+                    escape(literal.getLang());
+                    text.append("\"}");
+                } else {
+                    text.append("\",\"datatype\":").append(isString(literal) ? xsdString : rendered(literal.getDatatype())).append('}');
+                }
+            }
+            text.append(",\"asserted\":").append(asserted).append("}\n");
+        }
+    }
+
+    private static boolean isString(OWLLiteral literal) {
+        return literal.isRDFPlainLiteral() || literal.getDatatype().getIRI().equals(XSD_STRING);
+    }
+
+    /**
+     * Appends the IRI of an entity, classes are cached with properties as there are few of them,
+     * individuals are not cached as there may be millions of them.
+     */
+    private void iri(OWLEntity entity) {
+        if (entity.isOWLClass()) {
+            text.append(rendered(entity));
+        } else if (format == Format.NTRIPLES) {
+            text.append('<').append(entity.getIRI().toString()).append('>');
+        } else {
+            text.append('"');
+            escape(entity.getIRI().toString());
+            text.append('"');
+        }
+    }
+
+    private String rendered(OWLEntity entity) {
+        String r = rendered.get(entity);
+        if (r == null) {
+            r = rendered(entity.getIRI().toString());
+            rendered.put(entity, r);
+        }
+        return r;
+    }
+
+    /**
+     * Renders an IRI as &lt;IRI&gt; or as a JSON string.
+     */
+    private String rendered(String iri) {
+        if (format == Format.NTRIPLES) return '<' + iri + '>';
+        //escaped at the end of the text buffer and cut off again
+        int mark = text.length();
+        text.append('"');
+        escape(iri);
+        text.append('"');
+        String r = text.substring(mark);
+        text.setLength(mark);
+        return r;
+    }
+
+    /**
+     * Appends a string escaped for a JSON or N-Triples string, the escapes needed are the same.
+     */
+    private void escape(String s) {
+        for (int i = 0, n = s.length(); i < n; i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    text.append("\\\"");
+                    break;
+                case '\\':
+                    text.append("\\\\");
+                    break;
+                case '\n':
+                    text.append("\\n");
+                    break;
+                case '\r':
+                    text.append("\\r");
+                    break;
+                case '\t':
+                    text.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        text.append("\\u00").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xF, 16));
+                    } else {
+                        text.append(c);
+                    }
+            }
+        }
+    }
+
+    /**
+     * Encodes the rendered lines into the byte buffer, writing the buffer whenever it is full.
+     */
+    private void flush() throws IOException {
+        CharBuffer chars = CharBuffer.wrap(text);
+        while (true) {
+            //the text ends with a whole line, so no surrogate pair is split
+            CoderResult result = encoder.encode(chars, bytes, false);
+            if (result.isOverflow()) {
+                drain();
+            } else if (result.isError()) {
+                try {
+                    result.throwException();
+                } catch (CharacterCodingException ex) {
+                    throw new IOException("cannot encode facts", ex);
+                }
+            } else {
+                break;
+            }
+        }
+        text.setLength(0);
+    }
+
+    private void drain() throws IOException {
+        bytes.flip();
+        while (bytes.hasRemaining()) byteCount += channel.write(bytes);
+        bytes.clear();
+    }
+
+    /**
+     * Statistics of one export.
+     */
+    public static final class Statistics {
+        public final int individuals;
+        public final long facts;
+        public final long bytes;
+        public final long nanos;
+
+        private Statistics(int individuals, long facts, long bytes, long nanos) {
+            this.individuals = individuals;
+            this.facts = facts;
+            this.bytes = bytes;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return exported facts per second
+         */
+        public double factsPerSecond() {
+            return nanos == 0 ? 0.0 : facts * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "individuals=" + individuals + " facts=" + facts + " bytes=" + bytes
+                    + " time=" + (nanos / 1_000_000) + "ms factsPerSecond=" + String.format("%.0f", factsPerSecond());
+        }
+    }
+
+    /**
+     * Exports the facts of the ontology given as the second argument, the tutorial ontology by default,
+     * to the file given as the first argument, as N-Triples when its name contains <code>.nt</code>.
+     */
+    public static void main(String[] args) throws OWLOntologyCreationException, IOException {
+        if (args.length < 1) {
+            System.err.println("usage: FactExporter output[.gz] [ontologyIRI]");
+            return;
+        }
+        Path file = Paths.get(args[0]);
+        String ontologyIRI = args.length > 1 ? args[1] : "http://acrab.ics.muni.cz/ontologies/tutorial.owl";
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(ontologyIRI));
+        OWLReasoner reasoner = PelletReasonerFactory.getInstance().createReasoner(ontology);
+        Format format = file.getFileName().toString().contains(".nt") ? Format.NTRIPLES : Format.NDJSON;
+        Statistics stats = new FactExporter(format).export(ontology, reasoner, file);
+        reasoner.dispose();
+        log.info("exported {} to {}", stats, file);
+    }
+}
@@ -0,0 +1,80 @@
+package cz.makub.io;
+
+import org.semanticweb.owlapi.model.EntityType;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Dictionary of IRIs and entities, so that an entity occurring many times in an input is created only once.
+ * <p>
+ * Classes, properties and datatypes are few, so they are kept for the whole life of the dictionary.
+ * Individuals are kept in a bounded LRU map, so the memory used by the dictionary does not grow with the input size.
+ * The dictionary can be shared by several loaders, it is safe for concurrent use.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IRIDictionary {
+
+    public static final int DEFAULT_MAX_INDIVIDUALS = 1_000_000;
+
+    private final OWLDataFactory factory;
+    private final Map<String, OWLEntity> vocabulary = new HashMap<>();
+    private final Map<String, OWLEntity> individuals;
+    private long hits;
+    private long misses;
+
+    /**
+     * @param factory        factory for creating entities
+     * @param maxIndividuals maximum number of remembered individuals
+     */
+    public IRIDictionary(OWLDataFactory factory, final int maxIndividuals) {
+        this.factory = factory;
+        this.individuals = new LinkedHashMap<String, OWLEntity>(Math.min(maxIndividuals, 1 << 16), 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, OWLEntity> eldest) {
+                return size() > maxIndividuals;
+            }
+        };
+    }
+
+    public IRIDictionary(OWLDataFactory factory) {
+        this(factory, DEFAULT_MAX_INDIVIDUALS);
+    }
+
+    /**
+     * Returns the entity of the given type and IRI, creating it only when it is not in the dictionary.
+     *
+     * @param type entity type
+     * @param iri  full IRI
+     * @return entity
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <E extends OWLEntity> E get(EntityType<E> type, String iri) {
+        Map<String, OWLEntity> map = (type == EntityType.NAMED_INDIVIDUAL) ? individuals : vocabulary;
+        OWLEntity entity = map.get(iri);
+        if (entity != null && entity.getEntityType() == type) {
+            hits++;
+            return (E) entity;
+        }
+        misses++;
+        E created = factory.getOWLEntity(type, IRI.create(iri));
+        map.put(iri, created);
+        return created;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public OWLDataFactory getFactory() {
+        return factory;
+    }
+}
@@ -0,0 +1,215 @@
+package cz.makub.io;
+
+import cz.makub.metrics.Phase;
+import cz.makub.metrics.PhaseMetrics;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyIRIMapper;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.util.AutoIRIMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Local copies of ontologies, so that they can be loaded without network access.
+ * <p>
+ * The catalog is a directory. Ontology IRIs are mapped to files in it by the file {@value #CATALOG_FILE}
+ * in the format used by Protege, e.g.
+ * <pre>
+ * &lt;catalog prefer="public" xmlns="urn:oasis:names:tc:entity:xmlns:xml:catalog"&gt;
+ *     &lt;uri name="http://acrab.ics.muni.cz/ontologies/tutorial.owl" uri="tutorial.owl"/&gt;
+ * &lt;/catalog&gt;
+ * </pre>
+ * and ontologies not listed there are found by their ontology IRIs using OWL API's {@link AutoIRIMapper}.
+ * The mapping is used by the managers created by {@link #createManager()} for all loaded ontologies including imports.
+ * <p>
+ * Method {@link #load(OWLOntologyManager, IRI)} additionally keeps a binary {@link OntologySnapshot} of each loaded
+ * ontology in the subdirectory {@value #SNAPSHOT_DIR} and loads the snapshot instead of parsing the ontology next time.
+ * A snapshot is used until its source file is modified. Ontologies which had to be downloaded are loaded
+ * from the snapshot in all later runs, so the network is needed only once.
+ */
+@SuppressWarnings({"WeakerAccess", "serial"})
+public class OntologyCatalog implements OWLOntologyIRIMapper {
+
+    private static final Logger log = LoggerFactory.getLogger(OntologyCatalog.class);
+
+    public static final String CATALOG_FILE = "catalog-v001.xml";
+    public static final String SNAPSHOT_DIR = "snapshots";
+    /**
+     * system property with the catalog directory, the default is the directory <code>ontologies</code>
+     */
+    public static final String DIRECTORY_PROPERTY = "cz.makub.catalog";
+
+    private final File directory;
+    private final Map<IRI, IRI> mapping = new HashMap<>();
+    private final AutoIRIMapper autoMapper;
+    private boolean snapshots = true;
+
+    /**
+     * @param directory directory with local copies of ontologies, it does not need to exist
+     */
+    public OntologyCatalog(File directory) {
+        this.directory = directory;
+        this.autoMapper = directory.isDirectory() ? new AutoIRIMapper(directory, false) : null;
+        File catalogFile = new File(directory, CATALOG_FILE);
+        if (catalogFile.isFile()) {
+            readCatalog(catalogFile);
+        }
+    }
+
+    /**
+     * @return catalog in the directory given by the system property {@value #DIRECTORY_PROPERTY}
+     */
+    public static OntologyCatalog getDefault() {
+        return new OntologyCatalog(new File(System.getProperty(DIRECTORY_PROPERTY, "ontologies")));
+    }
+
+    /**
+     * @param snapshots whether {@link #load(OWLOntologyManager, IRI)} reads and writes snapshots, default is true
+     * @return this
+     */
+    public OntologyCatalog setSnapshots(boolean snapshots) {
+        this.snapshots = snapshots;
+        return this;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    private void readCatalog(File catalogFile) {
+        try {
+            DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+            dbf.setNamespaceAware(true);
+            Document doc = dbf.newDocumentBuilder().parse(catalogFile);
+            NodeList uris = doc.getElementsByTagNameNS("*", "uri");
+            for (int i = 0; i < uris.getLength(); i++) {
+                Element uri = (Element) uris.item(i);
+                File file = new File(uri.getAttribute("uri"));
+                if (!file.isAbsolute()) file = new File(directory, uri.getAttribute("uri"));
+                mapping.put(IRI.create(uri.getAttribute("name")), IRI.create(file));
+            }
+        } catch (ParserConfigurationException | SAXException | IOException ex) {
+            log.warn("cannot read catalog {}", catalogFile, ex);
+        }
+    }
+
+    /**
+     * Maps an ontology IRI to a local file.
+     *
+     * @param ontologyIRI ontology IRI
+     * @return IRI of the local file, or null if there is no local copy
+     */
+    @Override
+    public IRI getDocumentIRI(IRI ontologyIRI) {
+        IRI documentIRI = mapping.get(ontologyIRI);
+        if (documentIRI == null && autoMapper != null) {
+            documentIRI = autoMapper.getDocumentIRI(ontologyIRI);
+        }
+        return documentIRI;
+    }
+
+    /**
+     * @return a new ontology manager using this catalog
+     */
+    public OWLOntologyManager createManager() {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        manager.getIRIMappers().add(this);
+        return manager;
+    }
+
+    /**
+     * Loads an ontology from its snapshot, its local copy, or from its IRI, in this order.
+     * When the snapshot is missing or older than the local copy, a new snapshot is written.
+     *
+     * @param manager     manager using this catalog
+     * @param ontologyIRI ontology IRI
+     * @return loaded ontology
+     * @throws OWLOntologyCreationException if the ontology cannot be loaded
+     */
+    public OWLOntology load(OWLOntologyManager manager, IRI ontologyIRI) throws OWLOntologyCreationException {
+        if (!snapshots) return parse(manager, ontologyIRI);
+        File snapshot = getSnapshotFile(ontologyIRI);
+        IRI documentIRI = getDocumentIRI(ontologyIRI);
+        File source = (documentIRI != null && "file".equals(documentIRI.getScheme())) ? new File(documentIRI.toURI()) : null;
+        if (snapshot.isFile() && (source == null || snapshot.lastModified() >= source.lastModified())) {
+            PhaseMetrics.Timer timer = PhaseMetrics.instance.start(Phase.LOAD, "readSnapshot", null);
+            try {
+                OWLOntology ontology = OntologySnapshot.read(snapshot.toPath(), manager);
+                timer.setOntology(ontology);
+                return ontology;
+            } catch (IOException | OWLOntologyCreationException ex) {
+                //the snapshot removed its partially loaded ontology, so the source is loaded completely
+                timer.failed();
+                log.warn("cannot read snapshot {}, loading {}", snapshot, ontologyIRI, ex);
+            } finally {
+                timer.close();
+            }
+        }
+        OWLOntology ontology = parse(manager, ontologyIRI);
+        try {
+            //noinspection ResultOfMethodCallIgnored
+            snapshot.getParentFile().mkdirs();
+            OntologySnapshot.write(ontology, snapshot.toPath());
+        } catch (IOException ex) {
+            log.warn("cannot write snapshot {}", snapshot, ex);
+        }
+        return ontology;
+    }
+
+    private static OWLOntology parse(OWLOntologyManager manager, IRI ontologyIRI) throws OWLOntologyCreationException {
+        PhaseMetrics.Timer timer = PhaseMetrics.instance.start(Phase.LOAD, "parse", null);
+        try {
+            OWLOntology ontology = manager.loadOntology(ontologyIRI);
+            timer.setOntology(ontology);
+            return ontology;
+        } catch (OWLOntologyCreationException | RuntimeException ex) {
+            timer.failed();
+            throw ex;
+        } finally {
+            timer.close();
+        }
+    }
+
+    /**
+     * @return file with the snapshot of the given ontology
+     */
+    public File getSnapshotFile(IRI ontologyIRI) {
+        return new File(new File(directory, SNAPSHOT_DIR), hash(ontologyIRI.toString()) + OntologySnapshot.SUFFIX);
+    }
+
+    /**
+     * @return file for the saved reasoner state of the given ontology, next to its snapshot
+     * @see cz.makub.reasoner.PersistedReasoner
+     */
+    public File getReasonerStateFile(IRI ontologyIRI) {
+        return new File(new File(directory, SNAPSHOT_DIR), hash(ontologyIRI.toString()) + ".state" + OntologySnapshot.SUFFIX);
+    }
+
+    private static String hash(String s) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(40);
+            for (byte b : digest) sb.append(String.format("%02x", b));
+            return sb.toString();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package cz.makub.io;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.*;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary copy of an ontology, which loads much faster than parsing RDF/XML.
+ * <p>
+ * All strings (IRIs, lexical forms, language tags) are stored once in a dictionary, declarations and
+ * class, object property and data property assertions without annotations are stored as records of dictionary
+ * indexes. These usually make up most of a large ontology. The remaining axioms, the ontology annotations,
+ * imports and prefixes are stored as an embedded OWL functional syntax document.
+ * The file is read through a memory mapped buffer, so it must be smaller than 2GB.
+ * <p>
+ * The format:
+ * <pre>
+ * int magic, int version
+ * int stringCount, stringCount x (int length, UTF-8 bytes)
+ * int length, UTF-8 bytes of the functional syntax document
+ * int recordCount, recordCount x (byte type, int... dictionary indexes)
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class OntologySnapshot {
+
+    public static final String SUFFIX = ".owls";
+
+    private static final int MAGIC = 0x4F574C53; // "OWLS"
+    private static final int VERSION = 1;
+
+    private static final byte DECLARATION = 0;
+    private static final byte CLASS_ASSERTION = 1;
+    private static final byte OBJECT_PROPERTY_ASSERTION = 2;
+    private static final byte DATA_PROPERTY_ASSERTION = 3;
+
+    private static final EntityType<?>[] ENTITY_TYPES = {EntityType.CLASS, EntityType.OBJECT_PROPERTY,
+            EntityType.DATA_PROPERTY, EntityType.ANNOTATION_PROPERTY, EntityType.NAMED_INDIVIDUAL, EntityType.DATATYPE};
+
+    private OntologySnapshot() {
+    }
+
+    /**
+     * Writes the axioms of the ontology (not of its imports) to a snapshot file.
+     * The file is written under a temporary name in the same directory and then moved atomically into place.
+     *
+     * @param ontology ontology
+     * @param file     snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(OWLOntology ontology, Path file) throws IOException {
+        Map<String, Integer> dictionary = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int recordCount = 0;
+
+        OWLOntologyManager tmpManager = OWLManager.createOWLOntologyManager();
+        OWLOntology rest;
+        try {
+            rest = tmpManager.createOntology(ontology.getOntologyID());
+        } catch (OWLOntologyCreationException ex) {
+            throw new IOException(ex);
+        }
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        for (OWLImportsDeclaration importsDeclaration : ontology.getImportsDeclarations()) {
+            changes.add(new AddImport(rest, importsDeclaration));
+        }
+        for (OWLAnnotation annotation : ontology.getAnnotations()) {
+            changes.add(new AddOntologyAnnotation(rest, annotation));
+        }
+
+        for (OWLAxiom axiom : ontology.getAxioms()) {
+            if (axiom.isAnnotated() || !encode(axiom, records, dictionary, strings)) {
+                changes.add(new AddAxiom(rest, axiom));
+            } else {
+                recordCount++;
+            }
+        }
+        tmpManager.applyChanges(changes);
+
+        FunctionalSyntaxDocumentFormat format = new FunctionalSyntaxDocumentFormat();
+        OWLDocumentFormat sourceFormat = ontology.getOWLOntologyManager().getOntologyFormat(ontology);
+        if (sourceFormat != null && sourceFormat.isPrefixOWLOntologyFormat()) {
+            format.copyPrefixesFrom((PrefixDocumentFormat) sourceFormat);
+        }
+        ByteArrayOutputStream fss = new ByteArrayOutputStream();
+        try {
+            tmpManager.saveOntology(rest, format, fss);
+        } catch (OWLOntologyStorageException ex) {
+            throw new IOException(ex);
+        }
+
+        //written to a temporary file and moved, so that a crash cannot leave a truncated snapshot newer than its source
+        Path dir = file.toAbsolutePath().getParent();
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream os = Files.newOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os, 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(strings.size());
+                for (String s : strings) {
+                    writeBytes(out, s.getBytes(StandardCharsets.UTF_8));
+                }
+                writeBytes(out, fss.toByteArray());
+                out.writeInt(recordCount);
+                records.flush();
+                recordBytes.writeTo(out);
+            }
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException ex) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static int index(String s, Map<String, Integer> dictionary, List<String> strings) {
+        Integer i = dictionary.get(s);
+        if (i == null) {
+            i = strings.size();
+            dictionary.put(s, i);
+            strings.add(s);
+        }
+        return i;
+    }
+
+    /**
+     * @return false if the axiom cannot be encoded as a record
+     */
+    private static boolean encode(OWLAxiom axiom, DataOutputStream out, Map<String, Integer> dictionary, List<String> strings) throws IOException {
+        if (axiom instanceof OWLDeclarationAxiom) {
+            OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+            for (int type = 0; type < ENTITY_TYPES.length; type++) {
+                if (ENTITY_TYPES[type] == entity.getEntityType()) {
+                    out.writeByte(DECLARATION);
+                    out.writeByte(type);
+                    out.writeInt(index(entity.getIRI().toString(), dictionary, strings));
+                    return true;
+                }
+            }
+        } else if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom) axiom;
+            if (ax.getClassExpression().isAnonymous() || ax.getIndividual().isAnonymous()) return false;
+            out.writeByte(CLASS_ASSERTION);
+            out.writeInt(index(ax.getClassExpression().asOWLClass().getIRI().toString(), dictionary, strings));
+            out.writeInt(index(ax.getIndividual().asOWLNamedIndividual().getIRI().toString(), dictionary, strings));
+            return true;
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) axiom;
+            if (ax.getProperty().isAnonymous() || ax.getSubject().isAnonymous() || ax.getObject().isAnonymous()) return false;
+            out.writeByte(OBJECT_PROPERTY_ASSERTION);
+            out.writeInt(index(ax.getProperty().asOWLObjectProperty().getIRI().toString(), dictionary, strings));
+            out.writeInt(index(ax.getSubject().asOWLNamedIndividual().getIRI().toString(), dictionary, strings));
+            out.writeInt(index(ax.getObject().asOWLNamedIndividual().getIRI().toString(), dictionary, strings));
+            return true;
+        } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+            OWLDataPropertyAssertionAxiom ax = (OWLDataPropertyAssertionAxiom) axiom;
+            if (ax.getSubject().isAnonymous()) return false;
+            OWLLiteral literal = ax.getObject();
+            out.writeByte(DATA_PROPERTY_ASSERTION);
+            out.writeInt(index(ax.getProperty().asOWLDataProperty().getIRI().toString(), dictionary, strings));
+            out.writeInt(index(ax.getSubject().asOWLNamedIndividual().getIRI().toString(), dictionary, strings));
+            out.writeInt(index(literal.getLiteral(), dictionary, strings));
+            out.writeInt(index(literal.getDatatype().getIRI().toString(), dictionary, strings));
+            out.writeInt(literal.hasLang() ? index(literal.getLang(), dictionary, strings) : -1);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Loads an ontology from a snapshot file. Imports of the ontology are loaded by the manager as usual.
+     * If the snapshot cannot be read completely, the partially loaded ontology is removed from the manager again,
+     * so the ontology can be loaded from its source instead.
+     *
+     * @param file    snapshot file
+     * @param manager manager for the new ontology
+     * @return loaded ontology
+     * @throws IOException                  if the file cannot be read or is not a snapshot
+     * @throws OWLOntologyCreationException if the ontology cannot be created
+     */
+    public static OWLOntology read(Path file, OWLOntologyManager manager) throws IOException, OWLOntologyCreationException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("not an ontology snapshot of version " + VERSION + ": " + file);
+            }
+            String[] strings = new String[buffer.getInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = readString(buffer);
+            }
+            OWLOntology ontology = manager.loadOntologyFromOntologyDocument(new StringDocumentSource(readString(buffer)));
+            boolean complete = false;
+            try {
+                readRecords(buffer, file, strings, manager, ontology);
+                complete = true;
+            } finally {
+                if (!complete) manager.removeOntology(ontology);
+            }
+            return ontology;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException ex) {
+            throw new IOException("truncated or corrupted snapshot " + file, ex);
+        }
+    }
+
+    private static void readRecords(MappedByteBuffer buffer, Path file, String[] strings, OWLOntologyManager manager, OWLOntology ontology) throws IOException {
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        IRI[] iris = new IRI[strings.length];
+        int recordCount = buffer.getInt();
+        Set<OWLAxiom> axioms = new HashSet<>(recordCount * 4 / 3 + 1);
+        for (int r = 0; r < recordCount; r++) {
+            byte type = buffer.get();
+            switch (type) {
+                case DECLARATION:
+                    EntityType<?> entityType = ENTITY_TYPES[buffer.get()];
+                    axioms.add(factory.getOWLDeclarationAxiom(factory.getOWLEntity(entityType, iri(buffer.getInt(), strings, iris))));
+                    break;
+                case CLASS_ASSERTION:
+                    OWLClass owlClass = factory.getOWLClass(iri(buffer.getInt(), strings, iris));
+                    axioms.add(factory.getOWLClassAssertionAxiom(owlClass, factory.getOWLNamedIndividual(iri(buffer.getInt(), strings, iris))));
+                    break;
+                case OBJECT_PROPERTY_ASSERTION:
+                    OWLObjectProperty objectProperty = factory.getOWLObjectProperty(iri(buffer.getInt(), strings, iris));
+                    OWLNamedIndividual subject = factory.getOWLNamedIndividual(iri(buffer.getInt(), strings, iris));
+                    OWLNamedIndividual object = factory.getOWLNamedIndividual(iri(buffer.getInt(), strings, iris));
+                    axioms.add(factory.getOWLObjectPropertyAssertionAxiom(objectProperty, subject, object));
+                    break;
+                case DATA_PROPERTY_ASSERTION:
+                    OWLDataProperty dataProperty = factory.getOWLDataProperty(iri(buffer.getInt(), strings, iris));
+                    OWLNamedIndividual dataSubject = factory.getOWLNamedIndividual(iri(buffer.getInt(), strings, iris));
+                    String lexical = strings[buffer.getInt()];
+                    IRI datatype = iri(buffer.getInt(), strings, iris);
+                    int lang = buffer.getInt();
+                    OWLLiteral literal = (lang >= 0) ? factory.getOWLLiteral(lexical, strings[lang])
+                            : factory.getOWLLiteral(lexical, factory.getOWLDatatype(datatype));
+                    axioms.add(factory.getOWLDataPropertyAssertionAxiom(dataProperty, dataSubject, literal));
+                    break;
+                default:
+                    throw new IOException("unknown record type " + type + " in " + file);
+            }
+        }
+        manager.addAxioms(ontology, axioms);
+    }
+
+    private static IRI iri(int index, String[] strings, IRI[] iris) {
+        IRI iri = iris[index];
+        if (iri == null) {
+            iri = IRI.create(strings[index]);
+            iris[index] = iri;
+        }
+        return iri;
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
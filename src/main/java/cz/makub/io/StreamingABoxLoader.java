@@ -0,0 +1,255 @@
+package cz.makub.io;
+
+import cz.makub.metrics.LogRateLimiter;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Loads very large files of ABox axioms into an ontology with bounded memory.
+ * <p>
+ * A reader thread parses the input line by line with {@link AssertionLineParser} and passes chunks of axioms
+ * through a bounded queue to the calling thread, which applies each chunk to the ontology as one change.
+ * When applying the changes is slower than parsing, the queue fills up and the reader waits, so at most
+ * <code>(queueCapacity + 2) * chunkSize</code> parsed axioms are held in memory besides the ontology itself.
+ * Entities are deduplicated by a shared {@link IRIDictionary}.
+ * <p>
+ * Malformed and unsupported lines are skipped and counted, they are logged at most once per second.
+ * <p>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.io.StreamingABoxLoader -Dexec.args="abox.nt.gz"</code>
+ *
+ * @see cz.makub.generator.SyntheticOntologyGenerator
+ */
+@SuppressWarnings("WeakerAccess")
+public class StreamingABoxLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingABoxLoader.class);
+
+    public static final int DEFAULT_CHUNK_SIZE = 50_000;
+    public static final int DEFAULT_QUEUE_CAPACITY = 4;
+
+    private static final List<OWLAxiom> END = Collections.emptyList();
+
+    private final OWLOntology ontology;
+    private IRIDictionary dictionary;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private final LogRateLimiter errorLogLimiter = new LogRateLimiter(1000);
+
+    /**
+     * @param ontology ontology to which the axioms are added
+     */
+    public StreamingABoxLoader(OWLOntology ontology) {
+        this.ontology = ontology;
+        this.dictionary = new IRIDictionary(ontology.getOWLOntologyManager().getOWLDataFactory());
+    }
+
+    /**
+     * Sets the number of axioms applied to the ontology in one change.
+     */
+    public StreamingABoxLoader setChunkSize(int chunkSize) {
+        if (chunkSize < 1) throw new IllegalArgumentException("chunkSize must be positive: " + chunkSize);
+        this.chunkSize = chunkSize;
+        return this;
+    }
+
+    /**
+     * Sets the number of parsed chunks which may wait for being applied.
+     */
+    public StreamingABoxLoader setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets the dictionary of entities, e.g. one shared with other loaders.
+     */
+    public StreamingABoxLoader setDictionary(IRIDictionary dictionary) {
+        this.dictionary = dictionary;
+        return this;
+    }
+
+    /**
+     * Loads a file, files with names ending with <code>.gz</code> are decompressed.
+     *
+     * @param file input file
+     * @return statistics of the load
+     * @throws IOException          if the file cannot be read
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Statistics load(Path file) throws IOException, InterruptedException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Loads axioms from a reader, the reader is not closed.
+     *
+     * @param input input with one axiom per line
+     * @return statistics of the load
+     * @throws IOException          if the input cannot be read
+     * @throws InterruptedException if the calling thread is interrupted
+     * @throws RuntimeException     any other failure of the reader thread, the ontology then has only a part of the input
+     */
+    public Statistics load(Reader input) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        BlockingQueue<List<OWLAxiom>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        Producer producer = new Producer(input, queue);
+        Thread thread = new Thread(producer, "abox-loader-reader");
+        thread.setDaemon(true);
+        thread.start();
+        long axioms = 0;
+        long chunks = 0;
+        OWLOntologyManager manager = ontology.getOWLOntologyManager();
+        boolean completed = false;
+        try {
+            List<OWLAxiom> chunk;
+            while ((chunk = queue.take()) != END) {
+                List<AddAxiom> changes = new ArrayList<>(chunk.size());
+                for (OWLAxiom axiom : chunk) changes.add(new AddAxiom(ontology, axiom));
+                manager.applyChanges(changes);
+                axioms += chunk.size();
+                chunks++;
+            }
+            completed = true;
+        } finally {
+            //do not leave the reader blocked on a full queue
+            if (!completed) thread.interrupt();
+        }
+        thread.join();
+        Throwable failure = producer.failure;
+        if (failure instanceof IOException) throw (IOException) failure;
+        if (failure instanceof RuntimeException) throw (RuntimeException) failure;
+        if (failure instanceof Error) throw (Error) failure;
+        return new Statistics(producer.lines, axioms, chunks, producer.skipped, producer.errors, System.nanoTime() - start);
+    }
+
+    /**
+     * Reads and parses the input, runs in its own thread.
+     */
+    private class Producer implements Runnable {
+        private final Reader input;
+        private final BlockingQueue<List<OWLAxiom>> queue;
+        private long lines;
+        private long skipped;
+        private long errors;
+        private Throwable failure;
+
+        private Producer(Reader input, BlockingQueue<List<OWLAxiom>> queue) {
+            this.input = input;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            AssertionLineParser parser = new AssertionLineParser(dictionary);
+            BufferedReader reader = new BufferedReader(input, 1 << 16);
+            List<OWLAxiom> chunk = new ArrayList<>(chunkSize);
+            try {
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        lines++;
+                        OWLAxiom axiom;
+                        try {
+                            axiom = parser.parse(line);
+                        } catch (IllegalArgumentException ex) {
+                            errors++;
+                            long suppressed = errorLogLimiter.tryAcquire();
+                            if (suppressed >= 0) {
+                                log.warn("line {} skipped: {} ({} more skipped lines not logged)", lines, ex.getMessage(), suppressed);
+                            }
+                            continue;
+                        }
+                        if (axiom == null) {
+                            skipped++;
+                            continue;
+                        }
+                        chunk.add(axiom);
+                        if (chunk.size() >= chunkSize) {
+                            queue.put(chunk);
+                            chunk = new ArrayList<>(chunkSize);
+                        }
+                    }
+                    if (!chunk.isEmpty()) queue.put(chunk);
+                } catch (IOException | RuntimeException | Error ex) {
+                    //reported by load(), which would otherwise return statistics of a partial load
+                    failure = ex;
+                } finally {
+                    queue.put(END);
+                }
+            } catch (InterruptedException ex) {
+                //the consumer was interrupted and does not wait for more chunks
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Statistics of one load.
+     */
+    public static final class Statistics {
+        public final long lines;
+        public final long axioms;
+        public final long chunks;
+        public final long skippedLines;
+        public final long errorLines;
+        public final long nanos;
+
+        private Statistics(long lines, long axioms, long chunks, long skippedLines, long errorLines, long nanos) {
+            this.lines = lines;
+            this.axioms = axioms;
+            this.chunks = chunks;
+            this.skippedLines = skippedLines;
+            this.errorLines = errorLines;
+            this.nanos = nanos;
+        }
+
+        public double axiomsPerSecond() {
+            return nanos == 0 ? 0.0 : axioms * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            return "lines=" + lines + " axioms=" + axioms + " chunks=" + chunks + " skipped=" + skippedLines
+                    + " errors=" + errorLines + " ms=" + nanos / 1_000_000 + " axioms/s=" + String.format("%.0f", axiomsPerSecond());
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("usage: StreamingABoxLoader file [file ...]");
+            System.exit(1);
+        }
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology ontology = manager.createOntology();
+        StreamingABoxLoader loader = new StreamingABoxLoader(ontology);
+        for (String arg : args) {
+            System.out.println(arg + ": " + loader.load(Paths.get(arg)));
+        }
+        System.out.println("ontology has " + ontology.getAxiomCount() + " axioms");
+    }
+}
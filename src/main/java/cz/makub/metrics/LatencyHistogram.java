@@ -0,0 +1,95 @@
+package cz.makub.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds with power-of-two buckets.
+ * Bucket i counts durations in the interval [2^(i-1), 2^i) and bucket 0 counts zeros, so percentiles are accurate within a factor of two,
+ * which is enough for telling microseconds from milliseconds and seconds, and recording costs just two atomic increments.
+ */
+public class LatencyHistogram {
+
+    private static final int BUCKETS = 64;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Records one duration.
+     *
+     * @param nanos duration in nanoseconds
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(nanos));
+        count.increment();
+        sum.add(nanos);
+    }
+
+    /**
+     * @return consistent enough copy of the current state
+     */
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) copy[i] = buckets.get(i);
+        return new Snapshot(copy, count.sum(), sum.sum());
+    }
+
+    /**
+     * Immutable copy of a histogram.
+     */
+    public static final class Snapshot {
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+
+        private Snapshot(long[] buckets, long count, long sum) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return sum of all recorded durations in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * @return mean duration in nanoseconds
+         */
+        public double getMean() {
+            return count == 0 ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * @param percentile number between 0 and 100
+         * @return upper bound of the bucket containing the given percentile, in nanoseconds
+         */
+        public long getPercentile(double percentile) {
+            long total = 0;
+            for (long b : buckets) total += b;
+            if (total == 0) return 0;
+            long rank = (long) Math.ceil(total * percentile / 100.0);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && buckets[i] > 0) return (i == 63) ? Long.MAX_VALUE : (1L << i) - 1;
+            }
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count + " mean=" + String.format("%.0f", getMean()) + "ns p50=" + getPercentile(50)
+                    + "ns p99=" + getPercentile(99) + "ns max<=" + getPercentile(100) + "ns";
+        }
+    }
+}
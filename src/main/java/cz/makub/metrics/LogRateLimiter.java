@@ -0,0 +1,36 @@
+package cz.makub.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Allows at most one log message per time interval and counts the suppressed ones,
+ * so that a repeated failure does not flood the log.
+ */
+public class LogRateLimiter {
+
+    private final long intervalNanos;
+    private final AtomicLong nextAllowed = new AtomicLong(Long.MIN_VALUE);
+    private final AtomicLong suppressed = new AtomicLong();
+
+    /**
+     * @param intervalMillis minimal time between two log messages
+     */
+    public LogRateLimiter(long intervalMillis) {
+        this.intervalNanos = intervalMillis * 1_000_000L;
+    }
+
+    /**
+     * Decides whether a message may be logged now.
+     *
+     * @return -1 if the message must not be logged, otherwise the number of messages suppressed since the last logged one
+     */
+    public long tryAcquire() {
+        long now = System.nanoTime();
+        long allowed = nextAllowed.get();
+        if ((allowed == Long.MIN_VALUE || now - allowed >= 0) && nextAllowed.compareAndSet(allowed, now + intervalNanos)) {
+            return suppressed.getAndSet(0);
+        }
+        suppressed.incrementAndGet();
+        return -1;
+    }
+}
@@ -0,0 +1,35 @@
+package cz.makub.metrics;
+
+/**
+ * Phases of the load, reason, query and explain pipeline, measured by {@link PhaseMetrics}.
+ */
+public enum Phase {
+    /**
+     * parsing or reading an ontology, or loading changes into a reasoner
+     */
+    LOAD,
+    /**
+     * consistency check, for Pellet including the application of SWRL rules
+     */
+    CONSISTENCY,
+    /**
+     * computing the class and property hierarchies
+     */
+    CLASSIFICATION,
+    /**
+     * computing the types and property values of all individuals
+     */
+    REALIZATION,
+    /**
+     * application of SWRL rules outside of the reasoner
+     */
+    RULES,
+    /**
+     * answering a query, including the reasoning it triggers when the inferences are not precomputed
+     */
+    QUERY,
+    /**
+     * finding justifications of entailments
+     */
+    EXPLANATION
+}
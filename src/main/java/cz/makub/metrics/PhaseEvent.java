@@ -0,0 +1,57 @@
+package cz.makub.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one measured operation of a pipeline phase. Disabled unless a recording enables it, e.g. by
+ * <code>-XX:StartFlightRecording:settings=profile</code> with the event <code>cz.makub.ReasonerPhase</code> enabled.
+ * Every reasoner call is measured, so events are created only while they are enabled.
+ */
+@Name("cz.makub.ReasonerPhase")
+@Label("Reasoner Phase")
+@Category({"OWL", "Reasoner"})
+@Description("Ontology loading, reasoning, query or explanation")
+@StackTrace(false)
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Operation")
+    String operation;
+
+    @Label("Ontology")
+    String ontology;
+
+    @Label("Axioms")
+    @Description("Axioms in the imports closure")
+    long axioms;
+
+    @Label("Logical Axioms")
+    long logicalAxioms;
+
+    @Label("Assertions")
+    @Description("Class and property assertions in the imports closure")
+    long assertions;
+
+    @Label("Success")
+    boolean success;
+
+    private static final EventType TYPE = EventType.getEventType(PhaseEvent.class);
+
+    /**
+     * @return started event, or null when no recording enables the event
+     */
+    static PhaseEvent beginIfEnabled() {
+        if (!TYPE.isEnabled()) return null;
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+}
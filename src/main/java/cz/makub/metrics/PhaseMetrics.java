@@ -0,0 +1,239 @@
+package cz.makub.metrics;
+
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.parameters.Imports;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the load, reason, query and explain pipeline: number of calls, failures and a histogram of latencies,
+ * kept separately for each {@link Phase}, operation (e.g. the reasoner method) and size class of the ontology,
+ * which is its number of axioms rounded down to a power of ten.
+ * <p>
+ * Each measured call is also a JFR event {@link PhaseEvent} with the exact ontology sizes, created only while
+ * a recording enables it.
+ * Measuring costs two clock reads, a few atomic increments and axiom counts kept by the ontology,
+ * so it can stay on in production. Current values are available from {@link #snapshot()}.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (PhaseMetrics.Timer timer = PhaseMetrics.instance.start(Phase.RULES, "materialize", ontology)) {
+ *     ...
+ * }
+ * </pre>
+ *
+ * @see cz.makub.reasoner.ProfilingReasoner
+ */
+@SuppressWarnings("WeakerAccess")
+public class PhaseMetrics {
+
+    public static final PhaseMetrics instance = new PhaseMetrics();
+
+    private static final String[] SIZE_CLASSES = {"<1k", "<10k", "<100k", "<1M", "<10M", ">=10M"};
+
+    private final Map<String, Operation> operations = new ConcurrentHashMap<>();
+
+    private PhaseMetrics() {
+    }
+
+    /**
+     * @param phase phase
+     * @param name  name of the operation
+     * @return operation, created on first use; callers measuring often should keep it
+     */
+    public Operation getOperation(Phase phase, String name) {
+        return operations.computeIfAbsent(phase + " " + name, k -> new Operation(phase, name));
+    }
+
+    /**
+     * Starts measuring one call of an operation.
+     *
+     * @param phase    phase
+     * @param name     name of the operation
+     * @param ontology ontology used for the size dimension, may be set later or be null
+     * @return running timer, to be closed when the call ends
+     */
+    public Timer start(Phase phase, String name, OWLOntology ontology) {
+        return getOperation(phase, name).start(ontology);
+    }
+
+    /**
+     * @return copy of the current statistics, sorted by phase, operation and size class
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        for (Operation operation : operations.values()) {
+            for (int i = 0; i < SIZE_CLASSES.length; i++) {
+                Stats s = operation.bySize.get(i);
+                if (s == null) continue;
+                Snapshot snapshot = new Snapshot(operation.phase, operation.name, SIZE_CLASSES[i], s.calls.sum(),
+                        s.failures.sum(), s.latency.snapshot());
+                snapshots.put(operation.phase.ordinal() + " " + operation.name + " " + i, snapshot);
+            }
+        }
+        return snapshots;
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public void reset() {
+        operations.clear();
+    }
+
+    /**
+     * @return statistics, one line per phase, operation and size class
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Snapshot s : snapshot().values()) sb.append(s).append('\n');
+        return sb.toString();
+    }
+
+    /**
+     * @return index of the size class, the number of axioms rounded down to a power of ten
+     */
+    static int sizeClass(long axioms) {
+        int sizeClass = 0;
+        for (long limit = 1000; axioms >= limit && sizeClass < SIZE_CLASSES.length - 1; limit *= 10) sizeClass++;
+        return sizeClass;
+    }
+
+    /**
+     * One measured operation of a phase.
+     */
+    public static final class Operation {
+        private final Phase phase;
+        private final String name;
+        private final AtomicReferenceArray<Stats> bySize = new AtomicReferenceArray<>(SIZE_CLASSES.length);
+
+        private Operation(Phase phase, String name) {
+            this.phase = phase;
+            this.name = name;
+        }
+
+        /**
+         * Starts measuring one call.
+         *
+         * @param ontology ontology used for the size dimension, may be set later or be null
+         * @return running timer, to be closed when the call ends
+         */
+        public Timer start(OWLOntology ontology) {
+            return new Timer(this, ontology);
+        }
+
+        private Stats stats(int sizeClass) {
+            Stats s = bySize.get(sizeClass);
+            if (s == null) {
+                bySize.compareAndSet(sizeClass, null, new Stats());
+                s = bySize.get(sizeClass);
+            }
+            return s;
+        }
+    }
+
+    /**
+     * Measures one call, not thread-safe.
+     */
+    public static final class Timer implements AutoCloseable {
+        private final Operation operation;
+        private final PhaseEvent event;
+        private final long start;
+        private OWLOntology ontology;
+        private boolean failed;
+        private boolean closed;
+
+        private Timer(Operation operation, OWLOntology ontology) {
+            this.operation = operation;
+            this.ontology = ontology;
+            this.event = PhaseEvent.beginIfEnabled();
+            this.start = System.nanoTime();
+        }
+
+        /**
+         * Sets the ontology when it is known only at the end of the call, e.g. for loading.
+         */
+        public void setOntology(OWLOntology ontology) {
+            this.ontology = ontology;
+        }
+
+        /**
+         * Marks the call as failed.
+         */
+        public void failed() {
+            failed = true;
+        }
+
+        /**
+         * Records the call, only the first close counts.
+         */
+        @Override
+        public void close() {
+            if (closed) return;
+            closed = true;
+            long nanos = System.nanoTime() - start;
+            long axioms = (ontology == null) ? 0 : ontology.getAxiomCount(Imports.INCLUDED);
+            Stats s = operation.stats(sizeClass(axioms));
+            s.calls.increment();
+            if (failed) s.failures.increment();
+            s.latency.record(nanos);
+            if (event != null) event.end();
+            if (event != null && event.shouldCommit()) {
+                event.phase = operation.phase.name();
+                event.operation = operation.name;
+                event.success = !failed;
+                if (ontology != null) {
+                    event.ontology = String.valueOf(ontology.getOntologyID().getOntologyIRI().orNull());
+                    event.axioms = axioms;
+                    event.logicalAxioms = ontology.getLogicalAxiomCount(Imports.INCLUDED);
+                    event.assertions = ontology.getAxiomCount(AxiomType.CLASS_ASSERTION, Imports.INCLUDED)
+                            + ontology.getAxiomCount(AxiomType.OBJECT_PROPERTY_ASSERTION, Imports.INCLUDED)
+                            + ontology.getAxiomCount(AxiomType.DATA_PROPERTY_ASSERTION, Imports.INCLUDED);
+                }
+                event.commit();
+            }
+        }
+    }
+
+    /**
+     * Live statistics of one operation and size class.
+     */
+    private static final class Stats {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+    }
+
+    /**
+     * Copy of statistics of one operation and size class.
+     */
+    public static final class Snapshot {
+        public final Phase phase;
+        public final String operation;
+        public final String sizeClass;
+        public final long calls;
+        public final long failures;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Snapshot(Phase phase, String operation, String sizeClass, long calls, long failures, LatencyHistogram.Snapshot latency) {
+            this.phase = phase;
+            this.operation = operation;
+            this.sizeClass = sizeClass;
+            this.calls = calls;
+            this.failures = failures;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return phase + " " + operation + " axioms" + sizeClass + " calls=" + calls + " failures=" + failures
+                    + " total=" + latency.getSum() / 1_000_000 + "ms latency: " + latency;
+        }
+    }
+}
@@ -0,0 +1,389 @@
+package cz.makub.query;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import com.clarkparsia.pellet.sparqldl.engine.QueryEngine;
+import com.clarkparsia.pellet.sparqldl.model.Query;
+import com.clarkparsia.pellet.sparqldl.model.QueryResult;
+import com.clarkparsia.pellet.sparqldl.model.ResultBinding;
+import com.clarkparsia.pellet.sparqldl.model.ResultBindingImpl;
+import cz.makub.metrics.LatencyHistogram;
+import cz.makub.reasoner.PelletTerms;
+import org.mindswap.pellet.KnowledgeBase;
+import org.mindswap.pellet.utils.ATermUtils;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * SPARQL-DL queries over a Pellet reasoner, using the query engine from pellet-query.
+ * <p>
+ * A set-oriented question like "all persons with their employers and emails" is one conjunctive query evaluated
+ * by Pellet's query engine, which orders the query atoms by their estimated cost and retrieves the bindings
+ * for whole sets of individuals, instead of one reasoner call per individual and property.
+ * <p>
+ * Parsed queries are kept in an LRU cache keyed by the query text. A {@link PreparedQuery} can be executed many times,
+ * also with some variables bound to parameter values, so that a query with a parameter is parsed only once.
+ * Parsing depends on the vocabulary of the ontology, so prepared queries are parsed again after a change
+ * of the ontology. Results are converted to OWL API objects lazily while they are iterated.
+ * <p>
+ * Pellet knowledge bases are not thread-safe, queries are executed one at a time.
+ * A buffering reasoner is flushed before each execution, so queries see all changes of the ontology.
+ * <p>
+ * Usage:
+ * <pre>
+ * SparqlDLEngine engine = new SparqlDLEngine(PelletReasonerFactory.getInstance().createNonBufferingReasoner(ontology));
+ * for (SparqlDLEngine.Row row : engine.execute("PREFIX : &lt;...#&gt; SELECT ?x ?y WHERE { ?x :isEmployedAt ?y }")) {
+ *     System.out.println(row.get("x") + " " + row.get("y"));
+ * }
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class SparqlDLEngine implements OWLOntologyChangeListener {
+
+    public static final int DEFAULT_MAX_PREPARED = 256;
+
+    private final PelletReasoner reasoner;
+    private final OWLDataFactory factory;
+    private final LinkedHashMap<String, PreparedQuery> prepared;
+    //incremented on each change of the ontology, prepared queries of an older generation are parsed again
+    private volatile long generation;
+    private final LongAdder cacheHits = new LongAdder();
+    private final LongAdder parses = new LongAdder();
+    private final LongAdder executions = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param reasoner    Pellet reasoner
+     * @param maxPrepared maximum number of cached prepared queries
+     */
+    public SparqlDLEngine(PelletReasoner reasoner, final int maxPrepared) {
+        if (maxPrepared < 1) throw new IllegalArgumentException("maxPrepared must be positive: " + maxPrepared);
+        this.reasoner = reasoner;
+        OWLOntologyManager manager = reasoner.getRootOntology().getOWLOntologyManager();
+        this.factory = manager.getOWLDataFactory();
+        this.prepared = new LinkedHashMap<String, PreparedQuery>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, PreparedQuery> eldest) {
+                return size() > maxPrepared;
+            }
+        };
+        manager.addOntologyChangeListener(this);
+    }
+
+    public SparqlDLEngine(PelletReasoner reasoner) {
+        this(reasoner, DEFAULT_MAX_PREPARED);
+    }
+
+    /**
+     * Returns a prepared query from the cache, or parses it.
+     *
+     * @param sparql SPARQL query, only basic graph patterns are supported by SPARQL-DL
+     * @return prepared query
+     * @throws IllegalArgumentException if the query cannot be parsed or is not supported
+     */
+    public PreparedQuery prepare(String sparql) {
+        synchronized (prepared) {
+            PreparedQuery query = prepared.get(sparql);
+            if (query != null) {
+                cacheHits.increment();
+                return query;
+            }
+        }
+        PreparedQuery query = new PreparedQuery(sparql);
+        query.parsed();
+        synchronized (prepared) {
+            prepared.put(sparql, query);
+        }
+        return query;
+    }
+
+    /**
+     * Prepares and executes a query.
+     */
+    public Results execute(String sparql) {
+        return prepare(sparql).execute();
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> closure = reasoner.getRootOntology().getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isAxiomChange() || change.isImportChange())) {
+                generation++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops listening to ontology changes, the reasoner is not disposed.
+     */
+    public void dispose() {
+        reasoner.getRootOntology().getOWLOntologyManager().removeOntologyChangeListener(this);
+        synchronized (prepared) {
+            prepared.clear();
+        }
+    }
+
+    /**
+     * @return statistics of the engine
+     */
+    public Statistics getStatistics() {
+        int size;
+        synchronized (prepared) {
+            size = prepared.size();
+        }
+        return new Statistics(size, cacheHits.sum(), parses.sum(), executions.sum(), latency.snapshot());
+    }
+
+    private ATermAppl term(OWLObject value) {
+        if (value instanceof OWLEntity) return PelletTerms.term((OWLEntity) value);
+        if (value instanceof OWLLiteral) return PelletTerms.term((OWLLiteral) value);
+        throw new IllegalArgumentException("only entities and literals can be bound to variables: " + value);
+    }
+
+    private static String name(ATermAppl var) {
+        return ((ATermAppl) var.getArgument(0)).getName();
+    }
+
+    /**
+     * Parsed query which can be executed repeatedly.
+     */
+    public final class PreparedQuery {
+        private final String sparql;
+        private Query query;
+        private KnowledgeBase kb;
+        private long parsedGeneration;
+        private List<String> resultVars;
+        private Map<String, Query.VarType> varTypes;
+
+        private PreparedQuery(String sparql) {
+            this.sparql = sparql;
+        }
+
+        /**
+         * @return the parsed query, parsed again if the ontology changed since the last parsing
+         */
+        private synchronized Query parsed() {
+            KnowledgeBase current = reasoner.getKB();
+            long g = generation;
+            if (query == null || kb != current || parsedGeneration != g) {
+                try {
+                    query = QueryEngine.getParser().parse(sparql, current);
+                } catch (RuntimeException ex) {
+                    throw new IllegalArgumentException("cannot parse query: " + ex.getMessage(), ex);
+                }
+                parses.increment();
+                kb = current;
+                parsedGeneration = g;
+                List<String> vars = new ArrayList<>();
+                for (ATermAppl var : query.getResultVars()) vars.add(name(var));
+                resultVars = Collections.unmodifiableList(vars);
+                varTypes = new HashMap<>();
+                for (Query.VarType type : Query.VarType.values()) {
+                    for (ATermAppl var : query.getDistVarsForType(type)) varTypes.put(name(var), type);
+                }
+            }
+            return query;
+        }
+
+        /**
+         * @return the text of the query
+         */
+        public String getText() {
+            return sparql;
+        }
+
+        /**
+         * @return names of the selected variables without the question mark
+         */
+        public synchronized List<String> getResultVars() {
+            parsed();
+            return resultVars;
+        }
+
+        /**
+         * Executes the query.
+         */
+        public Results execute() {
+            return execute(Collections.emptyMap());
+        }
+
+        /**
+         * Executes the query with some variables bound to values.
+         *
+         * @param parameters values of variables, the names are without the question mark
+         * @return results, the bound variables have the parameter values in all rows
+         */
+        public Results execute(Map<String, ? extends OWLObject> parameters) {
+            //the query engine works on the knowledge base, which has pending changes of a buffering reasoner only after a flush
+            synchronized (reasoner) {
+                reasoner.flush();
+            }
+            Query q;
+            Map<String, Query.VarType> types;
+            List<String> vars;
+            synchronized (this) {
+                q = parsed();
+                types = varTypes;
+                vars = resultVars;
+            }
+            if (!parameters.isEmpty()) {
+                ResultBinding binding = new ResultBindingImpl();
+                for (Map.Entry<String, ? extends OWLObject> e : parameters.entrySet()) {
+                    ATermAppl var = ATermUtils.makeVar(e.getKey());
+                    if (!q.getVars().contains(var)) {
+                        throw new IllegalArgumentException("query has no variable ?" + e.getKey());
+                    }
+                    binding.setValue(var, term(e.getValue()));
+                }
+                q = q.apply(binding);
+            }
+            long start = System.nanoTime();
+            QueryResult result;
+            synchronized (reasoner) {
+                result = QueryEngine.exec(q);
+            }
+            latency.record(System.nanoTime() - start);
+            executions.increment();
+            return new Results(vars, types, result, parameters);
+        }
+    }
+
+    /**
+     * Results of one execution. The bindings are computed by the query engine at once,
+     * conversion to OWL API objects is done row by row during iteration.
+     */
+    public final class Results implements Iterable<Row> {
+        private final List<String> vars;
+        private final Map<String, Query.VarType> types;
+        private final QueryResult result;
+        private final Map<String, ? extends OWLObject> parameters;
+
+        private Results(List<String> vars, Map<String, Query.VarType> types, QueryResult result, Map<String, ? extends OWLObject> parameters) {
+            this.vars = vars;
+            this.types = types;
+            this.result = result;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @return names of the selected variables
+         */
+        public List<String> getVars() {
+            return vars;
+        }
+
+        public int size() {
+            return result.size();
+        }
+
+        public boolean isEmpty() {
+            return result.isEmpty();
+        }
+
+        @Override
+        public Iterator<Row> iterator() {
+            final Iterator<ResultBinding> it = result.iterator();
+            return new Iterator<Row>() {
+                @Override
+                public boolean hasNext() {
+                    return it.hasNext();
+                }
+
+                @Override
+                public Row next() {
+                    return new Row(it.next(), types, parameters);
+                }
+            };
+        }
+    }
+
+    /**
+     * One row of results.
+     */
+    public final class Row {
+        private final ResultBinding binding;
+        private final Map<String, Query.VarType> types;
+        private final Map<String, ? extends OWLObject> parameters;
+
+        private Row(ResultBinding binding, Map<String, Query.VarType> types, Map<String, ? extends OWLObject> parameters) {
+            this.binding = binding;
+            this.types = types;
+            this.parameters = parameters;
+        }
+
+        /**
+         * @param var name of a variable without the question mark
+         * @return value of the variable, or null if it is not bound
+         */
+        public OWLObject get(String var) {
+            OWLObject parameter = parameters.get(var);
+            if (parameter != null) return parameter;
+            ATermAppl value = binding.getValue(ATermUtils.makeVar(var));
+            if (value == null) return null;
+            if (ATermUtils.isLiteral(value)) return PelletTerms.literal(value, factory);
+            if (ATermUtils.isBnode(value) || ATermUtils.isAnon(value)) {
+                return factory.getOWLAnonymousIndividual(value.getName());
+            }
+            if (value.equals(ATermUtils.TOP)) return factory.getOWLThing();
+            if (value.equals(ATermUtils.BOTTOM)) return factory.getOWLNothing();
+            IRI iri = PelletTerms.iri(value);
+            Query.VarType type = types.get(var);
+            if (type == Query.VarType.CLASS) return factory.getOWLClass(iri);
+            if (type == Query.VarType.PROPERTY) {
+                KnowledgeBase kb = reasoner.getKB();
+                if (kb.isObjectProperty(value)) return factory.getOWLObjectProperty(iri);
+                if (kb.isDatatypeProperty(value)) return factory.getOWLDataProperty(iri);
+                return factory.getOWLAnnotationProperty(iri);
+            }
+            return factory.getOWLNamedIndividual(iri);
+        }
+
+        /**
+         * @return value of the variable as an individual
+         */
+        public OWLNamedIndividual getIndividual(String var) {
+            return (OWLNamedIndividual) get(var);
+        }
+
+        /**
+         * @return value of the variable as a literal
+         */
+        public OWLLiteral getLiteral(String var) {
+            return (OWLLiteral) get(var);
+        }
+
+        @Override
+        public String toString() {
+            return binding.toString();
+        }
+    }
+
+    /**
+     * Snapshot of engine statistics.
+     */
+    public static final class Statistics {
+        public final int prepared;
+        public final long cacheHits;
+        public final long parses;
+        public final long executions;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Statistics(int prepared, long cacheHits, long parses, long executions, LatencyHistogram.Snapshot latency) {
+            this.prepared = prepared;
+            this.cacheHits = cacheHits;
+            this.parses = parses;
+            this.executions = executions;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return "prepared=" + prepared + " cacheHits=" + cacheHits + " parses=" + parses + " executions=" + executions
+                    + " latency: " + latency;
+        }
+    }
+}
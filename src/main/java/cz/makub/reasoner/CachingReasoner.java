@@ -0,0 +1,495 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.BufferingMode;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Reasoner decorator which caches the results of {@link #getInstances}, {@link #getTypes}, {@link #getSameIndividuals},
+ * {@link #getObjectPropertyValues}, {@link #getDataPropertyValues} and {@link #isEntailed(OWLAxiom)}.
+ * <p>
+ * The cache is bounded by the total weight of cached results, where the weight of a result is the number of entities in it.
+ * The least recently used results are evicted first.
+ * <p>
+ * The cache listens to changes of the ontologies managed by the root ontology's manager. Changes of annotations
+ * and declarations do not evict anything, changes of TBox and RBox axioms evict everything. What happens on changes
+ * of ABox axioms depends on the {@link InvalidationPolicy}. For a buffering reasoner the entries are evicted
+ * when the changes are flushed, because the reasoner answers from the old state until then.
+ * <p>
+ * Cached results are shared by all callers, so they are returned as unmodifiable views.
+ */
+@SuppressWarnings("WeakerAccess")
+public class CachingReasoner extends ForwardingReasoner implements OWLOntologyChangeListener {
+
+    /**
+     * What to evict when an ABox axiom is added or removed.
+     */
+    public enum InvalidationPolicy {
+        /**
+         * Evict all cached results.
+         */
+        CONSERVATIVE,
+        /**
+         * Evict results about the individuals in the changed axiom, all {@code getInstances()} results
+         * and all entailment results. Results about other individuals are kept, which is correct only
+         * if the TBox and rules do not propagate class memberships or property values along property assertions.
+         * Otherwise stale results of other individuals are returned, both types and the values from
+         * {@code getObjectPropertyValues()} and {@code getDataPropertyValues()}, e.g. for transitive, inverse
+         * or chained properties, or for SWRL rules deriving property values.
+         */
+        LOCAL
+    }
+
+    private enum Query {INSTANCES, TYPES, SAME_INDIVIDUALS, OBJECT_PROPERTY_VALUES, DATA_PROPERTY_VALUES, ENTAILED}
+
+    private final OWLReasoner delegate;
+    private final long maxWeight;
+    private final InvalidationPolicy policy;
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(1024, 0.75f, true);
+    private final List<OWLOntologyChange> unflushedChanges = new ArrayList<>();
+    private long weight;
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Constructor.
+     *
+     * @param delegate  reasoner answering the queries which are not cached
+     * @param maxWeight maximum total number of entities in cached results
+     * @param policy    what to evict on ABox changes
+     */
+    public CachingReasoner(OWLReasoner delegate, long maxWeight, InvalidationPolicy policy) {
+        this.delegate = delegate;
+        this.maxWeight = maxWeight;
+        this.policy = policy;
+        delegate.getRootOntology().getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    public CachingReasoner(OWLReasoner delegate, long maxWeight) {
+        this(delegate, maxWeight, InvalidationPolicy.CONSERVATIVE);
+    }
+
+    @Override
+    protected OWLReasoner delegate() {
+        return delegate;
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        return cached(new Key(Query.INSTANCES, ce, null, direct), () -> delegate.getInstances(ce, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return cached(new Key(Query.TYPES, ind, null, direct), () -> delegate.getTypes(ind, direct));
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return cached(new Key(Query.SAME_INDIVIDUALS, ind, null, false), () -> delegate.getSameIndividuals(ind));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        return cached(new Key(Query.OBJECT_PROPERTY_VALUES, ind, pe, false), () -> delegate.getObjectPropertyValues(ind, pe));
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return cached(new Key(Query.DATA_PROPERTY_VALUES, ind, pe, false), () -> delegate.getDataPropertyValues(ind, pe));
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        return cached(new Key(Query.ENTAILED, axiom.getAxiomWithoutAnnotations(), null, false), () -> delegate.isEntailed(axiom));
+    }
+
+    @Override
+    public void flush() {
+        delegate.flush();
+        List<OWLOntologyChange> changes;
+        synchronized (cache) {
+            changes = new ArrayList<>(unflushedChanges);
+            unflushedChanges.clear();
+        }
+        invalidate(changes);
+    }
+
+    @Override
+    public void dispose() {
+        delegate.getRootOntology().getOWLOntologyManager().removeOntologyChangeListener(this);
+        invalidateAll();
+        delegate.dispose();
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> ontologies = delegate.getRootOntology().getImportsClosure();
+        List<OWLOntologyChange> relevant = new ArrayList<>();
+        for (OWLOntologyChange change : changes) {
+            if (ontologies.contains(change.getOntology())) relevant.add(change);
+        }
+        if (relevant.isEmpty()) return;
+        if (delegate.getBufferingMode() == BufferingMode.BUFFERING) {
+            synchronized (cache) {
+                unflushedChanges.addAll(relevant);
+            }
+        } else {
+            invalidate(relevant);
+        }
+    }
+
+    /**
+     * Evicts all cached results.
+     */
+    public void invalidateAll() {
+        synchronized (cache) {
+            invalidations += cache.size();
+            cache.clear();
+            weight = 0;
+            generation++;
+        }
+    }
+
+    private void invalidate(List<OWLOntologyChange> changes) {
+        boolean all = false;
+        boolean abox = false;
+        Set<OWLNamedIndividual> individuals = new HashSet<>();
+        for (OWLOntologyChange change : changes) {
+            if (!change.isAxiomChange()) {
+                //imports or ontology annotations changed
+                if (change.isImportChange()) all = true;
+                continue;
+            }
+            OWLAxiom axiom = change.getAxiom();
+            if (!axiom.isLogicalAxiom()) continue;
+            if (axiom.isOfType(AxiomType.ABoxAxiomTypes) && policy == InvalidationPolicy.LOCAL
+                    && !axiom.isOfType(AxiomType.SAME_INDIVIDUAL, AxiomType.DIFFERENT_INDIVIDUALS)) {
+                abox = true;
+                individuals.addAll(axiom.getIndividualsInSignature());
+            } else {
+                all = true;
+            }
+        }
+        if (all) {
+            invalidateAll();
+            return;
+        }
+        if (!abox) return;
+        synchronized (cache) {
+            for (Iterator<Map.Entry<Key, Entry>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, Entry> e = it.next();
+                Key key = e.getKey();
+                boolean affected = key.query == Query.INSTANCES || key.query == Query.ENTAILED || individuals.contains(key.first);
+                if (affected) {
+                    weight -= e.getValue().weight;
+                    invalidations++;
+                    it.remove();
+                }
+            }
+            generation++;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T cached(Key key, Supplier<T> query) {
+        long gen;
+        synchronized (cache) {
+            Entry entry = cache.get(key);
+            if (entry != null) {
+                hits++;
+                return (T) entry.value;
+            }
+            misses++;
+            gen = generation;
+        }
+        T value = unmodifiable(query.get());
+        long w = weightOf(value);
+        synchronized (cache) {
+            //do not cache a result computed while the cache was invalidated
+            if (gen == generation && w <= maxWeight) {
+                Entry previous = cache.put(key, new Entry(value, w));
+                if (previous != null) weight -= previous.weight;
+                weight += w;
+                evict();
+            }
+        }
+        return value;
+    }
+
+    private void evict() {
+        for (Iterator<Entry> it = cache.values().iterator(); weight > maxWeight && it.hasNext(); ) {
+            weight -= it.next().weight;
+            evictions++;
+            it.remove();
+        }
+    }
+
+    /**
+     * @return view of a query result which callers cannot change
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> T unmodifiable(T value) {
+        if (value instanceof NodeSet) return (T) new UnmodifiableNodeSet<>((NodeSet<?>) value);
+        if (value instanceof Node) return (T) new UnmodifiableNode<>((Node<?>) value);
+        if (value instanceof Set) return (T) Collections.unmodifiableSet((Set<?>) value);
+        return value;
+    }
+
+    private static long weightOf(Object value) {
+        if (value instanceof NodeSet) {
+            long w = 1;
+            for (Node<?> node : (NodeSet<?>) value) w += node.getSize();
+            return w;
+        } else if (value instanceof Node) {
+            return 1 + ((Node<?>) value).getSize();
+        } else if (value instanceof Collection) {
+            return 1 + ((Collection<?>) value).size();
+        }
+        return 1;
+    }
+
+    /**
+     * @return current cache statistics
+     */
+    public Statistics getStatistics() {
+        synchronized (cache) {
+            return new Statistics(hits, misses, evictions, invalidations, cache.size(), weight);
+        }
+    }
+
+    /**
+     * Snapshot of cache statistics.
+     */
+    public static final class Statistics {
+        public final long hits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+        public final int entries;
+        public final long weight;
+
+        private Statistics(long hits, long misses, long evictions, long invalidations, int entries, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.entries = entries;
+            this.weight = weight;
+        }
+
+        public double hitRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0.0 : (double) hits / requests;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " misses=" + misses + " hitRate=" + String.format("%.3f", hitRate())
+                    + " evictions=" + evictions + " invalidations=" + invalidations + " entries=" + entries + " weight=" + weight;
+        }
+    }
+
+    private static final class UnmodifiableNode<E extends OWLObject> implements Node<E> {
+        private final Node<E> node;
+
+        private UnmodifiableNode(Node<E> node) {
+            this.node = node;
+        }
+
+        @Override
+        public boolean isTopNode() {
+            return node.isTopNode();
+        }
+
+        @Override
+        public boolean isBottomNode() {
+            return node.isBottomNode();
+        }
+
+        @Override
+        public Set<E> getEntities() {
+            return Collections.unmodifiableSet(node.getEntities());
+        }
+
+        @Override
+        public int getSize() {
+            return node.getSize();
+        }
+
+        @Override
+        public boolean contains(E entity) {
+            return node.contains(entity);
+        }
+
+        @Override
+        public Set<E> getEntitiesMinus(E e) {
+            return Collections.unmodifiableSet(node.getEntitiesMinus(e));
+        }
+
+        @Override
+        public Set<E> getEntitiesMinusTop() {
+            return Collections.unmodifiableSet(node.getEntitiesMinusTop());
+        }
+
+        @Override
+        public Set<E> getEntitiesMinusBottom() {
+            return Collections.unmodifiableSet(node.getEntitiesMinusBottom());
+        }
+
+        @Override
+        public boolean isSingleton() {
+            return node.isSingleton();
+        }
+
+        @Override
+        public E getRepresentativeElement() {
+            return node.getRepresentativeElement();
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            return getEntities().iterator();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof Node && node.getEntities().equals(((Node<?>) o).getEntities());
+        }
+
+        @Override
+        public int hashCode() {
+            return node.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return node.toString();
+        }
+    }
+
+    private static final class UnmodifiableNodeSet<E extends OWLObject> implements NodeSet<E> {
+        private final NodeSet<E> nodeSet;
+        private final Set<Node<E>> nodes;
+
+        private UnmodifiableNodeSet(NodeSet<E> nodeSet) {
+            this.nodeSet = nodeSet;
+            Set<Node<E>> wrapped = new LinkedHashSet<>();
+            for (Node<E> node : nodeSet) wrapped.add(new UnmodifiableNode<>(node));
+            this.nodes = Collections.unmodifiableSet(wrapped);
+        }
+
+        @Override
+        public Set<E> getFlattened() {
+            //a new set in each call
+            return nodeSet.getFlattened();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return nodeSet.isEmpty();
+        }
+
+        @Override
+        public boolean containsEntity(E e) {
+            return nodeSet.containsEntity(e);
+        }
+
+        @Override
+        public boolean isSingleton() {
+            return nodeSet.isSingleton();
+        }
+
+        @Override
+        public boolean isTopSingleton() {
+            return nodeSet.isTopSingleton();
+        }
+
+        @Override
+        public boolean isBottomSingleton() {
+            return nodeSet.isBottomSingleton();
+        }
+
+        @Override
+        public Set<Node<E>> getNodes() {
+            return nodes;
+        }
+
+        @Override
+        public Iterator<Node<E>> iterator() {
+            return nodes.iterator();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o || o instanceof NodeSet && nodes.equals(((NodeSet<?>) o).getNodes());
+        }
+
+        @Override
+        public int hashCode() {
+            return nodes.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return nodeSet.toString();
+        }
+    }
+
+    private static final class Key {
+        private final Query query;
+        private final OWLObject first;
+        private final OWLObject second;
+        private final boolean direct;
+        private final int hash;
+
+        private Key(Query query, OWLObject first, OWLObject second, boolean direct) {
+            this.query = query;
+            this.first = first;
+            this.second = second;
+            this.direct = direct;
+            this.hash = Objects.hash(query, first, second, direct);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return query == key.query && direct == key.direct && first.equals(key.first) && Objects.equals(second, key.second);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    private static final class Entry {
+        private final Object value;
+        private final long weight;
+
+        private Entry(Object value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
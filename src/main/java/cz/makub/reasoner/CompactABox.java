@@ -0,0 +1,616 @@
+package cz.makub.reasoner;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import cz.makub.io.AssertionLineParser;
+import cz.makub.io.IRIDictionary;
+import cz.makub.metrics.LogRateLimiter;
+import org.mindswap.pellet.KnowledgeBase;
+import org.mindswap.pellet.utils.ATermUtils;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compact store of class, object property and data property assertions about named individuals,
+ * taking a fraction of the heap needed by the same assertions as OWL API axioms.
+ * <p>
+ * IRIs and literals are interned in dictionaries which keep each string once as UTF-8 bytes, optionally
+ * in off-heap memory, and map it to a dense integer id. Assertions are kept as columns of ids in int arrays.
+ * Before the first query the assertions are sorted by subject and duplicates are removed, then the assertions
+ * of each individual are found through an offset array (compressed sparse rows). There are no objects
+ * per individual or per assertion.
+ * <p>
+ * The store is queried directly by the methods returning asserted facts, or it is loaded into the knowledge base
+ * of a Pellet reasoner for an ontology holding only the TBox, so that the ABox is never held as OWL API axioms:
+ * <pre>
+ * CompactABox abox = new CompactABox(factory, true);
+ * abox.load(Paths.get("abox.nt.gz"));
+ * PelletReasoner reasoner = abox.createReasoner(tboxOntology);
+ * reasoner.getInstances(personClass, false);
+ * </pre>
+ * Each dictionary holds at most 2GB of strings. Methods are synchronized, the store can be shared by threads.
+ *
+ * @see cz.makub.io.StreamingABoxLoader
+ */
+@SuppressWarnings("WeakerAccess")
+public class CompactABox {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactABox.class);
+
+    private static final char LITERAL_SEPARATOR = '\u0000';
+
+    private final OWLDataFactory factory;
+    private final Dictionary individuals;
+    private final Dictionary vocabulary;
+    private final Dictionary literals;
+    private final Facts classAssertions = new Facts(false);
+    private final Facts objectAssertions = new Facts(true);
+    private final Facts dataAssertions = new Facts(true);
+    private final LogRateLimiter errorLogLimiter = new LogRateLimiter(1000);
+    //instances of each class, built with the other indexes
+    private int[] instanceOffsets = new int[1];
+    private int[] instances = new int[0];
+    private boolean indexed = true;
+
+    /**
+     * @param factory factory for the entities and literals returned by queries
+     * @param offHeap whether to keep the strings of the dictionaries in off-heap memory
+     */
+    public CompactABox(OWLDataFactory factory, boolean offHeap) {
+        this.factory = factory;
+        this.individuals = new Dictionary(offHeap);
+        this.vocabulary = new Dictionary(offHeap);
+        this.literals = new Dictionary(offHeap);
+    }
+
+    public CompactABox(OWLDataFactory factory) {
+        this(factory, false);
+    }
+
+    // loading
+
+    /**
+     * Adds an assertion about named individuals with a named class or property.
+     *
+     * @param axiom axiom
+     * @return false if the axiom is not such an assertion and was not added
+     */
+    public synchronized boolean add(OWLAxiom axiom) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom a = (OWLClassAssertionAxiom) axiom;
+            if (a.getClassExpression().isAnonymous() || a.getIndividual().isAnonymous()) return false;
+            classAssertions.add(individual(a.getIndividual()), -1, vocabulary.intern(a.getClassExpression().asOWLClass().getIRI().toString()));
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom a = (OWLObjectPropertyAssertionAxiom) axiom;
+            if (a.getProperty().isAnonymous() || a.getSubject().isAnonymous() || a.getObject().isAnonymous()) return false;
+            objectAssertions.add(individual(a.getSubject()), vocabulary.intern(a.getProperty().asOWLObjectProperty().getIRI().toString()),
+                    individual(a.getObject()));
+        } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+            OWLDataPropertyAssertionAxiom a = (OWLDataPropertyAssertionAxiom) axiom;
+            if (a.getSubject().isAnonymous()) return false;
+            dataAssertions.add(individual(a.getSubject()), vocabulary.intern(a.getProperty().asOWLDataProperty().getIRI().toString()),
+                    literals.intern(literalKey(a.getObject())));
+        } else {
+            return false;
+        }
+        indexed = false;
+        return true;
+    }
+
+    private int individual(OWLIndividual individual) {
+        return individuals.intern(individual.asOWLNamedIndividual().getIRI().toString());
+    }
+
+    private static String literalKey(OWLLiteral literal) {
+        return literal.getLiteral() + LITERAL_SEPARATOR
+                + (literal.hasLang() ? "@" + literal.getLang() : literal.getDatatype().getIRI().toString());
+    }
+
+    /**
+     * Adds all supported assertions of the ontology and its imports.
+     *
+     * @param ontology ontology
+     * @return number of added assertions
+     */
+    public synchronized int addAll(OWLOntology ontology) {
+        int added = 0;
+        for (OWLAxiom axiom : ontology.getAxioms(AxiomType.CLASS_ASSERTION, Imports.INCLUDED)) if (add(axiom)) added++;
+        for (OWLAxiom axiom : ontology.getAxioms(AxiomType.OBJECT_PROPERTY_ASSERTION, Imports.INCLUDED)) if (add(axiom)) added++;
+        for (OWLAxiom axiom : ontology.getAxioms(AxiomType.DATA_PROPERTY_ASSERTION, Imports.INCLUDED)) if (add(axiom)) added++;
+        return added;
+    }
+
+    /**
+     * Loads assertions from a file in the line format of {@link AssertionLineParser},
+     * files with names ending with <code>.gz</code> are decompressed.
+     *
+     * @param file input file
+     * @return number of added assertions
+     * @throws IOException if the file cannot be read
+     */
+    public long load(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        if (file.getFileName().toString().endsWith(".gz")) {
+            in = new GZIPInputStream(in, 1 << 16);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * Loads assertions from a reader in the line format of {@link AssertionLineParser}, the reader is not closed.
+     * Malformed lines are skipped, they are logged at most once per second.
+     *
+     * @param input input with one assertion per line
+     * @return number of added assertions
+     * @throws IOException if the input cannot be read
+     */
+    public synchronized long load(Reader input) throws IOException {
+        //parsed axioms are dropped right after adding, so the parser remembers just a few entities
+        AssertionLineParser parser = new AssertionLineParser(new IRIDictionary(factory, 1024));
+        BufferedReader reader = new BufferedReader(input, 1 << 16);
+        long lines = 0;
+        long added = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lines++;
+            OWLAxiom axiom;
+            try {
+                axiom = parser.parse(line);
+            } catch (IllegalArgumentException ex) {
+                long suppressed = errorLogLimiter.tryAcquire();
+                if (suppressed >= 0) {
+                    log.warn("line {} skipped: {} ({} more skipped lines not logged)", lines, ex.getMessage(), suppressed);
+                }
+                continue;
+            }
+            if (axiom != null && add(axiom)) added++;
+        }
+        return added;
+    }
+
+    // reasoning
+
+    /**
+     * Adds all assertions to a Pellet knowledge base, declaring the individuals, classes and properties.
+     *
+     * @param kb knowledge base
+     */
+    public synchronized void loadInto(KnowledgeBase kb) {
+        index();
+        ATermAppl[] individualTerms = new ATermAppl[individuals.size()];
+        for (int i = 0; i < individualTerms.length; i++) {
+            individualTerms[i] = ATermUtils.makeTermAppl(individuals.get(i));
+            kb.addIndividual(individualTerms[i]);
+        }
+        ATermAppl[] vocabularyTerms = new ATermAppl[vocabulary.size()];
+        for (int i = 0; i < vocabularyTerms.length; i++) {
+            vocabularyTerms[i] = ATermUtils.makeTermAppl(vocabulary.get(i));
+        }
+        for (int i = 0; i < classAssertions.size; i++) {
+            ATermAppl c = vocabularyTerms[classAssertions.objects[i]];
+            kb.addClass(c);
+            kb.addType(individualTerms[classAssertions.subjects[i]], c);
+        }
+        for (int i = 0; i < objectAssertions.size; i++) {
+            ATermAppl p = vocabularyTerms[objectAssertions.predicates[i]];
+            kb.addObjectProperty(p);
+            kb.addPropertyValue(p, individualTerms[objectAssertions.subjects[i]], individualTerms[objectAssertions.objects[i]]);
+        }
+        for (int i = 0; i < dataAssertions.size; i++) {
+            ATermAppl p = vocabularyTerms[dataAssertions.predicates[i]];
+            kb.addDatatypeProperty(p);
+            kb.addPropertyValue(p, individualTerms[dataAssertions.subjects[i]], literalTerm(dataAssertions.objects[i]));
+        }
+    }
+
+    /**
+     * Creates a Pellet reasoner for an ontology with the assertions of this store added to its knowledge base.
+     * The ontology must not be changed while the reasoner is used, as the reasoner would reload the knowledge base
+     * from the ontology only.
+     *
+     * @param tbox ontology, usually without assertions
+     * @return reasoner
+     */
+    public PelletReasoner createReasoner(OWLOntology tbox) {
+        PelletReasoner reasoner = PelletReasonerFactory.getInstance().createNonBufferingReasoner(tbox);
+        loadInto(reasoner.getKB());
+        return reasoner;
+    }
+
+    private ATermAppl literalTerm(int id) {
+        String key = literals.get(id);
+        int separator = key.lastIndexOf(LITERAL_SEPARATOR);
+        String value = key.substring(0, separator);
+        if (key.charAt(separator + 1) == '@') return ATermUtils.makePlainLiteral(value, key.substring(separator + 2));
+        return ATermUtils.makeTypedLiteral(value, key.substring(separator + 1));
+    }
+
+    private OWLLiteral literal(int id) {
+        String key = literals.get(id);
+        int separator = key.lastIndexOf(LITERAL_SEPARATOR);
+        String value = key.substring(0, separator);
+        if (key.charAt(separator + 1) == '@') return factory.getOWLLiteral(value, key.substring(separator + 2));
+        return factory.getOWLLiteral(value, factory.getOWLDatatype(IRI.create(key.substring(separator + 1))));
+    }
+
+    // queries
+
+    /**
+     * @return asserted instances of the class
+     */
+    public synchronized List<OWLNamedIndividual> getInstances(OWLClass owlClass) {
+        index();
+        int c = vocabulary.find(owlClass.getIRI().toString());
+        if (c < 0 || c + 1 >= instanceOffsets.length) return Collections.emptyList();
+        List<OWLNamedIndividual> result = new ArrayList<>(instanceOffsets[c + 1] - instanceOffsets[c]);
+        for (int i = instanceOffsets[c]; i < instanceOffsets[c + 1]; i++) {
+            result.add(factory.getOWLNamedIndividual(IRI.create(individuals.get(instances[i]))));
+        }
+        return result;
+    }
+
+    /**
+     * @return asserted classes of the individual
+     */
+    public synchronized List<OWLClass> getTypes(OWLNamedIndividual individual) {
+        index();
+        int s = individuals.find(individual.getIRI().toString());
+        if (s < 0) return Collections.emptyList();
+        List<OWLClass> result = new ArrayList<>();
+        for (int i = classAssertions.offsets[s]; i < classAssertions.offsets[s + 1]; i++) {
+            result.add(factory.getOWLClass(IRI.create(vocabulary.get(classAssertions.objects[i]))));
+        }
+        return result;
+    }
+
+    /**
+     * @return asserted values of the object property for the individual
+     */
+    public synchronized List<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual individual, OWLObjectProperty property) {
+        index();
+        int s = individuals.find(individual.getIRI().toString());
+        int p = vocabulary.find(property.getIRI().toString());
+        if (s < 0 || p < 0) return Collections.emptyList();
+        List<OWLNamedIndividual> result = new ArrayList<>();
+        for (int i = objectAssertions.offsets[s]; i < objectAssertions.offsets[s + 1]; i++) {
+            if (objectAssertions.predicates[i] == p) {
+                result.add(factory.getOWLNamedIndividual(IRI.create(individuals.get(objectAssertions.objects[i]))));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return asserted values of the data property for the individual
+     */
+    public synchronized List<OWLLiteral> getDataPropertyValues(OWLNamedIndividual individual, OWLDataProperty property) {
+        index();
+        int s = individuals.find(individual.getIRI().toString());
+        int p = vocabulary.find(property.getIRI().toString());
+        if (s < 0 || p < 0) return Collections.emptyList();
+        List<OWLLiteral> result = new ArrayList<>();
+        for (int i = dataAssertions.offsets[s]; i < dataAssertions.offsets[s + 1]; i++) {
+            if (dataAssertions.predicates[i] == p) result.add(literal(dataAssertions.objects[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @return number of individuals
+     */
+    public synchronized int getIndividualCount() {
+        return individuals.size();
+    }
+
+    /**
+     * @return number of assertions, without duplicates once a query was made
+     */
+    public synchronized long size() {
+        return (long) classAssertions.size + objectAssertions.size + dataAssertions.size;
+    }
+
+    /**
+     * Sorts the assertions and builds the offsets, if assertions were added since the last time.
+     */
+    private void index() {
+        if (indexed) return;
+        int individualCount = individuals.size();
+        int vocabularyCount = vocabulary.size();
+        classAssertions.index(individualCount, vocabularyCount, vocabularyCount);
+        objectAssertions.index(individualCount, vocabularyCount, individualCount);
+        dataAssertions.index(individualCount, vocabularyCount, literals.size());
+        //class assertions are sorted by individual, so the stable sort keeps instances of each class sorted too
+        int[] byClass = sortBy(classAssertions.objects, vocabularyCount, identity(classAssertions.size));
+        instanceOffsets = offsets(classAssertions.objects, byClass, vocabularyCount);
+        instances = new int[byClass.length];
+        for (int i = 0; i < byClass.length; i++) instances[i] = classAssertions.subjects[byClass[i]];
+        indexed = true;
+    }
+
+    private static int[] identity(int n) {
+        int[] positions = new int[n];
+        for (int i = 0; i < n; i++) positions[i] = i;
+        return positions;
+    }
+
+    /**
+     * Stable counting sort of positions by their keys.
+     */
+    private static int[] sortBy(int[] keys, int keyCount, int[] positions) {
+        int[] offsets = new int[keyCount + 1];
+        for (int p : positions) offsets[keys[p] + 1]++;
+        for (int k = 0; k < keyCount; k++) offsets[k + 1] += offsets[k];
+        int[] sorted = new int[positions.length];
+        for (int p : positions) sorted[offsets[keys[p]]++] = p;
+        return sorted;
+    }
+
+    /**
+     * @return offsets of the rows of each key in positions sorted by the keys
+     */
+    private static int[] offsets(int[] keys, int[] sorted, int keyCount) {
+        int[] offsets = new int[keyCount + 1];
+        for (int p : sorted) offsets[keys[p] + 1]++;
+        for (int k = 0; k < keyCount; k++) offsets[k + 1] += offsets[k];
+        return offsets;
+    }
+
+    /**
+     * Assertions as columns of ids, sorted by subject after indexing.
+     */
+    private static final class Facts {
+        private int[] subjects = new int[16];
+        private int[] predicates;
+        private int[] objects = new int[16];
+        private int[] offsets = new int[1];
+        private int size;
+
+        private Facts(boolean withPredicates) {
+            this.predicates = withPredicates ? new int[16] : null;
+        }
+
+        void add(int subject, int predicate, int object) {
+            if (size == subjects.length) {
+                int capacity = size + (size >> 1);
+                subjects = Arrays.copyOf(subjects, capacity);
+                objects = Arrays.copyOf(objects, capacity);
+                if (predicates != null) predicates = Arrays.copyOf(predicates, capacity);
+            }
+            subjects[size] = subject;
+            if (predicates != null) predicates[size] = predicate;
+            objects[size] = object;
+            size++;
+        }
+
+        /**
+         * Sorts by subject, predicate and object by three stable counting sorts, removes duplicates
+         * and trims the arrays.
+         */
+        void index(int subjectCount, int predicateCount, int objectCount) {
+            int[] order = sortBy(objects, objectCount, identity(size));
+            if (predicates != null) order = sortBy(predicates, predicateCount, order);
+            order = sortBy(subjects, subjectCount, order);
+            int[] s = new int[size];
+            int[] p = predicates == null ? null : new int[size];
+            int[] o = new int[size];
+            int n = 0;
+            for (int i : order) {
+                boolean duplicate = n > 0 && s[n - 1] == subjects[i] && o[n - 1] == objects[i]
+                        && (p == null || p[n - 1] == predicates[i]);
+                if (duplicate) continue;
+                s[n] = subjects[i];
+                if (p != null) p[n] = predicates[i];
+                o[n] = objects[i];
+                n++;
+            }
+            subjects = Arrays.copyOf(s, n);
+            predicates = p == null ? null : Arrays.copyOf(p, n);
+            objects = Arrays.copyOf(o, n);
+            size = n;
+            offsets = offsets(subjects, identity(n), subjectCount);
+        }
+
+        long heapBytes() {
+            return 4L * (subjects.length + objects.length + offsets.length + (predicates == null ? 0 : predicates.length));
+        }
+    }
+
+    /**
+     * Dictionary of strings, keeping each string once as UTF-8 bytes in one buffer and mapping it to a dense id
+     * by an open addressing hash table.
+     */
+    public static final class Dictionary {
+        private final boolean offHeap;
+        private ByteBuffer bytes;
+        private int[] starts = new int[1024];
+        private int[] hashes = new int[1024];
+        private int[] table = new int[2048];
+        private int size;
+        private int used;
+
+        public Dictionary(boolean offHeap) {
+            this.offHeap = offHeap;
+            this.bytes = allocate(1 << 16);
+        }
+
+        private ByteBuffer allocate(int capacity) {
+            return offHeap ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+
+        /**
+         * @return id of the string, adding it if it is not in the dictionary yet
+         */
+        public int intern(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            int hash = s.hashCode();
+            int mask = table.length - 1;
+            int slot = mix(hash) & mask;
+            for (int entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+                if (hashes[entry - 1] == hash && equals(entry - 1, utf8)) return entry - 1;
+            }
+            if (used + utf8.length < 0) throw new IllegalStateException("dictionary is full");
+            if (used + utf8.length > bytes.capacity()) {
+                ByteBuffer larger = allocate((int) Math.min(Integer.MAX_VALUE, Math.max(2L * bytes.capacity(), used + utf8.length)));
+                larger.put(0, bytes, 0, used);
+                bytes = larger;
+            }
+            bytes.put(used, utf8);
+            if (size + 1 == starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+                hashes = Arrays.copyOf(hashes, hashes.length * 2);
+            }
+            int id = size++;
+            starts[id] = used;
+            hashes[id] = hash;
+            used += utf8.length;
+            starts[size] = used;
+            table[slot] = id + 1;
+            if (size * 2 > table.length) rehash();
+            return id;
+        }
+
+        /**
+         * @return id of the string, or -1 if it is not in the dictionary
+         */
+        public int find(String s) {
+            byte[] utf8 = s.getBytes(StandardCharsets.UTF_8);
+            int hash = s.hashCode();
+            int mask = table.length - 1;
+            for (int slot = mix(hash) & mask, entry; (entry = table[slot]) != 0; slot = (slot + 1) & mask) {
+                if (hashes[entry - 1] == hash && equals(entry - 1, utf8)) return entry - 1;
+            }
+            return -1;
+        }
+
+        /**
+         * @return string with the id
+         */
+        public String get(int id) {
+            if (id < 0 || id >= size) throw new IllegalArgumentException("no string with id " + id);
+            byte[] utf8 = new byte[starts[id + 1] - starts[id]];
+            bytes.get(starts[id], utf8);
+            return new String(utf8, StandardCharsets.UTF_8);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return bytes used by the strings, on or off heap
+         */
+        public long stringBytes() {
+            return bytes.capacity();
+        }
+
+        /**
+         * @return bytes used by the id arrays and the hash table
+         */
+        public long indexBytes() {
+            return 4L * (starts.length + hashes.length + table.length);
+        }
+
+        public boolean isOffHeap() {
+            return offHeap;
+        }
+
+        private boolean equals(int id, byte[] utf8) {
+            int start = starts[id];
+            if (starts[id + 1] - start != utf8.length) return false;
+            for (int i = 0; i < utf8.length; i++) {
+                if (bytes.get(start + i) != utf8[i]) return false;
+            }
+            return true;
+        }
+
+        private void rehash() {
+            int[] larger = new int[table.length * 2];
+            int mask = larger.length - 1;
+            for (int id = 0; id < size; id++) {
+                int slot = mix(hashes[id]) & mask;
+                while (larger[slot] != 0) slot = (slot + 1) & mask;
+                larger[slot] = id + 1;
+            }
+            table = larger;
+        }
+
+        private static int mix(int hash) {
+            int h = hash * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+
+    /**
+     * @return statistics of the store
+     */
+    public synchronized Statistics getStatistics() {
+        index();
+        long heap = classAssertions.heapBytes() + objectAssertions.heapBytes() + dataAssertions.heapBytes()
+                + 4L * (instanceOffsets.length + instances.length);
+        long offHeap = 0;
+        for (Dictionary d : Arrays.asList(individuals, vocabulary, literals)) {
+            heap += d.indexBytes();
+            if (d.isOffHeap()) {
+                offHeap += d.stringBytes();
+            } else {
+                heap += d.stringBytes();
+            }
+        }
+        return new Statistics(individuals.size(), vocabulary.size(), literals.size(), classAssertions.size,
+                objectAssertions.size, dataAssertions.size, heap, offHeap);
+    }
+
+    /**
+     * Sizes of the store.
+     */
+    public static final class Statistics {
+        public final int individuals;
+        public final int vocabulary;
+        public final int literals;
+        public final int classAssertions;
+        public final int objectPropertyAssertions;
+        public final int dataPropertyAssertions;
+        public final long heapBytes;
+        public final long offHeapBytes;
+
+        private Statistics(int individuals, int vocabulary, int literals, int classAssertions, int objectPropertyAssertions,
+                           int dataPropertyAssertions, long heapBytes, long offHeapBytes) {
+            this.individuals = individuals;
+            this.vocabulary = vocabulary;
+            this.literals = literals;
+            this.classAssertions = classAssertions;
+            this.objectPropertyAssertions = objectPropertyAssertions;
+            this.dataPropertyAssertions = dataPropertyAssertions;
+            this.heapBytes = heapBytes;
+            this.offHeapBytes = offHeapBytes;
+        }
+
+        @Override
+        public String toString() {
+            return "individuals=" + individuals + " vocabulary=" + vocabulary + " literals=" + literals
+                    + " classAssertions=" + classAssertions + " objectPropertyAssertions=" + objectPropertyAssertions
+                    + " dataPropertyAssertions=" + dataPropertyAssertions
+                    + " heapKB=" + heapBytes / 1024 + " offHeapKB=" + offHeapBytes / 1024;
+        }
+    }
+}
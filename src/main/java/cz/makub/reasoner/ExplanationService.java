@@ -0,0 +1,399 @@
+package cz.makub.reasoner;
+
+import com.clarkparsia.owlapi.explanation.DefaultExplanationGenerator;
+import com.clarkparsia.owlapi.explanation.util.ExplanationProgressMonitor;
+import cz.makub.metrics.LatencyHistogram;
+import cz.makub.metrics.Phase;
+import cz.makub.metrics.PhaseMetrics;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.ReasonerInternalException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import uk.ac.manchester.cs.owl.explanation.ordering.ExplanationOrdererImpl;
+import uk.ac.manchester.cs.owl.explanation.ordering.ExplanationTree;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Explains entailed axioms, i.e. finds minimal sets of axioms from which they follow.
+ * <p>
+ * Explaining over the whole ontology is slow, because the explanation generator creates many reasoners
+ * over subsets of the ontology. The service first extracts a locality module for the signature of the explained axiom
+ * by {@link ModuleExtractor}. The module has the same justifications for the axiom and is usually a small part
+ * of the ontology, so all the reasoning is done on it.
+ * <p>
+ * Each axiom is explained in its own task on a thread pool, with its own module ontology and reasoners,
+ * so a batch of axioms is explained in parallel. Each request has a time budget, when it runs out the explanations
+ * found so far are returned as a partial result and the task is cancelled.
+ * Complete results are cached per axiom until the next logical change of the ontology.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (ExplanationService service = new ExplanationService(ontology, PelletReasonerFactory.getInstance(), 4)) {
+ *     ExplanationService.Explanation explanation = service.explain(axiom, 10_000);
+ * }
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ExplanationService implements OWLOntologyChangeListener, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ExplanationService.class);
+
+    private final OWLOntology ontology;
+    private final OWLReasonerFactory reasonerFactory;
+    private final ModuleExtractor modules;
+    private final ExecutorService executor;
+    private final ConcurrentMap<OWLAxiom, Explanation> cache = new ConcurrentHashMap<>();
+    //incremented on each change, results computed before a change are not cached
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong partialResults = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param ontology        ontology
+     * @param reasonerFactory factory for the reasoners used by the explanation generator
+     * @param threads         number of axioms explained in parallel
+     */
+    public ExplanationService(OWLOntology ontology, OWLReasonerFactory reasonerFactory, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.ontology = ontology;
+        this.reasonerFactory = reasonerFactory;
+        this.modules = new ModuleExtractor(ontology);
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "explanation-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * Finds one explanation of an axiom.
+     *
+     * @param axiom        entailed axiom
+     * @param budgetMillis time budget in milliseconds, 0 means no limit
+     * @return explanation, empty if the axiom is not entailed
+     */
+    public Explanation explain(OWLAxiom axiom, long budgetMillis) {
+        return explain(axiom, 1, budgetMillis);
+    }
+
+    /**
+     * Finds explanations of an axiom.
+     *
+     * @param axiom           entailed axiom
+     * @param maxExplanations maximum number of explanations
+     * @param budgetMillis    time budget in milliseconds, 0 means no limit
+     * @return explanations, empty if the axiom is not entailed
+     */
+    public Explanation explain(OWLAxiom axiom, int maxExplanations, long budgetMillis) {
+        return explainAll(Collections.singletonList(axiom), maxExplanations, budgetMillis).get(0);
+    }
+
+    /**
+     * Explains axioms in parallel.
+     *
+     * @param axioms          entailed axioms
+     * @param maxExplanations maximum number of explanations for each axiom
+     * @param budgetMillis    time budget for the whole batch in milliseconds, 0 means no limit
+     * @return explanations in the order of the axioms
+     */
+    public List<Explanation> explainAll(Collection<? extends OWLAxiom> axioms, int maxExplanations, long budgetMillis) {
+        if (maxExplanations < 1) throw new IllegalArgumentException("maxExplanations must be positive: " + maxExplanations);
+        if (budgetMillis < 0) throw new IllegalArgumentException("budgetMillis must not be negative: " + budgetMillis);
+        PhaseMetrics.Timer timer = PhaseMetrics.instance.start(Phase.EXPLANATION, "explain", ontology);
+        try {
+            return explainBatch(axioms, maxExplanations, budgetMillis);
+        } catch (RuntimeException ex) {
+            timer.failed();
+            throw ex;
+        } finally {
+            timer.close();
+        }
+    }
+
+    private List<Explanation> explainBatch(Collection<? extends OWLAxiom> axioms, int maxExplanations, long budgetMillis) {
+        long start = System.nanoTime();
+        long deadline = (budgetMillis == 0) ? Long.MAX_VALUE : start + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+        List<Explanation> results = new ArrayList<>(axioms.size());
+        List<Task> tasks = new ArrayList<>(axioms.size());
+        for (OWLAxiom axiom : axioms) {
+            requests.incrementAndGet();
+            OWLAxiom key = axiom.getAxiomWithoutAnnotations();
+            Explanation cached = cache.get(key);
+            if (cached != null && cached.covers(maxExplanations)) {
+                cacheHits.incrementAndGet();
+                results.add(cached.limit(maxExplanations));
+                tasks.add(null);
+            } else {
+                Task task = new Task(key, maxExplanations, deadline, generation.get());
+                task.future = executor.submit(task);
+                results.add(null);
+                tasks.add(task);
+            }
+        }
+        boolean interrupted = false;
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task == null) continue;
+            Explanation result;
+            try {
+                if (interrupted) throw new InterruptedException();
+                result = (deadline == Long.MAX_VALUE) ? task.future.get()
+                        : task.future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException | InterruptedException ex) {
+                if (ex instanceof InterruptedException) interrupted = true;
+                task.cancel();
+                result = task.partialResult();
+                partialResults.incrementAndGet();
+            } catch (ExecutionException ex) {
+                if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+                throw new ReasonerInternalException(ex.getCause());
+            }
+            results.set(i, result);
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+        latency.record(System.nanoTime() - start);
+        return results;
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isImportChange()
+                    || change.isAxiomChange() && change.getAxiom().isLogicalAxiom())) {
+                generation.incrementAndGet();
+                cache.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the explaining threads and listening to ontology changes.
+     */
+    @Override
+    public void close() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        modules.dispose();
+        executor.shutdownNow();
+        cache.clear();
+    }
+
+    /**
+     * @return statistics of requests
+     */
+    public Statistics getStatistics() {
+        return new Statistics(requests.get(), cacheHits.get(), partialResults.get(), cache.size(), latency.snapshot());
+    }
+
+    /**
+     * Explanation of one axiom, runs in a pool thread and is also its own progress monitor.
+     */
+    private class Task implements Callable<Explanation>, ExplanationProgressMonitor {
+        private final OWLAxiom axiom;
+        private final int maxExplanations;
+        private final long deadline;
+        private final long startGeneration;
+        private final List<Set<OWLAxiom>> found = new ArrayList<>();
+        private final long start = System.nanoTime();
+        private volatile boolean cancelled;
+        private volatile OWLReasoner reasoner;
+        private volatile int moduleSize;
+        private Future<Explanation> future;
+
+        private Task(OWLAxiom axiom, int maxExplanations, long deadline, long startGeneration) {
+            this.axiom = axiom;
+            this.maxExplanations = maxExplanations;
+            this.deadline = deadline;
+            this.startGeneration = startGeneration;
+        }
+
+        @Override
+        public Explanation call() {
+            OWLOntology module = modules.extractAsOntology(axiom.getSignature());
+            moduleSize = module.getAxiomCount();
+            log.debug("explaining {} in a module of {} axioms", axiom, moduleSize);
+            if (isCancelled()) return partialResult();
+            OWLReasoner moduleReasoner = reasonerFactory.createNonBufferingReasoner(module);
+            reasoner = moduleReasoner;
+            try {
+                DefaultExplanationGenerator generator = new DefaultExplanationGenerator(
+                        module.getOWLOntologyManager(), reasonerFactory, module, moduleReasoner, this);
+                Set<Set<OWLAxiom>> explanations = generator.getExplanations(axiom, maxExplanations);
+                boolean complete = !isCancelled();
+                Explanation result = new Explanation(axiom, new ArrayList<>(explanations), maxExplanations, complete, moduleSize,
+                        ontology.getAxiomCount(), System.nanoTime() - start);
+                if (complete && generation.get() == startGeneration) {
+                    cache.put(axiom, result);
+                }
+                return result;
+            } finally {
+                reasoner = null;
+                moduleReasoner.dispose();
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+            future.cancel(true);
+            OWLReasoner r = reasoner;
+            if (r != null) {
+                try {
+                    r.interrupt();
+                } catch (RuntimeException ex) {
+                    log.debug("reasoner interrupt failed", ex);
+                }
+            }
+        }
+
+        private Explanation partialResult() {
+            List<Set<OWLAxiom>> copy;
+            synchronized (found) {
+                copy = new ArrayList<>(found);
+            }
+            return new Explanation(axiom, copy, maxExplanations, false, moduleSize, ontology.getAxiomCount(), System.nanoTime() - start);
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled || System.nanoTime() - deadline > 0;
+        }
+
+        @Override
+        public void foundExplanation(Set<OWLAxiom> explanation) {
+            synchronized (found) {
+                found.add(explanation);
+            }
+        }
+
+        @Override
+        public void foundAllExplanations() {
+        }
+    }
+
+    /**
+     * Explanations of one axiom.
+     */
+    public static final class Explanation {
+        private final OWLAxiom axiom;
+        private final List<Set<OWLAxiom>> justifications;
+        private final int requested;
+        private final boolean complete;
+        private final int moduleSize;
+        private final int ontologySize;
+        private final long nanos;
+
+        private Explanation(OWLAxiom axiom, List<Set<OWLAxiom>> justifications, int requested, boolean complete,
+                            int moduleSize, int ontologySize, long nanos) {
+            this.axiom = axiom;
+            this.justifications = Collections.unmodifiableList(justifications);
+            this.requested = requested;
+            this.complete = complete;
+            this.moduleSize = moduleSize;
+            this.ontologySize = ontologySize;
+            this.nanos = nanos;
+        }
+
+        /**
+         * @return true if this result answers a request for the given number of explanations
+         */
+        private boolean covers(int maxExplanations) {
+            //fewer explanations than requested means that there are no more
+            return complete && (maxExplanations <= requested || justifications.size() < requested);
+        }
+
+        private Explanation limit(int maxExplanations) {
+            if (justifications.size() <= maxExplanations) return this;
+            return new Explanation(axiom, new ArrayList<>(justifications.subList(0, maxExplanations)), maxExplanations,
+                    true, moduleSize, ontologySize, nanos);
+        }
+
+        public OWLAxiom getAxiom() {
+            return axiom;
+        }
+
+        /**
+         * @return sets of axioms, each of them is a minimal set from which the axiom follows
+         */
+        public List<Set<OWLAxiom>> getJustifications() {
+            return justifications;
+        }
+
+        /**
+         * @return true if no explanation was found
+         */
+        public boolean isEmpty() {
+            return justifications.isEmpty();
+        }
+
+        /**
+         * @return false if the time budget ran out before all requested explanations were found
+         */
+        public boolean isComplete() {
+            return complete;
+        }
+
+        /**
+         * @return number of axioms in the module used for explaining
+         */
+        public int getModuleSize() {
+            return moduleSize;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * Orders a justification into a tree for displaying.
+         *
+         * @param index index of the justification
+         * @return tree with the explained axiom in the root
+         */
+        public ExplanationTree getTree(int index) {
+            return new ExplanationOrdererImpl(OWLManager.createOWLOntologyManager()).getOrderedExplanation(axiom, justifications.get(index));
+        }
+
+        @Override
+        public String toString() {
+            return "explanations=" + justifications.size() + " complete=" + complete + " module=" + moduleSize
+                    + "/" + ontologySize + " ms=" + nanos / 1_000_000;
+        }
+    }
+
+    /**
+     * Snapshot of service statistics.
+     */
+    public static final class Statistics {
+        public final long requests;
+        public final long cacheHits;
+        public final long partialResults;
+        public final int cachedAxioms;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Statistics(long requests, long cacheHits, long partialResults, int cachedAxioms, LatencyHistogram.Snapshot latency) {
+            this.requests = requests;
+            this.cacheHits = cacheHits;
+            this.partialResults = partialResults;
+            this.cachedAxioms = cachedAxioms;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + " cacheHits=" + cacheHits + " partial=" + partialResults
+                    + " cached=" + cachedAxioms + " latency: " + latency;
+        }
+    }
+}
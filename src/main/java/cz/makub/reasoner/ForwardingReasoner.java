@@ -0,0 +1,270 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.util.Version;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An OWLReasoner which forwards all calls to another reasoner. Subclasses override the methods
+ * they want to decorate, in the same way as Guava's forwarding collections.
+ */
+public abstract class ForwardingReasoner implements OWLReasoner {
+
+    /**
+     * @return the reasoner to which calls are forwarded
+     */
+    protected abstract OWLReasoner delegate();
+
+    @Override
+    public String getReasonerName() {
+        return delegate().getReasonerName();
+    }
+
+    @Override
+    public Version getReasonerVersion() {
+        return delegate().getReasonerVersion();
+    }
+
+    @Override
+    public BufferingMode getBufferingMode() {
+        return delegate().getBufferingMode();
+    }
+
+    @Override
+    public void flush() {
+        delegate().flush();
+    }
+
+    @Override
+    public List<OWLOntologyChange> getPendingChanges() {
+        return delegate().getPendingChanges();
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomAdditions() {
+        return delegate().getPendingAxiomAdditions();
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomRemovals() {
+        return delegate().getPendingAxiomRemovals();
+    }
+
+    @Override
+    public OWLOntology getRootOntology() {
+        return delegate().getRootOntology();
+    }
+
+    @Override
+    public void interrupt() {
+        delegate().interrupt();
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        delegate().precomputeInferences(inferenceTypes);
+    }
+
+    @Override
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return delegate().isPrecomputed(inferenceType);
+    }
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        return delegate().getPrecomputableInferenceTypes();
+    }
+
+    @Override
+    public boolean isConsistent() {
+        return delegate().isConsistent();
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression ce) {
+        return delegate().isSatisfiable(ce);
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        return delegate().getUnsatisfiableClasses();
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        return delegate().isEntailed(axiom);
+    }
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        return delegate().isEntailed(axioms);
+    }
+
+    @Override
+    public boolean isEntailmentCheckingSupported(AxiomType<?> axiomType) {
+        return delegate().isEntailmentCheckingSupported(axiomType);
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        return delegate().getTopClassNode();
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        return delegate().getBottomClassNode();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        return delegate().getSubClasses(ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        return delegate().getSuperClasses(ce, direct);
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        return delegate().getEquivalentClasses(ce);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        return delegate().getDisjointClasses(ce);
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        return delegate().getTopObjectPropertyNode();
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        return delegate().getBottomObjectPropertyNode();
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return delegate().getSubObjectProperties(pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return delegate().getSuperObjectProperties(pe, direct);
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        return delegate().getEquivalentObjectProperties(pe);
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        return delegate().getDisjointObjectProperties(pe);
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        return delegate().getInverseObjectProperties(pe);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        return delegate().getObjectPropertyDomains(pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        return delegate().getObjectPropertyRanges(pe, direct);
+    }
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        return delegate().getTopDataPropertyNode();
+    }
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        return delegate().getBottomDataPropertyNode();
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        return delegate().getSubDataProperties(pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        return delegate().getSuperDataProperties(pe, direct);
+    }
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        return delegate().getEquivalentDataProperties(pe);
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        return delegate().getDisjointDataProperties(pe);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        return delegate().getDataPropertyDomains(pe, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return delegate().getTypes(ind, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        return delegate().getInstances(ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        return delegate().getObjectPropertyValues(ind, pe);
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return delegate().getDataPropertyValues(ind, pe);
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return delegate().getSameIndividuals(ind);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        return delegate().getDifferentIndividuals(ind);
+    }
+
+    @Override
+    public long getTimeOut() {
+        return delegate().getTimeOut();
+    }
+
+    @Override
+    public FreshEntityPolicy getFreshEntityPolicy() {
+        return delegate().getFreshEntityPolicy();
+    }
+
+    @Override
+    public IndividualNodeSetPolicy getIndividualNodeSetPolicy() {
+        return delegate().getIndividualNodeSetPolicy();
+    }
+
+    @Override
+    public void dispose() {
+        delegate().dispose();
+    }
+}
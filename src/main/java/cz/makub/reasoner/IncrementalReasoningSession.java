@@ -0,0 +1,296 @@
+package cz.makub.reasoner;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import org.mindswap.pellet.PelletOptions;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Reasoning over an ontology whose ABox keeps changing.
+ * <p>
+ * Added and removed axioms are collected into a batch, which is applied to the ontology and to the reasoner
+ * at once when it reaches the maximum size, or when its oldest change is older than the maximum delay.
+ * Queries see the state after the last flush, call {@link #flush()} to see all changes made so far.
+ * <p>
+ * The reasoner is a buffering Pellet reasoner with incremental consistency checking switched on,
+ * so flushing ABox changes updates the completion graph instead of reloading the whole knowledge base.
+ * Pellet falls back to a full reload when the ontology is outside the expressivity supported by the incremental
+ * algorithm, or when a TBox axiom changes. On top of it is a {@link CachingReasoner}, by default with the
+ * {@link CachingReasoner.InvalidationPolicy#CONSERVATIVE} policy, so a flush evicts all cached answers.
+ * The {@link CachingReasoner.InvalidationPolicy#LOCAL} policy evicts only the cached answers about the changed
+ * individuals and the answers of getInstances(), it may be chosen only for ontologies in which class memberships
+ * do not propagate along property assertions, i.e. without SWRL rules, transitive properties, property chains,
+ * domains and ranges, otherwise it returns stale answers after a flush.
+ * <p>
+ * Pellet's incremental options are global static fields, they are switched on for all Pellet reasoners in the JVM
+ * created while any session is open, and restored to their previous values when the last session is closed.
+ * Pellet reasoners are not thread-safe, so queries and flushes are serialized by a lock; use {@link #query(Function)}
+ * when the session is shared by threads.
+ */
+@SuppressWarnings("WeakerAccess")
+public class IncrementalReasoningSession implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(IncrementalReasoningSession.class);
+
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 500;
+
+    private final OWLOntology ontology;
+    private final PelletReasoner pellet;
+    private final CachingReasoner reasoner;
+    private final int maxBatchSize;
+    private final long maxDelayNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ScheduledExecutorService timer;
+    private boolean closed;
+    private final Object batchLock = new Object();
+    private List<OWLOntologyChange> batch = new ArrayList<>();
+    private long batchStart;
+    private long flushes;
+    private long flushedChanges;
+    private long lastFlushNanos;
+
+    private static int openSessions;
+    private static boolean[] savedOptions;
+
+    /**
+     * @param ontology       ontology, its ABox is changed through this session
+     * @param maxBatchSize   number of changes which triggers a flush
+     * @param maxDelayMillis maximum time a change waits for a flush, 0 means no time-based flush
+     * @param cacheWeight    maximum weight of cached query results, see {@link CachingReasoner}
+     * @param policy         what a flush evicts from the cache, {@link CachingReasoner.InvalidationPolicy#LOCAL}
+     *                       only for ontologies in which class memberships do not propagate along property assertions
+     */
+    public IncrementalReasoningSession(OWLOntology ontology, int maxBatchSize, long maxDelayMillis, long cacheWeight,
+                                       CachingReasoner.InvalidationPolicy policy) {
+        if (maxBatchSize < 1) throw new IllegalArgumentException("maxBatchSize must be positive: " + maxBatchSize);
+        openSession();
+        this.ontology = ontology;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+        try {
+            this.pellet = PelletReasonerFactory.getInstance().createReasoner(ontology, new SimpleConfiguration());
+            this.reasoner = new CachingReasoner(pellet, cacheWeight, policy);
+            pellet.isConsistent();
+        } catch (RuntimeException ex) {
+            closeSession();
+            throw ex;
+        }
+        if (maxDelayMillis > 0) {
+            timer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "incremental-reasoning-flush");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1, maxDelayMillis / 2);
+            timer.scheduleWithFixedDelay(this::flushIfDue, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            timer = null;
+        }
+    }
+
+    /**
+     * Session with the {@link CachingReasoner.InvalidationPolicy#CONSERVATIVE} cache policy.
+     */
+    public IncrementalReasoningSession(OWLOntology ontology, int maxBatchSize, long maxDelayMillis, long cacheWeight) {
+        this(ontology, maxBatchSize, maxDelayMillis, cacheWeight, CachingReasoner.InvalidationPolicy.CONSERVATIVE);
+    }
+
+    public IncrementalReasoningSession(OWLOntology ontology) {
+        this(ontology, DEFAULT_MAX_BATCH_SIZE, DEFAULT_MAX_DELAY_MILLIS, 1_000_000);
+    }
+
+    /**
+     * Switches on Pellet's incremental consistency checking and incremental deletion for all Pellet reasoners
+     * in the JVM created from now on, the previous values are not restored.
+     * Incremental deletion needs dependency tracing, without it removed assertions stay in the completion graph.
+     */
+    public static synchronized void enableIncrementalReasoning() {
+        if (!PelletOptions.USE_INCREMENTAL_CONSISTENCY) {
+            log.info("switching on Pellet incremental consistency checking");
+        }
+        PelletOptions.USE_COMPLETION_QUEUE = true;
+        PelletOptions.USE_INCREMENTAL_CONSISTENCY = true;
+        PelletOptions.USE_INCREMENTAL_DELETION = true;
+        PelletOptions.USE_TRACING = true;
+    }
+
+    private static synchronized void openSession() {
+        if (openSessions++ == 0) {
+            savedOptions = new boolean[]{PelletOptions.USE_COMPLETION_QUEUE, PelletOptions.USE_INCREMENTAL_CONSISTENCY,
+                    PelletOptions.USE_INCREMENTAL_DELETION, PelletOptions.USE_TRACING};
+        }
+        enableIncrementalReasoning();
+    }
+
+    private static synchronized void closeSession() {
+        if (--openSessions == 0) {
+            PelletOptions.USE_COMPLETION_QUEUE = savedOptions[0];
+            PelletOptions.USE_INCREMENTAL_CONSISTENCY = savedOptions[1];
+            PelletOptions.USE_INCREMENTAL_DELETION = savedOptions[2];
+            PelletOptions.USE_TRACING = savedOptions[3];
+            savedOptions = null;
+            log.debug("restored Pellet incremental options");
+        }
+    }
+
+    /**
+     * Adds an axiom in the next flush.
+     */
+    public void add(OWLAxiom axiom) {
+        enqueue(new AddAxiom(ontology, axiom));
+    }
+
+    /**
+     * Removes an axiom in the next flush.
+     */
+    public void remove(OWLAxiom axiom) {
+        enqueue(new RemoveAxiom(ontology, axiom));
+    }
+
+    private void enqueue(OWLOntologyChange change) {
+        boolean full;
+        synchronized (batchLock) {
+            if (batch.isEmpty()) batchStart = System.nanoTime();
+            batch.add(change);
+            full = batch.size() >= maxBatchSize;
+        }
+        //the thread which filled the batch pays for the flush, which slows down too fast producers
+        if (full) flush();
+    }
+
+    private void flushIfDue() {
+        boolean due;
+        synchronized (batchLock) {
+            due = !batch.isEmpty() && System.nanoTime() - batchStart >= maxDelayNanos;
+        }
+        if (due) {
+            try {
+                flush();
+            } catch (RuntimeException ex) {
+                log.error("flush of incremental changes failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Applies all collected changes to the ontology and updates the reasoner.
+     */
+    public void flush() {
+        lock.lock();
+        try {
+            List<OWLOntologyChange> changes;
+            synchronized (batchLock) {
+                if (batch.isEmpty()) return;
+                changes = batch;
+                batch = new ArrayList<>();
+            }
+            long start = System.nanoTime();
+            ontology.getOWLOntologyManager().applyChanges(changes);
+            reasoner.flush();
+            //let Pellet update consistency now, not in the first query
+            pellet.isConsistent();
+            lastFlushNanos = System.nanoTime() - start;
+            flushes++;
+            flushedChanges += changes.size();
+            log.debug("flushed {} changes in {} ms", changes.size(), lastFlushNanos / 1_000_000);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs queries on the reasoner while no flush can happen.
+     *
+     * @param query function asking the reasoner
+     * @return result of the function
+     */
+    public <T> T query(Function<OWLReasoner, T> query) {
+        lock.lock();
+        try {
+            return query.apply(reasoner);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the reasoner, for use by a single thread
+     */
+    public OWLReasoner getReasoner() {
+        return reasoner;
+    }
+
+    /**
+     * @return number of changes waiting for a flush
+     */
+    public int getPendingCount() {
+        synchronized (batchLock) {
+            return batch.size();
+        }
+    }
+
+    @Override
+    public void close() {
+        synchronized (batchLock) {
+            if (closed) return;
+            closed = true;
+        }
+        if (timer != null) timer.shutdownNow();
+        try {
+            flush();
+            reasoner.dispose();
+        } finally {
+            closeSession();
+        }
+    }
+
+    /**
+     * @return statistics of flushes and of the query cache
+     */
+    public Statistics getStatistics() {
+        lock.lock();
+        try {
+            return new Statistics(flushes, flushedChanges, lastFlushNanos, getPendingCount(), reasoner.getStatistics());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Snapshot of session statistics.
+     */
+    public static final class Statistics {
+        public final long flushes;
+        public final long flushedChanges;
+        public final long lastFlushNanos;
+        public final int pending;
+        public final CachingReasoner.Statistics cache;
+
+        private Statistics(long flushes, long flushedChanges, long lastFlushNanos, int pending, CachingReasoner.Statistics cache) {
+            this.flushes = flushes;
+            this.flushedChanges = flushedChanges;
+            this.lastFlushNanos = lastFlushNanos;
+            this.pending = pending;
+            this.cache = cache;
+        }
+
+        @Override
+        public String toString() {
+            return "flushes=" + flushes + " flushedChanges=" + flushedChanges + " lastFlushMs=" + lastFlushNanos / 1_000_000
+                    + " pending=" + pending + " cache: " + cache;
+        }
+    }
+}
@@ -0,0 +1,317 @@
+package cz.makub.reasoner;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import org.mindswap.pellet.KnowledgeBase;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.AxiomAnnotations;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * All class and property assertions of named individuals, both asserted and inferred, computed for the whole ABox at once.
+ * <p>
+ * Instead of asking the reasoner for the values of each property of each individual, the instances are retrieved
+ * once per class and, for Pellet, all values of a property are retrieved for all subjects in a single call.
+ * The facts are then stored by subject, so listing all facts about an individual is a plain map lookup.
+ * <p>
+ * The materialized facts are a snapshot, they are not updated when the ontology changes.
+ * <p>
+ * When the facts of the whole ABox do not fit into memory, {@link #iterate(OWLOntology, OWLReasoner)} computes
+ * the same facts one individual at a time, at the cost of asking the reasoner for each individual.
+ */
+@SuppressWarnings("WeakerAccess")
+public class MaterializedABox {
+
+    /**
+     * A class or property assertion about an individual, either asserted in the ontology or inferred by the reasoner.
+     */
+    public static final class Fact {
+        private final OWLIndividualAxiom axiom;
+        private final boolean asserted;
+
+        public Fact(OWLIndividualAxiom axiom, boolean asserted) {
+            this.axiom = axiom;
+            this.asserted = asserted;
+        }
+
+        /**
+         * @return OWLClassAssertionAxiom, OWLObjectPropertyAssertionAxiom or OWLDataPropertyAssertionAxiom
+         */
+        public OWLIndividualAxiom getAxiom() {
+            return axiom;
+        }
+
+        public boolean isAsserted() {
+            return asserted;
+        }
+
+        @Override
+        public String toString() {
+            return (asserted ? "asserted " : "inferred ") + axiom;
+        }
+    }
+
+    /**
+     * Facts about one individual.
+     */
+    public static final class IndividualFacts {
+        private final List<Fact> classAssertions = new ArrayList<>(4);
+        private final List<Fact> objectPropertyAssertions = new ArrayList<>(4);
+        private final List<Fact> dataPropertyAssertions = new ArrayList<>(4);
+
+        public List<Fact> getClassAssertions() {
+            return Collections.unmodifiableList(classAssertions);
+        }
+
+        public List<Fact> getObjectPropertyAssertions() {
+            return Collections.unmodifiableList(objectPropertyAssertions);
+        }
+
+        public List<Fact> getDataPropertyAssertions() {
+            return Collections.unmodifiableList(dataPropertyAssertions);
+        }
+    }
+
+    private static final IndividualFacts NO_FACTS = new IndividualFacts();
+
+    private final Map<OWLNamedIndividual, IndividualFacts> facts;
+    private final int factCount;
+
+    private MaterializedABox(Map<OWLNamedIndividual, IndividualFacts> facts, int factCount) {
+        this.facts = facts;
+        this.factCount = factCount;
+    }
+
+    /**
+     * @return individuals having at least one fact
+     */
+    public Set<OWLNamedIndividual> getIndividuals() {
+        return Collections.unmodifiableSet(facts.keySet());
+    }
+
+    /**
+     * @param individual subject
+     * @return facts about the individual, empty if there are none
+     */
+    public IndividualFacts getFacts(OWLNamedIndividual individual) {
+        IndividualFacts f = facts.get(individual);
+        return (f == null) ? NO_FACTS : f;
+    }
+
+    /**
+     * @return number of all facts
+     */
+    public int size() {
+        return factCount;
+    }
+
+    /**
+     * Computes all class assertions of named classes and all object and data property assertions of named properties
+     * for all named individuals in the ontology signature (including imports).
+     *
+     * @param ontology ontology used for distinguishing asserted and inferred facts
+     * @param reasoner reasoner for the ontology
+     * @return materialized facts
+     */
+    public static MaterializedABox materialize(OWLOntology ontology, OWLReasoner reasoner) {
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        Builder builder = new Builder(ontology);
+        reasoner.precomputeInferences(InferenceType.CLASS_ASSERTIONS);
+
+        //class assertions, one reasoner call per class
+        OWLClass thing = factory.getOWLThing();
+        for (OWLNamedIndividual ind : ontology.getIndividualsInSignature(Imports.INCLUDED)) {
+            builder.add(factory.getOWLClassAssertionAxiom(thing, ind));
+        }
+        for (OWLClass owlClass : ontology.getClassesInSignature(Imports.INCLUDED)) {
+            if (owlClass.isOWLThing() || owlClass.isOWLNothing()) continue;
+            for (OWLNamedIndividual ind : reasoner.getInstances(owlClass, false).getFlattened()) {
+                builder.add(factory.getOWLClassAssertionAxiom(owlClass, ind));
+            }
+        }
+
+        if (reasoner instanceof PelletReasoner) {
+            //property assertions, one call per property returning values for all subjects
+            KnowledgeBase kb = ((PelletReasoner) reasoner).getKB();
+            for (OWLObjectProperty property : ontology.getObjectPropertiesInSignature(Imports.INCLUDED)) {
+                if (property.isOWLTopObjectProperty() || property.isOWLBottomObjectProperty()) continue;
+                for (Map.Entry<ATermAppl, List<ATermAppl>> entry : kb.getPropertyValues(PelletTerms.term(property)).entrySet()) {
+                    if (!PelletTerms.isNamed(entry.getKey())) continue;
+                    OWLNamedIndividual subject = factory.getOWLNamedIndividual(PelletTerms.iri(entry.getKey()));
+                    for (ATermAppl value : entry.getValue()) {
+                        if (!PelletTerms.isNamed(value)) continue;
+                        OWLNamedIndividual object = factory.getOWLNamedIndividual(PelletTerms.iri(value));
+                        builder.add(factory.getOWLObjectPropertyAssertionAxiom(property, subject, object));
+                    }
+                }
+            }
+            for (OWLDataProperty property : ontology.getDataPropertiesInSignature(Imports.INCLUDED)) {
+                if (property.isOWLTopDataProperty() || property.isOWLBottomDataProperty()) continue;
+                for (Map.Entry<ATermAppl, List<ATermAppl>> entry : kb.getPropertyValues(PelletTerms.term(property)).entrySet()) {
+                    if (!PelletTerms.isNamed(entry.getKey())) continue;
+                    OWLNamedIndividual subject = factory.getOWLNamedIndividual(PelletTerms.iri(entry.getKey()));
+                    for (ATermAppl value : entry.getValue()) {
+                        builder.add(factory.getOWLDataPropertyAssertionAxiom(property, subject, PelletTerms.literal(value, factory)));
+                    }
+                }
+            }
+        } else {
+            //other reasoners have no bulk retrieval, ask for each individual and property
+            Set<OWLNamedIndividual> individuals = ontology.getIndividualsInSignature(Imports.INCLUDED);
+            for (OWLObjectProperty property : ontology.getObjectPropertiesInSignature(Imports.INCLUDED)) {
+                if (property.isOWLTopObjectProperty() || property.isOWLBottomObjectProperty()) continue;
+                for (OWLNamedIndividual subject : individuals) {
+                    for (OWLNamedIndividual object : reasoner.getObjectPropertyValues(subject, property).getFlattened()) {
+                        builder.add(factory.getOWLObjectPropertyAssertionAxiom(property, subject, object));
+                    }
+                }
+            }
+            for (OWLDataProperty property : ontology.getDataPropertiesInSignature(Imports.INCLUDED)) {
+                if (property.isOWLTopDataProperty() || property.isOWLBottomDataProperty()) continue;
+                for (OWLNamedIndividual subject : individuals) {
+                    for (OWLLiteral literal : reasoner.getDataPropertyValues(subject, property)) {
+                        builder.add(factory.getOWLDataPropertyAssertionAxiom(property, subject, literal));
+                    }
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Computes the same facts as {@link #materialize(OWLOntology, OWLReasoner)}, but lazily one individual at a time,
+     * so only the facts about the current individual are kept in memory. The types and property values
+     * of each individual are asked from the reasoner, which is slower than the bulk retrieval from Pellet.
+     * The reasoner must not be used by other threads while iterating.
+     *
+     * @param ontology ontology used for distinguishing asserted and inferred facts
+     * @param reasoner reasoner for the ontology
+     * @return facts about each named individual in the ontology signature (including imports)
+     */
+    public static Iterator<IndividualFacts> iterate(OWLOntology ontology, OWLReasoner reasoner) {
+        reasoner.precomputeInferences(InferenceType.CLASS_ASSERTIONS);
+        return new IndividualIterator(ontology, reasoner);
+    }
+
+    /**
+     * Merges facts materialized separately for disjoint parts of an ABox, like the partitions
+     * of {@link PartitionedABoxReasoner}. Facts about an individual are taken only from the part which owns it.
+     *
+     * @param parts materialized parts
+     * @param owned individuals owned by each part, in the same order as the parts
+     * @return materialized facts of the whole ABox
+     */
+    public static MaterializedABox merge(List<MaterializedABox> parts, List<? extends Set<OWLNamedIndividual>> owned) {
+        Map<OWLNamedIndividual, IndividualFacts> facts = new HashMap<>();
+        int factCount = 0;
+        for (int i = 0; i < parts.size(); i++) {
+            Set<OWLNamedIndividual> individuals = owned.get(i);
+            for (Map.Entry<OWLNamedIndividual, IndividualFacts> e : parts.get(i).facts.entrySet()) {
+                if (!individuals.contains(e.getKey())) continue;
+                IndividualFacts f = e.getValue();
+                facts.put(e.getKey(), f);
+                factCount += f.classAssertions.size() + f.objectPropertyAssertions.size() + f.dataPropertyAssertions.size();
+            }
+        }
+        return new MaterializedABox(facts, factCount);
+    }
+
+    private static class IndividualIterator implements Iterator<IndividualFacts> {
+        private final OWLOntology ontology;
+        private final OWLReasoner reasoner;
+        private final OWLDataFactory factory;
+        private final Iterator<OWLNamedIndividual> individuals;
+        //signature is read once, not for each individual
+        private final Set<OWLClass> classes;
+        private final Set<OWLObjectProperty> objectProperties;
+        private final Set<OWLDataProperty> dataProperties;
+
+        private IndividualIterator(OWLOntology ontology, OWLReasoner reasoner) {
+            this.ontology = ontology;
+            this.reasoner = reasoner;
+            this.factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+            this.individuals = ontology.getIndividualsInSignature(Imports.INCLUDED).iterator();
+            this.classes = ontology.getClassesInSignature(Imports.INCLUDED);
+            this.objectProperties = ontology.getObjectPropertiesInSignature(Imports.INCLUDED);
+            this.dataProperties = ontology.getDataPropertiesInSignature(Imports.INCLUDED);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return individuals.hasNext();
+        }
+
+        @Override
+        public IndividualFacts next() {
+            if (!individuals.hasNext()) throw new NoSuchElementException();
+            OWLNamedIndividual ind = individuals.next();
+            Builder builder = new Builder(ontology);
+            builder.add(factory.getOWLClassAssertionAxiom(factory.getOWLThing(), ind));
+            for (OWLClass owlClass : reasoner.getTypes(ind, false).getFlattened()) {
+                if (owlClass.isOWLThing() || owlClass.isOWLNothing() || !classes.contains(owlClass)) continue;
+                builder.add(factory.getOWLClassAssertionAxiom(owlClass, ind));
+            }
+            for (OWLObjectProperty property : objectProperties) {
+                if (property.isOWLTopObjectProperty() || property.isOWLBottomObjectProperty()) continue;
+                for (OWLNamedIndividual object : reasoner.getObjectPropertyValues(ind, property).getFlattened()) {
+                    builder.add(factory.getOWLObjectPropertyAssertionAxiom(property, ind, object));
+                }
+            }
+            for (OWLDataProperty property : dataProperties) {
+                if (property.isOWLTopDataProperty() || property.isOWLBottomDataProperty()) continue;
+                for (OWLLiteral literal : reasoner.getDataPropertyValues(ind, property)) {
+                    builder.add(factory.getOWLDataPropertyAssertionAxiom(property, ind, literal));
+                }
+            }
+            return builder.factsOf(ind);
+        }
+    }
+
+    private static class Builder {
+        private final OWLOntology ontology;
+        private final Map<OWLNamedIndividual, IndividualFacts> facts = new HashMap<>();
+        private int factCount;
+
+        private Builder(OWLOntology ontology) {
+            this.ontology = ontology;
+        }
+
+        private IndividualFacts factsOf(OWLIndividual subject) {
+            return facts.computeIfAbsent(subject.asOWLNamedIndividual(), k -> new IndividualFacts());
+        }
+
+        private boolean isAsserted(OWLAxiom axiom) {
+            return ontology.containsAxiom(axiom, Imports.INCLUDED, AxiomAnnotations.IGNORE_AXIOM_ANNOTATIONS);
+        }
+
+        void add(OWLClassAssertionAxiom axiom) {
+            factsOf(axiom.getIndividual()).classAssertions.add(new Fact(axiom, isAsserted(axiom)));
+            factCount++;
+        }
+
+        void add(OWLObjectPropertyAssertionAxiom axiom) {
+            factsOf(axiom.getSubject()).objectPropertyAssertions.add(new Fact(axiom, isAsserted(axiom)));
+            factCount++;
+        }
+
+        void add(OWLDataPropertyAssertionAxiom axiom) {
+            factsOf(axiom.getSubject()).dataPropertyAssertions.add(new Fact(axiom, isAsserted(axiom)));
+            factCount++;
+        }
+
+        MaterializedABox build() {
+            return new MaterializedABox(facts, factCount);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Extracts syntactic locality modules of an ontology, i.e. subsets of its axioms which have the same entailments
+ * over a given signature as the whole ontology.
+ * <p>
+ * Locality is defined for OWL axioms only, so all SWRL rules are always added to the module together with the module
+ * of their signature. The extractor indexes the axioms of the ontology and its imports once, the index is rebuilt
+ * on the first extraction after a logical change of the ontology.
+ * The extractor is safe for concurrent use, extractions are serialized.
+ */
+@SuppressWarnings("WeakerAccess")
+public class ModuleExtractor implements OWLOntologyChangeListener {
+
+    private final OWLOntology ontology;
+    private final ModuleType moduleType;
+    private SyntacticLocalityModuleExtractor extractor;
+    private Set<SWRLRule> rules;
+
+    /**
+     * @param ontology   ontology
+     * @param moduleType type of the modules, {@link ModuleType#STAR} gives the smallest ones
+     */
+    public ModuleExtractor(OWLOntology ontology, ModuleType moduleType) {
+        this.ontology = ontology;
+        this.moduleType = moduleType;
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    public ModuleExtractor(OWLOntology ontology) {
+        this(ontology, ModuleType.STAR);
+    }
+
+    /**
+     * Extracts the module for a signature.
+     *
+     * @param signature classes, properties and individuals
+     * @return axioms of the module
+     */
+    public synchronized Set<OWLAxiom> extract(Set<? extends OWLEntity> signature) {
+        if (extractor == null) {
+            Set<OWLAxiom> axioms = ontology.getAxioms(Imports.INCLUDED);
+            extractor = new SyntacticLocalityModuleExtractor(ontology.getOWLOntologyManager(),
+                    ontology.getOntologyID().getOntologyIRI().orNull(), axioms, moduleType);
+            rules = ontology.getAxioms(AxiomType.SWRL_RULE, Imports.INCLUDED);
+        }
+        Set<OWLEntity> extended = new HashSet<>(signature);
+        Set<OWLAxiom> module = extractor.extract(extended);
+        //entities used in rules may be connected to the signature only through the rules
+        boolean grown = false;
+        for (SWRLRule rule : rules) {
+            if (module.add(rule)) grown |= extended.addAll(rule.getSignature());
+        }
+        if (grown) {
+            module.addAll(extractor.extract(extended));
+            module.addAll(rules);
+        }
+        return module;
+    }
+
+    /**
+     * Extracts the module for a signature as a new ontology in its own manager, so that reasoners
+     * over different modules do not share any mutable objects.
+     *
+     * @param signature classes, properties and individuals
+     * @return ontology with the module axioms
+     */
+    public OWLOntology extractAsOntology(Set<? extends OWLEntity> signature) {
+        return toOntology(extract(signature));
+    }
+
+    /**
+     * Creates a new ontology in its own manager.
+     *
+     * @param module axioms of a module
+     * @return anonymous ontology with the axioms
+     */
+    public static OWLOntology toOntology(Set<OWLAxiom> module) {
+        try {
+            return OWLManager.createOWLOntologyManager().createOntology(module);
+        } catch (OWLOntologyCreationException ex) {
+            //an anonymous ontology in a new manager cannot clash with anything
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * @return the ontology from which modules are extracted
+     */
+    public OWLOntology getOntology() {
+        return ontology;
+    }
+
+    @Override
+    public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        if (extractor == null) return;
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isImportChange()
+                    || change.isAxiomChange() && change.getAxiom().isLogicalAxiom())) {
+                extractor = null;
+                rules = null;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops listening to ontology changes.
+     */
+    public void dispose() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        synchronized (this) {
+            extractor = null;
+            rules = null;
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Answers narrow queries by reasoning over a locality module of the ontology for the query's signature.
+ * <p>
+ * A module for a signature has the same entailments over the signature as the whole ontology, so a query
+ * about one individual and a few classes and properties can be answered by a reasoner loaded with a small
+ * part of the ontology. Its cost depends on the size of the module, not on the size of the ABox.
+ * Answers are guaranteed only for entailments built from the signature: {@link #isEntailed(OWLAxiom)} is always
+ * exact, for other queries put all classes, properties and individuals which may occur in the answer
+ * into the signature.
+ * <p>
+ * Reasoners over modules are cached by signature in an LRU map and disposed when evicted. A module of a signature
+ * is also a module of each of its subsets, so a query is answered by any cached reasoner whose signature
+ * contains the query's signature. All reasoners are disposed on a logical change of the ontology.
+ * <p>
+ * Locality modules contain all assertions about the classes and properties of the signature, so in ontologies
+ * where a few classes and properties have most of the assertions the module may be nearly the whole ontology.
+ * Such modules are not copied, the queries go to one shared reasoner over the whole ontology.
+ * <p>
+ * Usage:
+ * <pre>
+ * ModuleReasonerCache modules = new ModuleReasonerCache(ontology, PelletReasonerFactory.getInstance(), 64);
+ * boolean employed = modules.isEntailed(factory.getOWLObjectPropertyAssertionAxiom(isEmployedAt, martin, mu));
+ * Set&lt;OWLLiteral&gt; emails = modules.query(signature(martin, hasEmail), r -&gt; r.getDataPropertyValues(martin, hasEmail));
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ModuleReasonerCache implements OWLOntologyChangeListener, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(ModuleReasonerCache.class);
+
+    public static final int DEFAULT_MAX_MODULES = 64;
+    public static final double DEFAULT_MAX_MODULE_FRACTION = 0.8;
+
+    private final OWLOntology ontology;
+    private final OWLReasonerFactory reasonerFactory;
+    private final ModuleExtractor extractor;
+    private final int maxModules;
+    private final LinkedHashMap<Set<OWLEntity>, Entry> entries;
+    private volatile double maxModuleFraction = DEFAULT_MAX_MODULE_FRACTION;
+    private Entry fullEntry;
+    private long generation;
+    private long hits;
+    private long supersetHits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * @param ontology        ontology
+     * @param reasonerFactory factory for the reasoners over modules
+     * @param maxModules      maximum number of cached module reasoners
+     */
+    public ModuleReasonerCache(OWLOntology ontology, OWLReasonerFactory reasonerFactory, final int maxModules) {
+        if (maxModules < 1) throw new IllegalArgumentException("maxModules must be positive: " + maxModules);
+        this.ontology = ontology;
+        this.reasonerFactory = reasonerFactory;
+        this.extractor = new ModuleExtractor(ontology);
+        this.maxModules = maxModules;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    public ModuleReasonerCache(OWLOntology ontology, OWLReasonerFactory reasonerFactory) {
+        this(ontology, reasonerFactory, DEFAULT_MAX_MODULES);
+    }
+
+    /**
+     * Creates a signature from entities.
+     */
+    public static Set<OWLEntity> signature(OWLEntity... entities) {
+        return new HashSet<>(Arrays.asList(entities));
+    }
+
+    /**
+     * Checks whether an axiom is entailed, using the module for the signature of the axiom.
+     */
+    public boolean isEntailed(OWLAxiom axiom) {
+        return query(axiom.getSignature(), r -> r.isEntailed(axiom));
+    }
+
+    /**
+     * Runs a query on a reasoner over the module for a signature. The reasoner is locked for the time of the query,
+     * it must not be used after the query returns.
+     *
+     * @param signature entities used in the query and in the expected answers
+     * @param query     function asking the reasoner
+     * @return result of the function
+     */
+    public <T> T query(Set<? extends OWLEntity> signature, Function<OWLReasoner, T> query) {
+        Entry entry = getEntry(signature);
+        synchronized (entry) {
+            if (entry.reasoner == null) {
+                //evicted meanwhile, the reasoner was disposed
+                return query(signature, query);
+            }
+            return query.apply(entry.reasoner);
+        }
+    }
+
+    private Entry getEntry(Set<? extends OWLEntity> signature) {
+        long startGeneration;
+        synchronized (entries) {
+            Entry entry = entries.get(signature);
+            if (entry != null) {
+                hits++;
+                return entry;
+            }
+            for (Map.Entry<Set<OWLEntity>, Entry> e : entries.entrySet()) {
+                if (e.getKey().containsAll(signature)) {
+                    supersetHits++;
+                    //refresh the LRU position of the reused entry
+                    return entries.get(e.getKey());
+                }
+            }
+            misses++;
+            startGeneration = generation;
+        }
+        //modules are extracted outside of the cache lock, a concurrent miss for the same signature is harmless
+        Set<OWLEntity> key = Collections.unmodifiableSet(new HashSet<>(signature));
+        Set<OWLAxiom> module = extractor.extract(key);
+        long moduleLogical = module.stream().filter(OWLAxiom::isLogicalAxiom).count();
+        long ontologyLogical = ontology.getLogicalAxiomCount(Imports.INCLUDED);
+        log.debug("module for {} entities has {} of {} logical axioms", key.size(), moduleLogical, ontologyLogical);
+        Entry entry;
+        if (moduleLogical >= ontologyLogical * maxModuleFraction) {
+            //copying almost the whole ontology would only cost time and memory
+            entry = getFullEntry();
+        } else {
+            OWLOntology moduleOntology = ModuleExtractor.toOntology(module);
+            entry = new Entry(reasonerFactory.createNonBufferingReasoner(moduleOntology), module.size());
+        }
+        List<Entry> evicted = new ArrayList<>();
+        synchronized (entries) {
+            if (generation != startGeneration) {
+                //the ontology changed during the extraction, the module may be outdated
+                evicted.add(entry);
+                entry = null;
+            } else {
+                Entry previous = entries.put(key, entry);
+                if (previous != null) evicted.add(previous);
+                Iterator<Entry> it = entries.values().iterator();
+                while (entries.size() > maxModules) {
+                    evicted.add(it.next());
+                    it.remove();
+                    evictions++;
+                }
+            }
+        }
+        for (Entry e : evicted) {
+            if (e != fullEntry) e.dispose();
+        }
+        return (entry != null) ? entry : getEntry(signature);
+    }
+
+    private synchronized Entry getFullEntry() {
+        if (fullEntry == null || fullEntry.reasoner == null) {
+            fullEntry = new Entry(reasonerFactory.createNonBufferingReasoner(ontology), ontology.getAxiomCount());
+        }
+        return fullEntry;
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isImportChange()
+                    || change.isAxiomChange() && change.getAxiom().isLogicalAxiom())) {
+                clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Disposes all cached reasoners.
+     */
+    public void clear() {
+        Set<Entry> removed = Collections.newSetFromMap(new IdentityHashMap<>());
+        synchronized (entries) {
+            removed.addAll(entries.values());
+            entries.clear();
+            generation++;
+            invalidations++;
+        }
+        synchronized (this) {
+            if (fullEntry != null) removed.add(fullEntry);
+            fullEntry = null;
+        }
+        for (Entry e : removed) e.dispose();
+    }
+
+    /**
+     * Sets the size of a module, as a fraction of the logical axioms of the ontology, from which queries go to
+     * a reasoner over the whole ontology instead of a reasoner over a copy of the module.
+     */
+    public ModuleReasonerCache setMaxModuleFraction(double maxModuleFraction) {
+        if (maxModuleFraction <= 0 || maxModuleFraction > 1) {
+            throw new IllegalArgumentException("maxModuleFraction must be in (0,1]: " + maxModuleFraction);
+        }
+        this.maxModuleFraction = maxModuleFraction;
+        return this;
+    }
+
+    /**
+     * Disposes all reasoners and stops listening to ontology changes.
+     */
+    @Override
+    public void close() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        clear();
+        extractor.dispose();
+    }
+
+    /**
+     * @return statistics of the cache
+     */
+    public Statistics getStatistics() {
+        synchronized (entries) {
+            //several signatures may share the reasoner over the whole ontology
+            Set<Entry> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+            distinct.addAll(entries.values());
+            long moduleAxioms = 0;
+            for (Entry e : distinct) moduleAxioms += e.moduleSize;
+            return new Statistics(hits, supersetHits, misses, evictions, invalidations, distinct.size(), moduleAxioms);
+        }
+    }
+
+    /**
+     * Reasoner over one module.
+     */
+    private static final class Entry {
+        private OWLReasoner reasoner;
+        private final int moduleSize;
+
+        private Entry(OWLReasoner reasoner, int moduleSize) {
+            this.reasoner = reasoner;
+            this.moduleSize = moduleSize;
+        }
+
+        private synchronized void dispose() {
+            if (reasoner != null) {
+                reasoner.dispose();
+                reasoner = null;
+            }
+        }
+    }
+
+    /**
+     * Snapshot of cache statistics.
+     */
+    public static final class Statistics {
+        public final long hits;
+        public final long supersetHits;
+        public final long misses;
+        public final long evictions;
+        public final long invalidations;
+        public final int modules;
+        public final long moduleAxioms;
+
+        private Statistics(long hits, long supersetHits, long misses, long evictions, long invalidations, int modules, long moduleAxioms) {
+            this.hits = hits;
+            this.supersetHits = supersetHits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.modules = modules;
+            this.moduleAxioms = moduleAxioms;
+        }
+
+        @Override
+        public String toString() {
+            return "hits=" + hits + " supersetHits=" + supersetHits + " misses=" + misses + " evictions=" + evictions
+                    + " invalidations=" + invalidations + " modules=" + modules + " moduleAxioms=" + moduleAxioms;
+        }
+    }
+}
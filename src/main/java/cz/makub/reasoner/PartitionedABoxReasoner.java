@@ -0,0 +1,550 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+
+/**
+ * Reasons over an ABox made of many independent clusters of individuals by running a separate reasoner
+ * for each group of clusters, all of them in parallel.
+ * <p>
+ * Individuals appearing together in an assertion, e.g. linked by a property, are in the same connected component
+ * of the ABox. Entailments about the individuals of a component follow from the TBox and the assertions of the
+ * component alone, unless the ontology contains nominals, keys, the universal property, or rules joining
+ * unconnected variables. Individuals occurring in the TBox or in rules connect every component whose individuals
+ * may get related to them, in both directions, so if the ontology has nominals or rules with individuals, has keys,
+ * uses the universal property, or has a rule whose body is not connected, the whole ABox is a single component.
+ * Otherwise different individuals assertions do not connect components, individuals in different components
+ * can never become equal.
+ * <p>
+ * The components are packed into partitions of similar size, {@link #PARTITIONS_PER_THREAD} times more than the
+ * threads of the fork-join pool, so that threads finishing early pick up the remaining work. Each partition is
+ * an ontology with the shared TBox axioms and the assertions of its components, reasoned in its own fork-join task
+ * by its own reasoner. Per-partition results are merged. If any partition is inconsistent, the whole ontology is.
+ * <p>
+ * Partitions and their reasoners are created at the first query and kept for following queries,
+ * they are disposed on a logical change of the ontology. Queries are serialized, each of them uses all threads.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (PartitionedABoxReasoner partitioned = new PartitionedABoxReasoner(ontology, PelletReasonerFactory.getInstance())) {
+ *     MaterializedABox abox = partitioned.materialize();
+ *     Map&lt;OWLClass, Set&lt;OWLNamedIndividual&gt;&gt; instances = partitioned.getInstances(classes);
+ * }
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class PartitionedABoxReasoner implements OWLOntologyChangeListener, AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionedABoxReasoner.class);
+
+    public static final int PARTITIONS_PER_THREAD = 4;
+
+    private final OWLOntology ontology;
+    private final OWLReasonerFactory reasonerFactory;
+    private final ForkJoinPool pool;
+    private List<Partition> partitions;
+    private Set<OWLAxiom> sharedAxioms;
+    private int components;
+    private int largestComponent;
+    private String singleComponentReason;
+    private long partitioningNanos;
+    private long lastQueryNanos;
+    private long lastSlowestPartitionNanos;
+
+    /**
+     * @param ontology        ontology
+     * @param reasonerFactory factory for the reasoners of partitions
+     * @param threads         number of threads of the fork-join pool
+     */
+    public PartitionedABoxReasoner(OWLOntology ontology, OWLReasonerFactory reasonerFactory, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.ontology = ontology;
+        this.reasonerFactory = reasonerFactory;
+        this.pool = new ForkJoinPool(threads);
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * Uses a thread for each available processor.
+     */
+    public PartitionedABoxReasoner(OWLOntology ontology, OWLReasonerFactory reasonerFactory) {
+        this(ontology, reasonerFactory, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @return true if all partitions are consistent
+     */
+    public boolean isConsistent() {
+        for (Boolean consistent : map(p -> p.getReasoner().isConsistent())) {
+            if (!consistent) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Retrieves instances of a class expression.
+     *
+     * @param classExpression class expression
+     * @param direct          true for direct instances only
+     * @return named instances from all partitions
+     */
+    public Set<OWLNamedIndividual> getInstances(OWLClassExpression classExpression, boolean direct) {
+        Set<OWLNamedIndividual> instances = new HashSet<>();
+        for (Set<OWLNamedIndividual> part : map(p -> p.owned(p.getReasoner().getInstances(classExpression, direct).getFlattened()))) {
+            instances.addAll(part);
+        }
+        return instances;
+    }
+
+    /**
+     * Retrieves instances of several classes, each partition answers all of them in one task.
+     *
+     * @param classes classes
+     * @return named instances of each class from all partitions
+     */
+    public Map<OWLClass, Set<OWLNamedIndividual>> getInstances(Collection<OWLClass> classes) {
+        List<Map<OWLClass, Set<OWLNamedIndividual>>> parts = map(p -> {
+            Map<OWLClass, Set<OWLNamedIndividual>> instances = new HashMap<>();
+            for (OWLClass owlClass : classes) {
+                instances.put(owlClass, p.owned(p.getReasoner().getInstances(owlClass, false).getFlattened()));
+            }
+            return instances;
+        });
+        Map<OWLClass, Set<OWLNamedIndividual>> merged = new HashMap<>();
+        for (OWLClass owlClass : classes) merged.put(owlClass, new HashSet<>());
+        for (Map<OWLClass, Set<OWLNamedIndividual>> part : parts) {
+            for (Map.Entry<OWLClass, Set<OWLNamedIndividual>> e : part.entrySet()) merged.get(e.getKey()).addAll(e.getValue());
+        }
+        return merged;
+    }
+
+    /**
+     * Computes all class and property assertions of named individuals, see {@link MaterializedABox}.
+     *
+     * @return materialized facts merged from all partitions
+     */
+    public synchronized MaterializedABox materialize() {
+        List<Partition> used = getPartitions();
+        List<MaterializedABox> parts = map(p -> MaterializedABox.materialize(p.getOntology(), p.getReasoner()));
+        List<Set<OWLNamedIndividual>> owned = new ArrayList<>();
+        for (Partition p : used) owned.add(p.individuals);
+        return MaterializedABox.merge(parts, owned);
+    }
+
+    /**
+     * Runs a task for each partition in the fork-join pool.
+     *
+     * @param task function of a partition, it may use the reasoner of the partition
+     * @return results in the order of {@link #getPartitions()}
+     */
+    public synchronized <T> List<T> map(Function<Partition, T> task) {
+        long start = System.nanoTime();
+        List<PartitionTask<T>> tasks = new ArrayList<>();
+        for (Partition p : getPartitions()) tasks.add(new PartitionTask<>(p, task));
+        for (PartitionTask<T> t : tasks) pool.execute(t);
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (PartitionTask<T> t : tasks) results.add(t.join());
+        } catch (RuntimeException ex) {
+            for (PartitionTask<T> t : tasks) t.cancel(false);
+            throw ex;
+        }
+        lastQueryNanos = System.nanoTime() - start;
+        lastSlowestPartitionNanos = 0;
+        for (PartitionTask<T> t : tasks) lastSlowestPartitionNanos = Math.max(lastSlowestPartitionNanos, t.nanos);
+        log.debug("{} partitions took {} ms, the slowest one {} ms", tasks.size(),
+                lastQueryNanos / 1_000_000, lastSlowestPartitionNanos / 1_000_000);
+        return results;
+    }
+
+    /**
+     * @return partitions of the ABox, computed at the first call after a change of the ontology
+     */
+    public synchronized List<Partition> getPartitions() {
+        if (partitions == null) partition();
+        return Collections.unmodifiableList(partitions);
+    }
+
+    @Override
+    public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        if (partitions == null) return;
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isImportChange()
+                    || change.isAxiomChange() && change.getAxiom().isLogicalAxiom())) {
+                clear();
+                return;
+            }
+        }
+    }
+
+    private void clear() {
+        if (partitions == null) return;
+        for (Partition p : partitions) p.dispose();
+        partitions = null;
+        sharedAxioms = null;
+    }
+
+    /**
+     * Disposes all reasoners, shuts down the thread pool and stops listening to ontology changes.
+     */
+    @Override
+    public void close() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        synchronized (this) {
+            clear();
+        }
+        pool.shutdown();
+    }
+
+    /**
+     * @return statistics of the partitioning and of the last query
+     */
+    public synchronized Statistics getStatistics() {
+        getPartitions();
+        return new Statistics(components, partitions.size(), largestComponent, sharedAxioms.size(),
+                singleComponentReason, partitioningNanos, lastQueryNanos, lastSlowestPartitionNanos);
+    }
+
+    // partitioning
+
+    private void partition() {
+        long start = System.nanoTime();
+        OWLObjectProperty topObjectProperty = ontology.getOWLOntologyManager().getOWLDataFactory().getOWLTopObjectProperty();
+        Set<OWLAxiom> shared = new HashSet<>();
+        List<OWLAxiom> assertions = new ArrayList<>();
+        List<OWLDifferentIndividualsAxiom> differentIndividuals = new ArrayList<>();
+        UnionFind<OWLIndividual> connected = new UnionFind<>();
+        String single = null;
+        for (OWLAxiom axiom : ontology.getAxioms(Imports.INCLUDED)) {
+            if (axiom.isOfType(AxiomType.DECLARATION)) {
+                OWLEntity entity = ((OWLDeclarationAxiom) axiom).getEntity();
+                if (entity.isOWLNamedIndividual()) {
+                    assertions.add(axiom);
+                    connected.id(entity.asOWLNamedIndividual());
+                } else {
+                    shared.add(axiom);
+                }
+                continue;
+            }
+            //annotations do not change entailments
+            if (!axiom.isLogicalAxiom()) continue;
+            if (axiom.containsEntityInSignature(topObjectProperty)) single = "the universal property is used";
+            if (axiom.isOfType(AxiomType.DIFFERENT_INDIVIDUALS)) {
+                //split by components later
+                differentIndividuals.add((OWLDifferentIndividualsAxiom) axiom);
+                for (OWLIndividual ind : individuals(axiom)) connected.id(ind);
+            } else if (axiom.isOfType(AxiomType.ABoxAxiomTypes)) {
+                assertions.add(axiom);
+                OWLIndividual first = null;
+                for (OWLIndividual ind : individuals(axiom)) {
+                    if (first == null) first = ind;
+                    connected.union(first, ind);
+                }
+            } else {
+                shared.add(axiom);
+                //nominals and individuals in rules connect any component to them through the TBox
+                for (OWLIndividual ind : individuals(axiom)) {
+                    connected.id(ind);
+                    if (single == null) single = "individual " + ind + " is used in " + axiom;
+                }
+                if (axiom.isOfType(AxiomType.HAS_KEY)) {
+                    single = "keys are used";
+                } else if (axiom.isOfType(AxiomType.SWRL_RULE) && !isConnected((SWRLRule) axiom)) {
+                    single = "a rule body is not connected: " + axiom;
+                }
+            }
+        }
+
+        //components with their individuals and assertions
+        Map<Integer, Component> byRoot = new HashMap<>();
+        for (OWLAxiom axiom : assertions) {
+            OWLIndividual ind = individuals(axiom).iterator().next();
+            byRoot.computeIfAbsent(single == null ? connected.find(ind) : 0, k -> new Component()).axioms.add(axiom);
+        }
+        for (OWLDifferentIndividualsAxiom axiom : differentIndividuals) {
+            Map<Integer, List<OWLIndividual>> split = new HashMap<>();
+            for (OWLIndividual ind : axiom.getIndividuals()) {
+                split.computeIfAbsent(single == null ? connected.find(ind) : 0, k -> new ArrayList<>()).add(ind);
+            }
+            for (Map.Entry<Integer, List<OWLIndividual>> e : split.entrySet()) {
+                if (e.getValue().size() < 2) continue;
+                byRoot.computeIfAbsent(e.getKey(), k -> new Component()).axioms.add(
+                        split.size() == 1 ? axiom : ontology.getOWLOntologyManager().getOWLDataFactory()
+                                .getOWLDifferentIndividualsAxiom(new HashSet<>(e.getValue())));
+            }
+        }
+        for (OWLIndividual ind : connected.elements()) {
+            if (ind.isNamed()) {
+                byRoot.computeIfAbsent(single == null ? connected.find(ind) : 0, k -> new Component())
+                        .individuals.add(ind.asOWLNamedIndividual());
+            }
+        }
+
+        //largest components first, each into the least loaded partition
+        List<Component> sorted = new ArrayList<>(byRoot.values());
+        sorted.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        int count = Math.max(1, Math.min(sorted.size(), pool.getParallelism() * PARTITIONS_PER_THREAD));
+        PriorityQueue<Partition> bins = new PriorityQueue<>(Comparator.comparingInt(p -> p.size));
+        List<Partition> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Partition p = new Partition(i);
+            result.add(p);
+            bins.add(p);
+        }
+        for (Component c : sorted) {
+            Partition p = bins.poll();
+            p.add(c);
+            bins.add(p);
+        }
+        this.partitions = result;
+        this.sharedAxioms = shared;
+        this.components = sorted.size();
+        this.largestComponent = sorted.isEmpty() ? 0 : sorted.get(0).size();
+        this.singleComponentReason = single;
+        this.partitioningNanos = System.nanoTime() - start;
+        if (single != null) log.info("the ABox is reasoned as a single component, {}", single);
+        log.debug("{} components in {} partitions, the largest component has {} assertions, {} shared axioms, took {} ms",
+                components, count, largestComponent, shared.size(), partitioningNanos / 1_000_000);
+    }
+
+    private static Collection<OWLIndividual> individuals(OWLAxiom axiom) {
+        List<OWLIndividual> individuals = new ArrayList<>(axiom.getIndividualsInSignature());
+        individuals.addAll(axiom.getAnonymousIndividuals());
+        return individuals;
+    }
+
+    /**
+     * @return true if all variables of the rule body are connected by its atoms
+     */
+    private static boolean isConnected(SWRLRule rule) {
+        UnionFind<SWRLVariable> variables = new UnionFind<>();
+        for (SWRLAtom atom : rule.getBody()) {
+            SWRLVariable first = null;
+            for (SWRLArgument arg : atom.getAllArguments()) {
+                if (!(arg instanceof SWRLVariable)) continue;
+                if (first == null) first = (SWRLVariable) arg;
+                variables.union(first, (SWRLVariable) arg);
+            }
+        }
+        Set<Integer> roots = new HashSet<>();
+        for (SWRLVariable var : variables.elements()) roots.add(variables.find(var));
+        return roots.size() <= 1;
+    }
+
+    /**
+     * Connected component of the ABox.
+     */
+    private static final class Component {
+        private final List<OWLAxiom> axioms = new ArrayList<>();
+        private final Set<OWLNamedIndividual> individuals = new HashSet<>();
+
+        private int size() {
+            return axioms.size();
+        }
+    }
+
+    /**
+     * Group of components reasoned together by one reasoner.
+     */
+    public final class Partition {
+        private final int index;
+        private final List<OWLAxiom> assertions = new ArrayList<>();
+        private final Set<OWLNamedIndividual> individuals = new HashSet<>();
+        private int componentCount;
+        private int size;
+        private OWLOntology partitionOntology;
+        private OWLReasoner reasoner;
+
+        private Partition(int index) {
+            this.index = index;
+        }
+
+        private void add(Component c) {
+            assertions.addAll(c.axioms);
+            individuals.addAll(c.individuals);
+            componentCount++;
+            //every component costs something, even one with a single declaration
+            size += c.size() + 1;
+        }
+
+        /**
+         * @return ontology with the shared TBox axioms and the assertions of this partition, created on first use
+         */
+        public synchronized OWLOntology getOntology() {
+            if (partitionOntology == null) {
+                Set<OWLAxiom> axioms = new HashSet<>(sharedAxioms);
+                axioms.addAll(assertions);
+                partitionOntology = ModuleExtractor.toOntology(axioms);
+            }
+            return partitionOntology;
+        }
+
+        /**
+         * @return reasoner of this partition, created on first use
+         */
+        public synchronized OWLReasoner getReasoner() {
+            if (reasoner == null) reasoner = reasonerFactory.createNonBufferingReasoner(getOntology());
+            return reasoner;
+        }
+
+        /**
+         * @return named individuals whose facts are answered by this partition
+         */
+        public Set<OWLNamedIndividual> getIndividuals() {
+            return Collections.unmodifiableSet(individuals);
+        }
+
+        /**
+         * Facts of an individual are answered only by the partition which owns it.
+         *
+         * @return the given individuals owned by this partition
+         */
+        public Set<OWLNamedIndividual> owned(Set<OWLNamedIndividual> found) {
+            Set<OWLNamedIndividual> owned = new HashSet<>(found);
+            owned.retainAll(individuals);
+            return owned;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public int getComponentCount() {
+            return componentCount;
+        }
+
+        public int getAssertionCount() {
+            return assertions.size();
+        }
+
+        private synchronized void dispose() {
+            if (reasoner != null) reasoner.dispose();
+            reasoner = null;
+            partitionOntology = null;
+        }
+
+        @Override
+        public String toString() {
+            return "partition " + index + ": " + componentCount + " components, " + individuals.size() + " individuals, "
+                    + assertions.size() + " assertions";
+        }
+    }
+
+    @SuppressWarnings("serial")
+    private static final class PartitionTask<T> extends RecursiveTask<T> {
+        private final Partition partition;
+        private final Function<Partition, T> task;
+        private long nanos;
+
+        private PartitionTask(Partition partition, Function<Partition, T> task) {
+            this.partition = partition;
+            this.task = task;
+        }
+
+        @Override
+        protected T compute() {
+            long start = System.nanoTime();
+            try {
+                return task.apply(partition);
+            } finally {
+                nanos = System.nanoTime() - start;
+            }
+        }
+    }
+
+    /**
+     * Disjoint sets with path halving and union by size.
+     */
+    private static final class UnionFind<T> {
+        private final Map<T, Integer> ids = new LinkedHashMap<>();
+        private int[] parent = new int[16];
+        private int[] size = new int[16];
+
+        int id(T element) {
+            Integer id = ids.get(element);
+            if (id != null) return id;
+            int n = ids.size();
+            if (n == parent.length) {
+                parent = Arrays.copyOf(parent, n * 2);
+                size = Arrays.copyOf(size, n * 2);
+            }
+            parent[n] = n;
+            size[n] = 1;
+            ids.put(element, n);
+            return n;
+        }
+
+        int find(T element) {
+            return find(id(element));
+        }
+
+        private int find(int i) {
+            while (parent[i] != i) {
+                parent[i] = parent[parent[i]];
+                i = parent[i];
+            }
+            return i;
+        }
+
+        void union(T a, T b) {
+            int ra = find(id(a));
+            int rb = find(id(b));
+            if (ra == rb) return;
+            if (size[ra] < size[rb]) {
+                int t = ra;
+                ra = rb;
+                rb = t;
+            }
+            parent[rb] = ra;
+            size[ra] += size[rb];
+        }
+
+        Set<T> elements() {
+            return ids.keySet();
+        }
+    }
+
+    /**
+     * Snapshot of partitioning statistics.
+     */
+    public static final class Statistics {
+        public final int components;
+        public final int partitions;
+        public final int largestComponent;
+        public final int sharedAxioms;
+        public final String singleComponentReason;
+        public final long partitioningNanos;
+        public final long lastQueryNanos;
+        public final long lastSlowestPartitionNanos;
+
+        private Statistics(int components, int partitions, int largestComponent, int sharedAxioms, String singleComponentReason,
+                           long partitioningNanos, long lastQueryNanos, long lastSlowestPartitionNanos) {
+            this.components = components;
+            this.partitions = partitions;
+            this.largestComponent = largestComponent;
+            this.sharedAxioms = sharedAxioms;
+            this.singleComponentReason = singleComponentReason;
+            this.partitioningNanos = partitioningNanos;
+            this.lastQueryNanos = lastQueryNanos;
+            this.lastSlowestPartitionNanos = lastSlowestPartitionNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "components=" + components + " partitions=" + partitions + " largestComponent=" + largestComponent
+                    + " sharedAxioms=" + sharedAxioms + (singleComponentReason != null ? " single: " + singleComponentReason : "")
+                    + " partitioning=" + partitioningNanos / 1_000_000 + " ms lastQuery=" + lastQueryNanos / 1_000_000
+                    + " ms slowestPartition=" + lastSlowestPartitionNanos / 1_000_000 + " ms";
+        }
+    }
+}
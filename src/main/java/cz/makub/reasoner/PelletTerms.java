@@ -0,0 +1,68 @@
+package cz.makub.reasoner;
+
+import aterm.ATermAppl;
+import org.mindswap.pellet.utils.ATermUtils;
+import org.mindswap.pellet.utils.Namespaces;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLDataFactory;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLLiteral;
+
+/**
+ * Conversions between OWL API objects and the ATerms used internally by Pellet,
+ * done the same way as the Pellet OWL API binding does them.
+ */
+public final class PelletTerms {
+
+    private static final String PLAIN_LITERAL = Namespaces.RDF + "PlainLiteral";
+
+    private PelletTerms() {
+    }
+
+    /**
+     * @return Pellet term for a named entity
+     */
+    public static ATermAppl term(OWLEntity entity) {
+        return ATermUtils.makeTermAppl(entity.getIRI().toString());
+    }
+
+    /**
+     * @return Pellet term for a literal
+     */
+    public static ATermAppl term(OWLLiteral literal) {
+        if (literal.isRDFPlainLiteral()) {
+            return ATermUtils.makePlainLiteral(literal.getLiteral(), literal.getLang());
+        }
+        return ATermUtils.makeTypedLiteral(literal.getLiteral(), literal.getDatatype().getIRI().toString());
+    }
+
+    /**
+     * @return true if the term is a named entity, i.e. neither a literal nor an anonymous individual
+     */
+    public static boolean isNamed(ATermAppl term) {
+        return !ATermUtils.isLiteral(term) && !ATermUtils.isAnon(term) && !ATermUtils.isBnode(term);
+    }
+
+    /**
+     * @return IRI of a named Pellet term
+     */
+    public static IRI iri(ATermAppl term) {
+        return IRI.create(term.getName());
+    }
+
+    /**
+     * @return OWL API literal for a Pellet literal term
+     */
+    public static OWLLiteral literal(ATermAppl term, OWLDataFactory factory) {
+        String value = ATermUtils.getLiteralValue(term);
+        String lang = ATermUtils.getLiteralLang(term);
+        String datatype = ATermUtils.getLiteralDatatype(term);
+        if (lang != null && !lang.isEmpty()) {
+            return factory.getOWLLiteral(value, lang);
+        }
+        if (datatype == null || datatype.isEmpty() || PLAIN_LITERAL.equals(datatype)) {
+            return factory.getOWLLiteral(value, "");
+        }
+        return factory.getOWLLiteral(value, factory.getOWLDatatype(IRI.create(datatype)));
+    }
+}
@@ -0,0 +1,277 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.semanticweb.owlapi.reasoner.SimpleConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reasoner which answers from a {@link ReasonerState} saved by a previous run, so that a restart does not need
+ * to classify and realize the ontology again.
+ * <p>
+ * Queries about named classes, named individuals and named properties or their inverses are answered from the state,
+ * including the individuals inferred to be the same. All other queries, e.g. about anonymous class expressions, different
+ * individuals or the property hierarchy, are forwarded to a reasoner, which is created only when such a query comes.
+ * When the ontology is changed, the state is dropped and all queries go to the reasoner.
+ * <p>
+ * The saved state is recognized as stale only by the content of the ontology, see {@link ReasonerState#contentHash}.
+ * It is replaced atomically, so a crash while saving leaves the previous state or none.
+ * <p>
+ * Usage:
+ * <pre>
+ * OWLReasoner reasoner = PersistedReasoner.open(ontology, PelletReasonerFactory.getInstance(), stateFile);
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class PersistedReasoner extends ForwardingReasoner implements OWLOntologyChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistedReasoner.class);
+    private static final Set<InferenceType> STATE_INFERENCE_TYPES = Collections.unmodifiableSet(EnumSet.of(
+            InferenceType.CLASS_HIERARCHY, InferenceType.CLASS_ASSERTIONS,
+            InferenceType.OBJECT_PROPERTY_ASSERTIONS, InferenceType.DATA_PROPERTY_ASSERTIONS, InferenceType.SAME_INDIVIDUAL));
+
+    private final OWLOntology ontology;
+    private final OWLReasonerFactory reasonerFactory;
+    private volatile ReasonerState state;
+    private OWLReasoner delegate;
+
+    private PersistedReasoner(OWLOntology ontology, OWLReasonerFactory reasonerFactory, OWLReasoner delegate, ReasonerState state) {
+        this.ontology = ontology;
+        this.reasonerFactory = reasonerFactory;
+        this.delegate = delegate;
+        this.state = state;
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * Creates a reasoner answering from the saved state if it matches the ontology. Otherwise the state is computed
+     * by a new reasoner and saved for the next time.
+     *
+     * @param ontology        ontology
+     * @param reasonerFactory factory for the reasoner used for computing the state and for other queries
+     * @param stateFile       file with the saved state, does not need to exist
+     * @return reasoner
+     */
+    public static PersistedReasoner open(OWLOntology ontology, OWLReasonerFactory reasonerFactory, Path stateFile) {
+        String hash = ReasonerState.contentHash(ontology);
+        if (Files.isRegularFile(stateFile)) {
+            try {
+                ReasonerState saved = ReasonerState.load(stateFile);
+                if (saved.getContentHash().equals(hash)) {
+                    return new PersistedReasoner(ontology, reasonerFactory, null, saved);
+                }
+                log.info("saved reasoner state {} is for a different ontology content", stateFile);
+            } catch (IOException ex) {
+                log.warn("cannot load reasoner state {}", stateFile, ex);
+            }
+        }
+        OWLReasoner reasoner = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        if (!reasoner.isConsistent()) {
+            //nothing useful can be saved for an inconsistent ontology
+            return new PersistedReasoner(ontology, reasonerFactory, reasoner, null);
+        }
+        ReasonerState computed = ReasonerState.compute(ontology, reasoner);
+        try {
+            Path dir = stateFile.toAbsolutePath().getParent();
+            if (dir != null) Files.createDirectories(dir);
+            computed.save(stateFile);
+        } catch (IOException ex) {
+            log.warn("cannot save reasoner state {}", stateFile, ex);
+        }
+        return new PersistedReasoner(ontology, reasonerFactory, reasoner, computed);
+    }
+
+    /**
+     * @return true if queries are answered from the saved state
+     */
+    public boolean isUsingSavedState() {
+        return state != null;
+    }
+
+    @Override
+    protected synchronized OWLReasoner delegate() {
+        if (delegate == null) {
+            log.debug("creating reasoner for queries not answerable from the saved state");
+            delegate = reasonerFactory.createReasoner(ontology, new SimpleConfiguration());
+        }
+        return delegate;
+    }
+
+    @Override
+    public void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        if (state == null) return;
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (closure.contains(change.getOntology()) && (change.isImportChange()
+                    || change.isAxiomChange() && change.getAxiom().isLogicalAxiom())) {
+                state = null;
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void dispose() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        state = null;
+        synchronized (this) {
+            if (delegate != null) delegate.dispose();
+        }
+    }
+
+    @Override
+    public OWLOntology getRootOntology() {
+        return ontology;
+    }
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        //inferences kept in the saved state, so that asking does not create the reasoner
+        return (state != null) ? STATE_INFERENCE_TYPES : delegate().getPrecomputableInferenceTypes();
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        if (state == null) delegate().precomputeInferences(inferenceTypes);
+    }
+
+    @Override
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return state != null || delegate().isPrecomputed(inferenceType);
+    }
+
+    @Override
+    public boolean isConsistent() {
+        //only states of consistent ontologies are saved
+        return state != null || delegate().isConsistent();
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression classExpression) {
+        ReasonerState s = state;
+        if (s != null && isKnown(s, classExpression)) {
+            return !s.getBottomClassNode().contains(classExpression.asOWLClass());
+        }
+        return delegate().isSatisfiable(classExpression);
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        ReasonerState s = state;
+        return (s != null) ? s.getBottomClassNode() : delegate().getUnsatisfiableClasses();
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        ReasonerState s = state;
+        return (s != null) ? s.getTopClassNode() : delegate().getTopClassNode();
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        ReasonerState s = state;
+        return (s != null) ? s.getBottomClassNode() : delegate().getBottomClassNode();
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        ReasonerState s = state;
+        return (s != null && isKnown(s, ce)) ? s.getSubClasses(ce.asOWLClass(), direct) : delegate().getSubClasses(ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        ReasonerState s = state;
+        return (s != null && isKnown(s, ce)) ? s.getSuperClasses(ce.asOWLClass(), direct) : delegate().getSuperClasses(ce, direct);
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        ReasonerState s = state;
+        return (s != null && isKnown(s, ce)) ? s.getEquivalentClasses(ce.asOWLClass()) : delegate().getEquivalentClasses(ce);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        ReasonerState s = state;
+        return (s != null && isKnown(s, ce)) ? s.getInstances(ce.asOWLClass(), direct) : delegate().getInstances(ce, direct);
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        ReasonerState s = state;
+        return (s != null) ? s.getTypes(ind, direct) : delegate().getTypes(ind, direct);
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        ReasonerState s = state;
+        if (s != null) {
+            //OWL API does not allow nested inverses, so an anonymous expression is the inverse of a named property
+            return pe.isAnonymous() ? s.getObjectPropertySubjects(ind, pe.getNamedProperty())
+                    : s.getObjectPropertyValues(ind, pe.asOWLObjectProperty());
+        }
+        return delegate().getObjectPropertyValues(ind, pe);
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        ReasonerState s = state;
+        return (s != null) ? s.getSameIndividuals(ind) : delegate().getSameIndividuals(ind);
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        ReasonerState s = state;
+        return (s != null) ? s.getDataPropertyValues(ind, pe) : delegate().getDataPropertyValues(ind, pe);
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        ReasonerState s = state;
+        if (s != null) {
+            if (axiom instanceof OWLClassAssertionAxiom) {
+                OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom) axiom;
+                if (ax.getIndividual().isNamed() && isKnown(s, ax.getClassExpression())) {
+                    return s.hasType(ax.getIndividual().asOWLNamedIndividual(), ax.getClassExpression().asOWLClass());
+                }
+            } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+                OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) axiom;
+                if (ax.getSubject().isNamed() && ax.getObject().isNamed()) {
+                    return getObjectPropertyValues(ax.getSubject().asOWLNamedIndividual(), ax.getProperty())
+                            .containsEntity(ax.getObject().asOWLNamedIndividual());
+                }
+            } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+                OWLDataPropertyAssertionAxiom ax = (OWLDataPropertyAssertionAxiom) axiom;
+                if (ax.getSubject().isNamed()) {
+                    return s.getDataPropertyValues(ax.getSubject().asOWLNamedIndividual(), ax.getProperty().asOWLDataProperty())
+                            .contains(ax.getObject());
+                }
+            } else if (axiom instanceof OWLSameIndividualAxiom) {
+                List<OWLIndividual> individuals = ((OWLSameIndividualAxiom) axiom).getIndividualsAsList();
+                if (individuals.stream().allMatch(OWLIndividual::isNamed)) {
+                    Node<OWLNamedIndividual> same = s.getSameIndividuals(individuals.get(0).asOWLNamedIndividual());
+                    return individuals.stream().allMatch(i -> same.contains(i.asOWLNamedIndividual()));
+                }
+            }
+        }
+        return delegate().isEntailed(axiom);
+    }
+
+    private static boolean isKnown(ReasonerState s, OWLClassExpression ce) {
+        return !ce.isAnonymous() && s.knows(ce.asOWLClass());
+    }
+}
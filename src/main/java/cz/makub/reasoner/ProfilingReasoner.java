@@ -0,0 +1,276 @@
+package cz.makub.reasoner;
+
+import cz.makub.metrics.Phase;
+import cz.makub.metrics.PhaseMetrics;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Reasoner which measures its calls in {@link PhaseMetrics}: {@link OWLReasoner#isConsistent()} as
+ * {@link Phase#CONSISTENCY}, precomputation of hierarchies as {@link Phase#CLASSIFICATION} and of individual
+ * inferences as {@link Phase#REALIZATION}, each inference type separately, {@link OWLReasoner#flush()}
+ * as {@link Phase#LOAD}, and all queries as {@link Phase#QUERY} with the method name as the operation.
+ * Calls which only return settings or capabilities of the reasoner are not measured.
+ * <p>
+ * A query made before the inferences are precomputed includes the reasoning it triggers, so
+ * precompute them first, e.g. by {@link ReasonerWarmUp}, to see the phases separately.
+ * <p>
+ * Usage:
+ * <pre>
+ * OWLReasoner reasoner = new ProfilingReasoner(PelletReasonerFactory.getInstance().createReasoner(ontology));
+ * ...
+ * System.out.println(PhaseMetrics.instance);
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ProfilingReasoner extends ForwardingReasoner {
+
+    private static final Set<InferenceType> HIERARCHIES = new HashSet<>(Arrays.asList(InferenceType.CLASS_HIERARCHY,
+            InferenceType.OBJECT_PROPERTY_HIERARCHY, InferenceType.DATA_PROPERTY_HIERARCHY, InferenceType.DISJOINT_CLASSES));
+
+    private final OWLReasoner reasoner;
+    private final PhaseMetrics metrics;
+    private final Map<String, PhaseMetrics.Operation> operations = new ConcurrentHashMap<>();
+
+    public ProfilingReasoner(OWLReasoner reasoner) {
+        this(reasoner, PhaseMetrics.instance);
+    }
+
+    public ProfilingReasoner(OWLReasoner reasoner, PhaseMetrics metrics) {
+        this.reasoner = reasoner;
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected OWLReasoner delegate() {
+        return reasoner;
+    }
+
+    /**
+     * @return the measured reasoner
+     */
+    public OWLReasoner getReasoner() {
+        return reasoner;
+    }
+
+    private <T> T measure(String method, Supplier<T> call) {
+        PhaseMetrics.Operation operation = operations.computeIfAbsent(method, m -> metrics.getOperation(phase(m), m));
+        try (PhaseMetrics.Timer timer = operation.start(reasoner.getRootOntology())) {
+            try {
+                return call.get();
+            } catch (RuntimeException | Error ex) {
+                timer.failed();
+                throw ex;
+            }
+        }
+    }
+
+    private static Phase phase(String method) {
+        switch (method) {
+            case "isConsistent":
+                return Phase.CONSISTENCY;
+            case "flush":
+                return Phase.LOAD;
+            default:
+                return Phase.QUERY;
+        }
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        for (InferenceType type : inferenceTypes) {
+            Phase phase = HIERARCHIES.contains(type) ? Phase.CLASSIFICATION : Phase.REALIZATION;
+            try (PhaseMetrics.Timer timer = metrics.start(phase, type.name(), reasoner.getRootOntology())) {
+                try {
+                    reasoner.precomputeInferences(type);
+                } catch (RuntimeException ex) {
+                    timer.failed();
+                    throw ex;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        measure("flush", () -> {
+            reasoner.flush();
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isConsistent() {
+        return measure("isConsistent", () -> reasoner.isConsistent());
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression ce) {
+        return measure("isSatisfiable", () -> reasoner.isSatisfiable(ce));
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        return measure("getUnsatisfiableClasses", () -> reasoner.getUnsatisfiableClasses());
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        return measure("isEntailed", () -> reasoner.isEntailed(axiom));
+    }
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        return measure("isEntailed", () -> reasoner.isEntailed(axioms));
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        return measure("getTopClassNode", () -> reasoner.getTopClassNode());
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        return measure("getBottomClassNode", () -> reasoner.getBottomClassNode());
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        return measure("getSubClasses", () -> reasoner.getSubClasses(ce, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        return measure("getSuperClasses", () -> reasoner.getSuperClasses(ce, direct));
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        return measure("getEquivalentClasses", () -> reasoner.getEquivalentClasses(ce));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        return measure("getDisjointClasses", () -> reasoner.getDisjointClasses(ce));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        return measure("getTopObjectPropertyNode", () -> reasoner.getTopObjectPropertyNode());
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        return measure("getBottomObjectPropertyNode", () -> reasoner.getBottomObjectPropertyNode());
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return measure("getSubObjectProperties", () -> reasoner.getSubObjectProperties(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return measure("getSuperObjectProperties", () -> reasoner.getSuperObjectProperties(pe, direct));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        return measure("getEquivalentObjectProperties", () -> reasoner.getEquivalentObjectProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        return measure("getDisjointObjectProperties", () -> reasoner.getDisjointObjectProperties(pe));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        return measure("getInverseObjectProperties", () -> reasoner.getInverseObjectProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        return measure("getObjectPropertyDomains", () -> reasoner.getObjectPropertyDomains(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        return measure("getObjectPropertyRanges", () -> reasoner.getObjectPropertyRanges(pe, direct));
+    }
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        return measure("getTopDataPropertyNode", () -> reasoner.getTopDataPropertyNode());
+    }
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        return measure("getBottomDataPropertyNode", () -> reasoner.getBottomDataPropertyNode());
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        return measure("getSubDataProperties", () -> reasoner.getSubDataProperties(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        return measure("getSuperDataProperties", () -> reasoner.getSuperDataProperties(pe, direct));
+    }
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        return measure("getEquivalentDataProperties", () -> reasoner.getEquivalentDataProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        return measure("getDisjointDataProperties", () -> reasoner.getDisjointDataProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        return measure("getDataPropertyDomains", () -> reasoner.getDataPropertyDomains(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return measure("getTypes", () -> reasoner.getTypes(ind, direct));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        return measure("getInstances", () -> reasoner.getInstances(ce, direct));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        return measure("getObjectPropertyValues", () -> reasoner.getObjectPropertyValues(ind, pe));
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return measure("getDataPropertyValues", () -> reasoner.getDataPropertyValues(ind, pe));
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return measure("getSameIndividuals", () -> reasoner.getSameIndividuals(ind));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        return measure("getDifferentIndividuals", () -> reasoner.getDifferentIndividuals(ind));
+    }
+}
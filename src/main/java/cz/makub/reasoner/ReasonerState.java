@@ -0,0 +1,392 @@
+package cz.makub.reasoner;
+
+import cz.makub.io.OntologySnapshot;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.Node;
+import org.semanticweb.owlapi.reasoner.NodeSet;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNode;
+import org.semanticweb.owlapi.reasoner.impl.OWLClassNodeSet;
+import org.semanticweb.owlapi.reasoner.impl.OWLNamedIndividualNode;
+import org.semanticweb.owlapi.reasoner.impl.OWLNamedIndividualNodeSet;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Results of classification and realization of a consistent ontology, which can be saved to a file and loaded
+ * instead of running the reasoner again.
+ * <p>
+ * The state consists of the class hierarchy of named classes, of all inferred class and property assertions
+ * of named individuals as computed by {@link MaterializedABox}, and of the inferred sameAs relations between them.
+ * It is saved as an {@link OntologySnapshot} of an ontology containing the hierarchy as EquivalentClasses and direct
+ * SubClassOf axioms, the assertions, SameIndividual axioms, and the content hash of the source ontology
+ * and the format version as ontology annotations, so a stale state can be recognized.
+ * <p>
+ * Individuals are answered as nodes of individuals inferred to be the same. Property assertions are also indexed
+ * by their objects, so values of inverse properties are answered too.
+ * The state is immutable after loading, so it can be queried concurrently.
+ */
+@SuppressWarnings("WeakerAccess")
+public final class ReasonerState {
+
+    private static final IRI STATE_IRI = IRI.create("urn:makub:reasoner-state");
+    private static final IRI CONTENT_HASH = IRI.create("urn:makub:reasoner-state#contentHash");
+    private static final IRI FORMAT_VERSION = IRI.create("urn:makub:reasoner-state#formatVersion");
+    //version 2 added sameAs relations
+    private static final int CURRENT_FORMAT_VERSION = 2;
+
+    private final String contentHash;
+    private final Map<OWLClass, Node<OWLClass>> classNodes = new HashMap<>();
+    private final Map<Node<OWLClass>, Set<Node<OWLClass>>> directSuperClasses = new HashMap<>();
+    private final Map<Node<OWLClass>, Set<Node<OWLClass>>> directSubClasses = new HashMap<>();
+    private final Map<OWLClass, Set<OWLNamedIndividual>> instances = new HashMap<>();
+    private final Map<OWLClass, Set<OWLNamedIndividual>> directInstances = new HashMap<>();
+    private final Map<OWLNamedIndividual, Set<OWLClass>> types = new HashMap<>();
+    private final Map<OWLNamedIndividual, Set<OWLClass>> directTypes = new HashMap<>();
+    private final Map<OWLNamedIndividual, Map<OWLObjectProperty, Set<OWLNamedIndividual>>> objectPropertyValues = new HashMap<>();
+    //the same assertions indexed by their objects, for inverse properties
+    private final Map<OWLNamedIndividual, Map<OWLObjectProperty, Set<OWLNamedIndividual>>> objectPropertySubjects = new HashMap<>();
+    private final Map<OWLNamedIndividual, Map<OWLDataProperty, Set<OWLLiteral>>> dataPropertyValues = new HashMap<>();
+    private final Map<OWLNamedIndividual, Node<OWLNamedIndividual>> sameIndividuals = new HashMap<>();
+    private final Node<OWLClass> topNode;
+    private final Node<OWLClass> bottomNode;
+
+    private ReasonerState(String contentHash, Set<OWLAxiom> axioms, OWLDataFactory factory) {
+        this.contentHash = contentHash;
+        //equivalence classes of named classes
+        for (OWLAxiom axiom : axioms) {
+            if (axiom instanceof OWLEquivalentClassesAxiom) {
+                OWLClassNode node = new OWLClassNode(((OWLEquivalentClassesAxiom) axiom).getNamedClasses());
+                for (OWLClass c : node) classNodes.put(c, node);
+            } else if (axiom instanceof OWLSameIndividualAxiom) {
+                OWLNamedIndividualNode node = new OWLNamedIndividualNode();
+                for (OWLIndividual ind : ((OWLSameIndividualAxiom) axiom).getIndividuals()) {
+                    if (ind.isNamed()) node.add(ind.asOWLNamedIndividual());
+                }
+                for (OWLNamedIndividual ind : node) sameIndividuals.put(ind, node);
+            }
+        }
+        this.topNode = register(factory.getOWLThing());
+        this.bottomNode = register(factory.getOWLNothing());
+        //hierarchy and assertions
+        for (OWLAxiom axiom : axioms) {
+            if (axiom instanceof OWLSubClassOfAxiom) {
+                OWLSubClassOfAxiom ax = (OWLSubClassOfAxiom) axiom;
+                Node<OWLClass> sub = register(ax.getSubClass().asOWLClass());
+                Node<OWLClass> sup = register(ax.getSuperClass().asOWLClass());
+                directSuperClasses.computeIfAbsent(sub, k -> new HashSet<>()).add(sup);
+                directSubClasses.computeIfAbsent(sup, k -> new HashSet<>()).add(sub);
+            } else if (axiom instanceof OWLClassAssertionAxiom) {
+                OWLClassAssertionAxiom ax = (OWLClassAssertionAxiom) axiom;
+                OWLNamedIndividual ind = ax.getIndividual().asOWLNamedIndividual();
+                OWLClass c = ax.getClassExpression().asOWLClass();
+                types.computeIfAbsent(ind, k -> new HashSet<>()).add(c);
+                instances.computeIfAbsent(c, k -> new HashSet<>()).add(ind);
+            } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+                OWLObjectPropertyAssertionAxiom ax = (OWLObjectPropertyAssertionAxiom) axiom;
+                objectPropertyValues.computeIfAbsent(ax.getSubject().asOWLNamedIndividual(), k -> new HashMap<>())
+                        .computeIfAbsent(ax.getProperty().asOWLObjectProperty(), k -> new HashSet<>())
+                        .add(ax.getObject().asOWLNamedIndividual());
+                objectPropertySubjects.computeIfAbsent(ax.getObject().asOWLNamedIndividual(), k -> new HashMap<>())
+                        .computeIfAbsent(ax.getProperty().asOWLObjectProperty(), k -> new HashSet<>())
+                        .add(ax.getSubject().asOWLNamedIndividual());
+            } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+                OWLDataPropertyAssertionAxiom ax = (OWLDataPropertyAssertionAxiom) axiom;
+                dataPropertyValues.computeIfAbsent(ax.getSubject().asOWLNamedIndividual(), k -> new HashMap<>())
+                        .computeIfAbsent(ax.getProperty().asOWLDataProperty(), k -> new HashSet<>())
+                        .add(ax.getObject());
+            }
+        }
+        //direct types are the types which are not strict superclasses of other types
+        Map<Node<OWLClass>, Set<Node<OWLClass>>> ancestors = new HashMap<>();
+        for (Map.Entry<OWLNamedIndividual, Set<OWLClass>> e : types.entrySet()) {
+            Set<Node<OWLClass>> covered = new HashSet<>();
+            for (OWLClass c : e.getValue()) {
+                covered.addAll(ancestors.computeIfAbsent(register(c), n -> closure(n, directSuperClasses)));
+            }
+            Set<OWLClass> direct = new HashSet<>();
+            for (OWLClass c : e.getValue()) {
+                if (!covered.contains(register(c))) {
+                    direct.add(c);
+                    directInstances.computeIfAbsent(c, k -> new HashSet<>()).add(e.getKey());
+                }
+            }
+            directTypes.put(e.getKey(), direct);
+        }
+    }
+
+    /**
+     * Computes the state using a reasoner.
+     *
+     * @param ontology ontology
+     * @param reasoner reasoner for the ontology, the ontology must be consistent
+     * @return computed state
+     */
+    public static ReasonerState compute(OWLOntology ontology, OWLReasoner reasoner) {
+        OWLDataFactory factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        reasoner.precomputeInferences(InferenceType.CLASS_HIERARCHY, InferenceType.CLASS_ASSERTIONS);
+        Set<OWLAxiom> axioms = hierarchyAxioms(ontology, reasoner, factory);
+        MaterializedABox abox = MaterializedABox.materialize(ontology, reasoner);
+        for (OWLNamedIndividual ind : abox.getIndividuals()) {
+            MaterializedABox.IndividualFacts facts = abox.getFacts(ind);
+            for (MaterializedABox.Fact fact : facts.getClassAssertions()) axioms.add(fact.getAxiom());
+            for (MaterializedABox.Fact fact : facts.getObjectPropertyAssertions()) axioms.add(fact.getAxiom());
+            for (MaterializedABox.Fact fact : facts.getDataPropertyAssertions()) axioms.add(fact.getAxiom());
+        }
+        Set<OWLNamedIndividual> done = new HashSet<>();
+        for (OWLNamedIndividual ind : ontology.getIndividualsInSignature(Imports.INCLUDED)) {
+            if (done.contains(ind)) continue;
+            Node<OWLNamedIndividual> same = reasoner.getSameIndividuals(ind);
+            done.addAll(same.getEntities());
+            if (same.getSize() > 1) axioms.add(factory.getOWLSameIndividualAxiom(same.getEntities()));
+        }
+        return new ReasonerState(contentHash(ontology), axioms, factory);
+    }
+
+    private static Set<OWLAxiom> hierarchyAxioms(OWLOntology ontology, OWLReasoner reasoner, OWLDataFactory factory) {
+        Set<OWLAxiom> axioms = new HashSet<>();
+        Set<OWLClass> classes = new HashSet<>(ontology.getClassesInSignature(Imports.INCLUDED));
+        classes.add(factory.getOWLThing());
+        classes.add(factory.getOWLNothing());
+        Set<Node<OWLClass>> done = new HashSet<>();
+        for (OWLClass c : classes) {
+            Node<OWLClass> node = reasoner.getEquivalentClasses(c);
+            if (!done.add(node)) continue;
+            OWLClass representative = node.getRepresentativeElement();
+            if (node.getSize() > 1) axioms.add(factory.getOWLEquivalentClassesAxiom(node.getEntities()));
+            for (Node<OWLClass> sup : reasoner.getSuperClasses(representative, true)) {
+                axioms.add(factory.getOWLSubClassOfAxiom(representative, sup.getRepresentativeElement()));
+            }
+        }
+        return axioms;
+    }
+
+    /**
+     * Saves the state to a file. The file is replaced atomically, so readers never see a partially written state.
+     *
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLDataFactory factory = manager.getOWLDataFactory();
+        OWLOntology stateOntology;
+        try {
+            stateOntology = manager.createOntology(STATE_IRI);
+        } catch (OWLOntologyCreationException ex) {
+            throw new IOException(ex);
+        }
+        List<OWLOntologyChange> changes = new ArrayList<>();
+        changes.add(new AddOntologyAnnotation(stateOntology, factory.getOWLAnnotation(
+                factory.getOWLAnnotationProperty(CONTENT_HASH), factory.getOWLLiteral(contentHash))));
+        changes.add(new AddOntologyAnnotation(stateOntology, factory.getOWLAnnotation(
+                factory.getOWLAnnotationProperty(FORMAT_VERSION), factory.getOWLLiteral(CURRENT_FORMAT_VERSION))));
+        for (Node<OWLNamedIndividual> node : new HashSet<>(sameIndividuals.values())) {
+            changes.add(new AddAxiom(stateOntology, factory.getOWLSameIndividualAxiom(node.getEntities())));
+        }
+        Set<Node<OWLClass>> nodes = new HashSet<>(classNodes.values());
+        nodes.addAll(directSuperClasses.keySet());
+        for (Node<OWLClass> node : nodes) {
+            if (node.getSize() > 1) changes.add(new AddAxiom(stateOntology, factory.getOWLEquivalentClassesAxiom(node.getEntities())));
+            for (Node<OWLClass> sup : directSuperClasses.getOrDefault(node, Collections.emptySet())) {
+                changes.add(new AddAxiom(stateOntology, factory.getOWLSubClassOfAxiom(node.getRepresentativeElement(), sup.getRepresentativeElement())));
+            }
+        }
+        for (Map.Entry<OWLNamedIndividual, Set<OWLClass>> e : types.entrySet()) {
+            for (OWLClass c : e.getValue()) {
+                changes.add(new AddAxiom(stateOntology, factory.getOWLClassAssertionAxiom(c, e.getKey())));
+            }
+        }
+        for (Map.Entry<OWLNamedIndividual, Map<OWLObjectProperty, Set<OWLNamedIndividual>>> e : objectPropertyValues.entrySet()) {
+            for (Map.Entry<OWLObjectProperty, Set<OWLNamedIndividual>> p : e.getValue().entrySet()) {
+                for (OWLNamedIndividual value : p.getValue()) {
+                    changes.add(new AddAxiom(stateOntology, factory.getOWLObjectPropertyAssertionAxiom(p.getKey(), e.getKey(), value)));
+                }
+            }
+        }
+        for (Map.Entry<OWLNamedIndividual, Map<OWLDataProperty, Set<OWLLiteral>>> e : dataPropertyValues.entrySet()) {
+            for (Map.Entry<OWLDataProperty, Set<OWLLiteral>> p : e.getValue().entrySet()) {
+                for (OWLLiteral value : p.getValue()) {
+                    changes.add(new AddAxiom(stateOntology, factory.getOWLDataPropertyAssertionAxiom(p.getKey(), e.getKey(), value)));
+                }
+            }
+        }
+        manager.applyChanges(changes);
+        OntologySnapshot.write(stateOntology, file);
+    }
+
+    /**
+     * Loads a state saved by {@link #save(Path)}.
+     *
+     * @param file saved state
+     * @return loaded state
+     * @throws IOException if the file cannot be read
+     */
+    public static ReasonerState load(Path file) throws IOException {
+        OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+        OWLOntology stateOntology;
+        try {
+            stateOntology = OntologySnapshot.read(file, manager);
+        } catch (OWLOntologyCreationException ex) {
+            throw new IOException(ex);
+        }
+        String hash = null;
+        int version = 1;
+        for (OWLAnnotation annotation : stateOntology.getAnnotations()) {
+            if (annotation.getProperty().getIRI().equals(CONTENT_HASH) && annotation.getValue() instanceof OWLLiteral) {
+                hash = ((OWLLiteral) annotation.getValue()).getLiteral();
+            } else if (annotation.getProperty().getIRI().equals(FORMAT_VERSION) && annotation.getValue() instanceof OWLLiteral) {
+                version = ((OWLLiteral) annotation.getValue()).parseInteger();
+            }
+        }
+        if (hash == null) throw new IOException("not a reasoner state: " + file);
+        if (version != CURRENT_FORMAT_VERSION) {
+            throw new IOException("reasoner state " + file + " has format version " + version + ", expected " + CURRENT_FORMAT_VERSION);
+        }
+        return new ReasonerState(hash, stateOntology.getAxioms(), manager.getOWLDataFactory());
+    }
+
+    /**
+     * Computes a hash of the logical content of an ontology and its imports closure, which does not depend
+     * on the order of axioms, on declarations or on annotations.
+     * <p>
+     * The hash covers only the axioms, not the behaviour of SWRL built-ins. Inferences of rules using
+     * time-dependent built-ins, like {@code thisYear} of {@link cz.makub.swrl.TemporalBuiltIns}, or built-ins
+     * whose implementation changed, are not recognized as stale; delete the state file when they may differ.
+     *
+     * @param ontology ontology
+     * @return hex string
+     */
+    public static String contentHash(OWLOntology ontology) {
+        long sum = 0;
+        long xor = 0;
+        long count = 0;
+        for (OWLOntology o : ontology.getImportsClosure()) {
+            for (OWLAxiom axiom : o.getLogicalAxioms()) {
+                long h = fnv1a(axiom.getAxiomWithoutAnnotations().toString());
+                sum += h;
+                xor ^= Long.rotateLeft(h, 17) * 0x9E3779B97F4A7C15L;
+                count++;
+            }
+        }
+        return String.format("%016x%016x%08x", sum, xor, count);
+    }
+
+    private static long fnv1a(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    private Node<OWLClass> register(OWLClass c) {
+        return classNodes.computeIfAbsent(c, OWLClassNode::new);
+    }
+
+    private Node<OWLClass> node(OWLClass c) {
+        Node<OWLClass> n = classNodes.get(c);
+        return (n == null) ? new OWLClassNode(c) : n;
+    }
+
+    private static Set<Node<OWLClass>> closure(Node<OWLClass> start, Map<Node<OWLClass>, Set<Node<OWLClass>>> edges) {
+        Set<Node<OWLClass>> result = new HashSet<>();
+        Deque<Node<OWLClass>> queue = new ArrayDeque<>(edges.getOrDefault(start, Collections.emptySet()));
+        while (!queue.isEmpty()) {
+            Node<OWLClass> n = queue.poll();
+            if (result.add(n)) queue.addAll(edges.getOrDefault(n, Collections.emptySet()));
+        }
+        return result;
+    }
+
+    /**
+     * @return true if the class is known to the state
+     */
+    boolean knows(OWLClass c) {
+        return classNodes.containsKey(c);
+    }
+
+    Node<OWLClass> getTopClassNode() {
+        return topNode;
+    }
+
+    Node<OWLClass> getBottomClassNode() {
+        return bottomNode;
+    }
+
+    Node<OWLClass> getEquivalentClasses(OWLClass c) {
+        return node(c);
+    }
+
+    NodeSet<OWLClass> getSuperClasses(OWLClass c, boolean direct) {
+        Node<OWLClass> n = node(c);
+        return new OWLClassNodeSet(direct ? directSuperClasses.getOrDefault(n, Collections.emptySet()) : closure(n, directSuperClasses));
+    }
+
+    NodeSet<OWLClass> getSubClasses(OWLClass c, boolean direct) {
+        Node<OWLClass> n = node(c);
+        return new OWLClassNodeSet(direct ? directSubClasses.getOrDefault(n, Collections.emptySet()) : closure(n, directSubClasses));
+    }
+
+    NodeSet<OWLNamedIndividual> getInstances(OWLClass c, boolean direct) {
+        Set<OWLNamedIndividual> result = new HashSet<>();
+        Map<OWLClass, Set<OWLNamedIndividual>> map = direct ? directInstances : instances;
+        //all equivalent classes have the same instances
+        for (OWLClass e : node(c)) result.addAll(map.getOrDefault(e, Collections.emptySet()));
+        return individualNodes(result);
+    }
+
+    NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        Set<Node<OWLClass>> nodes = new HashSet<>();
+        for (OWLClass c : (direct ? directTypes : types).getOrDefault(ind, Collections.emptySet())) nodes.add(node(c));
+        return new OWLClassNodeSet(nodes);
+    }
+
+    NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectProperty property) {
+        return individualNodes(objectPropertyValues.getOrDefault(ind, Collections.emptyMap()).getOrDefault(property, Collections.emptySet()));
+    }
+
+    /**
+     * @return individuals which have the given individual as a value of the property, i.e. values of its inverse
+     */
+    NodeSet<OWLNamedIndividual> getObjectPropertySubjects(OWLNamedIndividual ind, OWLObjectProperty property) {
+        return individualNodes(objectPropertySubjects.getOrDefault(ind, Collections.emptyMap()).getOrDefault(property, Collections.emptySet()));
+    }
+
+    Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty property) {
+        return Collections.unmodifiableSet(dataPropertyValues.getOrDefault(ind, Collections.emptyMap()).getOrDefault(property, Collections.emptySet()));
+    }
+
+    Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        Node<OWLNamedIndividual> node = sameIndividuals.get(ind);
+        return (node == null) ? new OWLNamedIndividualNode(ind) : node;
+    }
+
+    boolean hasType(OWLNamedIndividual ind, OWLClass c) {
+        return types.getOrDefault(ind, Collections.emptySet()).contains(c);
+    }
+
+    private NodeSet<OWLNamedIndividual> individualNodes(Set<OWLNamedIndividual> individuals) {
+        OWLNamedIndividualNodeSet nodeSet = new OWLNamedIndividualNodeSet();
+        for (OWLNamedIndividual ind : individuals) nodeSet.addNode(getSameIndividuals(ind));
+        return nodeSet;
+    }
+}
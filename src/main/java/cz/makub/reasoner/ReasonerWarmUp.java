@@ -0,0 +1,289 @@
+package cz.makub.reasoner;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.reasoner.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Precomputes inferences of a reasoner, so that the first query is answered as fast as the following ones
+ * instead of paying for the whole classification and realization.
+ * <p>
+ * The warm-up runs {@link OWLReasoner#precomputeInferences(InferenceType...)} for each chosen inference type,
+ * either in a background thread started by {@link #start()} or in the calling thread by {@link #run()}.
+ * Its state goes from {@link State#COLD} through {@link State#WARMING} to {@link State#READY},
+ * or to {@link State#FAILED} when the reasoner throws an exception or error, e.g. for an inconsistent ontology.
+ * The reasoner is not called before the warm-up starts, so a lazily initialized reasoner loads the ontology in the warm-up thread,
+ * and a reasoner created by {@link #create(OWLReasonerFactory, OWLOntology, InferenceType...)} is also created there,
+ * so {@link #getReasoner()} returns null until the warm-up starts.
+ * Reasoners like Pellet are not thread-safe, so the reasoner must not be queried before the warm-up ends,
+ * callers can wait by {@link #awaitReady(long, TimeUnit)} or refuse queries until {@link #isReady()}.
+ * <p>
+ * Progress is reported by {@link #getProgress()}. Reasoners created by {@link #create(OWLReasonerFactory, OWLOntology, InferenceType...)}
+ * also report progress within each inference type through a {@link ReasonerProgressMonitor}.
+ * <p>
+ * Usage:
+ * <pre>
+ * ReasonerWarmUp warmUp = ReasonerWarmUp.create(PelletReasonerFactory.getInstance(), ontology).start();
+ * ...
+ * if (warmUp.awaitReady(1, TimeUnit.MINUTES)) {
+ *     warmUp.getReasoner().getInstances(aClass, false);
+ * }
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ReasonerWarmUp implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReasonerWarmUp.class);
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    /**
+     * Inference types needed by the queries in the tutorials, class hierarchy and instances.
+     */
+    public static final InferenceType[] DEFAULT_INFERENCE_TYPES = {InferenceType.CLASS_HIERARCHY, InferenceType.CLASS_ASSERTIONS};
+
+    public enum State {
+        COLD, WARMING, READY, FAILED
+    }
+
+    private final Function<ReasonerProgressMonitor, OWLReasoner> reasonerCreator;
+    private volatile OWLReasoner reasoner;
+    private volatile List<InferenceType> inferenceTypes;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile State state = State.COLD;
+    private volatile InferenceType current;
+    private volatile int completedTypes;
+    private volatile String taskName;
+    private volatile double taskFraction;
+    private volatile long startNanos;
+    private volatile long endNanos;
+    private volatile Throwable failure;
+
+    /**
+     * @param reasoner       reasoner
+     * @param inferenceTypes inference types to precompute, the default ones when empty
+     */
+    public ReasonerWarmUp(OWLReasoner reasoner, InferenceType... inferenceTypes) {
+        this(monitor -> reasoner, inferenceTypes);
+    }
+
+    private ReasonerWarmUp(Function<ReasonerProgressMonitor, OWLReasoner> reasonerCreator, InferenceType[] inferenceTypes) {
+        this.reasonerCreator = reasonerCreator;
+        this.inferenceTypes = Collections.unmodifiableList(Arrays.asList(
+                (inferenceTypes.length == 0 ? DEFAULT_INFERENCE_TYPES : inferenceTypes).clone()));
+    }
+
+    /**
+     * Creates a warm-up which creates the reasoner in the warm-up thread, the reasoner reports its progress to the warm-up.
+     *
+     * @param reasonerFactory factory of the reasoner
+     * @param ontology        ontology
+     * @param inferenceTypes  inference types to precompute, the default ones when empty
+     * @return warm-up, not started yet
+     */
+    public static ReasonerWarmUp create(OWLReasonerFactory reasonerFactory, OWLOntology ontology, InferenceType... inferenceTypes) {
+        return new ReasonerWarmUp(monitor -> reasonerFactory.createReasoner(ontology, new SimpleConfiguration(monitor)), inferenceTypes);
+    }
+
+    /**
+     * Starts the warm-up in a background daemon thread.
+     *
+     * @return this warm-up
+     */
+    public ReasonerWarmUp start() {
+        begin();
+        Thread thread = new Thread(this::warmUp, "reasoner-warmup-" + threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        thread.start();
+        return this;
+    }
+
+    /**
+     * Runs the warm-up in the calling thread, a failure is not thrown but kept in the state.
+     */
+    @Override
+    public void run() {
+        begin();
+        warmUp();
+    }
+
+    private synchronized void begin() {
+        if (state != State.COLD) throw new IllegalStateException("warm-up already started");
+        state = State.WARMING;
+        startNanos = System.nanoTime();
+    }
+
+    private void warmUp() {
+        try {
+            //creating and asking the reasoner may load the ontology, so it is done here and not in the constructor
+            reasoner = reasonerCreator.apply(new Monitor());
+            List<InferenceType> types = new ArrayList<>();
+            Set<InferenceType> precomputable = reasoner.getPrecomputableInferenceTypes();
+            for (InferenceType type : inferenceTypes) {
+                if (precomputable.contains(type)) {
+                    types.add(type);
+                } else {
+                    log.debug("reasoner cannot precompute {}, skipped", type);
+                }
+            }
+            inferenceTypes = Collections.unmodifiableList(types);
+            for (InferenceType type : types) {
+                current = type;
+                long typeStart = System.nanoTime();
+                reasoner.precomputeInferences(type);
+                completedTypes++;
+                log.info("precomputed {} in {} ms", type, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - typeStart));
+            }
+            current = null;
+            endNanos = System.nanoTime();
+            state = State.READY;
+            log.info("reasoner warmed up in {} ms", TimeUnit.NANOSECONDS.toMillis(endNanos - startNanos));
+        } catch (Throwable ex) {
+            failure = ex;
+            endNanos = System.nanoTime();
+            state = State.FAILED;
+            log.warn("reasoner warm-up failed at {}", current, ex);
+        } finally {
+            done.countDown();
+        }
+    }
+
+    /**
+     * Waits until the warm-up ends.
+     *
+     * @param timeout maximum time to wait
+     * @param unit    unit of the timeout
+     * @return true if the reasoner is ready, false if the time elapsed
+     * @throws InterruptedException  if the waiting thread is interrupted
+     * @throws IllegalStateException if the warm-up failed, with the reasoner exception or error as the cause
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        if (!done.await(timeout, unit)) return false;
+        if (state == State.FAILED) throw new IllegalStateException("reasoner warm-up failed", failure);
+        return state == State.READY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    /**
+     * @return exception or error which made the warm-up fail, or null
+     */
+    public Throwable getFailure() {
+        return failure;
+    }
+
+    /**
+     * @return the reasoner, not to be queried before the warm-up ends,
+     * null if the warm-up has not created it yet or its creation failed
+     */
+    public OWLReasoner getReasoner() {
+        return reasoner;
+    }
+
+    /**
+     * @return inference types precomputed by the warm-up, the ones not supported by the reasoner are left out
+     * when the warm-up runs, before that all requested types
+     */
+    public List<InferenceType> getInferenceTypes() {
+        return inferenceTypes;
+    }
+
+    /**
+     * @return current progress of the warm-up
+     */
+    public Progress getProgress() {
+        State s = state;
+        long elapsed = (s == State.COLD) ? 0 : ((s == State.WARMING) ? System.nanoTime() : endNanos) - startNanos;
+        double fraction;
+        if (s == State.READY) {
+            fraction = 1.0;
+        } else if (inferenceTypes.isEmpty()) {
+            fraction = 0.0;
+        } else {
+            fraction = (completedTypes + (current == null ? 0.0 : taskFraction)) / inferenceTypes.size();
+        }
+        return new Progress(s, current, completedTypes, inferenceTypes.size(), taskName, fraction, elapsed);
+    }
+
+    /**
+     * Receives progress of the reasoner tasks.
+     */
+    @SuppressWarnings("serial")
+    private class Monitor implements ReasonerProgressMonitor {
+        @Override
+        public void reasonerTaskStarted(String taskName) {
+            ReasonerWarmUp.this.taskName = taskName;
+            taskFraction = 0.0;
+        }
+
+        @Override
+        public void reasonerTaskStopped() {
+            taskName = null;
+        }
+
+        @Override
+        public void reasonerTaskProgressChanged(int value, int max) {
+            if (max > 0) taskFraction = Math.min(1.0, (double) value / max);
+        }
+
+        @Override
+        public void reasonerTaskBusy() {
+        }
+    }
+
+    /**
+     * Snapshot of warm-up progress.
+     */
+    public static final class Progress {
+        public final State state;
+        /**
+         * inference type being precomputed, or null
+         */
+        public final InferenceType current;
+        public final int completedTypes;
+        public final int totalTypes;
+        /**
+         * reasoner task reported by the progress monitor, or null
+         */
+        public final String task;
+        /**
+         * estimate of the done part of the warm-up, from 0 to 1
+         */
+        public final double fraction;
+        public final long elapsedNanos;
+
+        private Progress(State state, InferenceType current, int completedTypes, int totalTypes, String task,
+                         double fraction, long elapsedNanos) {
+            this.state = state;
+            this.current = current;
+            this.completedTypes = completedTypes;
+            this.totalTypes = totalTypes;
+            this.task = task;
+            this.fraction = fraction;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return state + " " + completedTypes + "/" + totalTypes + (current == null ? "" : " " + current)
+                    + (task == null ? "" : " (" + task + ")") + " " + String.format("%.0f%%", 100 * fraction)
+                    + " " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) + "ms";
+        }
+    }
+}
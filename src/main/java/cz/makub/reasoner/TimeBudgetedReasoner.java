@@ -0,0 +1,626 @@
+package cz.makub.reasoner;
+
+import cz.makub.metrics.LatencyHistogram;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.*;
+import org.semanticweb.owlapi.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Reasoner which gives every call a time budget, so that a reasoner hanging on a pathological ontology
+ * (see {@link cz.makub.Pellet230Error}) does not block its callers forever.
+ * <p>
+ * Calls run in a worker thread of the wrapper, the calling thread waits for at most the timeout, measured from
+ * the moment of the call, including the time spent waiting for previous calls. When the timeout expires,
+ * the reasoner is asked to stop by {@link OWLReasoner#interrupt()} and the caller gets a {@link TimeOutException}.
+ * Reasoners created by {@link #create(OWLReasonerFactory, OWLOntology, long)} also get the timeout in their
+ * configuration, Pellet then stops by itself. If the worker does not return within a grace period after
+ * the interrupt, it is considered hung: it is abandoned together with its reasoner, and a new worker handles
+ * the next calls. The new worker creates its reasoner from the supplier in its own thread, so callers wait
+ * for it only within their time budget. Calls queued behind the hung one are cancelled. The abandoned reasoner
+ * is disposed when the hung call returns; if it never returns, the thread and the reasoner are leaked.
+ * <p>
+ * The first reasoner is created by the constructor. Calls, timeouts, failures, cancellations and latencies
+ * are counted for each query type (reasoner method), see {@link #getStatistics()}.
+ * <p>
+ * Usage:
+ * <pre>
+ * OWLReasoner reasoner = TimeBudgetedReasoner.create(PelletReasonerFactory.getInstance(), ontology, 5000);
+ * try {
+ *     reasoner.getInstances(aClass, false);
+ * } catch (TimeOutException ex) {
+ *     ...
+ * }
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class TimeBudgetedReasoner extends ForwardingReasoner {
+
+    private static final Logger log = LoggerFactory.getLogger(TimeBudgetedReasoner.class);
+    private static final AtomicInteger workerCounter = new AtomicInteger();
+
+    public static final long DEFAULT_GRACE_MILLIS = 1000;
+
+    private final Supplier<OWLReasoner> reasonerSupplier;
+    private final long timeoutNanos;
+    private final long graceNanos;
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private final LongAdder restarts = new LongAdder();
+    private volatile Worker worker;
+    private volatile OWLReasoner current;
+    private volatile boolean disposed;
+
+    /**
+     * @param reasonerSupplier creates the reasoner, called again when a worker hangs
+     * @param timeoutMillis    time budget of each call in milliseconds
+     * @param graceMillis      time given to the reasoner to stop after an interrupt
+     */
+    public TimeBudgetedReasoner(Supplier<OWLReasoner> reasonerSupplier, long timeoutMillis, long graceMillis) {
+        if (timeoutMillis <= 0) throw new IllegalArgumentException("timeoutMillis must be positive: " + timeoutMillis);
+        if (graceMillis < 0) throw new IllegalArgumentException("graceMillis must not be negative: " + graceMillis);
+        this.reasonerSupplier = reasonerSupplier;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.graceNanos = TimeUnit.MILLISECONDS.toNanos(graceMillis);
+        Worker w = new Worker();
+        this.worker = w;
+        //the first reasoner is ready when the constructor returns
+        try {
+            w.creation.get();
+        } catch (ExecutionException ex) {
+            w.shutdown();
+            if (ex.getCause() instanceof RuntimeException) throw (RuntimeException) ex.getCause();
+            if (ex.getCause() instanceof Error) throw (Error) ex.getCause();
+            throw new ReasonerInternalException(ex.getCause());
+        } catch (InterruptedException ex) {
+            w.shutdown();
+            Thread.currentThread().interrupt();
+            throw new ReasonerInterruptedException(ex);
+        }
+    }
+
+    /**
+     * Creates a time-budgeted reasoner with the timeout also set in the reasoner configuration.
+     *
+     * @param reasonerFactory factory of the reasoner
+     * @param ontology        ontology
+     * @param timeoutMillis   time budget of each call in milliseconds
+     * @return reasoner
+     */
+    public static TimeBudgetedReasoner create(OWLReasonerFactory reasonerFactory, OWLOntology ontology, long timeoutMillis) {
+        return new TimeBudgetedReasoner(
+                () -> reasonerFactory.createReasoner(ontology, new SimpleConfiguration(timeoutMillis)),
+                timeoutMillis, DEFAULT_GRACE_MILLIS);
+    }
+
+    /**
+     * All calls are overridden, the ones which reason run in the worker.
+     */
+    @Override
+    protected OWLReasoner delegate() {
+        return current;
+    }
+
+    private <T> T call(String queryType, Function<OWLReasoner, T> query) {
+        if (disposed) throw new IllegalStateException("reasoner is disposed");
+        Stats s = stats.computeIfAbsent(queryType, Stats::new);
+        long start = System.nanoTime();
+        Worker w = worker;
+        //claimed either by the worker when it starts the call, or by the caller when it gives up before that
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<T> future;
+        try {
+            future = w.executor.submit(() -> claimed.compareAndSet(false, true) ? query.apply(w.reasoner()) : null);
+        } catch (RejectedExecutionException ex) {
+            if (disposed) throw new IllegalStateException("reasoner is disposed");
+            //the worker was replaced meanwhile
+            return call(queryType, query);
+        }
+        try {
+            T result = future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+            s.completed(System.nanoTime() - start);
+            return result;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof TimeOutException) {
+                //the reasoner stopped by itself at the timeout from its configuration
+                s.timedOut(System.nanoTime() - start);
+            } else {
+                s.failed(System.nanoTime() - start);
+            }
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new ReasonerInternalException(cause);
+        } catch (CancellationException ex) {
+            //queued behind a hung call when its worker was replaced, it never ran
+            s.cancelled(System.nanoTime() - start);
+            throw new TimeOutException(queryType + " was cancelled, the reasoner worker was replaced");
+        } catch (TimeoutException ex) {
+            s.timedOut(System.nanoTime() - start);
+            stop(w, future, claimed, queryType);
+            throw new TimeOutException(queryType + " exceeded " + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + " ms");
+        } catch (InterruptedException ex) {
+            stop(w, future, claimed, queryType);
+            Thread.currentThread().interrupt();
+            throw new ReasonerInterruptedException(ex);
+        }
+    }
+
+    /**
+     * Interrupts a running call, replaces the worker if the call does not stop in the grace period.
+     */
+    private void stop(Worker w, Future<?> future, AtomicBoolean claimed, String queryType) {
+        if (claimed.compareAndSet(false, true)) {
+            //still waiting in the queue, it will not run
+            future.cancel(false);
+            return;
+        }
+        try {
+            w.reasoner().interrupt();
+        } catch (RuntimeException ex) {
+            log.debug("reasoner interrupt failed", ex);
+        }
+        try {
+            future.get(graceNanos, TimeUnit.NANOSECONDS);
+            return;
+        } catch (ExecutionException | CancellationException ex) {
+            //stopped by the interrupt
+            return;
+        } catch (TimeoutException ex) {
+            log.warn("{} did not stop after interrupt, replacing the reasoner worker", queryType);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (worker != w || disposed) return;
+            //the new reasoner is created in the new worker, calls submitted meanwhile wait for it within their budget
+            worker = new Worker();
+            restarts.increment();
+        }
+        //calls queued behind the hung one fail fast with a timeout, their callers can retry;
+        //the abandoned reasoner is disposed when the hung call returns, a call which never returns leaks it
+        w.shutdown();
+    }
+
+    /**
+     * @return the most recently created reasoner
+     */
+    public OWLReasoner getReasoner() {
+        return current;
+    }
+
+    /**
+     * @return number of times a hung worker was replaced
+     */
+    public long getRestarts() {
+        return restarts.sum();
+    }
+
+    /**
+     * @return statistics for each query type, sorted by the name of the reasoner method
+     */
+    public Map<String, Snapshot> getStatistics() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        for (Stats s : stats.values()) snapshots.put(s.queryType, s.snapshot());
+        return snapshots;
+    }
+
+    //calls which only return settings are not sent to the worker, they are the same for all reasoners from the supplier
+
+    @Override
+    public String getReasonerName() {
+        return current.getReasonerName();
+    }
+
+    @Override
+    public Version getReasonerVersion() {
+        return current.getReasonerVersion();
+    }
+
+    @Override
+    public BufferingMode getBufferingMode() {
+        return current.getBufferingMode();
+    }
+
+    @Override
+    public OWLOntology getRootOntology() {
+        return current.getRootOntology();
+    }
+
+    @Override
+    public long getTimeOut() {
+        return TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+    }
+
+    @Override
+    public FreshEntityPolicy getFreshEntityPolicy() {
+        return current.getFreshEntityPolicy();
+    }
+
+    @Override
+    public IndividualNodeSetPolicy getIndividualNodeSetPolicy() {
+        return current.getIndividualNodeSetPolicy();
+    }
+
+    @Override
+    public void interrupt() {
+        OWLReasoner r = worker.created;
+        if (r != null) r.interrupt();
+    }
+
+    /**
+     * Cancels queued calls and disposes the reasoner. A running call is interrupted,
+     * the reasoner is disposed by the worker as soon as the call returns.
+     */
+    @Override
+    public void dispose() {
+        Worker w;
+        synchronized (this) {
+            disposed = true;
+            w = worker;
+        }
+        w.shutdown();
+    }
+
+    @Override
+    public void flush() {
+        call("flush", r -> {
+            r.flush();
+            return null;
+        });
+    }
+
+    @Override
+    public List<OWLOntologyChange> getPendingChanges() {
+        return call("getPendingChanges", r -> r.getPendingChanges());
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomAdditions() {
+        return call("getPendingAxiomAdditions", r -> r.getPendingAxiomAdditions());
+    }
+
+    @Override
+    public Set<OWLAxiom> getPendingAxiomRemovals() {
+        return call("getPendingAxiomRemovals", r -> r.getPendingAxiomRemovals());
+    }
+
+    @Override
+    public void precomputeInferences(InferenceType... inferenceTypes) {
+        call("precomputeInferences", r -> {
+            r.precomputeInferences(inferenceTypes);
+            return null;
+        });
+    }
+
+    @Override
+    public boolean isPrecomputed(InferenceType inferenceType) {
+        return call("isPrecomputed", r -> r.isPrecomputed(inferenceType));
+    }
+
+    @Override
+    public Set<InferenceType> getPrecomputableInferenceTypes() {
+        return call("getPrecomputableInferenceTypes", r -> r.getPrecomputableInferenceTypes());
+    }
+
+    @Override
+    public boolean isConsistent() {
+        return call("isConsistent", r -> r.isConsistent());
+    }
+
+    @Override
+    public boolean isSatisfiable(OWLClassExpression ce) {
+        return call("isSatisfiable", r -> r.isSatisfiable(ce));
+    }
+
+    @Override
+    public Node<OWLClass> getUnsatisfiableClasses() {
+        return call("getUnsatisfiableClasses", r -> r.getUnsatisfiableClasses());
+    }
+
+    @Override
+    public boolean isEntailed(OWLAxiom axiom) {
+        return call("isEntailed", r -> r.isEntailed(axiom));
+    }
+
+    @Override
+    public boolean isEntailed(Set<? extends OWLAxiom> axioms) {
+        return call("isEntailed", r -> r.isEntailed(axioms));
+    }
+
+    @Override
+    public boolean isEntailmentCheckingSupported(AxiomType<?> axiomType) {
+        return call("isEntailmentCheckingSupported", r -> r.isEntailmentCheckingSupported(axiomType));
+    }
+
+    @Override
+    public Node<OWLClass> getTopClassNode() {
+        return call("getTopClassNode", r -> r.getTopClassNode());
+    }
+
+    @Override
+    public Node<OWLClass> getBottomClassNode() {
+        return call("getBottomClassNode", r -> r.getBottomClassNode());
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSubClasses(OWLClassExpression ce, boolean direct) {
+        return call("getSubClasses", r -> r.getSubClasses(ce, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getSuperClasses(OWLClassExpression ce, boolean direct) {
+        return call("getSuperClasses", r -> r.getSuperClasses(ce, direct));
+    }
+
+    @Override
+    public Node<OWLClass> getEquivalentClasses(OWLClassExpression ce) {
+        return call("getEquivalentClasses", r -> r.getEquivalentClasses(ce));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDisjointClasses(OWLClassExpression ce) {
+        return call("getDisjointClasses", r -> r.getDisjointClasses(ce));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getTopObjectPropertyNode() {
+        return call("getTopObjectPropertyNode", r -> r.getTopObjectPropertyNode());
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getBottomObjectPropertyNode() {
+        return call("getBottomObjectPropertyNode", r -> r.getBottomObjectPropertyNode());
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSubObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return call("getSubObjectProperties", r -> r.getSubObjectProperties(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getSuperObjectProperties(OWLObjectPropertyExpression pe, boolean direct) {
+        return call("getSuperObjectProperties", r -> r.getSuperObjectProperties(pe, direct));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getEquivalentObjectProperties(OWLObjectPropertyExpression pe) {
+        return call("getEquivalentObjectProperties", r -> r.getEquivalentObjectProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLObjectPropertyExpression> getDisjointObjectProperties(OWLObjectPropertyExpression pe) {
+        return call("getDisjointObjectProperties", r -> r.getDisjointObjectProperties(pe));
+    }
+
+    @Override
+    public Node<OWLObjectPropertyExpression> getInverseObjectProperties(OWLObjectPropertyExpression pe) {
+        return call("getInverseObjectProperties", r -> r.getInverseObjectProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyDomains(OWLObjectPropertyExpression pe, boolean direct) {
+        return call("getObjectPropertyDomains", r -> r.getObjectPropertyDomains(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getObjectPropertyRanges(OWLObjectPropertyExpression pe, boolean direct) {
+        return call("getObjectPropertyRanges", r -> r.getObjectPropertyRanges(pe, direct));
+    }
+
+    @Override
+    public Node<OWLDataProperty> getTopDataPropertyNode() {
+        return call("getTopDataPropertyNode", r -> r.getTopDataPropertyNode());
+    }
+
+    @Override
+    public Node<OWLDataProperty> getBottomDataPropertyNode() {
+        return call("getBottomDataPropertyNode", r -> r.getBottomDataPropertyNode());
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSubDataProperties(OWLDataProperty pe, boolean direct) {
+        return call("getSubDataProperties", r -> r.getSubDataProperties(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getSuperDataProperties(OWLDataProperty pe, boolean direct) {
+        return call("getSuperDataProperties", r -> r.getSuperDataProperties(pe, direct));
+    }
+
+    @Override
+    public Node<OWLDataProperty> getEquivalentDataProperties(OWLDataProperty pe) {
+        return call("getEquivalentDataProperties", r -> r.getEquivalentDataProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLDataProperty> getDisjointDataProperties(OWLDataPropertyExpression pe) {
+        return call("getDisjointDataProperties", r -> r.getDisjointDataProperties(pe));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getDataPropertyDomains(OWLDataProperty pe, boolean direct) {
+        return call("getDataPropertyDomains", r -> r.getDataPropertyDomains(pe, direct));
+    }
+
+    @Override
+    public NodeSet<OWLClass> getTypes(OWLNamedIndividual ind, boolean direct) {
+        return call("getTypes", r -> r.getTypes(ind, direct));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getInstances(OWLClassExpression ce, boolean direct) {
+        return call("getInstances", r -> r.getInstances(ce, direct));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual ind, OWLObjectPropertyExpression pe) {
+        return call("getObjectPropertyValues", r -> r.getObjectPropertyValues(ind, pe));
+    }
+
+    @Override
+    public Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual ind, OWLDataProperty pe) {
+        return call("getDataPropertyValues", r -> r.getDataPropertyValues(ind, pe));
+    }
+
+    @Override
+    public Node<OWLNamedIndividual> getSameIndividuals(OWLNamedIndividual ind) {
+        return call("getSameIndividuals", r -> r.getSameIndividuals(ind));
+    }
+
+    @Override
+    public NodeSet<OWLNamedIndividual> getDifferentIndividuals(OWLNamedIndividual ind) {
+        return call("getDifferentIndividuals", r -> r.getDifferentIndividuals(ind));
+    }
+
+    /**
+     * Thread with its own reasoner, which is created and disposed in the thread.
+     */
+    private final class Worker {
+        private final ExecutorService executor;
+        private final Future<?> creation;
+        private volatile OWLReasoner created;
+        private volatile RuntimeException creationFailure;
+        private boolean reasonerDisposed;
+
+        private Worker() {
+            this.executor = Executors.newSingleThreadExecutor(r -> {
+                Thread t = new Thread(() -> {
+                    try {
+                        r.run();
+                    } finally {
+                        exited();
+                    }
+                }, "reasoner-worker-" + workerCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.creation = executor.submit(this::create);
+        }
+
+        private void create() {
+            try {
+                created = reasonerSupplier.get();
+                current = created;
+            } catch (RuntimeException ex) {
+                creationFailure = ex;
+                log.error("cannot create reasoner", ex);
+                throw ex;
+            }
+        }
+
+        /**
+         * @return the reasoner, called by the worker thread after its creation
+         */
+        private OWLReasoner reasoner() {
+            OWLReasoner r = created;
+            if (r == null) throw new IllegalStateException("reasoner was not created", creationFailure);
+            return r;
+        }
+
+        private void shutdown() {
+            for (Runnable queued : executor.shutdownNow()) {
+                if (queued instanceof Future) ((Future<?>) queued).cancel(false);
+            }
+        }
+
+        private synchronized void exited() {
+            //the thread also ends when a task throws, the reasoner is disposed only when the worker is shut down
+            if (!executor.isShutdown() || created == null || reasonerDisposed) return;
+            reasonerDisposed = true;
+            try {
+                created.dispose();
+            } catch (RuntimeException ex) {
+                log.debug("reasoner dispose failed", ex);
+            }
+        }
+    }
+
+    /**
+     * Live statistics of one query type.
+     */
+    private static final class Stats {
+        private final String queryType;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder timeouts = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder cancellations = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+
+        private Stats(String queryType) {
+            this.queryType = queryType;
+        }
+
+        void completed(long nanos) {
+            calls.increment();
+            latency.record(nanos);
+        }
+
+        void failed(long nanos) {
+            failures.increment();
+            completed(nanos);
+        }
+
+        void timedOut(long nanos) {
+            timeouts.increment();
+            completed(nanos);
+        }
+
+        void cancelled(long nanos) {
+            cancellations.increment();
+            completed(nanos);
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(queryType, calls.sum(), timeouts.sum(), failures.sum(), cancellations.sum(), latency.snapshot());
+        }
+    }
+
+    /**
+     * Copy of statistics of one query type.
+     */
+    public static final class Snapshot {
+        public final String queryType;
+        public final long calls;
+        public final long timeouts;
+        public final long failures;
+        /**
+         * calls queued behind a hung call, cancelled when the worker was replaced
+         */
+        public final long cancellations;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Snapshot(String queryType, long calls, long timeouts, long failures, long cancellations, LatencyHistogram.Snapshot latency) {
+            this.queryType = queryType;
+            this.calls = calls;
+            this.timeouts = timeouts;
+            this.failures = failures;
+            this.cancellations = cancellations;
+            this.latency = latency;
+        }
+
+        /**
+         * @return fraction of calls which timed out
+         */
+        public double timeoutRate() {
+            return calls == 0 ? 0.0 : (double) timeouts / calls;
+        }
+
+        @Override
+        public String toString() {
+            return queryType + " calls=" + calls + " timeouts=" + timeouts + " failures=" + failures
+                    + " cancellations=" + cancellations + " latency: " + latency;
+        }
+    }
+}
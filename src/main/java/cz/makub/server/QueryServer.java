@@ -0,0 +1,667 @@
+package cz.makub.server;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import cz.makub.io.OntologyCatalog;
+import cz.makub.metrics.LatencyHistogram;
+import cz.makub.reasoner.ReasonerWarmUp;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.formats.FunctionalSyntaxDocumentFormat;
+import org.semanticweb.owlapi.formats.PrefixDocumentFormat;
+import org.semanticweb.owlapi.io.StringDocumentSource;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.reasoner.OWLReasonerFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Long-running HTTP server answering reasoner queries about one ontology, so that the ontology is loaded
+ * and the reasoners are warm for all queries, unlike in the tutorials which reason once and exit.
+ * <p>
+ * The server listens on the loopback interface only. Endpoints, all GET, with entities given as full IRIs,
+ * as {@code <IRI>} or as prefixed names using the prefixes of the ontology document:
+ * <ul>
+ * <li>{@code /instances?class=:Person&direct=false} instances of a class</li>
+ * <li>{@code /types?individual=:Martin&direct=true} classes of an individual</li>
+ * <li>{@code /values?individual=:Martin&property=:hasEmail} values of an object or data property</li>
+ * <li>{@code /entailed?axiom=ClassAssertion(:Person :Martin)} entailment of an axiom in functional syntax</li>
+ * <li>{@code /ready} readiness of the reasoners</li>
+ * <li>{@code /stats} server statistics</li>
+ * </ul>
+ * Answers are JSON objects with the results in the member {@code results}, errors have the member {@code error}.
+ * <p>
+ * Pellet is not thread-safe, so the server has a pool of reasoners, each used only by its own worker thread.
+ * Queries wait in a shared bounded queue, a worker takes all waiting queries up to the batch size at once
+ * and answers them in one pass over its reasoner, realizing the reasoner once for all instance and type queries
+ * in the batch. Identical queries arriving while one is waiting or being answered get its answer,
+ * they are not queued again. When the queue is full, queries are rejected with 503.
+ * When a worker dies on an error, e.g. a StackOverflowError in the reasoner, the queries of its batch fail
+ * and the worker is replaced by a new one with a new reasoner.
+ * <p>
+ * With {@link #setWarmUp(InferenceType...)} each worker precomputes the inferences before taking queries,
+ * {@code /ready} then answers 200 when all reasoners are warm and 503 with the warm-up progress before that.
+ * Queries arriving meanwhile wait in the queue, or are rejected with 503 when {@link #setRefuseUntilReady(boolean)} is set.
+ * <p>
+ * Connections are handled by virtual threads when the JVM has them, otherwise by a cached thread pool.
+ * The ontology must not be changed while the server runs.
+ * <p>
+ * Run in Maven with <code>mvn exec:java -Dexec.mainClass=cz.makub.server.QueryServer -Dexec.args="ontologyIRI port"</code>
+ */
+@SuppressWarnings("WeakerAccess")
+public class QueryServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(QueryServer.class);
+    private static final AtomicInteger threadCounter = new AtomicInteger();
+
+    public static final int DEFAULT_PORT = 8080;
+    public static final int DEFAULT_MAX_BATCH = 64;
+    public static final int DEFAULT_QUEUE_CAPACITY = 10_000;
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = 30_000;
+    private static final long WORKER_RESTART_DELAY_MILLIS = 1000;
+
+    private static final String INSTANCES = "instances";
+    private static final String TYPES = "types";
+    private static final String VALUES = "values";
+    private static final String ENTAILED = "entailed";
+
+    private final OWLOntology ontology;
+    private final OWLReasonerFactory reasonerFactory;
+    private final int reasoners;
+    private final OWLDataFactory factory;
+    private final PrefixDocumentFormat prefixes;
+    private final ConcurrentHashMap<String, Query> inFlight = new ConcurrentHashMap<>();
+    private final List<Thread> workers = new ArrayList<>();
+    private final List<ReasonerWarmUp> warmUps = new CopyOnWriteArrayList<>();
+    private final AtomicInteger readyWorkers = new AtomicInteger();
+    private InferenceType[] warmUpTypes;
+    private boolean refuseUntilReady;
+    private int maxBatch = DEFAULT_MAX_BATCH;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long requestTimeoutMillis = DEFAULT_REQUEST_TIMEOUT_MILLIS;
+    private BlockingQueue<Query> queue;
+    private HttpServer server;
+    private ExecutorService connections;
+    private volatile boolean running;
+    //statistics
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder batchedQueries = new LongAdder();
+    private final LatencyHistogram latency = new LatencyHistogram();
+
+    /**
+     * @param ontology        ontology
+     * @param reasonerFactory factory of the reasoners
+     * @param reasoners       number of reasoners, each with its own worker thread
+     */
+    public QueryServer(OWLOntology ontology, OWLReasonerFactory reasonerFactory, int reasoners) {
+        if (reasoners < 1) throw new IllegalArgumentException("reasoners must be positive: " + reasoners);
+        this.ontology = ontology;
+        this.reasonerFactory = reasonerFactory;
+        this.reasoners = reasoners;
+        this.factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        OWLDocumentFormat format = ontology.getOWLOntologyManager().getOntologyFormat(ontology);
+        this.prefixes = (format != null && format.isPrefixOWLOntologyFormat()) ? format.asPrefixOWLOntologyFormat() : null;
+    }
+
+    /**
+     * Sets the maximum number of queries answered by a worker in one pass.
+     */
+    public QueryServer setMaxBatch(int maxBatch) {
+        if (maxBatch < 1) throw new IllegalArgumentException("maxBatch must be positive: " + maxBatch);
+        this.maxBatch = maxBatch;
+        return this;
+    }
+
+    /**
+     * Sets the maximum number of queries waiting for a worker, takes effect at {@link #start(int)}.
+     */
+    public QueryServer setQueueCapacity(int queueCapacity) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("queueCapacity must be positive: " + queueCapacity);
+        this.queueCapacity = queueCapacity;
+        return this;
+    }
+
+    /**
+     * Sets how long a request waits for its answer before it gets 504.
+     */
+    public QueryServer setRequestTimeoutMillis(long requestTimeoutMillis) {
+        if (requestTimeoutMillis <= 0) throw new IllegalArgumentException("requestTimeoutMillis must be positive: " + requestTimeoutMillis);
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        return this;
+    }
+
+    /**
+     * Makes each worker precompute the inferences before it takes the first query.
+     *
+     * @param inferenceTypes inference types, the defaults of {@link ReasonerWarmUp} when empty
+     */
+    public QueryServer setWarmUp(InferenceType... inferenceTypes) {
+        this.warmUpTypes = inferenceTypes;
+        return this;
+    }
+
+    /**
+     * Sets whether queries are rejected with 503 until all reasoners are ready, instead of waiting in the queue.
+     */
+    public QueryServer setRefuseUntilReady(boolean refuseUntilReady) {
+        this.refuseUntilReady = refuseUntilReady;
+        return this;
+    }
+
+    /**
+     * @return COLD before start, WARMING until all workers have their reasoners ready, READY,
+     * or FAILED when the warm-up of some reasoner failed
+     */
+    public ReasonerWarmUp.State getState() {
+        if (!running) return ReasonerWarmUp.State.COLD;
+        for (ReasonerWarmUp warmUp : warmUps) {
+            if (warmUp.getState() == ReasonerWarmUp.State.FAILED) return ReasonerWarmUp.State.FAILED;
+        }
+        return readyWorkers.get() == reasoners ? ReasonerWarmUp.State.READY : ReasonerWarmUp.State.WARMING;
+    }
+
+    /**
+     * Starts the workers and the HTTP server on the loopback interface.
+     *
+     * @param port port, 0 for any free port
+     * @return this server
+     * @throws IOException if the port cannot be bound
+     */
+    public synchronized QueryServer start(int port) throws IOException {
+        if (running) throw new IllegalStateException("server is already running");
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        warmUps.clear();
+        readyWorkers.set(0);
+        running = true;
+        for (int i = 0; i < reasoners; i++) startWorker(0);
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/", this::handle);
+        connections = connectionExecutor();
+        server.setExecutor(connections);
+        server.start();
+        log.info("serving queries at http://localhost:{}/ with {} reasoners", getPort(), reasoners);
+        return this;
+    }
+
+    /**
+     * @return the port the server listens on
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stops the HTTP server and the workers, queries not answered yet fail.
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) return;
+        running = false;
+        server.stop(0);
+        connections.shutdownNow();
+        for (Thread worker : workers) worker.interrupt();
+        workers.clear();
+        List<Query> pending = new ArrayList<>();
+        queue.drainTo(pending);
+        for (Query q : pending) fail(q, new CancellationException("server stopped"));
+    }
+
+    private static ExecutorService connectionExecutor() {
+        try {
+            //virtual threads are available since Java 21, the code is compiled for an older version
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            log.debug("virtual threads are not available, using platform threads for connections");
+            return Executors.newCachedThreadPool(r -> {
+                Thread t = new Thread(r, "query-connection-" + threadCounter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+
+    // queries
+
+    /**
+     * Submits a query, coalescing it with an identical query which is not answered yet.
+     */
+    private CompletableFuture<String> submit(Query query) {
+        Query existing = inFlight.putIfAbsent(query.key, query);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.result;
+        }
+        if (!queue.offer(query)) {
+            rejected.increment();
+            fail(query, new RejectedExecutionException("query queue is full"));
+        }
+        return query.result;
+    }
+
+    private void fail(Query query, Throwable ex) {
+        inFlight.remove(query.key, query);
+        query.result.completeExceptionally(ex);
+    }
+
+    private synchronized void startWorker(long delayMillis) {
+        Thread worker = new Thread(() -> work(delayMillis), "query-worker-" + threadCounter.incrementAndGet());
+        worker.setDaemon(true);
+        worker.start();
+        workers.add(worker);
+    }
+
+    /**
+     * Replaces a worker which died on an error, unless the server is stopping.
+     */
+    private synchronized void replaceWorker(Thread dead) {
+        if (!running || !workers.remove(dead)) return;
+        //delayed, so that a reasoner which cannot be created does not make the workers spin
+        startWorker(WORKER_RESTART_DELAY_MILLIS);
+    }
+
+    private void work(long delayMillis) {
+        OWLReasoner reasoner = null;
+        ReasonerWarmUp warmUp = null;
+        boolean ready = false;
+        List<Query> batch = new ArrayList<>(maxBatch);
+        try {
+            if (delayMillis > 0) Thread.sleep(delayMillis);
+            if (warmUpTypes != null) {
+                warmUp = ReasonerWarmUp.create(reasonerFactory, ontology, warmUpTypes);
+                warmUps.add(warmUp);
+                warmUp.run();
+                reasoner = warmUp.getReasoner();
+                if (reasoner == null) throw new IllegalStateException("cannot create reasoner", warmUp.getFailure());
+                //a failed reasoner still answers, its queries fail one by one
+                ready = warmUp.isReady();
+            } else {
+                reasoner = reasonerFactory.createReasoner(ontology);
+                //loads the ontology into the reasoner before the first query
+                reasoner.isConsistent();
+                ready = true;
+            }
+            if (ready) readyWorkers.incrementAndGet();
+            while (running) {
+                batch.add(queue.take());
+                queue.drainTo(batch, maxBatch - 1);
+                answer(reasoner, batch);
+                batch.clear();
+            }
+        } catch (InterruptedException ex) {
+            //stopped
+        } catch (Throwable ex) {
+            log.error("query worker failed, replacing it", ex);
+            //queries of the batch must leave inFlight, otherwise identical queries would wait for them forever
+            for (Query q : batch) {
+                if (!q.result.isDone()) {
+                    failures.increment();
+                    fail(q, ex);
+                }
+            }
+            if (ready) readyWorkers.decrementAndGet();
+            if (warmUp != null) warmUps.remove(warmUp);
+            replaceWorker(Thread.currentThread());
+        } finally {
+            if (reasoner != null) {
+                try {
+                    reasoner.dispose();
+                } catch (Throwable ex) {
+                    log.debug("cannot dispose reasoner", ex);
+                }
+            }
+        }
+    }
+
+    private void answer(OWLReasoner reasoner, List<Query> batch) {
+        batches.increment();
+        batchedQueries.add(batch.size());
+        long realizing = batch.stream().filter(q -> q.type.equals(INSTANCES) || q.type.equals(TYPES)).count();
+        if (realizing > 1) {
+            try {
+                reasoner.precomputeInferences(InferenceType.CLASS_ASSERTIONS);
+            } catch (RuntimeException ex) {
+                log.debug("realization failed, queries will fail separately", ex);
+            }
+        }
+        for (Query q : batch) {
+            String json;
+            try {
+                json = answer(reasoner, q);
+            } catch (RuntimeException ex) {
+                failures.increment();
+                fail(q, ex);
+                continue;
+            }
+            inFlight.remove(q.key, q);
+            q.result.complete(json);
+        }
+    }
+
+    private String answer(OWLReasoner reasoner, Query q) {
+        switch (q.type) {
+            case INSTANCES:
+                return entities(reasoner.getInstances((OWLClass) q.subject, q.direct).getFlattened());
+            case TYPES:
+                return entities(reasoner.getTypes((OWLNamedIndividual) q.subject, q.direct).getFlattened());
+            case VALUES:
+                OWLNamedIndividual ind = (OWLNamedIndividual) q.subject;
+                if (q.property.isOWLDataProperty()) {
+                    Set<OWLLiteral> literals = reasoner.getDataPropertyValues(ind, q.property.asOWLDataProperty());
+                    return "{\"results\":[" + literals.stream().map(QueryServer::literal).sorted()
+                            .collect(Collectors.joining(",")) + "]}";
+                }
+                return entities(reasoner.getObjectPropertyValues(ind, q.property.asOWLObjectProperty()).getFlattened());
+            case ENTAILED:
+                return "{\"results\":" + reasoner.isEntailed((OWLAxiom) q.subject) + "}";
+            default:
+                throw new IllegalStateException("unknown query type " + q.type);
+        }
+    }
+
+    private static String entities(Set<? extends OWLEntity> entities) {
+        return "{\"results\":[" + entities.stream().map(e -> json(e.getIRI().toString())).sorted()
+                .collect(Collectors.joining(",")) + "]}";
+    }
+
+    private static String literal(OWLLiteral literal) {
+        return "{\"value\":" + json(literal.getLiteral()) + (literal.hasLang() ? ",\"lang\":" + json(literal.getLang())
+                : ",\"datatype\":" + json(literal.getDatatype().getIRI().toString())) + "}";
+    }
+
+    static String json(String s) {
+        StringBuilder sb = new StringBuilder(s.length() + 2).append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '"':
+                    sb.append("\\\"");
+                    break;
+                case '\\':
+                    sb.append("\\\\");
+                    break;
+                case '\n':
+                    sb.append("\\n");
+                    break;
+                case '\r':
+                    sb.append("\\r");
+                    break;
+                case '\t':
+                    sb.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        sb.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        sb.append(c);
+                    }
+            }
+        }
+        return sb.append('"').toString();
+    }
+
+    // HTTP
+
+    private void handle(HttpExchange exchange) throws IOException {
+        long start = System.nanoTime();
+        requests.increment();
+        int status;
+        String body;
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                status = 405;
+                body = error("only GET is supported");
+            } else {
+                String path = exchange.getRequestURI().getPath();
+                Map<String, String> params = parameters(exchange.getRequestURI().getRawQuery());
+                ReasonerWarmUp.State state = getState();
+                if (path.equals("/stats")) {
+                    status = 200;
+                    body = getStatistics().toJson();
+                } else if (path.equals("/ready")) {
+                    status = (state == ReasonerWarmUp.State.READY) ? 200 : 503;
+                    body = readiness(state);
+                } else if (refuseUntilReady && state != ReasonerWarmUp.State.READY) {
+                    rejected.increment();
+                    status = 503;
+                    body = readiness(state);
+                } else {
+                    Query query = parse(path, params);
+                    if (query == null) {
+                        status = 404;
+                        body = error("unknown query " + path);
+                    } else {
+                        body = submit(query).get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+                        status = 200;
+                    }
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            status = 400;
+            body = error(ex.getMessage());
+        } catch (TimeoutException ex) {
+            timeouts.increment();
+            status = 504;
+            body = error("no answer in " + requestTimeoutMillis + " ms");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            status = (cause instanceof RejectedExecutionException || cause instanceof CancellationException) ? 503 : 500;
+            body = error(String.valueOf(cause.getMessage()));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            status = 503;
+            body = error("interrupted");
+        }
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+        latency.record(System.nanoTime() - start);
+    }
+
+    private String readiness(ReasonerWarmUp.State state) {
+        StringBuilder sb = new StringBuilder("{\"state\":\"").append(state).append("\",\"readyReasoners\":")
+                .append(readyWorkers.get()).append(",\"reasoners\":").append(reasoners).append(",\"progress\":[");
+        String separator = "";
+        for (ReasonerWarmUp warmUp : warmUps) {
+            sb.append(separator).append(json(warmUp.getProgress().toString()));
+            separator = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + json(message) + "}";
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> params = new HashMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) return params;
+        for (String pair : rawQuery.split("&")) {
+            int eq = pair.indexOf('=');
+            String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), StandardCharsets.UTF_8);
+            String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), StandardCharsets.UTF_8);
+            params.put(name, value);
+        }
+        return params;
+    }
+
+    /**
+     * @return the query, null for an unknown path
+     * @throws IllegalArgumentException for invalid parameters
+     */
+    private Query parse(String path, Map<String, String> params) {
+        boolean direct = Boolean.parseBoolean(params.get("direct"));
+        switch (path) {
+            case "/instances": {
+                OWLClass owlClass = factory.getOWLClass(iri(params.get("class")));
+                return new Query(INSTANCES, owlClass, null, direct, INSTANCES + " " + owlClass + " " + direct);
+            }
+            case "/types": {
+                OWLNamedIndividual ind = factory.getOWLNamedIndividual(iri(params.get("individual")));
+                return new Query(TYPES, ind, null, direct, TYPES + " " + ind + " " + direct);
+            }
+            case "/values": {
+                OWLNamedIndividual ind = factory.getOWLNamedIndividual(iri(params.get("individual")));
+                IRI propertyIRI = iri(params.get("property"));
+                OWLEntity property = ontology.containsDataPropertyInSignature(propertyIRI, Imports.INCLUDED)
+                        ? factory.getOWLDataProperty(propertyIRI) : factory.getOWLObjectProperty(propertyIRI);
+                return new Query(VALUES, ind, property, false, VALUES + " " + ind + " " + property);
+            }
+            case "/entailed": {
+                OWLAxiom axiom = axiom(params.get("axiom"));
+                return new Query(ENTAILED, axiom, null, false, ENTAILED + " " + axiom);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private IRI iri(String name) {
+        if (name == null || name.isEmpty()) throw new IllegalArgumentException("missing entity parameter");
+        if (name.startsWith("<") && name.endsWith(">")) return IRI.create(name.substring(1, name.length() - 1));
+        int colon = name.indexOf(':');
+        if (prefixes != null && colon >= 0 && prefixes.containsPrefixMapping(name.substring(0, colon + 1))) {
+            return prefixes.getIRI(name);
+        }
+        return IRI.create(name);
+    }
+
+    /**
+     * Parses one logical axiom in functional syntax, with the prefixes of the ontology document.
+     */
+    private OWLAxiom axiom(String text) {
+        if (text == null || text.isEmpty()) throw new IllegalArgumentException("missing axiom parameter");
+        StringBuilder doc = new StringBuilder();
+        if (prefixes != null) {
+            for (Map.Entry<String, String> e : prefixes.getPrefixName2PrefixMap().entrySet()) {
+                doc.append("Prefix(").append(e.getKey()).append("=<").append(e.getValue()).append(">)\n");
+            }
+        }
+        doc.append("Ontology(\n").append(text).append("\n)");
+        Set<OWLLogicalAxiom> axioms;
+        try {
+            OWLOntology parsed = OWLManager.createOWLOntologyManager().loadOntologyFromOntologyDocument(
+                    new StringDocumentSource(doc.toString(), IRI.create("urn:query:axiom"), new FunctionalSyntaxDocumentFormat(), null));
+            axioms = parsed.getLogicalAxioms();
+        } catch (OWLOntologyCreationException ex) {
+            throw new IllegalArgumentException("cannot parse axiom " + text);
+        }
+        if (axioms.size() != 1) throw new IllegalArgumentException("expected one logical axiom, got " + axioms.size());
+        return axioms.iterator().next().getAxiomWithoutAnnotations();
+    }
+
+    /**
+     * A query waiting for its answer.
+     */
+    private static final class Query {
+        private final String type;
+        private final OWLObject subject;
+        private final OWLEntity property;
+        private final boolean direct;
+        private final String key;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+
+        private Query(String type, OWLObject subject, OWLEntity property, boolean direct, String key) {
+            this.type = type;
+            this.subject = subject;
+            this.property = property;
+            this.direct = direct;
+            this.key = key;
+        }
+    }
+
+    /**
+     * @return statistics of the server
+     */
+    public Statistics getStatistics() {
+        return new Statistics(requests.sum(), coalesced.sum(), rejected.sum(), failures.sum(), timeouts.sum(),
+                batches.sum(), batchedQueries.sum(), queue == null ? 0 : queue.size(), latency.snapshot());
+    }
+
+    /**
+     * Snapshot of server statistics.
+     */
+    public static final class Statistics {
+        public final long requests;
+        public final long coalesced;
+        public final long rejected;
+        public final long failures;
+        public final long timeouts;
+        public final long batches;
+        public final long batchedQueries;
+        public final int queued;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Statistics(long requests, long coalesced, long rejected, long failures, long timeouts, long batches,
+                           long batchedQueries, int queued, LatencyHistogram.Snapshot latency) {
+            this.requests = requests;
+            this.coalesced = coalesced;
+            this.rejected = rejected;
+            this.failures = failures;
+            this.timeouts = timeouts;
+            this.batches = batches;
+            this.batchedQueries = batchedQueries;
+            this.queued = queued;
+            this.latency = latency;
+        }
+
+        /**
+         * @return mean number of queries answered in one pass of a worker
+         */
+        public double meanBatchSize() {
+            return batches == 0 ? 0.0 : (double) batchedQueries / batches;
+        }
+
+        String toJson() {
+            return "{\"requests\":" + requests + ",\"coalesced\":" + coalesced + ",\"rejected\":" + rejected
+                    + ",\"failures\":" + failures + ",\"timeouts\":" + timeouts + ",\"batches\":" + batches
+                    + ",\"batchedQueries\":" + batchedQueries + ",\"queued\":" + queued
+                    + ",\"latencyMeanNanos\":" + (long) latency.getMean()
+                    + ",\"latencyP99Nanos\":" + latency.getPercentile(99) + "}";
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + requests + " coalesced=" + coalesced + " rejected=" + rejected + " failures=" + failures
+                    + " timeouts=" + timeouts + " batches=" + batches + " meanBatchSize=" + String.format("%.1f", meanBatchSize())
+                    + " queued=" + queued + " latency: " + latency;
+        }
+    }
+
+    /**
+     * Serves the ontology given as the first argument, the tutorial ontology by default, on the port
+     * given as the second argument.
+     */
+    public static void main(String[] args) throws OWLOntologyCreationException, IOException {
+        String ontologyIRI = args.length > 0 ? args[0] : "http://acrab.ics.muni.cz/ontologies/tutorial.owl";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        OntologyCatalog catalog = OntologyCatalog.getDefault();
+        OWLOntologyManager manager = catalog.createManager();
+        OWLOntology ontology = catalog.load(manager, IRI.create(ontologyIRI));
+        QueryServer server = new QueryServer(ontology, PelletReasonerFactory.getInstance(),
+                Runtime.getRuntime().availableProcessors()).setWarmUp().start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+    }
+}
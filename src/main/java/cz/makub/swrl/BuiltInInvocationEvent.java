@@ -0,0 +1,50 @@
+package cz.makub.swrl;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event for one invocation of a SWRL built-in. Disabled unless a recording enables it, e.g. by
+ * <code>-XX:StartFlightRecording:settings=profile</code> with the event <code>cz.makub.BuiltInInvocation</code> enabled.
+ * Invocations are on the hot path of rule application, so events are created only while they are enabled.
+ */
+@Name("cz.makub.BuiltInInvocation")
+@Label("SWRL Built-In Invocation")
+@Category({"OWL", "SWRL"})
+@Description("Invocation of a SWRL built-in during rule application")
+@StackTrace(false)
+class BuiltInInvocationEvent extends Event {
+
+    @Label("Built-In")
+    String builtIn;
+
+    @Label("Success")
+    boolean success;
+
+    private static final EventType TYPE = EventType.getEventType(BuiltInInvocationEvent.class);
+
+    /**
+     * @return started event, or null when no recording enables the event
+     */
+    static BuiltInInvocationEvent beginIfEnabled() {
+        if (!TYPE.isEnabled()) return null;
+        BuiltInInvocationEvent event = new BuiltInInvocationEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Commits an event started by {@link #beginIfEnabled()}, does nothing for null.
+     */
+    static void commit(BuiltInInvocationEvent event, String builtIn, boolean success) {
+        if (event == null) return;
+        event.builtIn = builtIn;
+        event.success = success;
+        event.commit();
+    }
+}
@@ -0,0 +1,239 @@
+package cz.makub.swrl;
+
+import com.clarkparsia.pellet.rules.BindingHelper;
+import com.clarkparsia.pellet.rules.VariableBinding;
+import com.clarkparsia.pellet.rules.builtins.BuiltIn;
+import com.clarkparsia.pellet.rules.builtins.BuiltInRegistry;
+import com.clarkparsia.pellet.rules.model.AtomVariable;
+import com.clarkparsia.pellet.rules.model.BuiltInAtom;
+import cz.makub.metrics.LatencyHistogram;
+import cz.makub.metrics.LogRateLimiter;
+import org.semanticweb.owlapi.vocab.SWRLBuiltInsVocabulary;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of SWRL built-in invocations: number of invocations, successes, failures and produced bindings,
+ * and a histogram of invocation latencies, kept separately for each built-in IRI.
+ * <p>
+ * {@link CustomSWRLBuiltin}s are measured always, other built-ins (including the standard swrlb: ones) when they
+ * are wrapped by {@link #instrument(BuiltIn)}, see {@link #instrumentStandardBuiltIns()}.
+ * Each invocation is also a JFR event {@link BuiltInInvocationEvent}, and failures are logged at most once per second per built-in.
+ * Current values are available from {@link #snapshot()}.
+ */
+@SuppressWarnings("WeakerAccess")
+public class BuiltInMetrics {
+
+    public static final BuiltInMetrics instance = new BuiltInMetrics();
+
+    private static final Logger log = LoggerFactory.getLogger(BuiltInMetrics.class);
+    private static final long FAILURE_LOG_INTERVAL_MILLIS = 1000;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+
+    private BuiltInMetrics() {
+    }
+
+    /**
+     * @param builtIn IRI of a built-in
+     * @return live statistics of the built-in, created on first use
+     */
+    public Stats getStats(String builtIn) {
+        return stats.computeIfAbsent(builtIn, Stats::new);
+    }
+
+    /**
+     * @return copy of the current statistics of all built-ins invoked so far, sorted by IRI
+     */
+    public Map<String, Snapshot> snapshot() {
+        Map<String, Snapshot> snapshots = new TreeMap<>();
+        for (Stats s : stats.values()) {
+            snapshots.put(s.builtIn, s.snapshot());
+        }
+        return snapshots;
+    }
+
+    /**
+     * Resets all statistics.
+     */
+    public void reset() {
+        stats.clear();
+    }
+
+    /**
+     * Wraps a built-in so that its invocations are measured.
+     */
+    public BuiltIn instrument(BuiltIn builtIn) {
+        if (builtIn instanceof CustomSWRLBuiltin || builtIn instanceof InstrumentedBuiltIn) return builtIn;
+        return new InstrumentedBuiltIn(builtIn);
+    }
+
+    /**
+     * Registers an instrumented built-in in Pellet's BuiltInRegistry.
+     */
+    public void register(String name, BuiltIn builtIn) {
+        BuiltInRegistry.instance.registerBuiltIn(name, instrument(builtIn));
+    }
+
+    /**
+     * Replaces the standard swrlb: built-ins in Pellet's BuiltInRegistry with instrumented ones.
+     */
+    public void instrumentStandardBuiltIns() {
+        for (SWRLBuiltInsVocabulary v : SWRLBuiltInsVocabulary.values()) {
+            String name = v.getIRI().toString();
+            register(name, BuiltInRegistry.instance.getBuiltIn(name));
+        }
+    }
+
+    /**
+     * Live statistics of one built-in.
+     */
+    public static final class Stats {
+        private final String builtIn;
+        private final LongAdder invocations = new LongAdder();
+        private final LongAdder successes = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder bindings = new LongAdder();
+        private final LatencyHistogram latency = new LatencyHistogram();
+        private final LogRateLimiter failureLog = new LogRateLimiter(FAILURE_LOG_INTERVAL_MILLIS);
+
+        private Stats(String builtIn) {
+            this.builtIn = builtIn;
+        }
+
+        /**
+         * Records one invocation.
+         *
+         * @param nanos    duration of the invocation
+         * @param bindings number of produced bindings
+         */
+        void invoked(long nanos, int bindings) {
+            invocations.increment();
+            latency.record(nanos);
+            this.bindings.add(bindings);
+        }
+
+        void succeeded() {
+            successes.increment();
+        }
+
+        /**
+         * Records a failure and logs it unless too many failures were logged recently.
+         */
+        void failed(Object atom, Object[] arguments) {
+            failures.increment();
+            long suppressed = failureLog.tryAcquire();
+            if (suppressed >= 0 && log.isDebugEnabled()) {
+                log.debug("Function failure: {} arguments: {} ({} similar messages suppressed)", atom,
+                        (arguments == null) ? "unknown" : Arrays.toString(arguments), suppressed);
+            }
+        }
+
+        void binding() {
+            bindings.increment();
+        }
+
+        Snapshot snapshot() {
+            return new Snapshot(builtIn, invocations.sum(), successes.sum(), failures.sum(), bindings.sum(), latency.snapshot());
+        }
+    }
+
+    /**
+     * Copy of statistics of one built-in.
+     */
+    public static final class Snapshot {
+        public final String builtIn;
+        public final long invocations;
+        public final long successes;
+        public final long failures;
+        public final long bindings;
+        public final LatencyHistogram.Snapshot latency;
+
+        private Snapshot(String builtIn, long invocations, long successes, long failures, long bindings, LatencyHistogram.Snapshot latency) {
+            this.builtIn = builtIn;
+            this.invocations = invocations;
+            this.successes = successes;
+            this.failures = failures;
+            this.bindings = bindings;
+            this.latency = latency;
+        }
+
+        @Override
+        public String toString() {
+            return builtIn + " invocations=" + invocations + " successes=" + successes + " failures=" + failures
+                    + " bindings=" + bindings + " latency: " + latency;
+        }
+    }
+
+    /**
+     * Measures any built-in through its binding helpers. An invocation is a call of rebind(),
+     * it succeeds when at least one binding is selected afterwards.
+     */
+    private final class InstrumentedBuiltIn implements BuiltIn {
+        private final BuiltIn builtIn;
+
+        private InstrumentedBuiltIn(BuiltIn builtIn) {
+            this.builtIn = builtIn;
+        }
+
+        @Override
+        public BindingHelper createHelper(final BuiltInAtom atom) {
+            final BindingHelper helper = builtIn.createHelper(atom);
+            final Stats s = getStats(atom.getPredicate());
+            return new BindingHelper() {
+                private int selected = -1;
+                private BuiltInInvocationEvent event;
+
+                @Override
+                public Collection<? extends AtomVariable> getBindableVars(Collection<AtomVariable> bound) {
+                    return helper.getBindableVars(bound);
+                }
+
+                @Override
+                public Collection<? extends AtomVariable> getPrerequisiteVars(Collection<AtomVariable> bound) {
+                    return helper.getPrerequisiteVars(bound);
+                }
+
+                @Override
+                public void rebind(VariableBinding newBinding) {
+                    event = BuiltInInvocationEvent.beginIfEnabled();
+                    long start = System.nanoTime();
+                    helper.rebind(newBinding);
+                    s.invoked(System.nanoTime() - start, 0);
+                    if (event != null) event.end();
+                    selected = 0;
+                }
+
+                @Override
+                public boolean selectNextBinding() {
+                    boolean next = helper.selectNextBinding();
+                    if (selected == 0) {
+                        //the first selection decides whether the invocation succeeded
+                        if (next) s.succeeded();
+                        else s.failed(atom, null);
+                        BuiltInInvocationEvent.commit(event, s.builtIn, next);
+                    }
+                    if (next) {
+                        s.binding();
+                        selected++;
+                    } else {
+                        selected = -1;
+                    }
+                    return next;
+                }
+
+                @Override
+                public void setCurrentBinding(VariableBinding currentBinding) {
+                    helper.setCurrentBinding(currentBinding);
+                }
+            };
+        }
+    }
+}
@@ -39,10 +39,40 @@ public class CustomSWRLBuiltin implements BuiltIn {
 
     }
 
+    /**
+     * Interface for a SWRL built-in implementation which produces any number of solutions, like splitting
+     * a string into all its parts or enumerating a range of numbers. The solutions are pulled one by one
+     * by the rule engine, so they do not need to be computed all at once.
+     */
+    public static interface CustomSWRLMultiFunction {
+
+        /**
+         * Implements a SWRL built-in function on Literals or Individuals producing several solutions.
+         * Each solution is an array with the same values as args at bound positions, and values for the unbound positions.
+         * The returned iterator may return the same array instance from each call of next(),
+         * the array is read before next() is called again.
+         *
+         * @param abox ABox
+         * @param args array of Individual or Literal, null at unbound positions; must not be modified
+         * @return lazy iterator over solutions, empty if there are none
+         */
+        public Iterator<Node[]> apply(ABox abox, Node[] args);
+
+        public boolean isApplicable(boolean[] boundPositions);
+
+    }
+
     private final CustomSWRLFunction function;
+    private final CustomSWRLMultiFunction multiFunction;
 
     public CustomSWRLBuiltin(CustomSWRLFunction function) {
         this.function = function;
+        this.multiFunction = null;
+    }
+
+    public CustomSWRLBuiltin(CustomSWRLMultiFunction multiFunction) {
+        this.function = null;
+        this.multiFunction = multiFunction;
     }
 
     @Override
@@ -50,21 +80,61 @@ public class CustomSWRLBuiltin implements BuiltIn {
         return new CustomSWRLFunctionHelper(atom);
     }
 
+    /**
+     * Binding helper invoked by the rule engine once per candidate binding. All information about the atom arguments
+     * is computed once in the constructor and the argument arrays are reused across calls, so {@link #rebind(VariableBinding)}
+     * allocates nothing except what the function implementation itself allocates.
+     */
     public class CustomSWRLFunctionHelper implements BindingHelper {
 
         private final BuiltInAtom atom;
-        private VariableBinding partial;
+        //per-argument metadata, computed once
+        private final AtomDObject[] atomArguments;
+        private final AtomDVariable[] dVariables;
+        private final AtomIVariable[] iVariables;
+        private final Collection<AtomVariable> vars;
+        //buffers reused across calls
+        private final boolean[] boundPositions;
+        private final Node[] arguments;
+        private final Node[] currentValues;
+        private final Node[] results;
+        private boolean hasResult;
         private boolean used;
+        private Iterator<Node[]> solutions;
+        private int solutionCount;
+        private final BuiltInMetrics.Stats stats;
 
         /**
          * Constructor. BuiltInAtom describes the SWRL atom as predicate and its arguments, which are variables and constants.
          * A problem is that all variables are of type AtomDVariable i.e. variables for data, no variables for individuals.
+         * So for each variable a corresponding AtomIVariable with the same name is prepared, a value for the variable
+         * may be bound under any of them.
          *
          * @param atom the SWRL atom as written in the rule, like my:func(?x,?y,"1"^^xsd:integer)
          * @see AtomDVariable
          */
         private CustomSWRLFunctionHelper(BuiltInAtom atom) {
             this.atom = atom;
+            List<AtomDObject> args = atom.getAllArguments();
+            int n = args.size();
+            this.atomArguments = args.toArray(new AtomDObject[n]);
+            this.dVariables = new AtomDVariable[n];
+            this.iVariables = new AtomIVariable[n];
+            for (int i = 0; i < n; i++) {
+                AtomDObject atomDObject = atomArguments[i];
+                if (atomDObject instanceof AtomDVariable) {
+                    dVariables[i] = (AtomDVariable) atomDObject;
+                    iVariables[i] = new AtomIVariable(dVariables[i].getName());
+                } else if (!(atomDObject instanceof AtomDConstant)) {
+                    throw new InternalReasonerException("The argument " + atomDObject + " of SWRL atom " + atom + " is neither a constant nor a variable.");
+                }
+            }
+            this.vars = VariableUtils.getVars(atom);
+            this.boundPositions = new boolean[n];
+            this.arguments = new Node[n];
+            this.currentValues = new Node[n];
+            this.results = new Node[n];
+            this.stats = BuiltInMetrics.instance.getStats(atom.getPredicate());
         }
 
         /**
@@ -76,9 +146,9 @@ public class CustomSWRLBuiltin implements BuiltIn {
         @Override
         public Collection<? extends AtomVariable> getBindableVars(Collection<AtomVariable> bound) {
             if (!isApplicable(bound)) return Collections.emptySet();
-            Collection<AtomVariable> vars = VariableUtils.getVars(atom);
-            vars.removeAll(bound);
-            return vars;
+            Collection<AtomVariable> bindable = new HashSet<>(vars);
+            bindable.removeAll(bound);
+            return bindable;
         }
 
         /**
@@ -89,13 +159,10 @@ public class CustomSWRLBuiltin implements BuiltIn {
          */
         @Override
         public Collection<? extends AtomVariable> getPrerequisiteVars(Collection<AtomVariable> bound) {
-            Collection<AtomVariable> vars = VariableUtils.getVars(atom);
-            vars.removeAll(getBindableVars(bound));
-            return vars;
-        }
-
-        private AtomIVariable d2i(AtomDVariable atomDVariable) {
-            return  new AtomIVariable((atomDVariable.getName()));
+            Collection<AtomVariable> prerequisite = new HashSet<>(vars);
+            //if applicable, the bindable variables are all the unbound ones, so only the bound ones are prerequisites
+            if (isApplicable(bound)) prerequisite.retainAll(bound);
+            return prerequisite;
         }
 
         /**
@@ -105,90 +172,119 @@ public class CustomSWRLBuiltin implements BuiltIn {
          * @return boolean value indicating whether the built-in can be invoked
          */
         private boolean isApplicable(Collection<AtomVariable> bound) {
-            boolean[] boundPositions = new boolean[atom.getAllArguments().size()];
             for (int i = 0; i < boundPositions.length; i++) {
-                AtomDObject atomDObject = atom.getAllArguments().get(i);
-                if (atomDObject instanceof AtomDVariable) {
-                    AtomDVariable atomDVariable = (AtomDVariable) atomDObject;
-                    boolean b = bound.contains(atomDVariable);
-                    if (!b) b = bound.contains(d2i(atomDVariable));
-                    boundPositions[i] = b;
-                } else if (atomDObject instanceof AtomDConstant) {
-                    boundPositions[i] = true;
-                }
+                boundPositions[i] = dVariables[i] == null || bound.contains(dVariables[i]) || bound.contains(iVariables[i]);
             }
-            return function.isApplicable(boundPositions);
+            return (function != null) ? function.isApplicable(boundPositions) : multiFunction.isApplicable(boundPositions);
         }
 
         @Override
         public void rebind(VariableBinding newBinding) {
-
-            List<AtomDObject> atomArguments = atom.getAllArguments();
-            Node[] arguments = new Node[atomArguments.size()];
             for (int i = 0; i < arguments.length; i++) {
-                arguments[i] = getValueFromVariableBinding(atomArguments.get(i), newBinding);
+                Node value = getValueFromVariableBinding(i, newBinding);
+                arguments[i] = value;
+                currentValues[i] = value;
+                results[i] = null;
+            }
+            BuiltInInvocationEvent event = BuiltInInvocationEvent.beginIfEnabled();
+            long start = System.nanoTime();
+            if (multiFunction != null) {
+                //solutions are pulled one by one in selectNextBinding()
+                solutions = multiFunction.apply(newBinding.getABox(), arguments);
+                solutionCount = 0;
+                hasResult = false;
+                stats.invoked(System.nanoTime() - start, 0);
+                if (event != null) BuiltInInvocationEvent.commit(event, atom.getPredicate(), solutions.hasNext());
+                return;
             }
-            if (function.apply(newBinding.getABox(), arguments)) {
-                VariableBinding newPartial = new VariableBinding(newBinding.getABox());
+            boolean success = function.apply(newBinding.getABox(), arguments);
+            stats.invoked(System.nanoTime() - start, success ? 1 : 0);
+            BuiltInInvocationEvent.commit(event, atom.getPredicate(), success);
+            if (success) {
+                stats.succeeded();
                 for (int i = 0; i < arguments.length; i++) {
-                    AtomDObject arg = atomArguments.get(i);
                     Node result = arguments[i];
-                    Node current = getValueFromVariableBinding(arg, newBinding);
+                    Node current = currentValues[i];
                     if (current != null && !current.equals(result)) {
                         // Oops, we overwrote an argument.
                         throw new InternalReasonerException("Function implementation overwrote argument " + i);
                     }
                     if (current == null) {
                         if (result.isLiteral()) {
-                            newBinding.set(arg, (Literal) result);
+                            newBinding.set(atomArguments[i], (Literal) result);
                         } else if (result.isIndividual()) {
-                            newBinding.set(d2i((AtomDVariable)arg), (Individual) result);
+                            newBinding.set(iVariables[i], (Individual) result);
                         } else {
                             throw new InternalReasonerException("unknown result node type :" + result);
                         }
+                        results[i] = result;
                     }
                 }
                 used = false;
-                partial = newPartial;
+                hasResult = true;
             } else {
-                System.out.println("Function failure: " + atom);
-                System.out.println("Arguments: " + Arrays.toString(arguments));
+                hasResult = false;
+                stats.failed(atom, arguments);
             }
         }
 
-        private Node getValueFromVariableBinding(AtomDObject key, VariableBinding binding) {
-            if (key instanceof AtomDVariable) {
-                AtomDVariable atomDVariable = (AtomDVariable) key;
-                Literal literal = binding.get(atomDVariable);
-                return (literal != null) ? literal : binding.get(d2i(atomDVariable));
-            } else if (key instanceof AtomDConstant) {
-                return binding.get(key);
-            } else {
-                throw new InternalReasonerException("The argument " + key+" of SWRL atom "+atom+" is neither a constant nor a variable.");
+        private Node getValueFromVariableBinding(int i, VariableBinding binding) {
+            if (dVariables[i] == null) {
+                return binding.get(atomArguments[i]);
             }
+            Literal literal = binding.get(dVariables[i]);
+            return (literal != null) ? literal : binding.get(iVariables[i]);
         }
 
         @Override
         public boolean selectNextBinding() {
-            if (partial != null && !used) {
+            if (multiFunction != null) {
+                return selectNextSolution();
+            }
+            if (hasResult && !used) {
                 used = true;
                 return true;
             }
             return false;
         }
 
+        private boolean selectNextSolution() {
+            hasResult = false;
+            if (solutions == null || !solutions.hasNext()) {
+                if (solutions != null && solutionCount == 0) stats.failed(atom, currentValues);
+                solutions = null;
+                return false;
+            }
+            Node[] solution = solutions.next();
+            if (solutionCount++ == 0) stats.succeeded();
+            stats.binding();
+            for (int i = 0; i < results.length; i++) {
+                Node current = currentValues[i];
+                if (current != null) {
+                    if (!current.equals(solution[i])) {
+                        throw new InternalReasonerException("Function implementation overwrote argument " + i);
+                    }
+                    results[i] = null;
+                } else {
+                    if (solution[i] == null || !(solution[i].isLiteral() || solution[i].isIndividual())) {
+                        throw new InternalReasonerException("unknown result node type :" + solution[i]);
+                    }
+                    results[i] = solution[i];
+                }
+            }
+            hasResult = true;
+            return true;
+        }
 
         @Override
         public void setCurrentBinding(VariableBinding currentBinding) {
-            for (Map.Entry<? extends AtomVariable, ? extends Node> entry : partial.entrySet()) {
-                AtomVariable atomVariable = entry.getKey();
-                Node node = entry.getValue();
-                if (atomVariable instanceof AtomIObject && node.isIndividual()) {
-                    currentBinding.set((AtomIObject) atomVariable, (Individual) node);
-                } else if (atomVariable instanceof AtomDObject && node.isLiteral()) {
-                    currentBinding.set((AtomDObject) atomVariable, (Literal) node);
+            for (int i = 0; i < results.length; i++) {
+                Node node = results[i];
+                if (node == null) continue;
+                if (node.isLiteral()) {
+                    currentBinding.set(dVariables[i], (Literal) node);
                 } else {
-                    throw new InternalReasonerException("Unknown atomVariable=" + atomVariable + " node=" + node);
+                    currentBinding.set(iVariables[i], (Individual) node);
                 }
             }
         }
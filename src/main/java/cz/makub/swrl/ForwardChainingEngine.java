@@ -0,0 +1,1068 @@
+package cz.makub.swrl;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.datatypes.exceptions.InvalidLiteralException;
+import com.clarkparsia.pellet.datatypes.exceptions.UnrecognizedDatatypeException;
+import com.clarkparsia.pellet.rules.BindingHelper;
+import com.clarkparsia.pellet.rules.VariableBinding;
+import com.clarkparsia.pellet.rules.builtins.BuiltIn;
+import com.clarkparsia.pellet.rules.builtins.BuiltInRegistry;
+import com.clarkparsia.pellet.rules.builtins.NoSuchBuiltIn;
+import com.clarkparsia.pellet.rules.model.*;
+import cz.makub.metrics.Phase;
+import cz.makub.metrics.PhaseMetrics;
+import cz.makub.reasoner.PelletTerms;
+import org.mindswap.pellet.ABox;
+import org.mindswap.pellet.Individual;
+import org.mindswap.pellet.KnowledgeBase;
+import org.mindswap.pellet.Literal;
+import org.mindswap.pellet.utils.ATermUtils;
+import org.mindswap.pellet.utils.Namespaces;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.model.parameters.Imports;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * Forward-chaining engine for DL-safe SWRL rules over the asserted facts of an ontology.
+ * <p>
+ * Rules which are plain Horn clauses, like the rule in {@link cz.makub.CreateOntologyInCodeExample}, do not need
+ * the tableau reasoner. The engine keeps class and property assertions of named individuals in memory, indexed
+ * by class, by property and subject, and by property and object, and applies the rules by semi-naive evaluation:
+ * in each round a rule is only joined with at least one fact derived in the previous round, so no join
+ * is repeated. Assertions added to the ontology later are processed the same way, only their consequences
+ * are derived. Any other logical change of the ontology starts the materialization again from scratch.
+ * <p>
+ * Simple TBox axioms are translated to rules: subclasses and equivalences of named classes, subproperties,
+ * equivalent, inverse, symmetric and transitive properties, and domains and ranges which are named classes.
+ * Other logical axioms, and rules which are not DL-safe Horn rules over named classes and properties,
+ * are ignored and counted in the statistics. Ignoring them may make the results incomplete, not unsound.
+ * Consistency is not checked. A sameAs atom in a rule body holds only for identical individuals,
+ * a differentFrom atom only for individuals asserted to be different.
+ * <p>
+ * Built-ins are evaluated by their implementations registered in {@link BuiltInRegistry}, including
+ * {@link CustomSWRLBuiltin}s, with values represented as nodes of a private Pellet ABox.
+ * Custom built-ins must be registered before the first materialization.
+ * <p>
+ * Materialization is done lazily by the queries, the engine is safe for concurrent use, all calls are serialized.
+ * <p>
+ * Usage:
+ * <pre>
+ * ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+ * Set&lt;OWLNamedIndividual&gt; englishProgrammers = engine.getInstances(englishProgrammerClass);
+ * manager.addAxioms(ontology, engine.getInferredAxioms());
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public class ForwardChainingEngine implements OWLOntologyChangeListener {
+
+    private static final Logger log = LoggerFactory.getLogger(ForwardChainingEngine.class);
+    private static final ATermAppl THING = ATermUtils.makeTermAppl(Namespaces.OWL + "Thing");
+    private static final String VARIABLE_PREFIX = "urn:swrl:forward#";
+
+    private final OWLOntology ontology;
+    private final OWLDataFactory factory;
+    private final List<Rule> rules = new ArrayList<>();
+    private final Store facts = new Store();
+    private final Store inferred = new Store();
+    private final Relation different = new Relation();
+    //canonical literals mapped to their form as first seen
+    private final Map<ATermAppl, ATermAppl> literals = new HashMap<>();
+    //creating an ATerm is much slower than a map lookup
+    private final Map<OWLEntity, ATermAppl> terms = new HashMap<>();
+    private final List<OWLAxiom> pendingAdditions = new ArrayList<>();
+    private ABox abox;
+    private boolean valid;
+    //stores of the running saturation round
+    private Store delta;
+    private Store next;
+    //statistics
+    private int ignoredAxioms;
+    private int ignoredRules;
+    private long fullRuns;
+    private long incrementalRuns;
+    private long rounds;
+    private long firings;
+    private long lastNanos;
+
+    /**
+     * @param ontology ontology with rules and facts, including its imports
+     */
+    public ForwardChainingEngine(OWLOntology ontology) {
+        this.ontology = ontology;
+        this.factory = ontology.getOWLOntologyManager().getOWLDataFactory();
+        ontology.getOWLOntologyManager().addOntologyChangeListener(this);
+    }
+
+    /**
+     * @return named instances of a class, asserted or derived
+     */
+    public synchronized Set<OWLNamedIndividual> getInstances(OWLClass owlClass) {
+        materialize();
+        Set<OWLNamedIndividual> instances = new HashSet<>();
+        for (ATermAppl ind : facts.instances(PelletTerms.term(owlClass))) {
+            instances.add(factory.getOWLNamedIndividual(PelletTerms.iri(ind)));
+        }
+        return instances;
+    }
+
+    /**
+     * @return objects of an object property for a subject, asserted or derived
+     */
+    public synchronized Set<OWLNamedIndividual> getObjectPropertyValues(OWLNamedIndividual subject, OWLObjectProperty property) {
+        materialize();
+        Set<OWLNamedIndividual> values = new HashSet<>();
+        for (ATermAppl value : facts.relation(PelletTerms.term(property)).objects(PelletTerms.term(subject))) {
+            if (!ATermUtils.isLiteral(value)) values.add(factory.getOWLNamedIndividual(PelletTerms.iri(value)));
+        }
+        return values;
+    }
+
+    /**
+     * @return values of a data property for a subject, asserted or derived
+     */
+    public synchronized Set<OWLLiteral> getDataPropertyValues(OWLNamedIndividual subject, OWLDataProperty property) {
+        materialize();
+        Set<OWLLiteral> values = new HashSet<>();
+        for (ATermAppl value : facts.relation(PelletTerms.term(property)).objects(PelletTerms.term(subject))) {
+            if (ATermUtils.isLiteral(value)) values.add(toOWLLiteral(value));
+        }
+        return values;
+    }
+
+    /**
+     * @return class and property assertions derived by the rules and not asserted in the ontology
+     */
+    public synchronized Set<OWLIndividualAxiom> getInferredAxioms() {
+        materialize();
+        Set<OWLIndividualAxiom> axioms = new HashSet<>();
+        for (Map.Entry<ATermAppl, Set<ATermAppl>> e : inferred.classes.entrySet()) {
+            OWLClass owlClass = factory.getOWLClass(PelletTerms.iri(e.getKey()));
+            for (ATermAppl ind : e.getValue()) {
+                axioms.add(factory.getOWLClassAssertionAxiom(owlClass, factory.getOWLNamedIndividual(PelletTerms.iri(ind))));
+            }
+        }
+        for (Map.Entry<ATermAppl, Relation> e : inferred.properties.entrySet()) {
+            IRI property = PelletTerms.iri(e.getKey());
+            for (Map.Entry<ATermAppl, Set<ATermAppl>> values : e.getValue().bySubject.entrySet()) {
+                OWLNamedIndividual subject = factory.getOWLNamedIndividual(PelletTerms.iri(values.getKey()));
+                for (ATermAppl value : values.getValue()) {
+                    if (ATermUtils.isLiteral(value)) {
+                        axioms.add(factory.getOWLDataPropertyAssertionAxiom(factory.getOWLDataProperty(property),
+                                subject, toOWLLiteral(value)));
+                    } else {
+                        axioms.add(factory.getOWLObjectPropertyAssertionAxiom(factory.getOWLObjectProperty(property),
+                                subject, factory.getOWLNamedIndividual(PelletTerms.iri(value))));
+                    }
+                }
+            }
+        }
+        return axioms;
+    }
+
+    /**
+     * Brings the derived facts up to date with the ontology. Called by all queries.
+     */
+    public synchronized void materialize() {
+        if (valid && pendingAdditions.isEmpty()) return;
+        long start = System.nanoTime();
+        int before = facts.size;
+        PhaseMetrics.Timer timer = PhaseMetrics.instance.start(Phase.RULES, valid ? "incrementalRun" : "fullRun", ontology);
+        try {
+            if (!valid) {
+                fullRuns++;
+                load();
+                saturate(facts, true);
+            } else {
+                incrementalRuns++;
+                Store added = new Store();
+                for (OWLAxiom axiom : pendingAdditions) addFact(axiom, added);
+                saturate(added, false);
+            }
+        } catch (RuntimeException ex) {
+            timer.failed();
+            throw ex;
+        } finally {
+            timer.close();
+        }
+        pendingAdditions.clear();
+        valid = true;
+        lastNanos = System.nanoTime() - start;
+        log.debug("materialization took {} ms, {} new facts, {} facts in total",
+                lastNanos / 1_000_000, facts.size - before, facts.size);
+    }
+
+    @Override
+    public synchronized void ontologiesChanged(List<? extends OWLOntologyChange> changes) {
+        if (!valid) return;
+        Set<OWLOntology> closure = ontology.getImportsClosure();
+        for (OWLOntologyChange change : changes) {
+            if (!closure.contains(change.getOntology())) continue;
+            if (change.isImportChange()) {
+                valid = false;
+            } else if (change.isAxiomChange() && change.getAxiom().isLogicalAxiom()) {
+                OWLAxiom axiom = change.getAxiom();
+                if (change.isAddAxiom() && isFact(axiom)) {
+                    pendingAdditions.add(axiom);
+                } else {
+                    //removals need a recomputation, derived facts do not record from what they were derived
+                    valid = false;
+                }
+            }
+            if (!valid) {
+                pendingAdditions.clear();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops listening to ontology changes and releases the facts.
+     */
+    public void dispose() {
+        ontology.getOWLOntologyManager().removeOntologyChangeListener(this);
+        synchronized (this) {
+            clear();
+            valid = false;
+        }
+    }
+
+    /**
+     * @return statistics of the engine
+     */
+    public synchronized Statistics getStatistics() {
+        return new Statistics(rules.size(), ignoredRules, ignoredAxioms, facts.size, inferred.size,
+                fullRuns, incrementalRuns, rounds, firings, lastNanos);
+    }
+
+    // loading
+
+    private void clear() {
+        rules.clear();
+        facts.clear();
+        inferred.clear();
+        different.clear();
+        literals.clear();
+        terms.clear();
+        pendingAdditions.clear();
+        ignoredAxioms = 0;
+        ignoredRules = 0;
+        abox = null;
+    }
+
+    private void load() {
+        clear();
+        //built-ins work with nodes of an ABox, they get nodes of this otherwise empty one
+        abox = new KnowledgeBase().getABox();
+        for (OWLAxiom axiom : ontology.getAxioms(Imports.INCLUDED)) {
+            if (!axiom.isLogicalAxiom()) continue;
+            if (isFact(axiom)) {
+                addFact(axiom, null);
+            } else if (!addRules(axiom)) {
+                ignoredAxioms++;
+            }
+        }
+        for (OWLNamedIndividual ind : ontology.getIndividualsInSignature(Imports.INCLUDED)) {
+            facts.addClass(THING, term(ind));
+        }
+        log.debug("loaded {} rules and {} facts, ignored {} rules and {} axioms",
+                rules.size(), facts.size, ignoredRules, ignoredAxioms);
+    }
+
+    private static boolean isFact(OWLAxiom axiom) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom a = (OWLClassAssertionAxiom) axiom;
+            return !a.getClassExpression().isAnonymous() && a.getIndividual().isNamed();
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom a = (OWLObjectPropertyAssertionAxiom) axiom;
+            return a.getSubject().isNamed() && a.getObject().isNamed();
+        } else if (axiom instanceof OWLDataPropertyAssertionAxiom) {
+            return ((OWLDataPropertyAssertionAxiom) axiom).getSubject().isNamed();
+        }
+        return false;
+    }
+
+    /**
+     * Adds an asserted fact, also to the given store of new facts if it was not known yet.
+     */
+    private void addFact(OWLAxiom axiom, Store added) {
+        if (axiom instanceof OWLClassAssertionAxiom) {
+            OWLClassAssertionAxiom a = (OWLClassAssertionAxiom) axiom;
+            ATermAppl ind = individual(a.getIndividual(), added);
+            ATermAppl owlClass = term(a.getClassExpression().asOWLClass());
+            addClassFact(owlClass, ind, added);
+        } else if (axiom instanceof OWLObjectPropertyAssertionAxiom) {
+            OWLObjectPropertyAssertionAxiom a = ((OWLObjectPropertyAssertionAxiom) axiom).getSimplified();
+            ATermAppl subject = individual(a.getSubject(), added);
+            ATermAppl object = individual(a.getObject(), added);
+            addPropertyFact(term(a.getProperty().asOWLObjectProperty()), subject, object, added);
+        } else {
+            OWLDataPropertyAssertionAxiom a = (OWLDataPropertyAssertionAxiom) axiom;
+            ATermAppl subject = individual(a.getSubject(), added);
+            addPropertyFact(term(a.getProperty().asOWLDataProperty()), subject, literal(a.getObject()), added);
+        }
+    }
+
+    private ATermAppl individual(OWLIndividual individual, Store added) {
+        ATermAppl ind = term(individual.asOWLNamedIndividual());
+        addClassFact(THING, ind, added);
+        return ind;
+    }
+
+    private void addClassFact(ATermAppl owlClass, ATermAppl ind, Store added) {
+        if (facts.addClass(owlClass, ind)) {
+            if (added != null) added.addClass(owlClass, ind);
+        } else {
+            //derived before, now asserted
+            inferred.removeClass(owlClass, ind);
+        }
+    }
+
+    private void addPropertyFact(ATermAppl property, ATermAppl subject, ATermAppl object, Store added) {
+        if (facts.addProperty(property, subject, object)) {
+            if (added != null) added.addProperty(property, subject, object);
+        } else {
+            inferred.removeProperty(property, subject, object);
+        }
+    }
+
+    private ATermAppl term(OWLEntity entity) {
+        return terms.computeIfAbsent(entity, PelletTerms::term);
+    }
+
+    private ATermAppl literal(OWLLiteral literal) {
+        return canonical(PelletTerms.term(literal));
+    }
+
+    /**
+     * Literals are compared in their canonical form, the same way as Pellet and its built-ins compare them.
+     */
+    private ATermAppl canonical(ATermAppl term) {
+        ATermAppl canonical;
+        try {
+            canonical = abox.getKB().getDatatypeReasoner().getCanonicalRepresentation(term);
+        } catch (InvalidLiteralException | UnrecognizedDatatypeException ex) {
+            canonical = term;
+        }
+        literals.putIfAbsent(canonical, term);
+        return canonical;
+    }
+
+    private OWLLiteral toOWLLiteral(ATermAppl canonical) {
+        return PelletTerms.literal(literals.getOrDefault(canonical, canonical), factory);
+    }
+
+    /**
+     * Translates a rule or a TBox axiom to rules.
+     *
+     * @return false if the axiom is not supported
+     */
+    private boolean addRules(OWLAxiom axiom) {
+        SWRLVariable x = factory.getSWRLVariable(IRI.create(VARIABLE_PREFIX + "x"));
+        SWRLVariable y = factory.getSWRLVariable(IRI.create(VARIABLE_PREFIX + "y"));
+        SWRLVariable z = factory.getSWRLVariable(IRI.create(VARIABLE_PREFIX + "z"));
+        AxiomType<?> type = axiom.getAxiomType();
+        if (type == AxiomType.SWRL_RULE) {
+            compile((SWRLRule) axiom);
+            return true;
+        } else if (type == AxiomType.DIFFERENT_INDIVIDUALS) {
+            List<OWLIndividual> individuals = ((OWLDifferentIndividualsAxiom) axiom).getIndividualsAsList();
+            for (OWLIndividual i : individuals) if (i.isAnonymous()) return false;
+            for (OWLIndividual i : individuals) {
+                for (OWLIndividual j : individuals) {
+                    if (!i.equals(j)) different.add(PelletTerms.term(i.asOWLNamedIndividual()), PelletTerms.term(j.asOWLNamedIndividual()));
+                }
+            }
+            return true;
+        } else if (type == AxiomType.SUBCLASS_OF) {
+            OWLSubClassOfAxiom subClassOf = (OWLSubClassOfAxiom) axiom;
+            if (subClassOf.getSubClass().isAnonymous() || subClassOf.getSuperClass().isAnonymous()) return false;
+            return compile(factory.getSWRLClassAtom(subClassOf.getSubClass(), x),
+                    factory.getSWRLClassAtom(subClassOf.getSuperClass(), x));
+        } else if (type == AxiomType.EQUIVALENT_CLASSES) {
+            OWLEquivalentClassesAxiom equivalentClasses = (OWLEquivalentClassesAxiom) axiom;
+            if (equivalentClasses.containsOWLNothing() || !equivalentClasses.getNamedClasses()
+                    .containsAll(equivalentClasses.getClassExpressions())) return false;
+            for (OWLSubClassOfAxiom sub : equivalentClasses.asOWLSubClassOfAxioms()) addRules(sub);
+            return true;
+        } else if (type == AxiomType.SUB_OBJECT_PROPERTY) {
+            OWLSubObjectPropertyOfAxiom subObjectPropertyOf = (OWLSubObjectPropertyOfAxiom) axiom;
+            return compile(factory.getSWRLObjectPropertyAtom(subObjectPropertyOf.getSubProperty(), x, y),
+                    factory.getSWRLObjectPropertyAtom(subObjectPropertyOf.getSuperProperty(), x, y));
+        } else if (type == AxiomType.EQUIVALENT_OBJECT_PROPERTIES) {
+            for (OWLSubObjectPropertyOfAxiom sub : ((OWLEquivalentObjectPropertiesAxiom) axiom).asSubObjectPropertyOfAxioms()) {
+                addRules(sub);
+            }
+            return true;
+        } else if (type == AxiomType.INVERSE_OBJECT_PROPERTIES) {
+            for (OWLSubObjectPropertyOfAxiom sub : ((OWLInverseObjectPropertiesAxiom) axiom).asSubObjectPropertyOfAxioms()) {
+                addRules(sub);
+            }
+            return true;
+        } else if (type == AxiomType.SYMMETRIC_OBJECT_PROPERTY) {
+            OWLObjectPropertyExpression symmetric = ((OWLSymmetricObjectPropertyAxiom) axiom).getProperty();
+            return compile(factory.getSWRLObjectPropertyAtom(symmetric, x, y), factory.getSWRLObjectPropertyAtom(symmetric, y, x));
+        } else if (type == AxiomType.TRANSITIVE_OBJECT_PROPERTY) {
+            OWLObjectPropertyExpression transitive = ((OWLTransitiveObjectPropertyAxiom) axiom).getProperty();
+            return compile(new LinkedHashSet<>(Arrays.asList(factory.getSWRLObjectPropertyAtom(transitive, x, y),
+                            factory.getSWRLObjectPropertyAtom(transitive, y, z))),
+                    factory.getSWRLObjectPropertyAtom(transitive, x, z));
+        } else if (type == AxiomType.OBJECT_PROPERTY_DOMAIN) {
+            OWLObjectPropertyDomainAxiom objectDomain = (OWLObjectPropertyDomainAxiom) axiom;
+            if (objectDomain.getDomain().isAnonymous()) return false;
+            return compile(factory.getSWRLObjectPropertyAtom(objectDomain.getProperty(), x, y),
+                    factory.getSWRLClassAtom(objectDomain.getDomain(), x));
+        } else if (type == AxiomType.OBJECT_PROPERTY_RANGE) {
+            OWLObjectPropertyRangeAxiom objectRange = (OWLObjectPropertyRangeAxiom) axiom;
+            if (objectRange.getRange().isAnonymous()) return false;
+            return compile(factory.getSWRLObjectPropertyAtom(objectRange.getProperty(), x, y),
+                    factory.getSWRLClassAtom(objectRange.getRange(), y));
+        } else if (type == AxiomType.SUB_DATA_PROPERTY) {
+            OWLSubDataPropertyOfAxiom subDataPropertyOf = (OWLSubDataPropertyOfAxiom) axiom;
+            SWRLVariable v = factory.getSWRLVariable(IRI.create(VARIABLE_PREFIX + "v"));
+            return compile(factory.getSWRLDataPropertyAtom(subDataPropertyOf.getSubProperty(), x, v),
+                    factory.getSWRLDataPropertyAtom(subDataPropertyOf.getSuperProperty(), x, v));
+        } else if (type == AxiomType.EQUIVALENT_DATA_PROPERTIES) {
+            for (OWLSubDataPropertyOfAxiom sub : ((OWLEquivalentDataPropertiesAxiom) axiom).asSubDataPropertyOfAxioms()) {
+                addRules(sub);
+            }
+            return true;
+        } else if (type == AxiomType.DATA_PROPERTY_DOMAIN) {
+            OWLDataPropertyDomainAxiom dataDomain = (OWLDataPropertyDomainAxiom) axiom;
+            if (dataDomain.getDomain().isAnonymous()) return false;
+            SWRLVariable w = factory.getSWRLVariable(IRI.create(VARIABLE_PREFIX + "v"));
+            return compile(factory.getSWRLDataPropertyAtom(dataDomain.getProperty(), x, w),
+                    factory.getSWRLClassAtom(dataDomain.getDomain(), x));
+        }
+        return false;
+    }
+
+    private boolean compile(SWRLAtom body, SWRLAtom head) {
+        return compile(Collections.singleton(body), head);
+    }
+
+    private boolean compile(Set<SWRLAtom> body, SWRLAtom head) {
+        return compile(factory.getSWRLRule(body, Collections.singleton(head)));
+    }
+
+    private boolean compile(SWRLRule swrlRule) {
+        try {
+            Rule rule = new Rule(swrlRule.toString());
+            List<Atom> body = new ArrayList<>();
+            for (SWRLAtom atom : swrlRule.getBody()) body.add(atom(atom, rule, true));
+            for (SWRLAtom atom : swrlRule.getHead()) {
+                Atom a = atom(atom, rule, false);
+                //owl:Thing in a head adds nothing
+                if (a.predicate != THING) rule.head.add(a);
+            }
+            rule.body = body.toArray(new Atom[0]);
+            rule.plan();
+            rules.add(rule);
+            return true;
+        } catch (IllegalArgumentException ex) {
+            log.warn("rule ignored, {}: {}", ex.getMessage(), swrlRule);
+            ignoredRules++;
+            return true;
+        }
+    }
+
+    private Atom atom(SWRLAtom atom, Rule rule, boolean inBody) {
+        if (atom instanceof SWRLClassAtom) {
+            OWLClassExpression owlClass = ((SWRLClassAtom) atom).getPredicate();
+            if (owlClass.isAnonymous()) throw new IllegalArgumentException("class expression " + owlClass + " is not a named class");
+            if (owlClass.isOWLNothing()) throw new IllegalArgumentException("owl:Nothing is not supported");
+            return new Atom(Kind.CLASS, PelletTerms.term(owlClass.asOWLClass()), null,
+                    arg(((SWRLClassAtom) atom).getArgument(), rule));
+        } else if (atom instanceof SWRLObjectPropertyAtom) {
+            SWRLObjectPropertyAtom a = ((SWRLObjectPropertyAtom) atom).getSimplified();
+            return new Atom(Kind.PROPERTY, PelletTerms.term(a.getPredicate().asOWLObjectProperty()), null,
+                    arg(a.getFirstArgument(), rule), arg(a.getSecondArgument(), rule));
+        } else if (atom instanceof SWRLDataPropertyAtom) {
+            SWRLDataPropertyAtom a = (SWRLDataPropertyAtom) atom;
+            return new Atom(Kind.PROPERTY, PelletTerms.term(a.getPredicate().asOWLDataProperty()), null,
+                    arg(a.getFirstArgument(), rule), arg(a.getSecondArgument(), rule));
+        } else if (!inBody) {
+            throw new IllegalArgumentException(atom + " is not supported in a rule head");
+        } else if (atom instanceof SWRLSameIndividualAtom) {
+            SWRLSameIndividualAtom a = (SWRLSameIndividualAtom) atom;
+            return new Atom(Kind.SAME, null, null, arg(a.getFirstArgument(), rule), arg(a.getSecondArgument(), rule));
+        } else if (atom instanceof SWRLDifferentIndividualsAtom) {
+            SWRLDifferentIndividualsAtom a = (SWRLDifferentIndividualsAtom) atom;
+            return new Atom(Kind.DIFFERENT, null, null, arg(a.getFirstArgument(), rule), arg(a.getSecondArgument(), rule));
+        } else if (atom instanceof SWRLDataRangeAtom) {
+            SWRLDataRangeAtom a = (SWRLDataRangeAtom) atom;
+            if (!a.getPredicate().isDatatype()) throw new IllegalArgumentException("data range " + a.getPredicate() + " is not a datatype");
+            OWLDatatype datatype = a.getPredicate().asOWLDatatype();
+            //null for rdfs:Literal, which contains all literals
+            ATermAppl predicate = datatype.isTopDatatype() ? null : ATermUtils.makeTermAppl(datatype.getIRI().toString());
+            return new Atom(Kind.DATATYPE, predicate, null, arg(a.getArgument(), rule));
+        } else if (atom instanceof SWRLBuiltInAtom) {
+            SWRLBuiltInAtom a = (SWRLBuiltInAtom) atom;
+            String name = a.getPredicate().toString();
+            BuiltIn builtIn = BuiltInRegistry.instance.getBuiltIn(name);
+            if (builtIn == NoSuchBuiltIn.instance) throw new IllegalArgumentException("unknown built-in " + name);
+            List<AtomDObject> builtInArgs = new ArrayList<>();
+            List<Arg> args = new ArrayList<>();
+            for (SWRLDArgument argument : a.getArguments()) {
+                Arg arg = arg(argument, rule);
+                args.add(arg);
+                builtInArgs.add(arg.var >= 0 ? rule.dVars.get(arg.var) : new AtomDConstant(arg.constant));
+            }
+            Atom builtInAtom = new Atom(Kind.BUILT_IN, null, builtIn, args.toArray(new Arg[0]));
+            builtInAtom.builtInAtom = new BuiltInAtom(name, builtInArgs);
+            return builtInAtom;
+        }
+        throw new IllegalArgumentException(atom + " is not supported");
+    }
+
+    private Arg arg(SWRLArgument argument, Rule rule) {
+        if (argument instanceof SWRLVariable) {
+            return new Arg(rule.var(((SWRLVariable) argument).getIRI().toString()), null);
+        } else if (argument instanceof SWRLIndividualArgument) {
+            OWLIndividual ind = ((SWRLIndividualArgument) argument).getIndividual();
+            if (ind.isAnonymous()) throw new IllegalArgumentException("anonymous individual " + ind + " is not supported");
+            return new Arg(-1, PelletTerms.term(ind.asOWLNamedIndividual()));
+        } else {
+            return new Arg(-1, literal(((SWRLLiteralArgument) argument).getLiteral()));
+        }
+    }
+
+    // evaluation
+
+    /**
+     * Derives all consequences of new facts.
+     *
+     * @param start   facts not yet joined with the rules
+     * @param initial true if the start facts are all facts
+     */
+    private void saturate(Store start, boolean initial) {
+        delta = start;
+        boolean first = initial;
+        while (delta.size > 0) {
+            rounds++;
+            next = new Store();
+            for (Rule rule : rules) {
+                if (first) {
+                    //nothing is old yet, joining from any one atom finds all bindings
+                    evaluate(rule.initialPlan(facts), true);
+                } else {
+                    for (Plan plan : rule.plans) {
+                        if (plan.seed != null && delta.count(plan.seed) > 0) evaluate(plan, false);
+                    }
+                }
+            }
+            for (Map.Entry<ATermAppl, Set<ATermAppl>> e : next.classes.entrySet()) {
+                for (ATermAppl ind : e.getValue()) {
+                    facts.addClass(e.getKey(), ind);
+                    inferred.addClass(e.getKey(), ind);
+                }
+            }
+            for (Map.Entry<ATermAppl, Relation> e : next.properties.entrySet()) {
+                for (Map.Entry<ATermAppl, Set<ATermAppl>> values : e.getValue().bySubject.entrySet()) {
+                    for (ATermAppl value : values.getValue()) {
+                        facts.addProperty(e.getKey(), values.getKey(), value);
+                        inferred.addProperty(e.getKey(), values.getKey(), value);
+                    }
+                }
+            }
+            log.debug("round {} derived {} facts", rounds, next.size);
+            delta = next;
+            first = false;
+        }
+        delta = null;
+        next = null;
+    }
+
+    private void evaluate(Plan plan, boolean initial) {
+        evaluate(plan, 0, new ATermAppl[plan.rule.dVars.size()], initial);
+    }
+
+    private void evaluate(Plan plan, int i, ATermAppl[] b, boolean initial) {
+        if (i == plan.steps.length) {
+            fire(plan.rule, b);
+            return;
+        }
+        Step step = plan.steps[i];
+        Atom atom = step.atom;
+        Store store = step.fromDelta ? delta : facts;
+        //atoms before the seed atom match only facts known before the last round, so each binding is found once
+        Store old = step.old && !initial ? delta : null;
+        switch (atom.kind) {
+            case CLASS: {
+                int x = atom.args[0].var;
+                ATermAppl value = value(atom.args[0], b);
+                if (value != null) {
+                    if (store.hasClass(atom.predicate, value) && (old == null || !old.hasClass(atom.predicate, value))) {
+                        evaluate(plan, i + 1, b, initial);
+                    }
+                } else {
+                    for (ATermAppl ind : store.instances(atom.predicate)) {
+                        if (old != null && old.hasClass(atom.predicate, ind)) continue;
+                        b[x] = ind;
+                        evaluate(plan, i + 1, b, initial);
+                    }
+                    b[x] = null;
+                }
+                return;
+            }
+            case PROPERTY: {
+                Relation relation = store.relation(atom.predicate);
+                Relation oldRelation = (old != null) ? old.relation(atom.predicate) : null;
+                int sv = atom.args[0].var;
+                int ov = atom.args[1].var;
+                ATermAppl s = value(atom.args[0], b);
+                ATermAppl o = value(atom.args[1], b);
+                if (s != null && o != null) {
+                    if (relation.contains(s, o) && (oldRelation == null || !oldRelation.contains(s, o))) {
+                        evaluate(plan, i + 1, b, initial);
+                    }
+                } else if (s != null) {
+                    for (ATermAppl object : relation.objects(s)) {
+                        if (oldRelation != null && oldRelation.contains(s, object)) continue;
+                        b[ov] = object;
+                        evaluate(plan, i + 1, b, initial);
+                    }
+                    b[ov] = null;
+                } else if (o != null) {
+                    for (ATermAppl subject : relation.subjects(o)) {
+                        if (oldRelation != null && oldRelation.contains(subject, o)) continue;
+                        b[sv] = subject;
+                        evaluate(plan, i + 1, b, initial);
+                    }
+                    b[sv] = null;
+                } else {
+                    for (Map.Entry<ATermAppl, Set<ATermAppl>> e : relation.bySubject.entrySet()) {
+                        ATermAppl subject = e.getKey();
+                        b[sv] = subject;
+                        if (sv == ov) {
+                            if (e.getValue().contains(subject) && (oldRelation == null || !oldRelation.contains(subject, subject))) {
+                                evaluate(plan, i + 1, b, initial);
+                            }
+                            continue;
+                        }
+                        for (ATermAppl object : e.getValue()) {
+                            if (oldRelation != null && oldRelation.contains(subject, object)) continue;
+                            b[ov] = object;
+                            evaluate(plan, i + 1, b, initial);
+                        }
+                        b[ov] = null;
+                    }
+                    b[sv] = null;
+                }
+                return;
+            }
+            case SAME: {
+                ATermAppl first = value(atom.args[0], b);
+                ATermAppl second = value(atom.args[1], b);
+                if (first != null && second != null) {
+                    if (first == second) evaluate(plan, i + 1, b, initial);
+                } else {
+                    int unbound = (first == null) ? atom.args[0].var : atom.args[1].var;
+                    b[unbound] = (first == null) ? second : first;
+                    evaluate(plan, i + 1, b, initial);
+                    b[unbound] = null;
+                }
+                return;
+            }
+            case DIFFERENT:
+                if (different.contains(value(atom.args[0], b), value(atom.args[1], b))) evaluate(plan, i + 1, b, initial);
+                return;
+            case DATATYPE: {
+                ATermAppl value = value(atom.args[0], b);
+                if (ATermUtils.isLiteral(value) && (atom.predicate == null
+                        || atom.predicate.getName().equals(ATermUtils.getLiteralDatatype(value)))) {
+                    evaluate(plan, i + 1, b, initial);
+                }
+                return;
+            }
+            case BUILT_IN:
+                evaluateBuiltIn(plan, i, b, initial);
+        }
+    }
+
+    private void evaluateBuiltIn(Plan plan, int i, ATermAppl[] b, boolean initial) {
+        Step step = plan.steps[i];
+        Rule rule = plan.rule;
+        VariableBinding binding = new VariableBinding(abox);
+        for (Arg arg : step.atom.args) {
+            if (arg.var < 0 || b[arg.var] == null) continue;
+            ATermAppl value = b[arg.var];
+            if (ATermUtils.isLiteral(value)) {
+                binding.set(rule.dVars.get(arg.var), abox.addLiteral(value));
+            } else {
+                Individual ind = abox.getIndividual(value);
+                binding.set(rule.iVars.get(arg.var), (ind != null) ? ind : abox.getKB().addIndividual(value));
+            }
+        }
+        step.helper.rebind(binding);
+        while (step.helper.selectNextBinding()) {
+            step.helper.setCurrentBinding(binding);
+            boolean bound = true;
+            for (int var : step.binds) {
+                Literal literal = binding.get(rule.dVars.get(var));
+                if (literal != null) {
+                    b[var] = canonical(literal.getTerm());
+                    continue;
+                }
+                Individual ind = binding.get(rule.iVars.get(var));
+                if (ind == null) {
+                    bound = false;
+                    break;
+                }
+                b[var] = ind.getName();
+            }
+            if (bound) evaluate(plan, i + 1, b, initial);
+            for (int var : step.binds) b[var] = null;
+        }
+    }
+
+    private static ATermAppl value(Arg arg, ATermAppl[] b) {
+        return (arg.var < 0) ? arg.constant : b[arg.var];
+    }
+
+    private void fire(Rule rule, ATermAppl[] b) {
+        firings++;
+        for (Atom atom : rule.head) {
+            ATermAppl first = value(atom.args[0], b);
+            if (ATermUtils.isLiteral(first)) continue;
+            if (atom.args.length == 1) {
+                if (!facts.hasClass(atom.predicate, first)) next.addClass(atom.predicate, first);
+            } else {
+                ATermAppl second = value(atom.args[1], b);
+                if (!facts.relation(atom.predicate).contains(first, second)) next.addProperty(atom.predicate, first, second);
+            }
+        }
+    }
+
+    // rules
+
+    private enum Kind {CLASS, PROPERTY, SAME, DIFFERENT, DATATYPE, BUILT_IN}
+
+    /**
+     * Argument of an atom, a variable or a constant.
+     */
+    private static final class Arg {
+        private final int var;
+        private final ATermAppl constant;
+
+        private Arg(int var, ATermAppl constant) {
+            this.var = var;
+            this.constant = constant;
+        }
+    }
+
+    private static final class Atom {
+        private final Kind kind;
+        private final ATermAppl predicate;
+        private final BuiltIn builtIn;
+        private final Arg[] args;
+        private BuiltInAtom builtInAtom;
+
+        private Atom(Kind kind, ATermAppl predicate, BuiltIn builtIn, Arg... args) {
+            this.kind = kind;
+            this.predicate = predicate;
+            this.builtIn = builtIn;
+            this.args = args;
+        }
+
+        private boolean isRelational() {
+            return kind == Kind.CLASS || kind == Kind.PROPERTY;
+        }
+    }
+
+    private static final class Rule {
+        private final String text;
+        private final Map<String, Integer> varIndexes = new HashMap<>();
+        //each variable may be bound to a literal or to an individual
+        private final List<AtomDVariable> dVars = new ArrayList<>();
+        private final List<AtomIVariable> iVars = new ArrayList<>();
+        private final List<Atom> head = new ArrayList<>();
+        private Atom[] body;
+        private final List<Plan> plans = new ArrayList<>();
+
+        private Rule(String text) {
+            this.text = text;
+        }
+
+        private int var(String name) {
+            return varIndexes.computeIfAbsent(name, k -> {
+                dVars.add(new AtomDVariable(name));
+                iVars.add(new AtomIVariable(name));
+                return dVars.size() - 1;
+            });
+        }
+
+        /**
+         * Prepares a join plan starting from each class and property atom of the body.
+         */
+        private void plan() {
+            for (int seed = 0; seed < body.length; seed++) {
+                if (body[seed].isRelational()) plans.add(new Plan(this, seed));
+            }
+            //rules with only built-ins in the body are evaluated once
+            if (plans.isEmpty()) plans.add(new Plan(this, -1));
+        }
+
+        private Plan initialPlan(Store store) {
+            Plan best = plans.get(0);
+            for (Plan plan : plans) {
+                if (plan.seed != null && store.count(plan.seed) < store.count(best.seed)) best = plan;
+            }
+            return best;
+        }
+
+        @Override
+        public String toString() {
+            return text;
+        }
+    }
+
+    /**
+     * Order in which the body atoms are joined when the seed atom matches a new fact.
+     */
+    private static final class Plan {
+        private final Rule rule;
+        private final Atom seed;
+        private final Step[] steps;
+
+        private Plan(Rule rule, int seedIndex) {
+            this.rule = rule;
+            Atom[] body = rule.body;
+            Set<Integer> bound = new HashSet<>();
+            List<Step> steps = new ArrayList<>();
+            boolean[] used = new boolean[body.length];
+            if (seedIndex >= 0) {
+                this.seed = body[seedIndex];
+                steps.add(new Step(seed, true, false, null, bind(seed, bound)));
+                used[seedIndex] = true;
+            } else {
+                this.seed = null;
+            }
+            while (steps.size() < body.length) {
+                int best = -1;
+                int bestCost = Integer.MAX_VALUE;
+                BindingHelper bestHelper = null;
+                for (int j = 0; j < body.length; j++) {
+                    if (used[j]) continue;
+                    BindingHelper helper = body[j].kind == Kind.BUILT_IN ? body[j].builtIn.createHelper(body[j].builtInAtom) : null;
+                    int cost = cost(body[j], helper, bound);
+                    if (cost >= 0 && cost < bestCost) {
+                        best = j;
+                        bestCost = cost;
+                        bestHelper = helper;
+                    }
+                }
+                if (best < 0) throw new IllegalArgumentException("some body variables cannot be bound");
+                used[best] = true;
+                steps.add(new Step(body[best], false, best < seedIndex && body[best].isRelational(), bestHelper, bind(body[best], bound)));
+            }
+            for (Atom atom : rule.head) {
+                for (Arg arg : atom.args) {
+                    if (arg.var >= 0 && !bound.contains(arg.var)) throw new IllegalArgumentException("head variable not bound in body");
+                }
+            }
+            this.steps = steps.toArray(new Step[0]);
+        }
+
+        /**
+         * @return relative cost of joining the atom next, -1 if it cannot be joined yet
+         */
+        private int cost(Atom atom, BindingHelper helper, Set<Integer> bound) {
+            int unbound = 0;
+            for (Arg arg : atom.args) if (arg.var >= 0 && !bound.contains(arg.var)) unbound++;
+            switch (atom.kind) {
+                case CLASS:
+                case PROPERTY:
+                    return (unbound == 0) ? 0 : (unbound < atom.args.length) ? 2 : 4;
+                case SAME:
+                    return (unbound == 0) ? 0 : (unbound == 1) ? 1 : -1;
+                case BUILT_IN:
+                    Collection<AtomVariable> boundVars = new ArrayList<>();
+                    for (int var : bound) {
+                        boundVars.add(rule.dVars.get(var));
+                        boundVars.add(rule.iVars.get(var));
+                    }
+                    for (AtomVariable var : helper.getPrerequisiteVars(boundVars)) {
+                        if (!boundVars.contains(var)) return -1;
+                    }
+                    Set<String> bindable = new HashSet<>();
+                    for (AtomVariable var : helper.getBindableVars(boundVars)) bindable.add(var.getName());
+                    for (Arg arg : atom.args) {
+                        if (arg.var >= 0 && !bound.contains(arg.var) && !bindable.contains(rule.dVars.get(arg.var).getName())) return -1;
+                    }
+                    return (unbound == 0) ? 0 : 1;
+                default:
+                    return (unbound == 0) ? 0 : -1;
+            }
+        }
+
+        /**
+         * Marks the variables of the atom as bound.
+         *
+         * @return variables bound by the atom
+         */
+        private static int[] bind(Atom atom, Set<Integer> bound) {
+            Set<Integer> binds = new LinkedHashSet<>();
+            for (Arg arg : atom.args) {
+                if (arg.var >= 0 && bound.add(arg.var)) binds.add(arg.var);
+            }
+            return binds.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+
+    private static final class Step {
+        private final Atom atom;
+        private final boolean fromDelta;
+        private final boolean old;
+        private final BindingHelper helper;
+        private final int[] binds;
+
+        private Step(Atom atom, boolean fromDelta, boolean old, BindingHelper helper, int[] binds) {
+            this.atom = atom;
+            this.fromDelta = fromDelta;
+            this.old = old;
+            this.helper = helper;
+            this.binds = binds;
+        }
+    }
+
+    // facts
+
+    /**
+     * Class and property assertions indexed by class, and by property with subject or object.
+     */
+    private static final class Store {
+        private final Map<ATermAppl, Set<ATermAppl>> classes = new HashMap<>();
+        private final Map<ATermAppl, Relation> properties = new HashMap<>();
+        private int size;
+
+        boolean addClass(ATermAppl owlClass, ATermAppl ind) {
+            if (!classes.computeIfAbsent(owlClass, k -> new HashSet<>()).add(ind)) return false;
+            size++;
+            return true;
+        }
+
+        void removeClass(ATermAppl owlClass, ATermAppl ind) {
+            Set<ATermAppl> instances = classes.get(owlClass);
+            if (instances != null && instances.remove(ind)) size--;
+        }
+
+        boolean hasClass(ATermAppl owlClass, ATermAppl ind) {
+            Set<ATermAppl> instances = classes.get(owlClass);
+            return instances != null && instances.contains(ind);
+        }
+
+        Set<ATermAppl> instances(ATermAppl owlClass) {
+            return classes.getOrDefault(owlClass, Collections.emptySet());
+        }
+
+        boolean addProperty(ATermAppl property, ATermAppl subject, ATermAppl object) {
+            if (!properties.computeIfAbsent(property, k -> new Relation()).add(subject, object)) return false;
+            size++;
+            return true;
+        }
+
+        void removeProperty(ATermAppl property, ATermAppl subject, ATermAppl object) {
+            Relation relation = properties.get(property);
+            if (relation != null && relation.remove(subject, object)) size--;
+        }
+
+        Relation relation(ATermAppl property) {
+            return properties.getOrDefault(property, Relation.EMPTY);
+        }
+
+        /**
+         * @return number of facts which may match the atom
+         */
+        int count(Atom atom) {
+            return (atom.kind == Kind.CLASS) ? instances(atom.predicate).size() : relation(atom.predicate).size;
+        }
+
+        void clear() {
+            classes.clear();
+            properties.clear();
+            size = 0;
+        }
+    }
+
+    private static final class Relation {
+        private static final Relation EMPTY = new Relation();
+        private final Map<ATermAppl, Set<ATermAppl>> bySubject = new HashMap<>();
+        private final Map<ATermAppl, Set<ATermAppl>> byObject = new HashMap<>();
+        private int size;
+
+        boolean add(ATermAppl subject, ATermAppl object) {
+            if (!bySubject.computeIfAbsent(subject, k -> new HashSet<>()).add(object)) return false;
+            byObject.computeIfAbsent(object, k -> new HashSet<>()).add(subject);
+            size++;
+            return true;
+        }
+
+        boolean remove(ATermAppl subject, ATermAppl object) {
+            Set<ATermAppl> objects = bySubject.get(subject);
+            if (objects == null || !objects.remove(object)) return false;
+            byObject.get(object).remove(subject);
+            size--;
+            return true;
+        }
+
+        boolean contains(ATermAppl subject, ATermAppl object) {
+            Set<ATermAppl> objects = bySubject.get(subject);
+            return objects != null && objects.contains(object);
+        }
+
+        Set<ATermAppl> objects(ATermAppl subject) {
+            return bySubject.getOrDefault(subject, Collections.emptySet());
+        }
+
+        Set<ATermAppl> subjects(ATermAppl object) {
+            return byObject.getOrDefault(object, Collections.emptySet());
+        }
+
+        void clear() {
+            bySubject.clear();
+            byObject.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * Snapshot of engine statistics.
+     */
+    public static final class Statistics {
+        public final int rules;
+        public final int ignoredRules;
+        public final int ignoredAxioms;
+        public final int facts;
+        public final int inferredFacts;
+        public final long fullRuns;
+        public final long incrementalRuns;
+        public final long rounds;
+        public final long firings;
+        public final long lastMaterializationNanos;
+
+        private Statistics(int rules, int ignoredRules, int ignoredAxioms, int facts, int inferredFacts, long fullRuns,
+                           long incrementalRuns, long rounds, long firings, long lastMaterializationNanos) {
+            this.rules = rules;
+            this.ignoredRules = ignoredRules;
+            this.ignoredAxioms = ignoredAxioms;
+            this.facts = facts;
+            this.inferredFacts = inferredFacts;
+            this.fullRuns = fullRuns;
+            this.incrementalRuns = incrementalRuns;
+            this.rounds = rounds;
+            this.firings = firings;
+            this.lastMaterializationNanos = lastMaterializationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "rules=" + rules + " ignoredRules=" + ignoredRules + " ignoredAxioms=" + ignoredAxioms
+                    + " facts=" + facts + " inferredFacts=" + inferredFacts + " fullRuns=" + fullRuns
+                    + " incrementalRuns=" + incrementalRuns + " rounds=" + rounds + " firings=" + firings
+                    + " lastMaterialization=" + lastMaterializationNanos / 1_000_000 + " ms";
+        }
+    }
+}
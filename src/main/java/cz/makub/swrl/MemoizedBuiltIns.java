@@ -0,0 +1,217 @@
+package cz.makub.swrl;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.rules.builtins.GeneralFunction;
+import org.mindswap.pellet.ABox;
+import org.mindswap.pellet.Literal;
+import org.mindswap.pellet.Node;
+import org.mindswap.pellet.utils.ATermUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Memoization of SWRL built-ins which are pure functions of their bound arguments, like
+ * {@link cz.makub.IndividualSWRLBuiltinTutorial}'s IRIparts. The wrapped function is executed only once for each
+ * distinct tuple of bound arguments, later calls with the same arguments get the remembered results.
+ * <p>
+ * The cache stores Pellet terms, not nodes, because nodes belong to one ABox. The terms are turned back into nodes
+ * of the ABox passed to each call, so one cache can be shared by several reasoners and several functions.
+ * Failures are remembered too.
+ * <p>
+ * Usage:
+ * <pre>
+ * MemoizedBuiltIns.Cache cache = new MemoizedBuiltIns.Cache(10000, MemoizedBuiltIns.Eviction.LRU);
+ * BuiltInRegistry.instance.registerBuiltIn("urn:makub:builtIn#IRIparts",
+ *         new CustomSWRLBuiltin(MemoizedBuiltIns.memoize(new IRIparts(), cache)));
+ * </pre>
+ */
+@SuppressWarnings("WeakerAccess")
+public final class MemoizedBuiltIns {
+
+    private MemoizedBuiltIns() {
+    }
+
+    /**
+     * Which cached result is evicted when the cache is full.
+     */
+    public enum Eviction {
+        /**
+         * least recently used
+         */
+        LRU,
+        /**
+         * least recently added
+         */
+        FIFO
+    }
+
+    /**
+     * Wraps a custom function so that it is executed once per distinct bound arguments.
+     *
+     * @param function pure function, i.e. its results depend only on its bound arguments
+     * @param cache    cache for results, may be shared
+     * @return memoizing function
+     */
+    public static CustomSWRLBuiltin.CustomSWRLFunction memoize(CustomSWRLBuiltin.CustomSWRLFunction function, Cache cache) {
+        return new CustomSWRLBuiltin.CustomSWRLFunction() {
+            @Override
+            public boolean apply(ABox abox, Node[] args) {
+                Key key = new Key(function, args);
+                ATermAppl[] cached = cache.get(key);
+                if (cached != null && restore(abox, cached, args)) {
+                    return cached != FAILURE;
+                }
+                boolean success = function.apply(abox, args);
+                cache.put(key, success ? results(key, args) : FAILURE);
+                return success;
+            }
+
+            @Override
+            public boolean isApplicable(boolean[] boundPositions) {
+                return function.isApplicable(boundPositions);
+            }
+        };
+    }
+
+    /**
+     * Wraps a general function so that it is executed once per distinct bound arguments.
+     *
+     * @param function pure function, i.e. its results depend only on its bound arguments
+     * @param cache    cache for results, may be shared
+     * @return memoizing function
+     */
+    public static GeneralFunction memoize(GeneralFunction function, Cache cache) {
+        return new GeneralFunction() {
+            @Override
+            public boolean apply(ABox abox, Literal[] args) {
+                Key key = new Key(function, args);
+                ATermAppl[] cached = cache.get(key);
+                if (cached != null && restore(abox, cached, args)) {
+                    return cached != FAILURE;
+                }
+                boolean success = function.apply(abox, args);
+                cache.put(key, success ? results(key, args) : FAILURE);
+                return success;
+            }
+
+            @Override
+            public boolean isApplicable(boolean[] boundPositions) {
+                return function.isApplicable(boundPositions);
+            }
+        };
+    }
+
+    private static final ATermAppl[] FAILURE = new ATermAppl[0];
+
+    /**
+     * @return terms of the arguments which were unbound before the call, null at bound positions
+     */
+    private static ATermAppl[] results(Key key, Node[] args) {
+        ATermAppl[] results = new ATermAppl[args.length];
+        for (int i = 0; i < args.length; i++) {
+            if (key.terms[i] == null && args[i] != null) results[i] = args[i].getTerm();
+        }
+        return results;
+    }
+
+    /**
+     * Fills the unbound arguments with nodes for the cached terms.
+     *
+     * @return false if a node cannot be created in the given ABox, the function must be then executed
+     */
+    private static boolean restore(ABox abox, ATermAppl[] cached, Node[] args) {
+        if (cached == FAILURE) return true;
+        Node[] nodes = new Node[args.length];
+        for (int i = 0; i < cached.length; i++) {
+            if (cached[i] == null) continue;
+            nodes[i] = ATermUtils.isLiteral(cached[i]) ? abox.addLiteral(cached[i]) : abox.getIndividual(cached[i]);
+            if (nodes[i] == null) return false;
+        }
+        for (int i = 0; i < cached.length; i++) {
+            if (nodes[i] != null) args[i] = nodes[i];
+        }
+        return true;
+    }
+
+    /**
+     * Bounded cache of function results, safe for concurrent use.
+     */
+    public static final class Cache {
+        private final Map<Key, ATermAppl[]> map;
+        private long hits;
+        private long misses;
+
+        /**
+         * @param maxEntries maximum number of remembered results
+         * @param eviction   which result is evicted when the cache is full
+         */
+        public Cache(final int maxEntries, Eviction eviction) {
+            this.map = new LinkedHashMap<Key, ATermAppl[]>(Math.min(maxEntries, 1024), 0.75f, eviction == Eviction.LRU) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Key, ATermAppl[]> eldest) {
+                    return size() > maxEntries;
+                }
+            };
+        }
+
+        private synchronized ATermAppl[] get(Key key) {
+            ATermAppl[] value = map.get(key);
+            if (value != null) hits++;
+            else misses++;
+            return value;
+        }
+
+        private synchronized void put(Key key, ATermAppl[] value) {
+            map.put(key, value);
+        }
+
+        public synchronized void clear() {
+            map.clear();
+        }
+
+        public synchronized int size() {
+            return map.size();
+        }
+
+        public synchronized long getHits() {
+            return hits;
+        }
+
+        public synchronized long getMisses() {
+            return misses;
+        }
+    }
+
+    /**
+     * The function and terms of its bound arguments. ATerms are maximally shared, so comparing them is cheap.
+     */
+    private static final class Key {
+        private final Object function;
+        private final ATermAppl[] terms;
+        private final int hash;
+
+        private Key(Object function, Node[] args) {
+            this.function = function;
+            this.terms = new ATermAppl[args.length];
+            for (int i = 0; i < args.length; i++) {
+                if (args[i] != null) terms[i] = args[i].getTerm();
+            }
+            this.hash = 31 * System.identityHashCode(function) + Arrays.hashCode(terms);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key key = (Key) o;
+            return function == key.function && Arrays.equals(terms, key.terms);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
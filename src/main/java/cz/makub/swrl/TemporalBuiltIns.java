@@ -0,0 +1,356 @@
+package cz.makub.swrl;
+
+import aterm.ATermAppl;
+import com.clarkparsia.pellet.rules.builtins.BuiltInRegistry;
+import com.clarkparsia.pellet.rules.builtins.GeneralFunction;
+import com.clarkparsia.pellet.rules.builtins.GeneralFunctionBuiltIn;
+import org.mindswap.pellet.ABox;
+import org.mindswap.pellet.Literal;
+import org.mindswap.pellet.utils.ATermUtils;
+
+import java.math.BigInteger;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+
+import static org.mindswap.pellet.utils.Namespaces.XSD;
+
+/**
+ * Library of SWRL built-ins working with dates and times, generalising the thisYear built-in from {@link cz.makub.SWRLBuiltInsTutorial}.
+ * <p>
+ * Built-ins in the namespace {@value #NS}:
+ * <ul>
+ * <li><code>thisYear(?y)</code> - current year as xsd:integer</li>
+ * <li><code>today(?d)</code> - current date as xsd:date</li>
+ * <li><code>now(?t)</code> - current time as xsd:dateTime</li>
+ * <li><code>year(?y, ?date)</code> - year of an xsd:date or xsd:dateTime</li>
+ * <li><code>daysBetween(?n, ?from, ?to)</code> - number of whole days between two dates or times</li>
+ * <li><code>yearsBetween(?n, ?from, ?to)</code> - number of whole years between two dates or times, e.g. age or tenure</li>
+ * <li><code>before(?a, ?b)</code> - true if the first date or time is before the second one</li>
+ * </ul>
+ * If the first argument of the functions is bound, its value is compared with the computed one as a number or a date,
+ * not as a string, so e.g. <code>"2021"^^xsd:integer</code> equals <code>"+2021"^^xsd:integer</code>.
+ * Two xsd:date values are compared and counted as calendar dates. When an xsd:dateTime is involved,
+ * its time and timezone are taken into account, an xsd:dateTime without timezone is taken as UTC
+ * and an xsd:date as its start in UTC.
+ * <p>
+ * The current time is taken from the given clock. A {@link CoarseClock} reads the underlying clock at most once per
+ * tick, and a fixed clock makes results deterministic, e.g. for one reasoning run.
+ * Values derived from the current time are computed once per change of the clock value, not on each call.
+ */
+@SuppressWarnings("WeakerAccess")
+public class TemporalBuiltIns {
+
+    public static final String NS = "urn:makub:builtIn#";
+
+    private static final String XSD_INTEGER = XSD + "integer";
+    private static final String XSD_DATE = XSD + "date";
+    private static final String XSD_DATE_TIME = XSD + "dateTime";
+
+    private final Clock clock;
+    private volatile Now now;
+
+    /**
+     * @param clock source of the current time, e.g. {@code Clock.systemDefaultZone()}, a {@link CoarseClock} or a fixed clock
+     */
+    public TemporalBuiltIns(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Registers all built-ins of this library into Pellet's built-in registry.
+     */
+    public void registerAll() {
+        register("thisYear", new ThisYear());
+        register("today", new Today());
+        register("now", new NowFunction());
+        register("year", new YearOf());
+        register("daysBetween", new Between(ChronoUnit.DAYS));
+        register("yearsBetween", new Between(ChronoUnit.YEARS));
+        register("before", new Before());
+    }
+
+    private static void register(String name, GeneralFunction function) {
+        BuiltInRegistry.instance.registerBuiltIn(NS + name, new GeneralFunctionBuiltIn(function));
+    }
+
+    /**
+     * A clock which reads the underlying clock at most once per tick and returns the cached value in between.
+     */
+    public static class CoarseClock extends Clock {
+        private final Clock clock;
+        private final long tickMillis;
+        private volatile long nextReadMillis = Long.MIN_VALUE;
+        private volatile Instant instant;
+
+        /**
+         * @param clock      underlying clock
+         * @param tickMillis how long a read value is used
+         */
+        public CoarseClock(Clock clock, long tickMillis) {
+            this.clock = clock;
+            this.tickMillis = tickMillis;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return clock.getZone();
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return new CoarseClock(clock.withZone(zone), tickMillis);
+        }
+
+        @Override
+        public Instant instant() {
+            long millis = System.currentTimeMillis();
+            if (millis >= nextReadMillis || instant == null) {
+                instant = clock.instant();
+                nextReadMillis = millis + tickMillis;
+            }
+            return instant;
+        }
+    }
+
+    /**
+     * Terms for the current time, recomputed only when the clock value changes.
+     */
+    private static final class Now {
+        private final Instant instant;
+        private final LocalDate date;
+        private final ATermAppl year;
+        private final ATermAppl today;
+        private final ATermAppl dateTime;
+
+        private Now(Instant instant, ZoneId zone) {
+            ZonedDateTime zoned = instant.atZone(zone);
+            this.instant = instant;
+            this.date = zoned.toLocalDate();
+            this.year = ATermUtils.makeTypedLiteral(Integer.toString(zoned.getYear()), XSD_INTEGER);
+            this.today = ATermUtils.makeTypedLiteral(DateTimeFormatter.ISO_LOCAL_DATE.format(date), XSD_DATE);
+            this.dateTime = ATermUtils.makeTypedLiteral(DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(zoned.toOffsetDateTime()), XSD_DATE_TIME);
+        }
+    }
+
+    private Now now() {
+        Instant instant = clock.instant();
+        Now n = now;
+        if (n == null || !n.instant.equals(instant)) {
+            n = new Now(instant, clock.getZone());
+            now = n;
+        }
+        return n;
+    }
+
+    /**
+     * Binds an unbound argument to the given value, or compares a bound argument with it.
+     */
+    private static boolean bindOrCompare(ABox abox, Literal[] args, int i, ATermAppl value) {
+        if (args[i] == null) {
+            args[i] = abox.addLiteral(value);
+            return args[i] != null;
+        }
+        return compare(args[i].getTerm(), value) == 0;
+    }
+
+    /**
+     * Compares two literals as integers, dates or times, falling back to lexical comparison for other datatypes.
+     */
+    static int compare(ATermAppl a, ATermAppl b) {
+        if (a.equals(b)) return 0;
+        String dtA = ATermUtils.getLiteralDatatype(a);
+        String dtB = ATermUtils.getLiteralDatatype(b);
+        String lexA = ATermUtils.getLiteralValue(a);
+        String lexB = ATermUtils.getLiteralValue(b);
+        try {
+            if (isInteger(dtA) && isInteger(dtB)) {
+                return new BigInteger(lexA.trim().replace("+", "")).compareTo(new BigInteger(lexB.trim().replace("+", "")));
+            }
+            if (isTemporal(dtA) && isTemporal(dtB)) {
+                if (XSD_DATE.equals(dtA) && XSD_DATE.equals(dtB)) {
+                    return parseDate(lexA).compareTo(parseDate(lexB));
+                }
+                return toInstant(a).compareTo(toInstant(b));
+            }
+        } catch (NumberFormatException | DateTimeParseException ex) {
+            //not a valid value of its datatype, compare lexically
+        }
+        return lexA.compareTo(lexB);
+    }
+
+    private static boolean isInteger(String datatype) {
+        if (datatype == null || !datatype.startsWith(XSD)) return false;
+        switch (datatype.substring(XSD.length())) {
+            case "integer":
+            case "int":
+            case "long":
+            case "short":
+            case "byte":
+            case "nonNegativeInteger":
+            case "positiveInteger":
+            case "nonPositiveInteger":
+            case "negativeInteger":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isTemporal(String datatype) {
+        return XSD_DATE.equals(datatype) || XSD_DATE_TIME.equals(datatype) || (XSD + "dateTimeStamp").equals(datatype);
+    }
+
+    private static LocalDate parseDate(String lexical) {
+        //xsd:date may have a timezone, which does not change the date
+        String s = lexical.trim();
+        if (s.length() > 10) s = s.substring(0, 10);
+        return LocalDate.parse(s);
+    }
+
+    private static Instant toInstant(ATermAppl literal) {
+        String lexical = ATermUtils.getLiteralValue(literal).trim();
+        if (XSD_DATE.equals(ATermUtils.getLiteralDatatype(literal))) {
+            return parseDate(lexical).atStartOfDay(ZoneId.of("UTC")).toInstant();
+        }
+        try {
+            return OffsetDateTime.parse(lexical).toInstant();
+        } catch (DateTimeParseException ex) {
+            //xsd:dateTime without timezone
+            return LocalDateTime.parse(lexical).atZone(ZoneId.of("UTC")).toInstant();
+        }
+    }
+
+    private static OffsetDateTime toUtc(ATermAppl literal) {
+        return toInstant(literal).atOffset(ZoneOffset.UTC);
+    }
+
+    /**
+     * @return the date as written, for xsd:dateTime in its own timezone
+     */
+    private static LocalDate toLocalDate(ATermAppl literal) {
+        String lexical = ATermUtils.getLiteralValue(literal).trim();
+        String datatype = ATermUtils.getLiteralDatatype(literal);
+        if (XSD_DATE.equals(datatype)) return parseDate(lexical);
+        if (isTemporal(datatype)) return parseDate(lexical.substring(0, Math.min(10, lexical.length())));
+        throw new DateTimeParseException("not a date", lexical, 0);
+    }
+
+    private static boolean isTemporalLiteral(Literal literal) {
+        return literal != null && isTemporal(ATermUtils.getLiteralDatatype(literal.getTerm()));
+    }
+
+    /**
+     * thisYear(?y) - binds or compares the current year.
+     */
+    public class ThisYear implements GeneralFunction {
+        public boolean apply(ABox abox, Literal[] args) {
+            return bindOrCompare(abox, args, 0, now().year);
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 1;
+        }
+    }
+
+    /**
+     * today(?d) - binds or compares the current date.
+     */
+    public class Today implements GeneralFunction {
+        public boolean apply(ABox abox, Literal[] args) {
+            return bindOrCompare(abox, args, 0, now().today);
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 1;
+        }
+    }
+
+    /**
+     * now(?t) - binds or compares the current date and time.
+     */
+    public class NowFunction implements GeneralFunction {
+        public boolean apply(ABox abox, Literal[] args) {
+            return bindOrCompare(abox, args, 0, now().dateTime);
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 1;
+        }
+    }
+
+    /**
+     * year(?y, ?date) - binds or compares the year of a date or time.
+     */
+    public static class YearOf implements GeneralFunction {
+        public boolean apply(ABox abox, Literal[] args) {
+            if (!isTemporalLiteral(args[1])) return false;
+            try {
+                int year = toLocalDate(args[1].getTerm()).getYear();
+                return bindOrCompare(abox, args, 0, ATermUtils.makeTypedLiteral(Integer.toString(year), XSD_INTEGER));
+            } catch (DateTimeParseException ex) {
+                return false;
+            }
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 2 && boundPositions[1];
+        }
+    }
+
+    /**
+     * daysBetween(?n, ?from, ?to) or yearsBetween(?n, ?from, ?to) - binds or compares the number of whole units between two dates or times.
+     */
+    public static class Between implements GeneralFunction {
+        private final ChronoUnit unit;
+
+        public Between(ChronoUnit unit) {
+            this.unit = unit;
+        }
+
+        public boolean apply(ABox abox, Literal[] args) {
+            if (!isTemporalLiteral(args[1]) || !isTemporalLiteral(args[2])) return false;
+            try {
+                ATermAppl from = args[1].getTerm();
+                ATermAppl to = args[2].getTerm();
+                //times are counted as instants, so the time of day and the timezone matter
+                long n = (XSD_DATE.equals(ATermUtils.getLiteralDatatype(from)) && XSD_DATE.equals(ATermUtils.getLiteralDatatype(to)))
+                        ? unit.between(toLocalDate(from), toLocalDate(to))
+                        : unit.between(toUtc(from), toUtc(to));
+                return bindOrCompare(abox, args, 0, ATermUtils.makeTypedLiteral(Long.toString(n), XSD_INTEGER));
+            } catch (DateTimeParseException ex) {
+                return false;
+            }
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 3 && boundPositions[1] && boundPositions[2];
+        }
+    }
+
+    /**
+     * before(?a, ?b) - true if the first date or time is before the second one.
+     */
+    public static class Before implements GeneralFunction {
+        public boolean apply(ABox abox, Literal[] args) {
+            if (!isTemporalLiteral(args[0]) || !isTemporalLiteral(args[1])) return false;
+            try {
+                return compare(args[0].getTerm(), args[1].getTerm()) < 0;
+            } catch (DateTimeParseException ex) {
+                return false;
+            }
+        }
+
+        public boolean isApplicable(boolean[] boundPositions) {
+            return boundPositions.length == 2 && boundPositions[0] && boundPositions[1];
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package cz.makub.reasoner;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasoner;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Stores with fewer individuals than classes and properties, the class ids must not be sorted as individual ids.
+ */
+public class CompactABoxTest {
+
+    private static final String NS = "http://example.org/compact#";
+
+    private final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private final OWLDataFactory factory = manager.getOWLDataFactory();
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+    private OWLClass owlClass(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+    @Test
+    public void oneIndividualWithManyTypes() {
+        CompactABox store = new CompactABox(factory);
+        OWLNamedIndividual a = individual("a");
+        Set<OWLClass> classes = new HashSet<>();
+        for (int i = 0; i < 3; i++) {
+            OWLClass c = owlClass("C" + i);
+            classes.add(c);
+            store.add(factory.getOWLClassAssertionAxiom(c, a));
+        }
+        assertEquals(classes, new HashSet<>(store.getTypes(a)));
+        for (OWLClass c : classes) {
+            assertEquals(Arrays.asList(a), store.getInstances(c));
+        }
+        assertEquals(1, store.getIndividualCount());
+        assertEquals(3, store.size());
+    }
+
+    @Test
+    public void largeVocabularyOffHeap() {
+        CompactABox store = new CompactABox(factory, true);
+        OWLNamedIndividual a = individual("a");
+        OWLNamedIndividual b = individual("b");
+        OWLObjectProperty knows = factory.getOWLObjectProperty(IRI.create(NS + "knows"));
+        OWLDataProperty name = factory.getOWLDataProperty(IRI.create(NS + "name"));
+        for (int i = 0; i < 100; i++) {
+            store.add(factory.getOWLClassAssertionAxiom(owlClass("C" + i), i % 2 == 0 ? a : b));
+        }
+        store.add(factory.getOWLObjectPropertyAssertionAxiom(knows, a, b));
+        store.add(factory.getOWLDataPropertyAssertionAxiom(name, a, "A"));
+        assertEquals(50, store.getTypes(a).size());
+        assertEquals(50, store.getTypes(b).size());
+        assertEquals(Arrays.asList(b), store.getInstances(owlClass("C99")));
+        assertEquals(Arrays.asList(b), store.getObjectPropertyValues(a, knows));
+        assertEquals(Arrays.asList(factory.getOWLLiteral("A")), store.getDataPropertyValues(a, name));
+    }
+
+    @Test
+    public void loadIntoReasoner() throws OWLOntologyCreationException {
+        OWLClass person = owlClass("Person");
+        OWLClass student = owlClass("Student");
+        OWLClass employee = owlClass("Employee");
+        OWLObjectProperty supervises = factory.getOWLObjectProperty(IRI.create(NS + "supervises"));
+        OWLOntology tbox = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(tbox, factory.getOWLSubClassOfAxiom(student, person));
+        manager.addAxiom(tbox, factory.getOWLSubClassOfAxiom(employee, person));
+        manager.addAxiom(tbox, factory.getOWLObjectPropertyRangeAxiom(supervises, student));
+
+        CompactABox store = new CompactABox(factory);
+        OWLNamedIndividual a = individual("a");
+        OWLNamedIndividual b = individual("b");
+        store.add(factory.getOWLClassAssertionAxiom(student, a));
+        store.add(factory.getOWLClassAssertionAxiom(employee, a));
+        store.add(factory.getOWLClassAssertionAxiom(person, a));
+        store.add(factory.getOWLObjectPropertyAssertionAxiom(supervises, a, b));
+
+        PelletReasoner reasoner = store.createReasoner(tbox);
+        try {
+            assertEquals(new HashSet<>(Arrays.asList(a, b)), reasoner.getInstances(person, false).getFlattened());
+            assertEquals(new HashSet<>(Arrays.asList(a, b)), reasoner.getInstances(student, false).getFlattened());
+            assertEquals(new HashSet<>(Arrays.asList(a)), reasoner.getInstances(employee, false).getFlattened());
+            assertEquals(new HashSet<>(Arrays.asList(b)), reasoner.getObjectPropertyValues(a, supervises).getFlattened());
+        } finally {
+            reasoner.dispose();
+        }
+    }
+}
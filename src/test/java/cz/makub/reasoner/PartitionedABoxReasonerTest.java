@@ -0,0 +1,92 @@
+package cz.makub.reasoner;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Components connected only through individuals used in the TBox must not be reasoned separately.
+ */
+public class PartitionedABoxReasonerTest {
+
+    private static final String NS = "http://example.org/partitioned#";
+
+    private final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private final OWLDataFactory factory = manager.getOWLDataFactory();
+    private final OWLObjectProperty hasKnowledgeOf = factory.getOWLObjectProperty(IRI.create(NS + "hasKnowledgeOf"));
+    private final OWLClass course = factory.getOWLClass(IRI.create(NS + "C"));
+    private final OWLClass difficult = factory.getOWLClass(IRI.create(NS + "Difficult"));
+    private final OWLClass smart = factory.getOWLClass(IRI.create(NS + "Smart"));
+    private final OWLNamedIndividual cp = individual("CP");
+    private final OWLNamedIndividual x = individual("x");
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+    private OWLOntology nominalOntology() throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(course, factory.getOWLObjectHasValue(hasKnowledgeOf, cp)));
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(smart, factory.getOWLObjectSomeValuesFrom(hasKnowledgeOf, difficult)));
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(difficult, cp));
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(course, x));
+        for (int i = 0; i < 10; i++) {
+            manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(difficult, individual("other" + i)));
+        }
+        return ontology;
+    }
+
+    @Test
+    public void nominalConnectsComponents() throws OWLOntologyCreationException {
+        OWLOntology ontology = nominalOntology();
+        try (PartitionedABoxReasoner partitioned = new PartitionedABoxReasoner(ontology, PelletReasonerFactory.getInstance(), 2)) {
+            assertEquals(new HashSet<>(Arrays.asList(x)), partitioned.getInstances(smart, false));
+            boolean smartFact = false;
+            for (MaterializedABox.Fact fact : partitioned.materialize().getFacts(x).getClassAssertions()) {
+                smartFact |= fact.getAxiom().equals(factory.getOWLClassAssertionAxiom(smart, x));
+            }
+            assertTrue(smartFact);
+            assertNotNull(partitioned.getStatistics().singleComponentReason);
+        }
+    }
+
+    @Test
+    public void inconsistencyThroughNominal() throws OWLOntologyCreationException {
+        OWLOntology ontology = nominalOntology();
+        OWLNamedIndividual y = individual("y");
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(course, y));
+        manager.addAxiom(ontology, factory.getOWLDifferentIndividualsAxiom(x, y));
+        manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(
+                factory.getOWLObjectMaxCardinality(1, factory.getOWLObjectInverseOf(hasKnowledgeOf)), cp));
+        try (PartitionedABoxReasoner partitioned = new PartitionedABoxReasoner(ontology, PelletReasonerFactory.getInstance(), 2)) {
+            assertFalse(partitioned.isConsistent());
+        }
+    }
+
+    @Test
+    public void independentComponentsArePartitioned() throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLEquivalentClassesAxiom(smart, factory.getOWLObjectSomeValuesFrom(hasKnowledgeOf, difficult)));
+        for (int i = 0; i < 10; i++) {
+            OWLNamedIndividual student = individual("student" + i);
+            OWLNamedIndividual subject = individual("subject" + i);
+            manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(hasKnowledgeOf, student, subject));
+            if (i % 2 == 0) manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(difficult, subject));
+        }
+        try (PartitionedABoxReasoner partitioned = new PartitionedABoxReasoner(ontology, PelletReasonerFactory.getInstance(), 2)) {
+            assertEquals(5, partitioned.getInstances(smart, false).size());
+            assertNull(partitioned.getStatistics().singleComponentReason);
+            assertEquals(10, partitioned.getStatistics().components);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package cz.makub.swrl;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Semi-naive evaluation over the asserted facts, for full and incremental runs, compared with Pellet where possible.
+ */
+public class ForwardChainingEngineTest {
+
+    private static final String NS = "http://example.org/rules#";
+    private static final String SWRLB = "http://www.w3.org/2003/11/swrlb#";
+
+    private final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private final OWLDataFactory factory = manager.getOWLDataFactory();
+    private final SWRLVariable x = factory.getSWRLVariable(IRI.create("urn:swrl#x"));
+
+    private OWLNamedIndividual individual(String name) {
+        return factory.getOWLNamedIndividual(IRI.create(NS + name));
+    }
+
+    private OWLClass owlClass(String name) {
+        return factory.getOWLClass(IRI.create(NS + name));
+    }
+
+    private OWLObjectProperty objectProperty(String name) {
+        return factory.getOWLObjectProperty(IRI.create(NS + name));
+    }
+
+    private Set<OWLNamedIndividual> individuals(String... names) {
+        Set<OWLNamedIndividual> individuals = new HashSet<>();
+        for (String name : names) individuals.add(individual(name));
+        return individuals;
+    }
+
+    private OWLOntology chain(OWLObjectProperty property, String... names) throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLTransitiveObjectPropertyAxiom(property));
+        for (int i = 1; i < names.length; i++) {
+            manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(property, individual(names[i - 1]), individual(names[i])));
+        }
+        return ontology;
+    }
+
+    @Test
+    public void transitiveClosure() throws OWLOntologyCreationException {
+        OWLObjectProperty ancestorOf = objectProperty("ancestorOf");
+        OWLOntology ontology = chain(ancestorOf, "a", "b", "c", "d", "e", "f");
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        assertEquals(individuals("b", "c", "d", "e", "f"), engine.getObjectPropertyValues(individual("a"), ancestorOf));
+        assertEquals(individuals("f"), engine.getObjectPropertyValues(individual("e"), ancestorOf));
+        //15 pairs of the closure minus the 5 asserted ones
+        assertEquals(10, engine.getInferredAxioms().size());
+        engine.dispose();
+    }
+
+    @Test
+    public void inverseProperty() throws OWLOntologyCreationException {
+        OWLObjectProperty hasParent = objectProperty("hasParent");
+        OWLObjectProperty hasChild = objectProperty("hasChild");
+        OWLClass parent = owlClass("Parent");
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLInverseObjectPropertiesAxiom(hasParent, hasChild));
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyDomainAxiom(hasChild, parent));
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(hasParent, individual("ivan"), individual("martin")));
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(hasChild, individual("lenka"), individual("eva")));
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        assertEquals(individuals("ivan"), engine.getObjectPropertyValues(individual("martin"), hasChild));
+        assertEquals(individuals("lenka"), engine.getObjectPropertyValues(individual("eva"), hasParent));
+        assertEquals(individuals("martin", "lenka"), engine.getInstances(parent));
+        engine.dispose();
+    }
+
+    @Test
+    public void builtInComparisonAndBinding() throws OWLOntologyCreationException {
+        OWLClass person = owlClass("Person");
+        OWLClass adult = owlClass("Adult");
+        OWLDataProperty hasAge = factory.getOWLDataProperty(IRI.create(NS + "hasAge"));
+        OWLDataProperty hasNextAge = factory.getOWLDataProperty(IRI.create(NS + "hasNextAge"));
+        SWRLVariable age = factory.getSWRLVariable(IRI.create("urn:swrl#age"));
+        SWRLVariable next = factory.getSWRLVariable(IRI.create("urn:swrl#next"));
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        //Person(?x), hasAge(?x, ?age), swrlb:greaterThanOrEqual(?age, 18) -> Adult(?x)
+        manager.addAxiom(ontology, factory.getSWRLRule(new LinkedHashSet<>(Arrays.asList(
+                factory.getSWRLClassAtom(person, x),
+                factory.getSWRLDataPropertyAtom(hasAge, x, age),
+                factory.getSWRLBuiltInAtom(IRI.create(SWRLB + "greaterThanOrEqual"),
+                        Arrays.asList(age, factory.getSWRLLiteralArgument(factory.getOWLLiteral(18)))))),
+                Collections.singleton(factory.getSWRLClassAtom(adult, x))));
+        //Person(?x), hasAge(?x, ?age), swrlb:add(?next, ?age, 1) -> hasNextAge(?x, ?next)
+        manager.addAxiom(ontology, factory.getSWRLRule(new LinkedHashSet<>(Arrays.asList(
+                factory.getSWRLClassAtom(person, x),
+                factory.getSWRLDataPropertyAtom(hasAge, x, age),
+                factory.getSWRLBuiltInAtom(IRI.create(SWRLB + "add"),
+                        Arrays.asList(next, age, factory.getSWRLLiteralArgument(factory.getOWLLiteral(1)))))),
+                Collections.singleton(factory.getSWRLDataPropertyAtom(hasNextAge, x, next))));
+        String[] names = {"child", "teenager", "grownup"};
+        int[] ages = {10, 18, 40};
+        for (int i = 0; i < names.length; i++) {
+            manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(person, individual(names[i])));
+            manager.addAxiom(ontology, factory.getOWLDataPropertyAssertionAxiom(hasAge, individual(names[i]), ages[i]));
+        }
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        assertEquals(individuals("teenager", "grownup"), engine.getInstances(adult));
+        for (int i = 0; i < names.length; i++) {
+            Set<OWLLiteral> nextAges = engine.getDataPropertyValues(individual(names[i]), hasNextAge);
+            assertEquals(1, nextAges.size());
+            assertEquals(ages[i] + 1, nextAges.iterator().next().parseInteger());
+        }
+        assertEquals(0, engine.getStatistics().ignoredRules);
+        engine.dispose();
+    }
+
+    @Test
+    public void incrementalAdditionThenRemoval() throws OWLOntologyCreationException {
+        OWLObjectProperty ancestorOf = objectProperty("ancestorOf");
+        OWLOntology ontology = chain(ancestorOf, "a", "b", "c");
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(ancestorOf, individual("d"), individual("e")));
+        manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(ancestorOf, individual("e"), individual("f")));
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        assertEquals(individuals("b", "c"), engine.getObjectPropertyValues(individual("a"), ancestorOf));
+
+        //the new link joins old facts on both of its sides
+        OWLAxiom link = factory.getOWLObjectPropertyAssertionAxiom(ancestorOf, individual("c"), individual("d"));
+        manager.addAxiom(ontology, link);
+        assertEquals(individuals("b", "c", "d", "e", "f"), engine.getObjectPropertyValues(individual("a"), ancestorOf));
+        assertEquals(individuals("c", "d", "e", "f"), engine.getObjectPropertyValues(individual("b"), ancestorOf));
+        assertEquals(1, engine.getStatistics().fullRuns);
+        assertEquals(1, engine.getStatistics().incrementalRuns);
+
+        manager.removeAxiom(ontology, link);
+        assertEquals(individuals("b", "c"), engine.getObjectPropertyValues(individual("a"), ancestorOf));
+        assertEquals(individuals("e", "f"), engine.getObjectPropertyValues(individual("d"), ancestorOf));
+        assertEquals(2, engine.getStatistics().fullRuns);
+        for (OWLIndividualAxiom axiom : engine.getInferredAxioms()) {
+            assertFalse(axiom.getIndividualsInSignature().contains(individual("a"))
+                    && axiom.getIndividualsInSignature().contains(individual("f")));
+        }
+        engine.dispose();
+    }
+
+    @Test
+    public void incrementalBatchJoinsNewFacts() throws OWLOntologyCreationException {
+        OWLObjectProperty ancestorOf = objectProperty("ancestorOf");
+        OWLOntology ontology = chain(ancestorOf, "a", "b");
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        assertEquals(individuals("b"), engine.getObjectPropertyValues(individual("a"), ancestorOf));
+
+        //both new facts are in the same delta, their join is found only by joining the delta with itself
+        manager.addAxioms(ontology, new HashSet<>(Arrays.asList(
+                factory.getOWLObjectPropertyAssertionAxiom(ancestorOf, individual("c"), individual("d")),
+                factory.getOWLObjectPropertyAssertionAxiom(ancestorOf, individual("d"), individual("e")))));
+        assertEquals(individuals("d", "e"), engine.getObjectPropertyValues(individual("c"), ancestorOf));
+        assertEquals(1, engine.getStatistics().incrementalRuns);
+        engine.dispose();
+    }
+
+    @Test
+    public void sameResultsAsPellet() throws OWLOntologyCreationException {
+        //the rule of CreateOntologyInCodeExample
+        OWLClass person = owlClass("Person");
+        OWLClass man = owlClass("Man");
+        OWLClass englishProgrammer = owlClass("EnglishProgrammer");
+        OWLObjectProperty speaksLanguage = objectProperty("speaksLanguage");
+        OWLObjectProperty hasKnowledgeOf = objectProperty("hasKnowledgeOf");
+        OWLNamedIndividual english = individual("English");
+        OWLNamedIndividual programming = individual("Computer-Programming");
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLSubClassOfAxiom(man, person));
+        manager.addAxiom(ontology, factory.getSWRLRule(new LinkedHashSet<>(Arrays.asList(
+                factory.getSWRLClassAtom(person, x),
+                factory.getSWRLObjectPropertyAtom(speaksLanguage, x, factory.getSWRLIndividualArgument(english)),
+                factory.getSWRLObjectPropertyAtom(hasKnowledgeOf, x, factory.getSWRLIndividualArgument(programming)))),
+                Collections.singleton(factory.getSWRLClassAtom(englishProgrammer, x))));
+        List<String> names = Arrays.asList("John", "Peter", "Mary", "Eve", "Robot");
+        for (String name : names) {
+            OWLNamedIndividual ind = individual(name);
+            if (!name.equals("Robot")) manager.addAxiom(ontology, factory.getOWLClassAssertionAxiom(name.equals("Peter") ? man : person, ind));
+            if (!name.equals("Eve")) manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(speaksLanguage, ind, english));
+            if (!name.equals("Mary")) manager.addAxiom(ontology, factory.getOWLObjectPropertyAssertionAxiom(hasKnowledgeOf, ind, programming));
+        }
+        ForwardChainingEngine engine = new ForwardChainingEngine(ontology);
+        OWLReasoner reasoner = PelletReasonerFactory.getInstance().createNonBufferingReasoner(ontology);
+        try {
+            Set<OWLNamedIndividual> byRules = engine.getInstances(englishProgrammer);
+            assertEquals(individuals("John", "Peter"), byRules);
+            assertEquals(reasoner.getInstances(englishProgrammer, false).getFlattened(), byRules);
+            assertEquals(reasoner.getInstances(person, false).getFlattened(), engine.getInstances(person));
+            assertTrue(engine.getStatistics().firings > 0);
+        } finally {
+            reasoner.dispose();
+            engine.dispose();
+        }
+    }
+}
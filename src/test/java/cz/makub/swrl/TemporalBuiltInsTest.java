@@ -0,0 +1,97 @@
+package cz.makub.swrl;
+
+import com.clarkparsia.pellet.owlapiv3.PelletReasonerFactory;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.*;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.vocab.OWL2Datatype;
+import org.semanticweb.owlapi.vocab.XSDVocabulary;
+
+import java.time.Clock;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Built-ins counting the time between two dates or times, evaluated by Pellet in SWRL rules.
+ */
+public class TemporalBuiltInsTest {
+
+    private static final String NS = "http://example.org/temporal#";
+
+    private final OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    private final OWLDataFactory factory = manager.getOWLDataFactory();
+    private final OWLDataProperty start = factory.getOWLDataProperty(IRI.create(NS + "start"));
+    private final OWLDataProperty end = factory.getOWLDataProperty(IRI.create(NS + "end"));
+    private final OWLDataProperty result = factory.getOWLDataProperty(IRI.create(NS + "result"));
+    private final OWLNamedIndividual event = factory.getOWLNamedIndividual(IRI.create(NS + "event"));
+
+    @BeforeAll
+    public static void register() {
+        new TemporalBuiltIns(Clock.systemUTC()).registerAll();
+    }
+
+    /**
+     * Computes the result of the built-in for the start and end of one individual.
+     */
+    private Set<String> between(String builtIn, OWLLiteral from, OWLLiteral to) throws OWLOntologyCreationException {
+        OWLOntology ontology = manager.createOntology(IRI.create(NS));
+        manager.addAxiom(ontology, factory.getOWLDataPropertyAssertionAxiom(start, event, from));
+        manager.addAxiom(ontology, factory.getOWLDataPropertyAssertionAxiom(end, event, to));
+        SWRLVariable x = factory.getSWRLVariable(IRI.create("urn:swrl#x"));
+        SWRLVariable a = factory.getSWRLVariable(IRI.create("urn:swrl#a"));
+        SWRLVariable b = factory.getSWRLVariable(IRI.create("urn:swrl#b"));
+        SWRLVariable n = factory.getSWRLVariable(IRI.create("urn:swrl#n"));
+        manager.addAxiom(ontology, factory.getSWRLRule(
+                new HashSet<>(Arrays.asList(
+                        factory.getSWRLDataPropertyAtom(start, x, a),
+                        factory.getSWRLDataPropertyAtom(end, x, b),
+                        factory.getSWRLBuiltInAtom(IRI.create(TemporalBuiltIns.NS + builtIn), Arrays.asList(n, a, b)))),
+                Collections.singleton(factory.getSWRLDataPropertyAtom(result, x, n))));
+        OWLReasoner reasoner = PelletReasonerFactory.getInstance().createReasoner(ontology);
+        try {
+            Set<String> values = new HashSet<>();
+            for (OWLLiteral literal : reasoner.getDataPropertyValues(event, result)) values.add(literal.getLiteral());
+            return values;
+        } finally {
+            reasoner.dispose();
+            manager.removeOntology(ontology);
+        }
+    }
+
+    private OWLLiteral date(String lexical) {
+        return factory.getOWLLiteral(lexical, factory.getOWLDatatype(XSDVocabulary.DATE.getIRI()));
+    }
+
+    private OWLLiteral dateTime(String lexical) {
+        return factory.getOWLLiteral(lexical, OWL2Datatype.XSD_DATE_TIME);
+    }
+
+    @Test
+    public void datesAreCalendarDates() throws OWLOntologyCreationException {
+        assertEquals(Collections.singleton("19"), between("yearsBetween", date("2000-03-01"), date("2020-02-29")));
+        assertEquals(Collections.singleton("365"), between("daysBetween", date("2019-01-01"), date("2020-01-01")));
+    }
+
+    @Test
+    public void timeOfDayCounts() throws OWLOntologyCreationException {
+        //two hours across midnight are not a whole day
+        assertEquals(Collections.singleton("0"),
+                between("daysBetween", dateTime("2020-01-01T23:00:00Z"), dateTime("2020-01-02T01:00:00Z")));
+    }
+
+    @Test
+    public void timezonesCount() throws OWLOntologyCreationException {
+        //2019-12-31T19:00Z to 2020-01-02T03:00Z is 32 hours, although the written dates are the same
+        assertEquals(Collections.singleton("1"),
+                between("daysBetween", dateTime("2020-01-01T00:00:00+05:00"), dateTime("2020-01-01T22:00:00-05:00")));
+        //the birthday is reached in UTC only an hour later
+        assertEquals(Collections.singleton("19"),
+                between("yearsBetween", dateTime("2000-01-01T00:00:00-01:00"), dateTime("2020-01-01T00:00:00Z")));
+    }
+}